@@ -0,0 +1,101 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.sync.diffsync.config;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Condition;
+import org.springframework.context.annotation.ConditionContext;
+import org.springframework.context.annotation.Conditional;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.type.AnnotatedTypeMetadata;
+import org.springframework.sync.diffsync.cluster.ClusterMembership;
+import org.springframework.sync.diffsync.cluster.ShadowRouter;
+import org.springframework.sync.diffsync.shadowstore.CompactShadowCodec;
+import org.springframework.sync.diffsync.shadowstore.ShadowCodec;
+import org.springframework.sync.diffsync.web.HttpShadowHandoff;
+import org.springframework.sync.diffsync.web.ShadowHandoffController;
+import org.springframework.sync.diffsync.web.ShadowOwnerForwardingInterceptor;
+import org.springframework.util.StringUtils;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * <p>Configuration spreading clients' shadows over the nodes of a cluster, each client being served by the node owning its shadows.</p>
+ *
+ * <p>
+ * It's enabled by setting <code>spring.diff-sync.cluster.node-id</code> to the id of this node among the members of the
+ * {@link ClusterMembership} bean that the application provides. Authenticated REST requests carrying a
+ * {@value ShadowOwnerForwardingInterceptor#CLIENT_ID_HEADER} header are forwarded to the client's owner, and shadows are handed over to
+ * their new owner when the members change. <code>spring.diff-sync.cluster.secret</code> sets a secret shared by the nodes,
+ * required of shadows handed over and of requests forwarded by a peer, and <code>spring.diff-sync.cluster.virtual-nodes</code> the number of points of the hash ring
+ * each node is placed at, which must be the same on every node.
+ * </p>
+ *
+ * @author Craig Walls
+ */
+@Configuration
+@Conditional(ClusterRegistrar.ClusterNodeIdCondition.class)
+public class ClusterRegistrar implements WebMvcConfigurer {
+
+    static final String NODE_ID_PROPERTY = "spring.diff-sync.cluster.node-id";
+
+    private static final ShadowCodec SHADOW_CODEC = new CompactShadowCodec();
+
+    @Value("${spring.diff-sync.path:}")
+    private String diffSyncPath;
+
+    @Value("${" + NODE_ID_PROPERTY + "}")
+    private String nodeId;
+
+    @Value("${spring.diff-sync.cluster.virtual-nodes:160}")
+    private int virtualNodes;
+
+    @Value("${spring.diff-sync.cluster.secret:}")
+    private String secret;
+
+    @Autowired
+    private ClusterMembership clusterMembership;
+
+    @Bean
+    public ShadowRouter shadowRouter() {
+        ShadowRouter shadowRouter = new ShadowRouter(nodeId, clusterMembership, virtualNodes);
+        HttpShadowHandoff shadowHandoff = new HttpShadowHandoff(SHADOW_CODEC, diffSyncPath);
+        shadowHandoff.setSecret(StringUtils.hasText(secret) ? secret : null);
+        shadowRouter.setShadowHandoff(shadowHandoff);
+        return shadowRouter;
+    }
+
+    @Bean
+    public ShadowHandoffController shadowHandoffController() {
+        return new ShadowHandoffController(shadowRouter(), SHADOW_CODEC, StringUtils.hasText(secret) ? secret : null);
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        ShadowOwnerForwardingInterceptor forwardingInterceptor = new ShadowOwnerForwardingInterceptor(shadowRouter());
+        forwardingInterceptor.setSecret(StringUtils.hasText(secret) ? secret : null);
+        registry.addInterceptor(forwardingInterceptor).addPathPatterns(diffSyncPath + "/rest/**");
+    }
+
+    static class ClusterNodeIdCondition implements Condition {
+        @Override
+        public boolean matches(ConditionContext context, AnnotatedTypeMetadata metadata) {
+            return StringUtils.hasText(context.getEnvironment().getProperty(NODE_ID_PROPERTY));
+        }
+    }
+}
@@ -19,7 +19,7 @@ package org.springframework.sync.diffsync.config;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
 import org.springframework.sync.diffsync.PersistenceCallback;
 import org.springframework.sync.diffsync.PersistenceCallbackRegistry;
-import org.springframework.sync.diffsync.shadowstore.MapBasedShadowStore;
+import org.springframework.sync.diffsync.shadowstore.BoundedShadowStore;
 import org.springframework.sync.diffsync.shadowstore.ShadowStore;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 
@@ -38,9 +38,11 @@ public interface DiffSyncConfigurer {
 	
 	/**
 	 * Override to set the {@link ShadowStore}.
-	 * For convenience, a {@link MapBasedShadowStore} will be the default, but should not be used in production applications.
+	 * For convenience, a {@link BoundedShadowStore} will be the default, which keeps the shadows in memory up to a limit
+	 * and is not suited to applications spread over several servers, unless each client is routed to the server owning its shadows
+	 * as {@link ClusterRegistrar} does.
 	 * @param remoteNodeId a unique identifier of the remote node that this shadow store is being created for. 
-	 * @return a {@link ShadowStore}
+	 * @return a {@link ShadowStore}, or null to use the default
 	 */
 	ShadowStore getShadowStore(String remoteNodeId);
 
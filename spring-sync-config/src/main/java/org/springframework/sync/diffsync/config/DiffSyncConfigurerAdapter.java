@@ -18,7 +18,7 @@ package org.springframework.sync.diffsync.config;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
 import org.springframework.sync.diffsync.PersistenceCallbackRegistry;
-import org.springframework.sync.diffsync.shadowstore.MapBasedShadowStore;
+import org.springframework.sync.diffsync.shadowstore.BoundedShadowStore;
 import org.springframework.sync.diffsync.shadowstore.ShadowStore;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 
@@ -35,9 +35,12 @@ public class DiffSyncConfigurerAdapter implements DiffSyncConfigurer {
 	public void addPersistenceCallbacks(PersistenceCallbackRegistry registry) {
 	}
 	
+	/**
+	 * Returns null, so that the default {@link BoundedShadowStore} is used.
+	 */
 	@Override
 	public ShadowStore getShadowStore(String remoteNodeId) {
-		return new MapBasedShadowStore(remoteNodeId);
+		return null;
 	}
 
 	@Override
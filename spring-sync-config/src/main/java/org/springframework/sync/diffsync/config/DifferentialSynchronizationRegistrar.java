@@ -16,25 +16,55 @@
 package org.springframework.sync.diffsync.config;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationListener;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.context.annotation.Scope;
 import org.springframework.context.annotation.ScopedProxyMode;
+import org.springframework.messaging.simp.SimpAttributes;
 import org.springframework.messaging.simp.SimpAttributesContextHolder;
 import org.springframework.messaging.simp.SimpMessageSendingOperations;
+import org.springframework.sync.DiffCostModel;
+import org.springframework.sync.FuzzyTextPatcher;
+import org.springframework.sync.diffsync.CollectionCache;
 import org.springframework.sync.diffsync.Equivalency;
 import org.springframework.sync.diffsync.IdPropertyEquivalency;
+import org.springframework.sync.diffsync.OperationLog;
 import org.springframework.sync.diffsync.PersistenceCallbackRegistry;
+import org.springframework.sync.diffsync.cluster.ShadowRouter;
 import org.springframework.sync.diffsync.service.DiffSyncService;
+import org.springframework.sync.diffsync.service.ServerPushService;
 import org.springframework.sync.diffsync.service.impl.DiffSyncServiceImpl;
-import org.springframework.sync.diffsync.shadowstore.MapBasedShadowStore;
+import org.springframework.sync.diffsync.service.impl.ServerPushServiceImpl;
+import org.springframework.sync.diffsync.shadowstore.AsyncShadowStoreAdapter;
+import org.springframework.sync.diffsync.shadowstore.BoundedShadowCache;
+import org.springframework.sync.diffsync.shadowstore.BoundedShadowStore;
+import org.springframework.sync.diffsync.shadowstore.MappedFileShadowStore;
+import org.springframework.sync.diffsync.shadowstore.MappedShadowLog;
 import org.springframework.sync.diffsync.shadowstore.ShadowStore;
+import org.springframework.sync.diffsync.shadowstore.SharedShadowVersions;
+import org.springframework.sync.diffsync.shadowstore.SharedVersionShadowStore;
+import org.springframework.sync.diffsync.web.ClientIdChannelInterceptor;
 import org.springframework.sync.diffsync.web.DiffSyncController;
+import org.springframework.sync.diffsync.web.ShadowOwnerForwardingInterceptor;
+import org.springframework.sync.util.Cloner;
+import org.springframework.sync.util.ReflectiveCloner;
 import org.springframework.util.Assert;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
 
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpSession;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Configuration adapter for Differential Synchronization in Spring.
@@ -46,9 +76,27 @@ import java.util.Objects;
 public class DifferentialSynchronizationRegistrar {
 
     private static final String DIFF_SYNC_CONFIGURERS_MSG = "At least one configuration class must implement DiffSyncConfigurer";
+    private static final String SHADOW_ROUTER_REGISTRATION = "shadowRouterRegistration";
+    private static final String SHARED_VERSIONS_SHADOW_STORE = "shared-versions";
+    private static final String MAPPED_FILE_SHADOW_STORE = "mapped-file";
+    private static final String SHADOW_STORE_DIRECTORY_MSG = "spring.diff-sync.shadow-store.directory must be set for the mapped-file shadow store";
+    private static final String UNABLE_TO_OPEN_SHADOW_LOG_MSG = "Unable to open the shadow log in %s";
 
     private List<DiffSyncConfigurer> diffSyncConfigurers;
 
+    // the WebSocket sessions' shadow stores, so that changes can be pushed to the sessions from outside their scope
+    private final Map<String, ShadowStore> webSocketShadowStores = new ConcurrentHashMap<>();
+
+    private ShadowRouter shadowRouter;
+
+    private String shadowStoreType;
+
+    private String shadowStoreDirectory;
+
+    private int shadowStoreSegmentSize;
+
+    private long shadowStoreTimeToLive;
+
     @Autowired
     public void setDiffSyncConfigurers(List<DiffSyncConfigurer> diffSyncConfigurers) {
         Assert.notNull(diffSyncConfigurers, DIFF_SYNC_CONFIGURERS_MSG);
@@ -56,17 +104,104 @@ public class DifferentialSynchronizationRegistrar {
         this.diffSyncConfigurers = diffSyncConfigurers;
     }
 
+    @Autowired(required = false)
+    public void setShadowRouter(ShadowRouter shadowRouter) {
+        this.shadowRouter = shadowRouter;
+    }
+
+    /**
+     * Sets the kind of shadow store used unless a {@link DiffSyncConfigurer} provides one, with <code>spring.diff-sync.shadow-store.type</code>:
+     * <code>bounded</code>, the default, keeps each session's shadows in the {@link BoundedShadowCache};
+     * <code>shared-versions</code> keeps them as references into the {@link SharedShadowVersions}, so that sessions at the same version
+     * of a resource share one copy of it; <code>mapped-file</code> keeps them in the {@link MappedShadowLog}, so that they survive
+     * a restart. As a session's id doesn't survive a restart, mapped-file stores are created for the client id that authenticated
+     * clients send with the {@value ShadowOwnerForwardingInterceptor#CLIENT_ID_HEADER} header of REST requests, or with the CONNECT
+     * frame of their WebSocket session, bound to their principal; the stores of clients that don't send one, or aren't authenticated,
+     * are created for their session.
+     */
+    @Value("${spring.diff-sync.shadow-store.type:bounded}")
+    public void setShadowStoreType(String shadowStoreType) {
+        this.shadowStoreType = shadowStoreType;
+    }
+
+    @Value("${spring.diff-sync.shadow-store.directory:}")
+    public void setShadowStoreDirectory(String shadowStoreDirectory) {
+        this.shadowStoreDirectory = shadowStoreDirectory;
+    }
+
+    @Value("${spring.diff-sync.shadow-store.segment-size:67108864}")
+    public void setShadowStoreSegmentSize(int shadowStoreSegmentSize) {
+        this.shadowStoreSegmentSize = shadowStoreSegmentSize;
+    }
+
+    /**
+     * Sets how long, in milliseconds, the <code>bounded</code> shadow store keeps a shadow after storing it, however much it's used,
+     * with <code>spring.diff-sync.shadow-store.time-to-live</code>. 0, the default, keeps it until it's idle or evicted.
+     */
+    @Value("${spring.diff-sync.shadow-store.time-to-live:0}")
+    public void setShadowStoreTimeToLive(long shadowStoreTimeToLive) {
+        this.shadowStoreTimeToLive = shadowStoreTimeToLive;
+    }
+
+    /**
+     * Creates the REST shadow store of the session. In a cluster, an authenticated request carrying a client id gets a store created for
+     * the client, bound to its principal, rather than for the session, so that the client's shadows are found under the same keys whichever session it has with its owner.
+     * The store is registered with the {@link ShadowRouter} for the session's lifetime, for the shadows to be handed over when the
+     * client's owner changes.
+     */
     @Bean
     @Scope(value = "session", proxyMode = ScopedProxyMode.TARGET_CLASS)
-    public ShadowStore restShadowStore(HttpSession session) {
-        return buildShadowStore(session.getId());
+    public ShadowStore restShadowStore(HttpSession session, HttpServletRequest request, BoundedShadowCache shadowCache) {
+        String clientId = ShadowOwnerForwardingInterceptor.clientId(request);
+        if (Objects.isNull(shadowRouter) || Objects.isNull(clientId)) {
+            return buildShadowStore(remoteNodeId(session.getId(), clientId), shadowCache);
+        }
+        ShadowStore shadowStore = buildShadowStore(clientId, shadowCache);
+        shadowRouter.register(clientId, shadowStore);
+        RequestContextHolder.currentRequestAttributes().registerDestructionCallback(SHADOW_ROUTER_REGISTRATION,
+                () -> shadowRouter.unregister(clientId, shadowStore), RequestAttributes.SCOPE_SESSION);
+        return shadowStore;
     }
 
     @Bean
     @Scope(value = "websocket", proxyMode = ScopedProxyMode.TARGET_CLASS)
-    public ShadowStore webSocketShadowStore() {
-        String sessionId = SimpAttributesContextHolder.currentAttributes().getSessionId();
-        return buildShadowStore(sessionId);
+    public ShadowStore webSocketShadowStore(BoundedShadowCache shadowCache) {
+        SimpAttributes attributes = SimpAttributesContextHolder.currentAttributes();
+        String clientId = (String) attributes.getAttribute(ClientIdChannelInterceptor.CLIENT_ID_ATTRIBUTE);
+        return webSocketShadowStores.computeIfAbsent(attributes.getSessionId(), id -> buildShadowStore(remoteNodeId(id, clientId), shadowCache));
+    }
+
+    /**
+     * Creates the cache holding the shadows of the default shadow store, used unless a {@link DiffSyncConfigurer} provides a store.
+     * <code>spring.diff-sync.shadow-store.max-bytes</code> limits the estimated size of the shadows kept, and
+     * <code>spring.diff-sync.shadow-store.time-to-idle</code> sets how long, in milliseconds, an unused shadow is kept, 0 keeping it
+     * until it's evicted.
+     */
+    @Bean
+    public BoundedShadowCache shadowCache(@Value("${spring.diff-sync.shadow-store.max-bytes:67108864}") long maxBytes,
+                                          @Value("${spring.diff-sync.shadow-store.time-to-idle:1800000}") long timeToIdle) {
+        return new BoundedShadowCache(maxBytes, Duration.ofMillis(timeToIdle));
+    }
+
+    @Bean
+    public SharedShadowVersions sharedShadowVersions() {
+        return new SharedShadowVersions();
+    }
+
+    /**
+     * Creates the log holding the shadows of the <code>mapped-file</code> shadow store, in the directory set with
+     * <code>spring.diff-sync.shadow-store.directory</code>. <code>spring.diff-sync.shadow-store.segment-size</code> sets the size
+     * of the log's segment files, in bytes.
+     */
+    @Bean
+    @Lazy
+    public MappedShadowLog mappedShadowLog() {
+        Assert.hasText(shadowStoreDirectory, SHADOW_STORE_DIRECTORY_MSG);
+        try {
+            return new MappedShadowLog(Path.of(shadowStoreDirectory), shadowStoreSegmentSize);
+        } catch (IOException e) {
+            throw new IllegalStateException(String.format(UNABLE_TO_OPEN_SHADOW_LOG_MSG, shadowStoreDirectory), e);
+        }
     }
 
     @Bean
@@ -81,26 +216,111 @@ public class DifferentialSynchronizationRegistrar {
         return new IdPropertyEquivalency();
     }
 
+    /**
+     * Creates the diff sync service. Setting <code>spring.diff-sync.fuzzy-match-threshold</code> to a similarity between 0 and 1
+     * merges replaces of text that has drifted since the client's last sync instead of rejecting the patch.
+     * <code>spring.diff-sync.operation-log-size</code> sets the number of recent patches kept per resource for clients to catch up on,
+     * 0 keeping none. Setting <code>spring.diff-sync.incremental-collections</code> to true patches an in-memory view of each collection,
+     * loading only the entities a patch touches rather than the whole collection; report changes made other than through the
+     * service to the {@link ServerPushService}, which invalidates the {@link CollectionCache}, or invalidate it directly.
+     * The patches returned are shrunk with the {@link DiffCostModel}, and resources are copied with the {@link Cloner}.
+     */
+    @Bean
+    public DiffSyncService diffSyncService(PersistenceCallbackRegistry callbackRegistry, Equivalency equivalency, CollectionCache collectionCache,
+                                           DiffCostModel diffCostModel, Cloner cloner,
+                                           @Value("${spring.diff-sync.fuzzy-match-threshold:}") Double fuzzyMatchThreshold,
+                                           @Value("${spring.diff-sync.operation-log-size:100}") int operationLogSize,
+                                           @Value("${spring.diff-sync.incremental-collections:false}") boolean incrementalCollections) {
+        DiffSyncServiceImpl diffSyncService = new DiffSyncServiceImpl(callbackRegistry, equivalency);
+        diffSyncService.setDiffCostModel(diffCostModel);
+        diffSyncService.setCloner(cloner);
+        if (Objects.nonNull(fuzzyMatchThreshold)) {
+            diffSyncService.setFuzzyTextPatcher(new FuzzyTextPatcher(fuzzyMatchThreshold));
+        }
+        if (operationLogSize > 0) {
+            diffSyncService.setOperationLog(new OperationLog(operationLogSize));
+        }
+        if (incrementalCollections) {
+            diffSyncService.setCollectionCache(collectionCache);
+        }
+        return diffSyncService;
+    }
+
+    /**
+     * Creates the cost model shared by the diffs of the diff sync service. The operations changing an entity are collapsed into
+     * a single replace of it once they're <code>spring.diff-sync.replace-ratio</code> times larger than the replace, when encoded.
+     * Its statistics tell how often that happens.
+     */
+    @Bean
+    public DiffCostModel diffCostModel(@Value("${spring.diff-sync.replace-ratio:1.5}") double replaceRatio) {
+        return new DiffCostModel(replaceRatio);
+    }
+
+    /**
+     * Creates the cloner that copies resources into shadows. Override it with a bean of your own, such as a
+     * {@link org.springframework.sync.util.SerializationCloner}, for entities that can't be copied reflectively.
+     */
+    @Bean
+    public Cloner cloner() {
+        return new ReflectiveCloner();
+    }
+
+    @Bean
+    public CollectionCache collectionCache() {
+        return new CollectionCache();
+    }
+
     @Bean
-    public DiffSyncService diffSyncService(PersistenceCallbackRegistry callbackRegistry, Equivalency equivalency) {
-        return new DiffSyncServiceImpl(callbackRegistry, equivalency);
+    public ServerPushService serverPushService(DiffSyncService diffSyncService, SimpMessageSendingOperations brokerTemplate,
+                                               CollectionCache collectionCache) {
+        ServerPushServiceImpl serverPushService = new ServerPushServiceImpl(diffSyncService, brokerTemplate, webSocketShadowStores::get);
+        serverPushService.setCollectionCache(collectionCache);
+        return serverPushService;
     }
 
     @Bean
     public DiffSyncController diffSyncController(DiffSyncService diffSyncService,
                                                  ShadowStore restShadowStore,
                                                  ShadowStore webSocketShadowStore,
-                                                 SimpMessageSendingOperations brokerTemplate) {
-        return new DiffSyncController(restShadowStore, webSocketShadowStore, diffSyncService, brokerTemplate);
+                                                 SimpMessageSendingOperations brokerTemplate,
+                                                 ServerPushService serverPushService) {
+        DiffSyncController diffSyncController = new DiffSyncController(restShadowStore, webSocketShadowStore, diffSyncService, brokerTemplate);
+        diffSyncController.setServerPushService(serverPushService);
+        // the adapter runs on the inbound channel's thread, so the session scoped store resolves to the patching session's
+        diffSyncController.setWebSocketAsyncShadowStore(new AsyncShadowStoreAdapter(webSocketShadowStore));
+        return diffSyncController;
+    }
+
+    @Bean
+    public ApplicationListener<SessionDisconnectEvent> webSocketSessionCleanup(ServerPushService serverPushService) {
+        return event -> {
+            webSocketShadowStores.remove(event.getSessionId());
+            serverPushService.unregister(event.getSessionId());
+        };
+    }
+
+    // Shadows that outlive the process are found again only under an id that the remote node still has after a restart.
+    private String remoteNodeId(String sessionId, String clientId) {
+        return MAPPED_FILE_SHADOW_STORE.equals(shadowStoreType) && Objects.nonNull(clientId) ? clientId : sessionId;
     }
 
-    private ShadowStore buildShadowStore(String sessionId) {
+    private ShadowStore buildShadowStore(String remoteNodeId, BoundedShadowCache shadowCache) {
         for (DiffSyncConfigurer diffSyncConfigurer : diffSyncConfigurers) {
-            ShadowStore shadowStore = diffSyncConfigurer.getShadowStore(sessionId);
+            ShadowStore shadowStore = diffSyncConfigurer.getShadowStore(remoteNodeId);
             if (Objects.nonNull(shadowStore)) {
                 return shadowStore;
             }
         }
-        return new MapBasedShadowStore(sessionId);
+        if (MAPPED_FILE_SHADOW_STORE.equals(shadowStoreType)) {
+            // not closed with the session, as the shadows are kept for the client to reconnect with
+            return new MappedFileShadowStore(remoteNodeId, mappedShadowLog());
+        }
+        if (SHARED_VERSIONS_SHADOW_STORE.equals(shadowStoreType)) {
+            // closed as the session or WebSocket scoped bean is destroyed, releasing its versions
+            return new SharedVersionShadowStore(remoteNodeId, sharedShadowVersions());
+        }
+        BoundedShadowStore shadowStore = new BoundedShadowStore(remoteNodeId, shadowCache);
+        shadowStore.setTimeToLive(Duration.ofMillis(shadowStoreTimeToLive));
+        return shadowStore;
     }
 }
@@ -33,7 +33,7 @@ import java.lang.annotation.*;
 @EnableWebMvc
 @EnableWebSocketMessageBroker
 @EnableScheduling
-@Import({DifferentialSynchronizationRegistrar.class, HttpRegistrar.class, WebSocketRegistrar.class})
+@Import({DifferentialSynchronizationRegistrar.class, HttpRegistrar.class, WebSocketRegistrar.class, ClusterRegistrar.class})
 public @interface EnableDifferentialSynchronization {
 
 }
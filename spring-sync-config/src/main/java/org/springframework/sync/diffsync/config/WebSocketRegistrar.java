@@ -4,7 +4,9 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.messaging.converter.MappingJackson2MessageConverter;
 import org.springframework.messaging.converter.MessageConverter;
+import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
+import org.springframework.sync.diffsync.web.ClientIdChannelInterceptor;
 import org.springframework.sync.diffsync.web.JsonPatchWebSocketMessageConverter;
 import org.springframework.util.Assert;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
@@ -40,6 +42,11 @@ public class WebSocketRegistrar implements WebSocketMessageBrokerConfigurer {
         diffSyncConfigurers.forEach(diffSyncConfigurer -> diffSyncConfigurer.registerStompEndpoints(registry));
     }
 
+    @Override
+    public void configureClientInboundChannel(ChannelRegistration registration) {
+        registration.interceptors(new ClientIdChannelInterceptor());
+    }
+
     @Override
     public boolean configureMessageConverters(List<MessageConverter> messageConverters) {
         messageConverters.add(new JsonPatchWebSocketMessageConverter());
@@ -41,8 +41,8 @@ public class AddOperation extends PatchOperation {
 	}
 	
 	@Override
-	<T> void perform(Object targetObject, Class<T> type) {
-		addValue(targetObject, evaluateValueFromTarget(targetObject, type));
+	<T> Object perform(Object targetObject, Class<T> type) {
+		return addValue(targetObject, evaluateValueFromTarget(targetObject, type));
 	}
 	
 }
@@ -62,8 +62,8 @@ public class CopyOperation extends FromOperation {
 	}
 	
 	@Override
-	<T> void perform(Object target, Class<T> type) {
-		addValue(target, pathToExpression(from).getValue(target));
+	<T> Object perform(Object target, Class<T> type) {
+		return addValue(target, pathToExpression(from).getValue(target));
 	}
 	
 }
@@ -16,7 +16,6 @@
 package org.springframework.sync;
 
 import difflib.Delta;
-import difflib.Delta.TYPE;
 import difflib.DiffUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.sync.exception.PatchException;
@@ -41,14 +40,29 @@ public class Diff {
 	 * @return a {@link Patch} describing the differences between the two objects.
 	 * @throws PatchException if an error occurs while performing the difference.
 	 */
-	@SuppressWarnings("unchecked")
 	public static Patch diff(Object original, Object modified) throws PatchException {
+		return diff(original, modified, null);
+	}
+
+	/**
+	 * Performs a difference operation between two objects, resulting in a {@link Patch} describing the differences.
+	 * Whenever the operations describing a changed object nested in the graph are estimated to cost more than a single
+	 * replace of that object, per the given {@link DiffCostModel}, they are collapsed into a {@link ReplaceOperation}.
+	 *
+	 * @param original the original, unmodified object.
+	 * @param modified the modified object.
+	 * @param costModel the cost model deciding when to collapse subtree operations. May be null to never collapse.
+	 * @return a {@link Patch} describing the differences between the two objects.
+	 * @throws PatchException if an error occurs while performing the difference.
+	 */
+	@SuppressWarnings("unchecked")
+	public static Patch diff(Object original, Object modified, DiffCostModel costModel) throws PatchException {
 		try {
 			List<PatchOperation> operations = new ArrayList<>();
 			if (original instanceof List && modified instanceof List) {
-				diffList(operations, StringUtils.EMPTY, (List<Object>) original, (List<Object>) modified);
+				diffList(operations, StringUtils.EMPTY, (List<Object>) original, (List<Object>) modified, costModel);
 			} else {
-				diffNonList(operations, StringUtils.EMPTY, original, modified);
+				diffNonList(operations, StringUtils.EMPTY, original, modified, costModel);
 			}
 			return new Patch(operations);
 		} catch (Exception e) {
@@ -56,45 +70,140 @@ public class Diff {
 		}
 	}
 	
-	// private helpers
+	/**
+	 * Performs a difference operation between two objects, producing the operations lazily as the returned iterator is consumed.
+	 * When both objects are lists, only the list deltas are computed up front; the operations for each changed element
+	 * are produced when they are reached, so the complete operation list is never held in memory.
+	 * Other objects are diffed eagerly.
+	 *
+	 * <p>Both objects must remain unchanged until the iterator has been consumed. The iterator throws an
+	 * {@link IllegalStateException} if an element can't be diffed.</p>
+	 *
+	 * @param original the original, unmodified object.
+	 * @param modified the modified object.
+	 * @param costModel the cost model deciding when to collapse subtree operations. May be null to never collapse.
+	 * @return an iterator producing the operations describing the differences between the two objects.
+	 * @throws PatchException if an error occurs while performing the difference.
+	 */
+	@SuppressWarnings("unchecked")
+	public static Iterator<PatchOperation> diffIterator(Object original, Object modified, DiffCostModel costModel) throws PatchException {
+		if (original instanceof List && modified instanceof List) {
+			return new ListDiffIterator((List<Object>) original, (List<Object>) modified, costModel);
+		}
+		return diff(original, modified, costModel).getOperations().iterator();
+	}
 
-	@SuppressWarnings({"unchecked", "rawtypes"})
-	private static void diffList(List<PatchOperation> operations, String path, List<Object> original, List<Object> modified) throws IOException, IllegalAccessException {
-		difflib.Patch diff = DiffUtils.diff(original, modified);
-		List<Delta> deltas = diff.getDeltas();
-		for (Delta delta : deltas) {
-			TYPE type = delta.getType();
-			int revisedPosition = delta.getRevised().getPosition();
-
-			switch (type) {
-				case CHANGE -> {
-					List<?> lines = delta.getRevised().getLines();
-					for (int offset = 0; offset < lines.size(); offset++) {
-						Object originalObject = original.get(revisedPosition + offset);
-						Object revisedObject = modified.get(revisedPosition + offset);
-						diffNonList(operations, path + "/" + (revisedPosition + offset), originalObject, revisedObject);
-					}
-				}
-				case INSERT -> {
-					List<?> lines = delta.getRevised().getLines();
-					for (int offset = 0; offset < lines.size(); offset++) {
-						operations.add(new AddOperation(path + "/" + (revisedPosition + offset), lines.get(offset)));
-					}
-				}
-				case DELETE -> {
-					List<?> lines = delta.getOriginal().getLines();
-					for (int offset = 0; offset < lines.size(); offset++) {
-						Object originalObject = original.get(revisedPosition + offset);
-						operations.add(new TestOperation(path + "/" + revisedPosition, originalObject));
-						operations.add(new RemoveOperation(path + "/" + revisedPosition));
-					}
+	/**
+	 * <p>Produces the patch that undoes a patch produced by {@link #diff(Object, Object)}, without comparing the objects again.</p>
+	 *
+	 * <p>
+	 * The operations are undone last to first: an add is undone by a remove, and a remove or replace by restoring the value it
+	 * overwrote. That value is taken from the test the diff puts before the operation, or else read from the original object, as long
+	 * as no earlier operation in the patch has moved or changed what the path points to.
+	 * </p>
+	 *
+	 * @param patch a patch produced by diffing the original object with a modified one.
+	 * @param original the original object the patch was produced from. Only read.
+	 * @return a patch turning the modified object back into the original, or null if the patch can't be undone that way,
+	 * in which case the original and modified objects must be compared again.
+	 */
+	public static Patch reverse(Patch patch, Object original) {
+		List<PatchOperation> operations = patch.getOperations();
+		List<PatchOperation> reversed = new ArrayList<>(operations.size());
+		for (int i = operations.size() - 1; i >= 0; i--) {
+			PatchOperation operation = operations.get(i);
+			String path = operation.getPath();
+			if (operation instanceof TestOperation) {
+				continue;
+			}
+			if (operation instanceof AddOperation) {
+				reversed.add(new RemoveOperation(path));
+				continue;
+			}
+			if (!(operation instanceof RemoveOperation || operation instanceof ReplaceOperation)) {
+				return null;
+			}
+			Object overwritten;
+			if (i > 0 && operations.get(i - 1) instanceof TestOperation test && test.getPath().equals(path)) {
+				overwritten = test.getValue();
+			} else if (isUntouchedBefore(operations, i)) {
+				try {
+					overwritten = operation.getValueFromTarget(original);
+				} catch (PatchException e) {
+					return null;
 				}
+			} else {
+				return null;
+			}
+			reversed.add(operation instanceof RemoveOperation ? new AddOperation(path, overwritten) : new ReplaceOperation(path, overwritten));
+		}
+		return new Patch(reversed);
+	}
+
+	// private helpers
+
+	// A path still points to the original's value if no earlier operation changed it, its parents or its children,
+	// or added or removed a sibling, which may have shifted its position in a list.
+	private static boolean isUntouchedBefore(List<PatchOperation> operations, int index) {
+		String path = operations.get(index).getPath();
+		for (int i = 0; i < index; i++) {
+			PatchOperation operation = operations.get(i);
+			if (operation instanceof TestOperation) {
+				continue;
+			}
+			String changed = operation.getPath();
+			if (changed.equals(path) || path.startsWith(changed + "/") || changed.startsWith(path + "/")) {
+				return false;
+			}
+			String parent = changed.substring(0, Math.max(changed.lastIndexOf('/'), 0));
+			if ((operation instanceof AddOperation || operation instanceof RemoveOperation) && path.startsWith(parent + "/")) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static void diffList(List<PatchOperation> operations, String path, List<Object> original, List<Object> modified, DiffCostModel costModel) throws IOException, IllegalAccessException {
+		for (Delta<Object> delta : deltas(original, modified)) {
+			for (int offset = 0; offset < deltaSize(delta); offset++) {
+				diffDeltaLine(operations, path, original, modified, delta, offset, costModel);
 			}
 		}
 	}
 
+	private static List<Delta<Object>> deltas(List<Object> original, List<Object> modified) {
+		return DiffUtils.diff(original, modified).getDeltas();
+	}
+
+	private static int deltaSize(Delta<Object> delta) {
+		return Math.max(delta.getOriginal().size(), delta.getRevised().size());
+	}
+
+	// Produces the operations for one line of a delta. Operations are applied in order, so everything before the line is already
+	// in its revised form: paths use revised positions, while original elements are read at their original positions.
+	// A CHANGE delta may replace a different number of elements than it removes: the lines both sides have are diffed element
+	// by element, and the surplus is added, or tested and removed, after them. A DELETE delta is a CHANGE delta with no revised
+	// lines, and an INSERT delta one with no original lines.
+	private static void diffDeltaLine(List<PatchOperation> operations, String path, List<Object> original, List<Object> modified, Delta<Object> delta, int offset, DiffCostModel costModel) throws IOException, IllegalAccessException {
+		int originalPosition = delta.getOriginal().getPosition();
+		int revisedPosition = delta.getRevised().getPosition();
+		int originalSize = delta.getOriginal().size();
+		int revisedSize = delta.getRevised().size();
+		if (offset < originalSize && offset < revisedSize) {
+			Object originalObject = original.get(originalPosition + offset);
+			Object revisedObject = modified.get(revisedPosition + offset);
+			diffNonList(operations, path + "/" + (revisedPosition + offset), originalObject, revisedObject, costModel);
+		} else if (offset < revisedSize) {
+			operations.add(new AddOperation(path + "/" + (revisedPosition + offset), modified.get(revisedPosition + offset)));
+		} else {
+			Object originalObject = original.get(originalPosition + offset);
+			operations.add(new TestOperation(path + "/" + (revisedPosition + revisedSize), originalObject));
+			operations.add(new RemoveOperation(path + "/" + (revisedPosition + revisedSize)));
+		}
+	}
+
 	@SuppressWarnings("unchecked")
-	private static void diffNonList(List<PatchOperation> operations, String path, Object original, Object modified) throws IOException, IllegalAccessException {
+	private static void diffNonList(List<PatchOperation> operations, String path, Object original, Object modified, DiffCostModel costModel) throws IOException, IllegalAccessException {
 		if (!Objects.equals(original, modified)) {
 			if (modified == null) {
 				operations.add(new RemoveOperation(path));
@@ -112,6 +221,7 @@ public class Diff {
 				return;
 			}
 						
+			int subtreeStart = operations.size();
 			Class<?> originalType = original.getClass();
 			Field[] fields = originalType.getDeclaredFields();
 			for (Field field : fields) {
@@ -121,20 +231,97 @@ public class Diff {
 				Object modValue = field.get(modified);
 				if ((fieldType.isArray() || Collection.class.isAssignableFrom(fieldType)) && origValue != null && modValue != null) {
 					if (Collection.class.isAssignableFrom(fieldType)) {
-						diffList(operations, path + "/" + field.getName(), (List<Object>) origValue, (List<Object>) modValue);
+						diffList(operations, path + "/" + field.getName(), (List<Object>) origValue, (List<Object>) modValue, costModel);
 					}
 					else if (fieldType.isArray()) {
-						diffList(operations, path + "/" + field.getName(), Arrays.asList((Object[]) origValue), Arrays.asList((Object[]) modValue));
+						diffList(operations, path + "/" + field.getName(), Arrays.asList((Object[]) origValue), Arrays.asList((Object[]) modValue), costModel);
 					}
 				} else {
-					diffNonList(operations, path + "/" +field.getName(), origValue, modValue);
+					diffNonList(operations, path + "/" +field.getName(), origValue, modValue, costModel);
 				}
 			}
+			collapseSubtreeIfCheaper(operations, subtreeStart, path, modified, costModel);
+		}
+	}
+
+	// The root can't be the target of a replace, so only nested subtrees are collapsed.
+	private static void collapseSubtreeIfCheaper(List<PatchOperation> operations, int subtreeStart, String path, Object modified, DiffCostModel costModel) {
+		if (Objects.isNull(costModel) || path.isEmpty()) {
+			return;
+		}
+		List<PatchOperation> subtreeOperations = operations.subList(subtreeStart, operations.size());
+		if (costModel.shouldReplace(path, subtreeOperations, modified)) {
+			subtreeOperations.clear();
+			operations.add(new ReplaceOperation(path, modified));
 		}
 	}
 
 	private static boolean isPrimitive(Object o) {
 		return o instanceof String || o instanceof Number || o instanceof Boolean;
 	}
-	
+
+	/**
+	 * Produces the operations for a list one delta line at a time.
+	 */
+	private static class ListDiffIterator implements Iterator<PatchOperation> {
+
+		private final List<Object> original;
+
+		private final List<Object> modified;
+
+		private final DiffCostModel costModel;
+
+		private final Iterator<Delta<Object>> deltas;
+
+		private final Deque<PatchOperation> buffer = new ArrayDeque<>();
+
+		private final List<PatchOperation> lineOperations = new ArrayList<>();
+
+		private Delta<Object> delta;
+
+		private int offset;
+
+		ListDiffIterator(List<Object> original, List<Object> modified, DiffCostModel costModel) {
+			this.original = original;
+			this.modified = modified;
+			this.costModel = costModel;
+			this.deltas = deltas(original, modified).iterator();
+		}
+
+		@Override
+		public boolean hasNext() {
+			while (buffer.isEmpty() && advance()) {
+				// keep producing until a delta line yields operations
+			}
+			return !buffer.isEmpty();
+		}
+
+		@Override
+		public PatchOperation next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			return buffer.poll();
+		}
+
+		private boolean advance() {
+			while (Objects.isNull(delta) || offset >= deltaSize(delta)) {
+				if (!deltas.hasNext()) {
+					return false;
+				}
+				delta = deltas.next();
+				offset = 0;
+			}
+			try {
+				lineOperations.clear();
+				diffDeltaLine(lineOperations, StringUtils.EMPTY, original, modified, delta, offset++, costModel);
+				buffer.addAll(lineOperations);
+				return true;
+			} catch (IOException | IllegalAccessException e) {
+				throw new IllegalStateException(DIFF_ERROR_MSG, e);
+			}
+		}
+
+	}
+
 }
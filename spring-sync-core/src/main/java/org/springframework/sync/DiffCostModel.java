@@ -0,0 +1,220 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.sync;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Cost model used by {@link Diff} to decide whether the operations produced for an object subtree
+ * should be collapsed into a single {@link ReplaceOperation} of that subtree.</p>
+ *
+ * <p>
+ * Costs are estimated as the number of characters the operations would take up when encoded as JSON Patch.
+ * The operations for a subtree are collapsed when their cost exceeds the cost of replacing the subtree
+ * multiplied by the configured replace ratio. A ratio of 1.0 collapses as soon as the replace is cheaper;
+ * higher ratios favor fine-grained operations (and their test operations) over whole-subtree replaces.
+ * </p>
+ *
+ * <p>
+ * The model keeps counters of how many subtrees were evaluated and collapsed, so the fallback rate can be monitored.
+ * A single instance may be shared between threads.
+ * </p>
+ *
+ * @author Craig Walls
+ */
+public class DiffCostModel {
+
+	public static final double DEFAULT_REPLACE_RATIO = 1.5;
+
+	// {"op":"","path":""}
+	private static final int OPERATION_OVERHEAD = 19;
+	// ,"value":
+	private static final int VALUE_OVERHEAD = 9;
+	private static final int NULL_SIZE = 4;
+
+	private final double replaceRatio;
+
+	private final AtomicLong subtreesEvaluated = new AtomicLong();
+
+	private final AtomicLong subtreesCollapsed = new AtomicLong();
+
+	private final AtomicLong operationsCollapsed = new AtomicLong();
+
+	/**
+	 * Constructs a cost model with the {@link #DEFAULT_REPLACE_RATIO default replace ratio}.
+	 */
+	public DiffCostModel() {
+		this(DEFAULT_REPLACE_RATIO);
+	}
+
+	/**
+	 * Constructs a cost model.
+	 * @param replaceRatio how many times more expensive the subtree operations must be than a replace before they are collapsed.
+	 */
+	public DiffCostModel(double replaceRatio) {
+		if (replaceRatio <= 0) {
+			throw new IllegalArgumentException("Replace ratio must be positive");
+		}
+		this.replaceRatio = replaceRatio;
+	}
+
+	/**
+	 * @return the configured replace ratio.
+	 */
+	public double getReplaceRatio() {
+		return replaceRatio;
+	}
+
+	/**
+	 * Determines if the given subtree operations should be collapsed into a single replace of the subtree.
+	 * Updates the model's statistics.
+	 * @param path the path of the subtree.
+	 * @param subtreeOperations the operations produced for the subtree.
+	 * @param modified the modified subtree value that a replace would carry.
+	 * @return true if a single replace is cheaper than the subtree operations, per the replace ratio.
+	 */
+	public boolean shouldReplace(String path, List<PatchOperation> subtreeOperations, Object modified) {
+		if (subtreeOperations.size() < 2) {
+			return false;
+		}
+		subtreesEvaluated.incrementAndGet();
+		long operationsCost = 0;
+		for (PatchOperation operation : subtreeOperations) {
+			operationsCost += estimateOperationCost(operation.getOp(), operation.getPath(), operation.getValue());
+		}
+		long replaceCost = estimateOperationCost(ReplaceOperation.OP_TYPE, path, modified);
+		if (operationsCost > replaceCost * replaceRatio) {
+			subtreesCollapsed.incrementAndGet();
+			operationsCollapsed.addAndGet(subtreeOperations.size());
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Estimates the encoded size of a single operation.
+	 * @param op the operation name.
+	 * @param path the operation path.
+	 * @param value the operation value, may be null.
+	 * @return the estimated encoded size.
+	 */
+	public long estimateOperationCost(String op, String path, Object value) {
+		long cost = OPERATION_OVERHEAD + op.length() + path.length();
+		if (Objects.nonNull(value)) {
+			cost += VALUE_OVERHEAD + estimateValueSize(value);
+		}
+		return cost;
+	}
+
+	/**
+	 * Estimates the encoded size of a value by walking its fields.
+	 * @param value the value.
+	 * @return the estimated encoded size.
+	 */
+	public long estimateValueSize(Object value) {
+		return estimateValueSize(value, Collections.newSetFromMap(new IdentityHashMap<>()));
+	}
+
+	/**
+	 * @return the number of subtrees that have been considered for collapsing.
+	 */
+	public long getSubtreesEvaluated() {
+		return subtreesEvaluated.get();
+	}
+
+	/**
+	 * @return the number of subtrees that have been collapsed into a single replace.
+	 */
+	public long getSubtreesCollapsed() {
+		return subtreesCollapsed.get();
+	}
+
+	/**
+	 * @return the number of operations that have been replaced by collapsing subtrees.
+	 */
+	public long getOperationsCollapsed() {
+		return operationsCollapsed.get();
+	}
+
+	/**
+	 * Resets the statistics.
+	 */
+	public void resetStatistics() {
+		subtreesEvaluated.set(0);
+		subtreesCollapsed.set(0);
+		operationsCollapsed.set(0);
+	}
+
+	// private helpers
+
+	private long estimateValueSize(Object value, Set<Object> visited) {
+		if (Objects.isNull(value)) {
+			return NULL_SIZE;
+		}
+		if (value instanceof CharSequence chars) {
+			return chars.length() + 2;
+		}
+		if (value instanceof Number || value instanceof Boolean) {
+			return value.toString().length();
+		}
+		if (value instanceof Enum<?> || value instanceof Character) {
+			return value.toString().length() + 2;
+		}
+		if (!visited.add(value)) {
+			return NULL_SIZE;
+		}
+		long size = 2;
+		if (value instanceof Collection<?> collection) {
+			for (Object item : collection) {
+				size += estimateValueSize(item, visited) + 1;
+			}
+		} else if (value.getClass().isArray()) {
+			int length = Array.getLength(value);
+			for (int i = 0; i < length; i++) {
+				size += estimateValueSize(Array.get(value, i), visited) + 1;
+			}
+		} else if (value instanceof Map<?, ?> map) {
+			for (Map.Entry<?, ?> entry : map.entrySet()) {
+				size += String.valueOf(entry.getKey()).length() + 4 + estimateValueSize(entry.getValue(), visited);
+			}
+		} else {
+			for (Field field : value.getClass().getDeclaredFields()) {
+				if (Modifier.isStatic(field.getModifiers()) || Modifier.isTransient(field.getModifiers())) {
+					continue;
+				}
+				try {
+					field.setAccessible(true);
+					size += field.getName().length() + 4 + estimateValueSize(field.get(value), visited);
+				} catch (RuntimeException | IllegalAccessException e) {
+					size += field.getName().length() + 4 + NULL_SIZE;
+				}
+			}
+		}
+		visited.remove(value);
+		return size;
+	}
+
+}
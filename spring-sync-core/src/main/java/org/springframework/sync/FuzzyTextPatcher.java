@@ -0,0 +1,209 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.sync;
+
+import difflib.Delta;
+import difflib.DiffUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * <p>Applies a change between two versions of a text to a third version that has drifted from the first, in the manner of diff-match-patch.</p>
+ *
+ * <p>
+ * The change from the base text to the revised text is broken into character-level edits, each with a few characters of surrounding context.
+ * Each edit is then located in the current text: at the exact context nearest to where it is expected, or failing that at the closest
+ * approximate match nearby. The edit is only made if the located text is similar enough to the context, as given by the match threshold.
+ * </p>
+ *
+ * <p>
+ * When set on {@link Patch#apply(Object, Class, org.springframework.sync.util.Cloner, FuzzyTextPatcher)}, a test against a string value
+ * that fails because the value has changed no longer rejects the patch if it is followed by a replace of the same string and the
+ * replace can be merged into the changed value.
+ * </p>
+ *
+ * @author Craig Walls
+ */
+public class FuzzyTextPatcher {
+
+	private static final int CONTEXT_LENGTH = 4;
+
+	private static final int MIN_SEARCH_DISTANCE = 32;
+
+	private static final int MAX_FUZZY_PATTERN_LENGTH = 256;
+
+	private final double matchThreshold;
+
+	/**
+	 * Constructs the patcher.
+	 * @param matchThreshold the lowest similarity, between 0 (anything matches) and 1 (only exact matches), at which an edit is still made.
+	 */
+	public FuzzyTextPatcher(double matchThreshold) {
+		if (matchThreshold < 0 || matchThreshold > 1) {
+			throw new IllegalArgumentException("Match threshold must be between 0 and 1");
+		}
+		this.matchThreshold = matchThreshold;
+	}
+
+	/**
+	 * Applies the change from a base text to a revised text onto the current text.
+	 * @param base the text the change was made against.
+	 * @param revised the text after the change.
+	 * @param current the text to apply the change to, which may have drifted from the base.
+	 * @return the current text with the change applied, or null if any part of the change can't be located well enough.
+	 */
+	public String patch(String base, String revised, String current) {
+		if (Objects.equals(base, current)) {
+			return revised;
+		}
+		if (Objects.isNull(base) || Objects.isNull(revised) || Objects.isNull(current)) {
+			return null;
+		}
+
+		StringBuilder result = new StringBuilder(current);
+		// the shift from positions in the base to positions in the result, as of the last edit made
+		int offset = 0;
+		for (Delta<Character> delta : DiffUtils.diff(characters(base), characters(revised)).getDeltas()) {
+			int start = delta.getOriginal().getPosition();
+			int end = start + delta.getOriginal().size();
+			int contextStart = Math.max(0, start - CONTEXT_LENGTH);
+			int contextEnd = Math.min(base.length(), end + CONTEXT_LENGTH);
+			String pattern = base.substring(contextStart, contextEnd);
+
+			Match match = locate(pattern, result, contextStart + offset);
+			if (Objects.isNull(match)) {
+				return null;
+			}
+			int from = match.positions[start - contextStart];
+			int to = Math.max(from, match.positions[end - contextStart]);
+			String replacement = text(delta.getRevised().getLines());
+			result.replace(from, to, replacement);
+			offset = from + replacement.length() - end;
+		}
+		return result.toString();
+	}
+
+	// private helpers
+
+	private Match locate(String pattern, CharSequence text, int expected) {
+		Match exact = locateExactly(pattern, text, expected);
+		if (Objects.nonNull(exact)) {
+			return exact;
+		}
+		if (pattern.length() > MAX_FUZZY_PATTERN_LENGTH) {
+			return null;
+		}
+		return locateApproximately(pattern, text, expected);
+	}
+
+	private Match locateExactly(String pattern, CharSequence text, int expected) {
+		String haystack = text.toString();
+		int best = -1;
+		for (int i = haystack.indexOf(pattern); i >= 0; i = haystack.indexOf(pattern, i + 1)) {
+			if (best < 0 || Math.abs(i - expected) < Math.abs(best - expected)) {
+				best = i;
+			}
+			if (i > expected) {
+				break;
+			}
+		}
+		if (best < 0) {
+			return null;
+		}
+		int[] positions = new int[pattern.length() + 1];
+		for (int i = 0; i < positions.length; i++) {
+			positions[i] = best + i;
+		}
+		return new Match(positions);
+	}
+
+	// Finds the substring of the text near the expected position with the smallest edit distance to the pattern.
+	// Rows are pattern positions and columns text positions; the match may start at any column, so the first row costs nothing.
+	private Match locateApproximately(String pattern, CharSequence text, int expected) {
+		int distance = Math.max(MIN_SEARCH_DISTANCE, pattern.length());
+		int regionStart = Math.max(0, Math.min(expected, text.length()) - distance);
+		int regionEnd = Math.min(text.length(), expected + pattern.length() + distance);
+		int m = pattern.length();
+		int n = regionEnd - regionStart;
+
+		int[][] costs = new int[m + 1][n + 1];
+		for (int i = 1; i <= m; i++) {
+			costs[i][0] = i;
+			for (int j = 1; j <= n; j++) {
+				int substitution = costs[i - 1][j - 1] + (pattern.charAt(i - 1) == text.charAt(regionStart + j - 1) ? 0 : 1);
+				costs[i][j] = Math.min(substitution, Math.min(costs[i - 1][j], costs[i][j - 1]) + 1);
+			}
+		}
+
+		int bestEnd = 0;
+		for (int j = 1; j <= n; j++) {
+			if (costs[m][j] < costs[m][bestEnd]
+					|| (costs[m][j] == costs[m][bestEnd] && Math.abs(regionStart + j - m - expected) < Math.abs(regionStart + bestEnd - m - expected))) {
+				bestEnd = j;
+			}
+		}
+		double similarity = m == 0 ? 1 : 1 - (double) costs[m][bestEnd] / m;
+		if (similarity < matchThreshold) {
+			return null;
+		}
+
+		// walk the alignment back to find where each pattern position landed in the text
+		int[] positions = new int[m + 1];
+		int i = m;
+		int j = bestEnd;
+		positions[i] = regionStart + j;
+		while (i > 0) {
+			if (j > 0 && costs[i][j] == costs[i - 1][j - 1] + (pattern.charAt(i - 1) == text.charAt(regionStart + j - 1) ? 0 : 1)) {
+				j--;
+				i--;
+			} else if (costs[i][j] == costs[i - 1][j] + 1) {
+				i--;
+			} else {
+				j--;
+			}
+			positions[i] = regionStart + j;
+		}
+		return new Match(positions);
+	}
+
+	private static List<Character> characters(String text) {
+		List<Character> characters = new ArrayList<>(text.length());
+		for (int i = 0; i < text.length(); i++) {
+			characters.add(text.charAt(i));
+		}
+		return characters;
+	}
+
+	private static String text(List<Character> characters) {
+		StringBuilder text = new StringBuilder(characters.size());
+		characters.forEach(text::append);
+		return text.toString();
+	}
+
+	private static final class Match {
+
+		// for each position in the pattern, the corresponding position in the text
+		private final int[] positions;
+
+		private Match(int[] positions) {
+			this.positions = positions;
+		}
+
+	}
+
+}
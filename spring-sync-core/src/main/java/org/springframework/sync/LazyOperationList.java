@@ -0,0 +1,102 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.sync;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * <p>A list of {@link PatchOperation}s that pulls its elements from a source iterator only as they are needed.</p>
+ *
+ * <p>
+ * Iterating the list hands out each operation as soon as the source produces it, so a {@link Patch} backed by this list can be
+ * written to a response while the remaining operations are still being computed. Operations are remembered once produced,
+ * which lets several consumers (such as a response and a broadcast) share a single pass over the source.
+ * Calling {@link #size()} produces all remaining operations. The list is safe for concurrent readers.
+ * </p>
+ *
+ * @author Craig Walls
+ */
+public class LazyOperationList extends AbstractList<PatchOperation> {
+
+	private final List<PatchOperation> produced = new ArrayList<>();
+
+	private final Iterator<PatchOperation> source;
+
+	/**
+	 * Constructs the list.
+	 * @param source the iterator producing the operations. It must not be used by anyone else.
+	 */
+	public LazyOperationList(Iterator<PatchOperation> source) {
+		this.source = source;
+	}
+
+	@Override
+	public synchronized PatchOperation get(int index) {
+		if (!produceUpTo(index + 1)) {
+			throw new IndexOutOfBoundsException("Index: " + index);
+		}
+		return produced.get(index);
+	}
+
+	@Override
+	public synchronized int size() {
+		produceUpTo(Integer.MAX_VALUE);
+		return produced.size();
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return !available(1);
+	}
+
+	@Override
+	public Iterator<PatchOperation> iterator() {
+		return new Iterator<>() {
+
+			private int next;
+
+			@Override
+			public boolean hasNext() {
+				return available(next + 1);
+			}
+
+			@Override
+			public PatchOperation next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				return get(next++);
+			}
+
+		};
+	}
+
+	private synchronized boolean available(int count) {
+		return produceUpTo(count);
+	}
+
+	private boolean produceUpTo(int count) {
+		while (produced.size() < count && source.hasNext()) {
+			produced.add(source.next());
+		}
+		return produced.size() >= count;
+	}
+
+}
@@ -19,6 +19,8 @@ import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import org.springframework.sync.exception.PatchException;
 
+import static org.springframework.sync.PathToSpEL.pathToExpression;
+
 /**
  * <p>
  * Operation that moves a value from the given "from" path to the given "path".
@@ -50,8 +52,9 @@ public class MoveOperation extends FromOperation {
 	}
 	
 	@Override
-	<T> void perform(Object target, Class<T> type) throws PatchException {
-		addValue(target, popValueAtPath(target, from));
+	<T> Object perform(Object target, Class<T> type) throws PatchException {
+		Object value = pathToExpression(from).getValue(target);
+		return addValue(removeValueAtPath(target, from), value);
 	}
 	
 }
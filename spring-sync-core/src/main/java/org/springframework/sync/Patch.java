@@ -19,10 +19,13 @@ import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.Getter;
 import org.springframework.sync.exception.PatchException;
+import org.springframework.sync.util.Cloner;
 import org.springframework.sync.util.DeepCloneUtils;
 
 import java.io.Serializable;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Objects;
 
 /**
  * <p>Represents a Patch.</p>
@@ -62,14 +65,44 @@ public class Patch implements Serializable {
 	 * @throws PatchException if there are any errors while applying the patch.
 	 */
 	public <T> T apply(T in, Class<T> type) throws PatchException {
-		// Make defensive copy of in before performing operations so that if any op fails, the original is left untouched
-		T work = DeepCloneUtils.deepClone(in);
-		
-		for (PatchOperation operation : operations) {
-			operation.perform(work, type);
-		}
+		return apply(in, type, DeepCloneUtils.getDefaultCloner());
+	}
 
-		return work;
+	/**
+	 * Applies the Patch to a given Object graph. Makes a copy of the given object with the given {@link Cloner} so that it will remain unchanged
+	 * after application of the patch and in case any errors occur while performing the patch.
+	 * 
+	 * @param in The object graph to apply the patch to. 
+	 * @param type The object type.
+	 * @param cloner The cloner used to copy the object graph.
+	 * @param <T> the object type.
+	 * @return An object graph modified by the patch.
+	 * @throws PatchException if there are any errors while applying the patch.
+	 */
+	public <T> T apply(T in, Class<T> type, Cloner cloner) throws PatchException {
+		return apply(in, type, cloner, null);
+	}
+
+	/**
+	 * Applies the Patch to a given Object graph. Makes a copy of the given object with the given {@link Cloner} so that it will remain unchanged
+	 * after application of the patch and in case any errors occur while performing the patch.
+	 * A failed test of a string value that is followed by a replace of the same value is tolerated if the given {@link FuzzyTextPatcher}
+	 * can merge the replace into the value found.
+	 * 
+	 * @param in The object graph to apply the patch to. 
+	 * @param type The object type.
+	 * @param cloner The cloner used to copy the object graph.
+	 * @param textPatcher The patcher that merges string replaces into drifted values, or null to reject the patch on any failed test.
+	 * @param <T> the object type.
+	 * @return An object graph modified by the patch.
+	 * @throws PatchException if there are any errors while applying the patch.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T apply(T in, Class<T> type, Cloner cloner, FuzzyTextPatcher textPatcher) throws PatchException {
+		// Make defensive copy of in before performing operations so that if any op fails, the original is left untouched
+		T work = cloner.deepClone(in);
+		// immutable objects are changed by replacing them
+		return (T) perform(work, type, textPatcher);
 	}
 
 	/**
@@ -83,13 +116,67 @@ public class Patch implements Serializable {
 	 * @throws PatchException if there are any errors while applying the patch.
 	 */
 	public <T> List<T> apply(List<T> in, Class<T> type) throws PatchException {
+		return apply(in, type, DeepCloneUtils.getDefaultCloner());
+	}
+
+	/**
+	 * Applies the Patch to a given List of objects. Makes a copy of the given list with the given {@link Cloner} so that it will remain unchanged
+	 * after application of the patch and in case any errors occur while performing the patch.
+	 * 
+	 * @param in The list to apply the patch to. 
+	 * @param type The list's generic type.
+	 * @param cloner The cloner used to copy the list.
+	 * @param <T> the list's generic type.
+	 * @return A list modified by the patch.
+	 * @throws PatchException if there are any errors while applying the patch.
+	 */
+	public <T> List<T> apply(List<T> in, Class<T> type, Cloner cloner) throws PatchException {
+		return apply(in, type, cloner, null);
+	}
+
+	/**
+	 * Applies the Patch to a given List of objects. Makes a copy of the given list with the given {@link Cloner} so that it will remain unchanged
+	 * after application of the patch and in case any errors occur while performing the patch.
+	 * A failed test of a string value that is followed by a replace of the same value is tolerated if the given {@link FuzzyTextPatcher}
+	 * can merge the replace into the value found.
+	 * 
+	 * @param in The list to apply the patch to. 
+	 * @param type The list's generic type.
+	 * @param cloner The cloner used to copy the list.
+	 * @param textPatcher The patcher that merges string replaces into drifted values, or null to reject the patch on any failed test.
+	 * @param <T> the list's generic type.
+	 * @return A list modified by the patch.
+	 * @throws PatchException if there are any errors while applying the patch.
+	 */
+	public <T> List<T> apply(List<T> in, Class<T> type, Cloner cloner, FuzzyTextPatcher textPatcher) throws PatchException {
 		// Make defensive copy of in before performing operations so that if any op fails, the original is left untouched
-		List<T> work = DeepCloneUtils.deepClone(in);
-		
-		for (PatchOperation operation : operations) {
-			operation.perform(work, type);
-		}
+		List<T> work = cloner.deepClone(in);
+		perform(work, type, textPatcher);
+		return work;
+	}
 
+	private <T> Object perform(Object work, Class<T> type, FuzzyTextPatcher textPatcher) throws PatchException {
+		Iterator<PatchOperation> iterator = operations.iterator();
+		while (iterator.hasNext()) {
+			PatchOperation operation = iterator.next();
+			try {
+				work = operation.perform(work, type);
+			} catch (PatchException e) {
+				if (Objects.isNull(textPatcher) || !(operation instanceof TestOperation) || !(operation.getValue() instanceof String base) || !iterator.hasNext()) {
+					throw e;
+				}
+				PatchOperation next = iterator.next();
+				String merged = null;
+				if (next instanceof ReplaceOperation && next.getPath().equals(operation.getPath()) && next.getValue() instanceof String revised
+						&& operation.getValueFromTarget(work) instanceof String current) {
+					merged = textPatcher.patch(base, revised, current);
+				}
+				if (Objects.isNull(merged)) {
+					throw e;
+				}
+				work = new ReplaceOperation(next.getPath(), merged).perform(work, type);
+			}
+		}
 		return work;
 	}
 	
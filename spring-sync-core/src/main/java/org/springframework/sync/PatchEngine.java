@@ -0,0 +1,86 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.sync;
+
+import org.springframework.sync.exception.PatchException;
+
+import java.util.List;
+
+/**
+ * <p>Strategy interface for producing and applying {@link Patch}es against a specific kind of resource.</p>
+ *
+ * <p>
+ * By default, resources are Java objects that are compared with {@link Diff} and patched with {@link Patch#apply(Object, Class)}.
+ * An engine allows other resource representations (such as JSON documents) to take part in Differential Synchronization
+ * without being converted to and from Java types.
+ * </p>
+ *
+ * @author Craig Walls
+ * @param <T> the resource type the engine works with.
+ */
+public interface PatchEngine<T> {
+
+	/**
+	 * Produces a {@link Patch} describing the differences between two resources.
+	 * @param original the original, unmodified resource.
+	 * @param modified the modified resource.
+	 * @return a {@link Patch} describing the differences.
+	 * @throws PatchException if an error occurs while performing the difference.
+	 */
+	Patch diff(T original, T modified) throws PatchException;
+
+	/**
+	 * Produces a {@link Patch} describing the differences between two lists of resources.
+	 * @param original the original, unmodified list.
+	 * @param modified the modified list.
+	 * @return a {@link Patch} describing the differences.
+	 * @throws PatchException if an error occurs while performing the difference.
+	 */
+	Patch diff(List<T> original, List<T> modified) throws PatchException;
+
+	/**
+	 * Applies a {@link Patch} to a resource. The given resource remains unchanged.
+	 * @param patch the patch to apply.
+	 * @param target the resource to apply the patch to.
+	 * @return a patched copy of the resource.
+	 * @throws PatchException if there are any errors while applying the patch.
+	 */
+	T apply(Patch patch, T target) throws PatchException;
+
+	/**
+	 * Applies a {@link Patch} to a list of resources. The given list remains unchanged.
+	 * @param patch the patch to apply.
+	 * @param target the list to apply the patch to.
+	 * @return a patched copy of the list.
+	 * @throws PatchException if there are any errors while applying the patch.
+	 */
+	List<T> apply(Patch patch, List<T> target) throws PatchException;
+
+	/**
+	 * Produces an independent copy of a resource, suitable for use as a shadow.
+	 * @param target the resource to copy.
+	 * @return the copy.
+	 */
+	T copy(T target);
+
+	/**
+	 * Produces an independent copy of a list of resources, suitable for use as a shadow.
+	 * @param target the list to copy.
+	 * @return the copy.
+	 */
+	List<T> copy(List<T> target);
+
+}
@@ -66,7 +66,7 @@ public abstract class PatchOperation {
 	@Getter
 	protected final Object value;
 	
-	protected final Expression spelExpression;
+	private Expression spelExpression;
 
 	/**
 	 * Constructs the operation.
@@ -89,7 +89,6 @@ public abstract class PatchOperation {
 		this.op = op;
 		this.path = path;
 		this.value = value;
-		this.spelExpression = pathToExpression(path);
 	}
 
 	/**
@@ -116,35 +115,66 @@ public abstract class PatchOperation {
 			return value;
 		}
 	}
+
+	/**
+	 * Removes the value at the given path.
+	 * If the path passes through immutable objects or records, the path is rebuilt rather than changed in place.
+	 * @param target the target from which to remove a value.
+	 * @param removePath the path from which to remove a value.
+	 * @return the target, or a rebuilt copy of it if the target itself can't be changed in place.
+	 */
+	protected Object removeValueAtPath(Object target, String removePath) throws PatchException {
+		if (PathCopier.requiresCopy(target, removePath)) {
+			try {
+				return PathCopier.update(target, removePath, PathCopier.Change.REMOVE, null);
+			} catch (IllegalArgumentException e) {
+				throw new PatchException(String.format(PATH_NOT_NULLABLE_MSG, removePath));
+			}
+		}
+		popValueAtPath(target, removePath);
+		return target;
+	}
 	
 	/**
 	 * Adds a value to the operation's path.
 	 * If the path references a list index, the value is added to the list at the given index.
 	 * If the path references an object property, the property is set to the value.
+	 * If the path passes through immutable objects or records, the path is rebuilt rather than changed in place.
 	 * @param target The target object.
 	 * @param value The value to add.
+	 * @return the target, or a rebuilt copy of it if the target itself can't be changed in place.
 	 */
-	protected void addValue(Object target, Object value) {
+	protected Object addValue(Object target, Object value) {
+		if (PathCopier.requiresCopy(target, path)) {
+			return PathCopier.update(target, path, PathCopier.Change.ADD, value);
+		}
 		Expression parentExpression = pathToParentExpression(path);
 		Object parent = parentExpression.getValue(target);
 		Integer listIndex = targetListIndex(path);
 		if (!(parent instanceof List) || Objects.isNull(listIndex)) {
-			spelExpression.setValue(target, value);
+			getSpelExpression().setValue(target, value);
 		} else {
 			@SuppressWarnings("unchecked")
 			List<Object> list = (List<Object>) parentExpression.getValue(target);
 			int addAtIndex = listIndex >= 0 ? listIndex : list.size();
 			list.add(addAtIndex, value);
 		}
+		return target;
 	}
 
 	/**
 	 * Sets a value to the operation's path.
+	 * If the path passes through immutable objects or records, the path is rebuilt rather than changed in place.
 	 * @param target The target object.
 	 * @param value The value to set.
+	 * @return the target, or a rebuilt copy of it if the target itself can't be changed in place.
 	 */
-	protected void setValueOnTarget(Object target, Object value) {
-		spelExpression.setValue(target, value);
+	protected Object setValueOnTarget(Object target, Object value) {
+		if (PathCopier.requiresCopy(target, path)) {
+			return PathCopier.update(target, path, PathCopier.Change.SET, value);
+		}
+		getSpelExpression().setValue(target, value);
+		return target;
 	}
 
 	/**
@@ -154,7 +184,7 @@ public abstract class PatchOperation {
 	 */
 	protected Object getValueFromTarget(Object target) throws PatchException {
 		try {
-			return spelExpression.getValue(target);
+			return getSpelExpression().getValue(target);
 		} catch (ExpressionException e) {
 			throw new PatchException(UNABLE_TO_GET_VALUE_MSG, e);
 		}
@@ -171,11 +201,24 @@ public abstract class PatchOperation {
 		return value instanceof LateObjectEvaluator ? ((LateObjectEvaluator) value).evaluate(entityType) : value;		
 	}
 
+	/**
+	 * Produces the SpEL expression for the operation's path.
+	 * The expression is parsed on first use, so operations that are never applied to Java objects don't pay for parsing.
+	 * @return the SpEL expression targeting the operation's path.
+	 */
+	protected Expression getSpelExpression() {
+		if (Objects.isNull(spelExpression)) {
+			spelExpression = pathToExpression(path);
+		}
+		return spelExpression;
+	}
+
 	/**
 	 * Perform the operation.
 	 * @param target the target of the operation.
+	 * @return the target, or a changed copy of it if the target is immutable.
 	 */
-	abstract <T> void perform(Object target, Class<T> type) throws PatchException;
+	abstract <T> Object perform(Object target, Class<T> type) throws PatchException;
 
 	// private helpers
 	
@@ -0,0 +1,213 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.sync;
+
+import org.springframework.expression.Expression;
+import org.springframework.expression.ExpressionException;
+import org.springframework.sync.util.DeepCloneUtils;
+import org.springframework.sync.util.ImmutableTypes;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>Changes a value in an object graph whose path passes through immutable objects or records.</p>
+ *
+ * <p>
+ * Such objects can't be changed in place, and because immutable objects are shared between a resource and its copies,
+ * nothing reachable from them may be changed in place either. Instead, the path from the root to the change is rebuilt:
+ * immutable objects and records through {@link ImmutableTypes#with(Object, String, Object)}, and lists and mutable objects
+ * below an immutable object by copying them. Everything off the path remains shared.
+ * </p>
+ *
+ * <p>
+ * A record that isn't immutable, because it holds mutable objects or collections, isn't shared, so changes below its components
+ * are made in place; the record is only rebuilt when one of its own components changes. The JDK's unmodifiable collections are
+ * copied when they are changed.
+ * </p>
+ *
+ * @author Craig Walls
+ */
+class PathCopier {
+
+	private static final String APPEND_INDEX = "~";
+
+	private static final String UNABLE_TO_CHANGE_PATH_MSG = "Unable to change path '%s'";
+
+	private static final Map<String, Expression> PROPERTY_EXPRESSIONS = new ConcurrentHashMap<>();
+
+	/**
+	 * The change to make on the parent of the path's last node.
+	 */
+	enum Change {
+		SET, ADD, REMOVE
+	}
+
+	/**
+	 * Determines whether a change to a path must be made by rebuilding the path.
+	 * @param root the root of the object graph.
+	 * @param path the path to change.
+	 * @return true if any object on the way to the path's parent is shared, or if the parent itself can't be changed in place.
+	 */
+	static boolean requiresCopy(Object root, String path) {
+		String[] nodes = pathNodes(path);
+		Object node = root;
+		for (int i = 0; i < nodes.length && Objects.nonNull(node); i++) {
+			Class<?> type = node.getClass();
+			boolean parent = i == nodes.length - 1;
+			if (ImmutableTypes.isRebuiltOnChange(type) && (parent || ImmutableTypes.isImmutable(type))) {
+				return true;
+			}
+			if (parent && ImmutableTypes.isUnmodifiableCollection(type)) {
+				return true;
+			}
+			if (i < nodes.length - 1) {
+				try {
+					node = getChild(node, nodes[i]);
+				} catch (RuntimeException e) {
+					// leave reporting an invalid path to the regular handling
+					return false;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Makes a change to a path by rebuilding the path from the root.
+	 * @param root the root of the object graph.
+	 * @param path the path to change.
+	 * @param change the kind of change.
+	 * @param value the value to set or add; ignored when removing.
+	 * @return the root of the changed object graph, which is a new object if the root itself can't be changed in place.
+	 * @throws IllegalArgumentException if the path can't be changed.
+	 */
+	static Object update(Object root, String path, Change change, Object value) {
+		try {
+			return update(root, pathNodes(path), 0, false, change, value);
+		} catch (RuntimeException e) {
+			throw new IllegalArgumentException(String.format(UNABLE_TO_CHANGE_PATH_MSG, path), e);
+		}
+	}
+
+	// private helpers
+
+	private static Object update(Object node, String[] nodes, int depth, boolean shared, Change change, Object value) {
+		String key = nodes[depth];
+		if (depth == nodes.length - 1) {
+			return changeChild(changeable(node, shared), key, change, value);
+		}
+
+		Object child = getChild(node, key);
+		// nodes below an immutable object are shared with other copies of the graph and must not be changed in place
+		Object updated = update(child, nodes, depth + 1, shared || ImmutableTypes.isImmutable(node.getClass()), change, value);
+		return updated == child ? node : setChild(changeable(node, shared), key, updated);
+	}
+
+	// records and immutable objects are rebuilt when their children are set, while shared objects and unmodifiable collections are copied
+	private static Object changeable(Object node, boolean shared) {
+		Class<?> type = node.getClass();
+		if (ImmutableTypes.isRebuiltOnChange(type)) {
+			return node;
+		}
+		return shared || ImmutableTypes.isUnmodifiableCollection(type) ? copyOf(node) : node;
+	}
+
+	private static Object changeChild(Object parent, String key, Change change, Object value) {
+		if (parent instanceof List) {
+			@SuppressWarnings("unchecked")
+			List<Object> list = (List<Object>) parent;
+			switch (change) {
+				case ADD:
+					list.add(APPEND_INDEX.equals(key) ? list.size() : Integer.parseInt(key), value);
+					break;
+				case REMOVE:
+					list.remove(listIndex(list, key));
+					break;
+				default:
+					list.set(listIndex(list, key), value);
+			}
+			return list;
+		}
+		return setChild(parent, key, change == Change.REMOVE ? null : value);
+	}
+
+	private static Object getChild(Object node, String key) {
+		if (node instanceof List) {
+			List<?> list = (List<?>) node;
+			return list.get(listIndex(list, key));
+		}
+		if (node.getClass().isArray()) {
+			return Array.get(node, Integer.parseInt(key));
+		}
+		try {
+			return propertyExpression(key).getValue(node);
+		} catch (ExpressionException e) {
+			throw new IllegalArgumentException("Unable to get property '" + key + "'", e);
+		}
+	}
+
+	private static Object setChild(Object parent, String key, Object value) {
+		if (parent instanceof List) {
+			@SuppressWarnings("unchecked")
+			List<Object> list = (List<Object>) parent;
+			list.set(listIndex(list, key), value);
+			return list;
+		}
+		if (parent.getClass().isArray()) {
+			Array.set(parent, Integer.parseInt(key), value);
+			return parent;
+		}
+		if (ImmutableTypes.isRebuiltOnChange(parent.getClass())) {
+			return ImmutableTypes.with(parent, key, value);
+		}
+		propertyExpression(key).setValue(parent, value);
+		return parent;
+	}
+
+	private static Object copyOf(Object node) {
+		if (node instanceof List) {
+			return new ArrayList<>((List<?>) node);
+		}
+		if (node instanceof Map) {
+			return new LinkedHashMap<>((Map<?, ?>) node);
+		}
+		if (node.getClass().isArray()) {
+			Object copy = Array.newInstance(node.getClass().getComponentType(), Array.getLength(node));
+			System.arraycopy(node, 0, copy, 0, Array.getLength(node));
+			return copy;
+		}
+		return DeepCloneUtils.deepClone(node);
+	}
+
+	private static int listIndex(List<?> list, String key) {
+		return APPEND_INDEX.equals(key) ? list.size() - 1 : Integer.parseInt(key);
+	}
+
+	private static Expression propertyExpression(String property) {
+		return PROPERTY_EXPRESSIONS.computeIfAbsent(property, PathToSpEL::spelToExpression);
+	}
+
+	private static String[] pathNodes(String path) {
+		return path.startsWith("/") ? path.substring(1).split("/") : path.split("/");
+	}
+
+}
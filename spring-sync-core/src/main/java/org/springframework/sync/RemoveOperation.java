@@ -39,8 +39,8 @@ public class RemoveOperation extends PatchOperation {
 	}
 	
 	@Override
-	<T> void perform(Object target, Class<T> type) throws PatchException {
-		popValueAtPath(target, path);
+	<T> Object perform(Object target, Class<T> type) throws PatchException {
+		return removeValueAtPath(target, path);
 	}
 
 }
@@ -38,8 +38,8 @@ public class ReplaceOperation extends PatchOperation {
 	}
 	
 	@Override
-	<T> void perform(Object target, Class<T> type) {
-		setValueOnTarget(target, evaluateValueFromTarget(target, type));
+	<T> Object perform(Object target, Class<T> type) {
+		return setValueOnTarget(target, evaluateValueFromTarget(target, type));
 	}
 	
 }
@@ -51,12 +51,13 @@ public class TestOperation extends PatchOperation {
 	}
 	
 	@Override
-	<T> void perform(Object target, Class<T> type) throws PatchException {
+	<T> Object perform(Object target, Class<T> type) throws PatchException {
 		Object expected = normalizeIfNumber(evaluateValueFromTarget(target, type));
 		Object actual = normalizeIfNumber(getValueFromTarget(target));		
 		if (!Objects.equals(expected, actual)) {
 			throw new PatchException(String.format(TEST_AGAINST_PATH_FAIL_MSG, path));
 		}
+		return target;
 	}
 	
 	private Object normalizeIfNumber(Object expected) {
@@ -0,0 +1,192 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.sync.diffsync;
+
+import org.springframework.sync.Patch;
+import org.springframework.sync.diffsync.shadowstore.AsyncShadowStore;
+import org.springframework.sync.diffsync.shadowstore.ShadowStore;
+import org.springframework.sync.exception.PatchException;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Function;
+
+/**
+ * <p>
+ * Runs the steps of {@link DiffSync} against an {@link AsyncShadowStore}, without blocking the calling thread while shadows are read or written.
+ * </p>
+ *
+ * <p>
+ * Each step reads the shadow and its backup together, runs the {@link DiffSync} step against them in memory, and then writes the changed
+ * shadows together, each stage chained on the completion of the previous one. Steps are run through the store's
+ * {@link AsyncShadowStore#runExclusively(String, java.util.function.Supplier)}, so that concurrent steps on the same shadow don't overwrite
+ * each other. Steps fail with a {@link PatchException} where {@link DiffSync} would throw one.
+ * </p>
+ *
+ * @param <T> The entity type to perform differential synchronization against.
+ * @author Craig Walls
+ */
+public class AsyncDiffSync<T> {
+
+    private final AsyncShadowStore shadowStore;
+
+    private final Function<ShadowStore, DiffSync<T>> diffSyncFactory;
+
+    /**
+     * Constructs the asynchronous Differential Synchronization routine instance.
+     *
+     * @param shadowStore the shadow store
+     * @param entityType  the type of entity this AsyncDiffSync works with
+     */
+    public AsyncDiffSync(AsyncShadowStore shadowStore, Class<T> entityType) {
+        this(shadowStore, stagedStore -> new DiffSync<>(stagedStore, entityType));
+    }
+
+    /**
+     * Constructs the asynchronous Differential Synchronization routine instance, with a factory for configured {@link DiffSync}s.
+     *
+     * @param shadowStore     the shadow store
+     * @param diffSyncFactory creates the {@link DiffSync} that each step is run with, given the store holding the step's shadows.
+     */
+    public AsyncDiffSync(AsyncShadowStore shadowStore, Function<ShadowStore, DiffSync<T>> diffSyncFactory) {
+        this.shadowStore = shadowStore;
+        this.diffSyncFactory = diffSyncFactory;
+    }
+
+    /**
+     * Applies a patch to a target object and the target object's shadow. See {@link DiffSync#apply(Patch, Object)}.
+     *
+     * @param patch  The patch to be applied.
+     * @param target An object to apply a patch to. Will remain unchanged.
+     * @return a stage completing with a patched copy of the target.
+     */
+    public CompletionStage<T> apply(Patch patch, T target) {
+        StagedShadowStore staged = new StagedShadowStore();
+        DiffSync<T> sync = diffSyncFactory.apply(staged);
+        return update(staged, sync.getShadowStoreKey(target), () -> sync.apply(patch, target));
+    }
+
+    /**
+     * Applies a patch to a target list and the target list's shadow. See {@link DiffSync#apply(Patch, List)}.
+     *
+     * @param patch  The patch to be applied.
+     * @param target A list to apply a patch to. Will remain unchanged.
+     * @return a stage completing with a patched copy of the target.
+     */
+    public CompletionStage<List<T>> apply(Patch patch, List<T> target) {
+        StagedShadowStore staged = new StagedShadowStore();
+        DiffSync<T> sync = diffSyncFactory.apply(staged);
+        return update(staged, sync.getShadowStoreKey(target), () -> sync.apply(patch, target));
+    }
+
+    /**
+     * Compares a target object with its shadow, producing a patch describing the difference. See {@link DiffSync#diff(Object)}.
+     *
+     * @param target The target object to produce a difference patch for.
+     * @return a stage completing with a {@link VersionedPatch} describing the differences between the target and its shadow.
+     */
+    public CompletionStage<VersionedPatch> diff(T target) {
+        StagedShadowStore staged = new StagedShadowStore();
+        DiffSync<T> sync = diffSyncFactory.apply(staged);
+        return update(staged, sync.getShadowStoreKey(target), () -> sync.diff(target));
+    }
+
+    /**
+     * Compares a target list with its shadow, producing a patch describing the difference. See {@link DiffSync#diff(List)}.
+     *
+     * @param target The target list to produce a difference patch for.
+     * @return a stage completing with a {@link VersionedPatch} describing the differences between the target and its shadow.
+     */
+    public CompletionStage<VersionedPatch> diff(List<T> target) {
+        StagedShadowStore staged = new StagedShadowStore();
+        DiffSync<T> sync = diffSyncFactory.apply(staged);
+        return update(staged, sync.getShadowStoreKey(target), () -> sync.diff(target));
+    }
+
+    /**
+     * Compares a target object with its shadow, keeping the difference on the shadow's edit stack. See {@link DiffSync#diffEdits(Object)}.
+     *
+     * @param target The target object to produce a difference patch for.
+     * @return a stage completing with the unacknowledged {@link VersionedPatch}es, oldest first.
+     */
+    public CompletionStage<List<VersionedPatch>> diffEdits(T target) {
+        StagedShadowStore staged = new StagedShadowStore();
+        DiffSync<T> sync = diffSyncFactory.apply(staged);
+        return update(staged, sync.getShadowStoreKey(target), () -> sync.diffEdits(target));
+    }
+
+    /**
+     * Compares a target list with its shadow, keeping the difference on the shadow's edit stack. See {@link DiffSync#diffEdits(List)}.
+     *
+     * @param target The target list to produce a difference patch for.
+     * @return a stage completing with the unacknowledged {@link VersionedPatch}es, oldest first.
+     */
+    public CompletionStage<List<VersionedPatch>> diffEdits(List<T> target) {
+        StagedShadowStore staged = new StagedShadowStore();
+        DiffSync<T> sync = diffSyncFactory.apply(staged);
+        return update(staged, sync.getShadowStoreKey(target), () -> sync.diffEdits(target));
+    }
+
+    // private helper methods
+
+    // A DiffSync step, run against the staged shadows.
+    private interface Step<R> {
+        R run() throws PatchException;
+    }
+
+    // Reads the shadow and its backup, runs the step against them, and writes the shadows the step changed.
+    private <R> CompletionStage<R> update(StagedShadowStore staged, String shadowStoreKey, Step<R> step) {
+        return shadowStore.runExclusively(shadowStoreKey, () -> shadowStore.getShadows(List.of(shadowStoreKey, shadowStoreKey + DiffSync.BACKUP_SUFFIX))
+                .thenCompose(shadows -> {
+                    staged.shadows.putAll(shadows);
+                    R result;
+                    try {
+                        result = step.run();
+                    } catch (PatchException e) {
+                        return CompletableFuture.failedFuture(e);
+                    }
+                    if (staged.writes.isEmpty()) {
+                        return CompletableFuture.completedFuture(result);
+                    }
+                    return shadowStore.putShadows(staged.writes).thenApply(written -> result);
+                }));
+    }
+
+    // Serves a step's reads from the shadows read before it, and holds its writes until it's done.
+    private static final class StagedShadowStore implements ShadowStore {
+
+        private final Map<String, Shadow<?>> shadows = new HashMap<>();
+
+        private final Map<String, Shadow<?>> writes = new LinkedHashMap<>();
+
+        @Override
+        public void putShadow(String key, Shadow<?> shadow) {
+            shadows.put(key, shadow);
+            writes.put(key, shadow);
+        }
+
+        @Override
+        public Shadow<?> getShadow(String key) {
+            return shadows.get(key);
+        }
+
+    }
+
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.sync.diffsync;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * <p>Keeps an in-memory view of each resource's collection, so that patching a collection needn't load all of its entities.</p>
+ *
+ * <p>
+ * A view is loaded once, such as with {@link PersistenceCallback#findAll()}, and then kept up to date with the changes made through
+ * the cache: collections patched from the view replace it, and patched entities replace their counterpart in it. Each view has a
+ * version of its own, and a collection patched from a view that has since been replaced is dropped along with the current view,
+ * as neither holds both changes, so that concurrent patches never leave a stale view behind. Changes made other than through the
+ * cache, such as by other servers, aren't seen: {@link #invalidate(String) invalidate} the view then, and the next request loads
+ * the collection again.
+ * </p>
+ *
+ * @author Craig Walls
+ */
+public class CollectionCache {
+
+	private final ConcurrentMap<String, View<?>> views = new ConcurrentHashMap<>();
+
+	private final AtomicLong versions = new AtomicLong();
+
+	/**
+	 * Retrieves the view of a resource's collection, loading it if there is none.
+	 * @param resource the resource.
+	 * @param loader loads the collection.
+	 * @param <T> the entity type.
+	 * @return the view.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> View<T> get(String resource, Supplier<List<T>> loader) {
+		View<?> view = views.get(resource);
+		if (Objects.isNull(view)) {
+			View<T> loaded = new View<>(loader.get(), versions.incrementAndGet());
+			view = Objects.requireNonNullElse(views.putIfAbsent(resource, loaded), loaded);
+		}
+		return (View<T>) view;
+	}
+
+	/**
+	 * Replaces the view of a resource's collection with the collection patched from it, unless the view has been replaced
+	 * since, in which case the current view is dropped.
+	 * @param resource the resource.
+	 * @param view the view the collection was patched from.
+	 * @param items the patched collection.
+	 * @param <T> the entity type.
+	 * @return true if the patched collection is now the view.
+	 */
+	public <T> boolean update(String resource, View<T> view, List<T> items) {
+		if (views.replace(resource, view, new View<>(items, versions.incrementAndGet()))) {
+			return true;
+		}
+		views.remove(resource);
+		return false;
+	}
+
+	/**
+	 * Replaces an entity of a resource's collection with a patched copy, identified by an {@link Equivalency}.
+	 * The view is dropped if it has no equivalent entity.
+	 * @param resource the resource.
+	 * @param entity the patched entity.
+	 * @param equivalency the equivalency identifying the entity.
+	 */
+	public void replace(String resource, Object entity, Equivalency equivalency) {
+		views.computeIfPresent(resource, (key, view) -> {
+			List<Object> items = new ArrayList<>(view.getItems());
+			for (int i = 0; i < items.size(); i++) {
+				if (equivalency.isEquivalent(items.get(i), entity)) {
+					items.set(i, entity);
+					return new View<>(items, versions.incrementAndGet());
+				}
+			}
+			return null;
+		});
+	}
+
+	/**
+	 * Drops the view of a resource's collection, so that it's loaded again when next needed.
+	 * @param resource the resource.
+	 */
+	public void invalidate(String resource) {
+		views.remove(resource);
+	}
+
+	/**
+	 * Drops the views of all resources.
+	 */
+	public void invalidateAll() {
+		views.clear();
+	}
+
+	/**
+	 * An immutable view of a resource's collection.
+	 * @param <T> the entity type.
+	 */
+	public static final class View<T> {
+
+		private final List<T> items;
+
+		private final long version;
+
+		private View(List<T> items, long version) {
+			this.items = Collections.unmodifiableList(new ArrayList<>(items));
+			this.version = version;
+		}
+
+		/**
+		 * @return the entities of the collection, which mustn't be modified.
+		 */
+		public List<T> getItems() {
+			return items;
+		}
+
+		/**
+		 * @return the view's version, which is different for every view of the cache.
+		 */
+		public long getVersion() {
+			return version;
+		}
+
+	}
+
+}
@@ -16,13 +16,26 @@
 package org.springframework.sync.diffsync;
 
 import org.springframework.sync.Diff;
+import org.springframework.sync.DiffCostModel;
+import org.springframework.sync.FuzzyTextPatcher;
+import org.springframework.sync.LazyOperationList;
 import org.springframework.sync.Patch;
+import org.springframework.sync.PatchEngine;
+import org.springframework.sync.PatchOperation;
 import org.springframework.sync.diffsync.shadowstore.ShadowStore;
 import org.springframework.sync.exception.PatchException;
+import org.springframework.sync.util.Cloner;
 import org.springframework.sync.util.DeepCloneUtils;
+import org.springframework.sync.util.ImmutableTypes;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.locks.Lock;
 
 /**
  * <p>
@@ -52,6 +65,8 @@ import java.util.Objects;
  * <p>
  * This class implements the handling of an incoming patch separately from the producing of the outgoing difference patch.
  * It performs no persistence of the patched resources, which is the responsibility of the caller.
+ * Each step holds the {@link ShadowStore}'s lock for the shadow, if the store provides one, while it reads, modifies and stores
+ * the shadow and its backup.
  * </p>
  *
  * @param <T> The entity type to perform differential synchronization against.
@@ -59,12 +74,31 @@ import java.util.Objects;
  */
 public class DiffSync<T> {
 
-    private static final String BACKUP_SUFFIX = "_backup";
+    /**
+     * The suffix of the key a shadow's backup is stored under, appended to the shadow's key.
+     */
+    public static final String BACKUP_SUFFIX = "_backup";
+
+    private static final Patch NO_CHANGES = new Patch(Collections.emptyList());
 
     private final ShadowStore shadowStore;
 
     private final Class<T> entityType;
 
+    private final boolean comparedByEquals;
+
+    private final boolean immutable;
+
+    private DiffCostModel diffCostModel;
+
+    private PatchEngine<T> patchEngine;
+
+    private Cloner cloner = DeepCloneUtils.getDefaultCloner();
+
+    private IdExtractor idExtractor;
+
+    private FuzzyTextPatcher fuzzyTextPatcher;
+
     /**
      * Constructs the Differential Synchronization routine instance.
      *
@@ -74,6 +108,61 @@ public class DiffSync<T> {
     public DiffSync(ShadowStore shadowStore, Class<T> entityType) {
         this.shadowStore = shadowStore;
         this.entityType = entityType;
+        this.comparedByEquals = declaresEquals(entityType);
+        this.immutable = ImmutableTypes.isImmutable(entityType);
+    }
+
+    /**
+     * Sets the {@link DiffCostModel} used when producing difference patches.
+     * When set, the operations for a changed nested object are collapsed into a single replace whenever the model deems it cheaper.
+     *
+     * @param diffCostModel the cost model, or null to always produce fine-grained operations.
+     */
+    public void setDiffCostModel(DiffCostModel diffCostModel) {
+        this.diffCostModel = diffCostModel;
+    }
+
+    /**
+     * Sets the {@link PatchEngine} used to diff, patch and copy resources.
+     * By default, resources are treated as Java objects and handled by {@link Diff} and {@link Patch}.
+     * An engine lets document-typed resources (such as JSON trees) be synchronized in their own representation.
+     *
+     * @param patchEngine the engine, or null to use the default Java object handling.
+     */
+    public void setPatchEngine(PatchEngine<T> patchEngine) {
+        this.patchEngine = patchEngine;
+    }
+
+    /**
+     * Sets the {@link Cloner} used to copy resources into shadows and to make defensive copies while applying patches.
+     * Defaults to {@link DeepCloneUtils#getDefaultCloner()}. Not used when a {@link PatchEngine} is set.
+     *
+     * @param cloner the cloner.
+     */
+    public void setCloner(Cloner cloner) {
+        this.cloner = cloner;
+    }
+
+    /**
+     * Sets the {@link IdExtractor} used to tell entities apart.
+     * When set, each entity with an identifier gets its own shadow, so that synchronizing several entities of the same type
+     * doesn't make them overwrite each other's shadow. Otherwise, all entities of the same type share a single shadow.
+     *
+     * @param idExtractor the id extractor, or null to share one shadow among all entities of the same type.
+     */
+    public void setIdExtractor(IdExtractor idExtractor) {
+        this.idExtractor = idExtractor;
+    }
+
+    /**
+     * Sets the {@link FuzzyTextPatcher} used when an incoming patch tests a string value that has since changed.
+     * When set, the patch's replace of that string is merged into the changed value if it can be located well enough,
+     * instead of the whole patch being rejected. Not used when a {@link PatchEngine} is set.
+     *
+     * @param fuzzyTextPatcher the patcher, or null to reject patches whose tests fail.
+     */
+    public void setFuzzyTextPatcher(FuzzyTextPatcher fuzzyTextPatcher) {
+        this.fuzzyTextPatcher = fuzzyTextPatcher;
     }
 
     /**
@@ -101,25 +190,44 @@ public class DiffSync<T> {
      * @return a patched copy of the target.
      */
     public T apply(Patch patch, T target) throws PatchException {
-        if (patch.size() == 0) {
-            return target;
-        }
-        Shadow<T> shadow = getShadow(target);
-        if (patch instanceof VersionedPatch versionedPatch) {
-            if (versionedPatch.getServerVersion() < shadow.getServerVersion()) {
-                shadow = getShadowBackup(target);
-                putShadow(shadow);
+        return locked(getShadowStoreKey(target), () -> {
+            if (patch.size() == 0) {
+                if (patch instanceof VersionedPatch) {
+                    // an empty versioned patch still acknowledges the edits the other node has received
+                    Shadow<T> shadow = getShadow(target);
+                    Shadow<T> acknowledged = acknowledgeEdits(shadow, patch);
+                    if (acknowledged != shadow) {
+                        putShadow(acknowledged);
+                    }
+                }
+                return target;
+            }
+            Shadow<T> stored = getShadow(target);
+            Shadow<T> shadow = acknowledgeEdits(stored, patch);
+            if (patch instanceof VersionedPatch versionedPatch) {
+                if (versionedPatch.getServerVersion() < shadow.getServerVersion()) {
+                    shadow = restoredFromBackup(getShadowBackup(target), shadow);
+                    // the restored shadow is its own backup, and the old reverse patch no longer applies to it
+                    putShadow(shadow, new Shadow<>(NO_CHANGES, shadow.getServerVersion(), shadow.getClientVersion()));
+                    stored = shadow;
+                }
             }
-        }
 
-        if (shouldApplyPatch(patch, shadow)) {
-            shadow = new Shadow<>(patch.apply(shadow.getResource(), entityType), shadow.getServerVersion(), shadow.getClientVersion() + 1);
-            Shadow<T> backupShadow = new Shadow<>(shadow.getResource(), shadow.getServerVersion(), shadow.getClientVersion());
-            putShadow(shadow);
-            putShadowBackup(backupShadow);
-            return patch.apply(DeepCloneUtils.deepClone(target), entityType);
-        }
-        return target;
+            if (shouldApplyPatch(patch, shadow)) {
+                T patched = applyPatch(patch, target);
+                // the shadow is patched on its own, keeping the copy the patch makes of it, as the caller changes and persists the result
+                T patchedShadow = sharesResult(shadow.getResource(), target) ? patched : applyPatch(patch, shadow.getResource());
+                shadow = new Shadow<>(patchedShadow, shadow.getServerVersion(), shadow.getClientVersion() + 1, shadow.getEdits());
+                // the backup starts out identical to the shadow
+                putShadow(shadow, new Shadow<>(NO_CHANGES, shadow.getServerVersion(), shadow.getClientVersion()));
+                return patched;
+            }
+            if (shadow != stored) {
+                // the patch was a duplicate, but the edits it acknowledges can still be pruned
+                putShadow(shadow);
+            }
+            return target;
+        });
     }
 
     /**
@@ -147,25 +255,44 @@ public class DiffSync<T> {
      * @return a patched copy of the target.
      */
     public List<T> apply(Patch patch, List<T> target) throws PatchException {
-        if (patch.size() == 0) {
-            return target;
-        }
-        Shadow<List<T>> shadow = getShadow(target);
-        if (patch instanceof VersionedPatch versionedPatch) {
-            if (versionedPatch.getServerVersion() < shadow.getServerVersion()) {
-                shadow = getShadowBackup(target);
-                putListShadow(shadow);
+        return locked(getShadowStoreKey(target), () -> {
+            if (patch.size() == 0) {
+                if (patch instanceof VersionedPatch) {
+                    // an empty versioned patch still acknowledges the edits the other node has received
+                    Shadow<List<T>> shadow = getShadow(target);
+                    Shadow<List<T>> acknowledged = acknowledgeEdits(shadow, patch);
+                    if (acknowledged != shadow) {
+                        putListShadow(acknowledged);
+                    }
+                }
+                return target;
+            }
+            Shadow<List<T>> stored = getShadow(target);
+            Shadow<List<T>> shadow = acknowledgeEdits(stored, patch);
+            if (patch instanceof VersionedPatch versionedPatch) {
+                if (versionedPatch.getServerVersion() < shadow.getServerVersion()) {
+                    shadow = restoredFromBackup(getShadowBackup(target), shadow);
+                    // the restored shadow is its own backup, and the old reverse patch no longer applies to it
+                    putListShadow(shadow, new Shadow<>(NO_CHANGES, shadow.getServerVersion(), shadow.getClientVersion()));
+                    stored = shadow;
+                }
             }
-        }
 
-        if (shouldApplyPatch(patch, shadow)) {
-            shadow = new Shadow<>(patch.apply(shadow.getResource(), entityType), shadow.getServerVersion(), shadow.getClientVersion() + 1);
-            Shadow<List<T>> backupShadow = new Shadow<>(shadow.getResource(), shadow.getServerVersion(), shadow.getClientVersion());
-            putListShadow(shadow);
-            putListShadowBackup(backupShadow);
-            return patch.apply(DeepCloneUtils.deepClone(target), entityType);
-        }
-        return target;
+            if (shouldApplyPatch(patch, shadow)) {
+                List<T> patched = applyPatch(patch, target);
+                // the shadow is patched on its own, keeping the copy the patch makes of it, as the caller changes and persists the result
+                List<T> patchedShadow = sharesResult(shadow.getResource(), target) ? new ArrayList<>(patched) : applyPatch(patch, shadow.getResource());
+                shadow = new Shadow<>(patchedShadow, shadow.getServerVersion(), shadow.getClientVersion() + 1, shadow.getEdits());
+                // the backup starts out identical to the shadow
+                putListShadow(shadow, new Shadow<>(NO_CHANGES, shadow.getServerVersion(), shadow.getClientVersion()));
+                return patched;
+            }
+            if (shadow != stored) {
+                // the patch was a duplicate, but the edits it acknowledges can still be pruned
+                putListShadow(shadow);
+            }
+            return target;
+        });
     }
 
     /**
@@ -176,13 +303,48 @@ public class DiffSync<T> {
      * @return a {@link VersionedPatch} describing the differences between the target and its shadow.
      */
     public VersionedPatch diff(T target) throws PatchException {
-        Shadow<T> shadow = getShadow(target);
-        Patch diff = Diff.diff(shadow.getResource(), target);
-        VersionedPatch vDiff = new VersionedPatch(diff.getOperations(), shadow.getServerVersion(), shadow.getClientVersion());
-        T patched = diff.apply(shadow.getResource(), entityType);
-        shadow = new Shadow<>(patched, shadow.getServerVersion() + 1, shadow.getClientVersion());
-        putShadow(shadow);
-        return vDiff;
+        return locked(getShadowStoreKey(target), () -> {
+            String shadowStoreKey = getShadowStoreKey(target);
+            Map<String, Shadow<?>> shadows = getShadowAndBackup(shadowStoreKey);
+            Shadow<T> shadow = shadowOrInitial(shadowIn(shadows, shadowStoreKey), target);
+            Patch diff = diffResource(shadow.getResource(), target);
+            VersionedPatch vDiff = new VersionedPatch(diff.getOperations(), shadow.getServerVersion(), shadow.getClientVersion());
+            T patched = applyPatch(diff, shadow.getResource());
+            Shadow<Patch> backup = diff.size() > 0 ? updatedShadowBackup(shadows.get(shadowStoreKey + BACKUP_SUFFIX), diff, shadow.getResource(), patched) : null;
+            shadow = new Shadow<>(patched, shadow.getServerVersion() + 1, shadow.getClientVersion(), shadow.getEdits());
+            putShadow(shadow, backup);
+            return vDiff;
+        });
+    }
+
+    /**
+     * Compares a target object with its shadow like {@link #diff(Object)}, but keeps the difference patch on the shadow's edit stack
+     * until the other node acknowledges it, per the guaranteed delivery variant of the Differential Synchronization algorithm.
+     * All unacknowledged edits are returned so they can be sent together, and an edit that was lost on its way is simply sent again.
+     * The other node acknowledges edits with any {@link VersionedPatch} whose server version is past theirs, upon which they're
+     * pruned from the stack in one go. An empty difference is not pushed and leaves the versions unchanged.
+     * The web layer doesn't use it, as its responses carry a single patch; it is meant for transports that can send the edits as they are.
+     *
+     * @param target The target object to produce a difference patch for.
+     * @return the unacknowledged {@link VersionedPatch}es, oldest first.
+     */
+    public List<VersionedPatch> diffEdits(T target) throws PatchException {
+        return locked(getShadowStoreKey(target), () -> {
+            String shadowStoreKey = getShadowStoreKey(target);
+            Map<String, Shadow<?>> shadows = getShadowAndBackup(shadowStoreKey);
+            Shadow<T> shadow = shadowOrInitial(shadowIn(shadows, shadowStoreKey), target);
+            // queued edits outlive this call, so they're computed against a snapshot that later changes to the target can't leak into
+            T snapshot = copyResource(target);
+            Patch diff = diffResource(shadow.getResource(), snapshot);
+            if (diff.size() == 0) {
+                return editsOf(shadow);
+            }
+            Shadow<Patch> backup = updatedShadowBackup(shadows.get(shadowStoreKey + BACKUP_SUFFIX), diff, shadow.getResource(), snapshot);
+            List<VersionedPatch> edits = new ArrayList<>(editsOf(shadow));
+            edits.add(new VersionedPatch(diff.getOperations(), shadow.getServerVersion(), shadow.getClientVersion()));
+            putShadow(new Shadow<>(snapshot, shadow.getServerVersion() + 1, shadow.getClientVersion(), edits), backup);
+            return edits;
+        });
     }
 
     /**
@@ -193,17 +355,113 @@ public class DiffSync<T> {
      * @return a {@link VersionedPatch} describing the differences between the target and its shadow.
      */
     public VersionedPatch diff(List<T> target) throws PatchException {
-        Shadow<List<T>> shadow = getShadow(target);
-        Patch diff = Diff.diff(shadow.getResource(), target);
-        VersionedPatch vDiff = new VersionedPatch(diff.getOperations(), shadow.getServerVersion(), shadow.getClientVersion());
-        List<T> patched = diff.apply(shadow.getResource(), entityType);
-        shadow = new Shadow<>(patched, shadow.getServerVersion() + 1, shadow.getClientVersion());
-        putListShadow(shadow);
-        return vDiff;
+        return locked(getShadowStoreKey(target), () -> {
+            String shadowStoreKey = getShadowStoreKey(target);
+            Map<String, Shadow<?>> shadows = getShadowAndBackup(shadowStoreKey);
+            Shadow<List<T>> shadow = shadowOrInitial(shadowIn(shadows, shadowStoreKey), target);
+            Patch diff = diffResource(shadow.getResource(), target);
+            VersionedPatch vDiff = new VersionedPatch(diff.getOperations(), shadow.getServerVersion(), shadow.getClientVersion());
+            List<T> patched = applyPatch(diff, shadow.getResource());
+            Shadow<Patch> backup = diff.size() > 0 ? updatedListShadowBackup(shadows.get(shadowStoreKey + BACKUP_SUFFIX), diff, shadow.getResource(), patched) : null;
+            shadow = new Shadow<>(patched, shadow.getServerVersion() + 1, shadow.getClientVersion(), shadow.getEdits());
+            putListShadow(shadow, backup);
+            return vDiff;
+        });
+    }
+
+    /**
+     * Compares a target list with its shadow like {@link #diff(List)}, but keeps the difference patch on the shadow's edit stack
+     * until the other node acknowledges it, per the guaranteed delivery variant of the Differential Synchronization algorithm.
+     * All unacknowledged edits are returned so they can be sent together, and an edit that was lost on its way is simply sent again.
+     * The other node acknowledges edits with any {@link VersionedPatch} whose server version is past theirs, upon which they're
+     * pruned from the stack in one go. An empty difference is not pushed and leaves the versions unchanged.
+     * The web layer doesn't use it, as its responses carry a single patch; it is meant for transports that can send the edits as they are.
+     *
+     * @param target The target list to produce a difference patch for.
+     * @return the unacknowledged {@link VersionedPatch}es, oldest first.
+     */
+    public List<VersionedPatch> diffEdits(List<T> target) throws PatchException {
+        return locked(getShadowStoreKey(target), () -> {
+            String shadowStoreKey = getShadowStoreKey(target);
+            Map<String, Shadow<?>> shadows = getShadowAndBackup(shadowStoreKey);
+            Shadow<List<T>> shadow = shadowOrInitial(shadowIn(shadows, shadowStoreKey), target);
+            // queued edits outlive this call, so they're computed against a snapshot that later changes to the target can't leak into
+            List<T> snapshot = copyResource(target);
+            Patch diff = diffResource(shadow.getResource(), snapshot);
+            if (diff.size() == 0) {
+                return editsOf(shadow);
+            }
+            Shadow<Patch> backup = updatedListShadowBackup(shadows.get(shadowStoreKey + BACKUP_SUFFIX), diff, shadow.getResource(), snapshot);
+            List<VersionedPatch> edits = new ArrayList<>(editsOf(shadow));
+            edits.add(new VersionedPatch(diff.getOperations(), shadow.getServerVersion(), shadow.getClientVersion()));
+            putListShadow(new Shadow<>(snapshot, shadow.getServerVersion() + 1, shadow.getClientVersion(), edits), backup);
+            return edits;
+        });
+    }
+
+    /**
+     * Compares a target list with its shadow, producing a patch whose operations are computed as the patch is consumed.
+     * Suited to very large lists: the patch can be written out while the rest of the difference is still being computed.
+     * Nothing here waits for the difference, so a backup of the shadow, kept since a patch was last applied, is stored as a full copy
+     * rather than as a patch against the new shadow, until the next patch is applied.
+     * Upon completion, the shadow will be replaced with a copy of the target, per the Differential Synchronization algorithm.
+     *
+     * @param target The target list to produce a difference patch for.
+     * @return a {@link VersionedPatch} describing the differences between the target and its shadow.
+     */
+    public VersionedPatch streamDiff(List<T> target) throws PatchException {
+        return locked(getShadowStoreKey(target), () -> {
+            String shadowStoreKey = getShadowStoreKey(target);
+            Map<String, Shadow<?>> shadows = getShadowAndBackup(shadowStoreKey);
+            Shadow<List<T>> shadow = shadowOrInitial(shadowIn(shadows, shadowStoreKey), target);
+            // the patch is computed against a snapshot, so later changes to the target can't leak into it
+            List<T> snapshot = copyResource(target);
+            Iterator<PatchOperation> operations = Objects.nonNull(patchEngine)
+                    ? patchEngine.diff(shadow.getResource(), snapshot).getOperations().iterator()
+                    : Diff.diffIterator(shadow.getResource(), snapshot, diffCostModel);
+            VersionedPatch vDiff = new VersionedPatch(new LazyOperationList(operations), shadow.getServerVersion(), shadow.getClientVersion());
+            Shadow<List<T>> backup = copiedListShadowBackup(shadows.get(shadowStoreKey + BACKUP_SUFFIX), shadow.getResource());
+            putListShadow(new Shadow<>(snapshot, shadow.getServerVersion() + 1, shadow.getClientVersion(), shadow.getEdits()), backup);
+            return vDiff;
+        });
     }
 
     // private helper methods
 
+    // A step that reads, modifies and stores a shadow and its backup.
+    private interface ShadowUpdate<R> {
+        R run() throws PatchException;
+    }
+
+    // Holds the shadow store's lock for the shadow while the update runs, if the store hands out locks.
+    private <R> R locked(String shadowStoreKey, ShadowUpdate<R> update) throws PatchException {
+        Lock lock = shadowStore.getLock(shadowStoreKey);
+        if (Objects.isNull(lock)) {
+            return update.run();
+        }
+        lock.lock();
+        try {
+            return update.run();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // The caller can't change an immutable result, so when nothing has changed the target since the last sync, the shadow shares the
+    // result rather than being patched on its own. Whether anything has changed is only asked of types that declare equals; comparing
+    // other types field by field would cost about as much as patching the shadow.
+    private boolean sharesResult(Object shadowResource, Object target) {
+        return immutable && comparedByEquals && Objects.equals(shadowResource, target);
+    }
+
+    private static boolean declaresEquals(Class<?> type) {
+        try {
+            return type.getMethod("equals", Object.class).getDeclaringClass() != Object.class;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
     private boolean shouldApplyPatch(Patch patch, Shadow<?> shadow) {
         if (!(patch instanceof VersionedPatch versionedPatch)) {
             return true;
@@ -211,24 +469,62 @@ public class DiffSync<T> {
         return versionedPatch.getServerVersion() == shadow.getServerVersion() && versionedPatch.getClientVersion() == shadow.getClientVersion();
     }
 
+    // Edits below the server version the other node has reached have been applied there, and are all pruned at once.
+    private <R> Shadow<R> acknowledgeEdits(Shadow<R> shadow, Patch patch) {
+        List<VersionedPatch> edits = editsOf(shadow);
+        if (!(patch instanceof VersionedPatch versionedPatch) || edits.isEmpty() || edits.get(0).getServerVersion() >= versionedPatch.getServerVersion()) {
+            return shadow;
+        }
+        List<VersionedPatch> pending = new ArrayList<>();
+        for (VersionedPatch edit : edits) {
+            if (edit.getServerVersion() >= versionedPatch.getServerVersion()) {
+                pending.add(edit);
+            }
+        }
+        return new Shadow<>(shadow.getResource(), shadow.getServerVersion(), shadow.getClientVersion(), pending);
+    }
+
+    // Edits made since the backup was taken were diffed against shadows the other node never received; the next diff supersedes them.
+    private <R> Shadow<R> restoredFromBackup(Shadow<R> backup, Shadow<R> shadow) {
+        List<VersionedPatch> kept = new ArrayList<>();
+        for (VersionedPatch edit : editsOf(shadow)) {
+            if (edit.getServerVersion() < backup.getServerVersion()) {
+                kept.add(edit);
+            }
+        }
+        return new Shadow<>(backup.getResource(), backup.getServerVersion(), backup.getClientVersion(), kept);
+    }
+
+    private static List<VersionedPatch> editsOf(Shadow<?> shadow) {
+        return Objects.isNull(shadow.getEdits()) ? Collections.emptyList() : shadow.getEdits();
+    }
+
 
     private Shadow<T> getShadow(T target) {
         String shadowStoreKey = getShadowStoreKey(target);
         return getShadow(target, shadowStoreKey);
     }
 
-    private Shadow<T> getShadowBackup(T target) {
-        String shadowStoreKey = getShadowStoreKey(target) + BACKUP_SUFFIX;
-        return getShadow(target, shadowStoreKey);
+    // The backup is usually a patch against the shadow, so both are read together.
+    @SuppressWarnings("unchecked")
+    private Shadow<T> getShadowBackup(T target) throws PatchException {
+        String shadowStoreKey = getShadowStoreKey(target);
+        Map<String, Shadow<?>> shadows = getShadowAndBackup(shadowStoreKey);
+        Shadow<?> backup = shadows.get(shadowStoreKey + BACKUP_SUFFIX);
+        if (Objects.isNull(backup) || !(backup.getResource() instanceof Patch reverse)) {
+            return shadowOrInitial((Shadow<T>) backup, target);
+        }
+        T resource = shadowOrInitial((Shadow<T>) shadows.get(shadowStoreKey), target).getResource();
+        return new Shadow<>(reverse.size() == 0 ? resource : applyPatch(reverse, resource), backup.getServerVersion(), backup.getClientVersion());
     }
 
     @SuppressWarnings("unchecked")
     private Shadow<T> getShadow(T target, String shadowStoreKey) {
-        Shadow<T> shadow = (Shadow<T>) shadowStore.getShadow(shadowStoreKey);
-        if (Objects.isNull(shadow)) {
-            shadow = new Shadow<>(DeepCloneUtils.deepClone(target), 0, 0); // OKAY
-        }
-        return shadow;
+        return shadowOrInitial((Shadow<T>) shadowStore.getShadow(shadowStoreKey), target);
+    }
+
+    private Shadow<T> shadowOrInitial(Shadow<T> shadow, T target) {
+        return Objects.isNull(shadow) ? new Shadow<>(copyResource(target), 0, 0) : shadow;
     }
 
     private void putShadow(Shadow<T> shadow) {
@@ -236,9 +532,37 @@ public class DiffSync<T> {
         shadowStore.putShadow(shadowStoreKey, shadow);
     }
 
-    private void putShadowBackup(Shadow<T> shadow) {
-        String shadowStoreKey = getShadowStoreKey(shadow.getResource()) + BACKUP_SUFFIX;
-        shadowStore.putShadow(shadowStoreKey, shadow);
+    private void putShadow(Shadow<T> shadow, Shadow<Patch> backup) {
+        putShadows(getShadowStoreKey(shadow.getResource()), shadow, backup);
+    }
+
+    // The backup is stored as the patch that turns the shadow back into the backup, rather than as a second full copy.
+    // It's written together with its shadow, so that stores can write both in one round trip, and atomically.
+    private void putShadows(String shadowStoreKey, Shadow<?> shadow, Shadow<?> backup) {
+        if (Objects.isNull(backup)) {
+            shadowStore.putShadow(shadowStoreKey, shadow);
+            return;
+        }
+        Map<String, Shadow<?>> shadows = new LinkedHashMap<>();
+        shadows.put(shadowStoreKey, shadow);
+        shadows.put(shadowStoreKey + BACKUP_SUFFIX, backup);
+        shadowStore.putShadows(shadows);
+    }
+
+    // Called before the shadow changes from previous to current: re-expresses the backup as a patch against the new shadow.
+    // Undoing the difference that was just produced turns the new shadow back into the previous one, which the backup applies to;
+    // the backup is only compared with the new shadow again when the difference can't be undone that way.
+    private Shadow<Patch> updatedShadowBackup(Shadow<?> backup, Patch diff, T previous, T current) throws PatchException {
+        if (Objects.isNull(backup) || !(backup.getResource() instanceof Patch reverse)) {
+            // a backup kept as a full copy doesn't depend on the shadow
+            return null;
+        }
+        Patch undo = Objects.isNull(patchEngine) ? Diff.reverse(diff, previous) : null;
+        if (Objects.nonNull(undo)) {
+            return new Shadow<>(followedBy(undo, reverse), backup.getServerVersion(), backup.getClientVersion());
+        }
+        T backupResource = reverse.size() == 0 ? previous : applyPatch(reverse, previous);
+        return new Shadow<>(diffResource(current, backupResource), backup.getServerVersion(), backup.getClientVersion());
     }
 
     private void putListShadow(Shadow<List<T>> shadow) {
@@ -246,9 +570,8 @@ public class DiffSync<T> {
         shadowStore.putShadow(shadowStoreKey, shadow);
     }
 
-    private void putListShadowBackup(Shadow<List<T>> shadow) {
-        String shadowStoreKey = getShadowStoreKey(shadow.getResource()) + BACKUP_SUFFIX;
-        shadowStore.putShadow(shadowStoreKey, shadow);
+    private void putListShadow(Shadow<List<T>> shadow, Shadow<?> backup) {
+        putShadows(getShadowStoreKey(shadow.getResource()), shadow, backup);
     }
 
     private Shadow<List<T>> getShadow(List<T> target) {
@@ -256,25 +579,102 @@ public class DiffSync<T> {
         return getShadow(target, shadowStoreKey);
     }
 
-    private Shadow<List<T>> getShadowBackup(List<T> target) {
-        String shadowStoreKey = getShadowStoreKey(target) + BACKUP_SUFFIX;
-        return getShadow(target, shadowStoreKey);
+    // The backup is usually a patch against the shadow, so both are read together.
+    @SuppressWarnings("unchecked")
+    private Shadow<List<T>> getShadowBackup(List<T> target) throws PatchException {
+        String shadowStoreKey = getShadowStoreKey(target);
+        Map<String, Shadow<?>> shadows = getShadowAndBackup(shadowStoreKey);
+        Shadow<?> backup = shadows.get(shadowStoreKey + BACKUP_SUFFIX);
+        if (Objects.isNull(backup) || !(backup.getResource() instanceof Patch reverse)) {
+            return shadowOrInitial((Shadow<List<T>>) backup, target);
+        }
+        List<T> resource = shadowOrInitial((Shadow<List<T>>) shadows.get(shadowStoreKey), target).getResource();
+        return new Shadow<>(reverse.size() == 0 ? resource : applyPatch(reverse, resource), backup.getServerVersion(), backup.getClientVersion());
+    }
+
+    // Called before the shadow changes from previous to current: re-expresses the backup as a patch against the new shadow.
+    private Shadow<Patch> updatedListShadowBackup(Shadow<?> backup, Patch diff, List<T> previous, List<T> current) throws PatchException {
+        if (Objects.isNull(backup) || !(backup.getResource() instanceof Patch reverse)) {
+            // a backup kept as a full copy doesn't depend on the shadow
+            return null;
+        }
+        Patch undo = Objects.isNull(patchEngine) ? Diff.reverse(diff, previous) : null;
+        if (Objects.nonNull(undo)) {
+            return new Shadow<>(followedBy(undo, reverse), backup.getServerVersion(), backup.getClientVersion());
+        }
+        List<T> backupResource = reverse.size() == 0 ? previous : applyPatch(reverse, previous);
+        return new Shadow<>(diffResource(current, backupResource), backup.getServerVersion(), backup.getClientVersion());
+    }
+
+    // Called before the shadow changes from previous to a state the difference isn't known for yet: turns the backup into a full
+    // copy, which doesn't depend on the shadow. Shadows are never changed in place, so an unchanged backup shares the previous shadow.
+    private Shadow<List<T>> copiedListShadowBackup(Shadow<?> backup, List<T> previous) throws PatchException {
+        if (Objects.isNull(backup) || !(backup.getResource() instanceof Patch reverse)) {
+            return null;
+        }
+        List<T> backupResource = reverse.size() == 0 ? previous : applyPatch(reverse, previous);
+        return new Shadow<>(backupResource, backup.getServerVersion(), backup.getClientVersion());
+    }
+
+    private static Patch followedBy(Patch first, Patch second) {
+        if (second.size() == 0) {
+            return first;
+        }
+        List<PatchOperation> operations = new ArrayList<>(first.size() + second.size());
+        operations.addAll(first.getOperations());
+        operations.addAll(second.getOperations());
+        return new Patch(operations);
+    }
+
+    // The shadow and its backup are read together, so that stores can read both in one round trip.
+    private Map<String, Shadow<?>> getShadowAndBackup(String shadowStoreKey) {
+        return shadowStore.getShadows(List.of(shadowStoreKey, shadowStoreKey + BACKUP_SUFFIX));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <R> Shadow<R> shadowIn(Map<String, Shadow<?>> shadows, String shadowStoreKey) {
+        return (Shadow<R>) shadows.get(shadowStoreKey);
     }
 
     @SuppressWarnings("unchecked")
     private Shadow<List<T>> getShadow(List<T> target, String shadowStoreKey) {
-        Shadow<List<T>> shadow = (Shadow<List<T>>) shadowStore.getShadow(shadowStoreKey);
-        if (Objects.isNull(shadow)) {
-            shadow = new Shadow<>(DeepCloneUtils.deepClone(target), 0, 0);
-        }
-        return shadow;
+        return shadowOrInitial((Shadow<List<T>>) shadowStore.getShadow(shadowStoreKey), target);
+    }
+
+    private Shadow<List<T>> shadowOrInitial(Shadow<List<T>> shadow, List<T> target) {
+        return Objects.isNull(shadow) ? new Shadow<>(copyResource(target), 0, 0) : shadow;
+    }
+
+    private Patch diffResource(T original, T modified) throws PatchException {
+        return Objects.nonNull(patchEngine) ? patchEngine.diff(original, modified) : Diff.diff(original, modified, diffCostModel);
+    }
+
+    private Patch diffResource(List<T> original, List<T> modified) throws PatchException {
+        return Objects.nonNull(patchEngine) ? patchEngine.diff(original, modified) : Diff.diff(original, modified, diffCostModel);
+    }
+
+    private T applyPatch(Patch patch, T resource) throws PatchException {
+        return Objects.nonNull(patchEngine) ? patchEngine.apply(patch, resource) : patch.apply(resource, entityType, cloner, fuzzyTextPatcher);
+    }
+
+    private List<T> applyPatch(Patch patch, List<T> resource) throws PatchException {
+        return Objects.nonNull(patchEngine) ? patchEngine.apply(patch, resource) : patch.apply(resource, entityType, cloner, fuzzyTextPatcher);
+    }
+
+    private T copyResource(T resource) {
+        return Objects.nonNull(patchEngine) ? patchEngine.copy(resource) : cloner.deepClone(resource);
+    }
+
+    private List<T> copyResource(List<T> resource) {
+        return Objects.nonNull(patchEngine) ? patchEngine.copy(resource) : cloner.deepClone(resource);
     }
 
-    private String getShadowStoreKey(T t) {
-        return "shadow/" + entityType.getSimpleName();
+    String getShadowStoreKey(T t) {
+        Object id = Objects.nonNull(idExtractor) ? idExtractor.getId(t) : null;
+        return Objects.isNull(id) ? "shadow/" + entityType.getSimpleName() : "shadow/" + entityType.getSimpleName() + "/" + id;
     }
 
-    private String getShadowStoreKey(List<T> t) {
+    String getShadowStoreKey(List<T> t) {
         return "shadow/" + entityType.getSimpleName() + "List";
     }
 
@@ -0,0 +1,35 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.sync.diffsync;
+
+/**
+ * Strategy interface for obtaining the identifier of a resource entity.
+ * 
+ * <p>{@link DiffSync} uses the identifier to keep a separate shadow for each entity,
+ * so that synchronizing one entity doesn't disturb the shadow of another entity of the same type.</p>
+ * 
+ * @author Craig Walls
+ */
+public interface IdExtractor {
+
+	/**
+	 * Obtains the identifier of a resource entity.
+	 * @param resource the resource entity
+	 * @return the entity's identifier, or null if it has none (for example, because it hasn't been persisted yet).
+	 */
+	Object getId(Object resource);
+
+}
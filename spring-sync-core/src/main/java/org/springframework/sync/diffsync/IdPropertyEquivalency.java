@@ -15,31 +15,68 @@
  */
 package org.springframework.sync.diffsync;
 
+import com.fasterxml.jackson.databind.JsonNode;
+
 import java.lang.reflect.Field;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Determines if two objects are equivalent by comparing their "id" properties.
+ * JSON documents ({@link JsonNode}s) are compared by their "id" fields.
+ * Also serves as an {@link IdExtractor}, identifying resources by the same "id" properties.
  * 
  * @author Craig Walls
  */
-public class IdPropertyEquivalency implements Equivalency {
+public class IdPropertyEquivalency implements Equivalency, IdExtractor {
 
 	private static final String ID_FIELD = "id";
 
+	private final Map<Class<?>, Optional<Field>> idFields = new ConcurrentHashMap<>();
+
 	@Override
 	public boolean isEquivalent(Object o1, Object o2) {
+		if (o1 instanceof JsonNode node1 && o2 instanceof JsonNode node2) {
+			return Objects.equals(node1.get(ID_FIELD), node2.get(ID_FIELD));
+		}
+		Optional<Field> idField1 = idField(o1.getClass());
+		Optional<Field> idField2 = idField(o2.getClass());
+		if (idField1.isEmpty() || idField2.isEmpty()) {
+			return false;
+		}
 		try {
-			Field idField1 = o1.getClass().getDeclaredField(ID_FIELD);
-			idField1.setAccessible(true);
-			Object id1 = idField1.get(o1);
-			Field idField2 = o2.getClass().getDeclaredField(ID_FIELD);
-			idField2.setAccessible(true);
-			Object id2 = idField2.get(o2);
-			return Objects.equals(id1, id2);
-		} catch (NoSuchFieldException | IllegalAccessException e) {
+			return Objects.equals(idField1.get().get(o1), idField2.get().get(o2));
+		} catch (IllegalAccessException e) {
 			return false;
 		}
 	}
+
+	@Override
+	public Object getId(Object resource) {
+		if (resource instanceof JsonNode node) {
+			JsonNode id = node.get(ID_FIELD);
+			return Objects.isNull(id) || id.isNull() ? null : id.asText();
+		}
+		Optional<Field> idField = idField(resource.getClass());
+		try {
+			return idField.isPresent() ? idField.get().get(resource) : null;
+		} catch (IllegalAccessException e) {
+			return null;
+		}
+	}
+
+	private Optional<Field> idField(Class<?> type) {
+		return idFields.computeIfAbsent(type, t -> {
+			try {
+				Field idField = t.getDeclaredField(ID_FIELD);
+				idField.setAccessible(true);
+				return Optional.of(idField);
+			} catch (NoSuchFieldException | RuntimeException e) {
+				return Optional.empty();
+			}
+		});
+	}
 	
 }
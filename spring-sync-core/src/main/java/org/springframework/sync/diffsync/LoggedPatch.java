@@ -0,0 +1,28 @@
+package org.springframework.sync.diffsync;
+
+import lombok.Getter;
+import org.springframework.sync.PatchOperation;
+
+import java.util.List;
+
+/**
+ * A patch that brings a resource up to a version of its {@link OperationLog}. A patch returned in response to a patch keeps the
+ * server and client versions of the shadow it was diffed against; a patch catching up on the log isn't diffed against a shadow,
+ * and has both at 0.
+ */
+@Getter
+public class LoggedPatch extends VersionedPatch {
+
+	private static final long serialVersionUID = 1L;
+
+	private final long version;
+
+	public LoggedPatch(List<PatchOperation> operations, long version) {
+		this(operations, 0, 0, version);
+	}
+
+	public LoggedPatch(List<PatchOperation> operations, long serverVersion, long clientVersion, long version) {
+		super(operations, serverVersion, clientVersion);
+		this.version = version;
+	}
+}
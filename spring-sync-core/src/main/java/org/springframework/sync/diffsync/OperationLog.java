@@ -0,0 +1,151 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.sync.diffsync;
+
+import org.springframework.sync.Patch;
+import org.springframework.sync.PatchOperation;
+import org.springframework.sync.diffsync.exception.VersionEvictedException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * <p>Keeps the most recent patches applied to each resource, so that a node that has fallen behind can catch up on them.</p>
+ *
+ * <p>
+ * Every patch appended to a resource's log advances the resource's version by one. Each resource keeps up to a fixed number of patches
+ * in a ring buffer, the oldest being overwritten first. A node at version N catches up by applying the patches since N, in order;
+ * once they've been overwritten, the node has to fall back to a full synchronization.
+ * </p>
+ *
+ * @author Craig Walls
+ */
+public class OperationLog {
+
+	private final int capacity;
+
+	private final Map<String, Ring> rings = new HashMap<>();
+
+	/**
+	 * Constructs the operation log.
+	 * @param capacity the number of patches kept per resource.
+	 */
+	public OperationLog(int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("Capacity must be positive");
+		}
+		this.capacity = capacity;
+	}
+
+	/**
+	 * Appends a patch to a resource's log.
+	 * @param key the resource key.
+	 * @param patch the patch that was applied to the resource.
+	 * @return the resource's new version.
+	 */
+	public synchronized long append(String key, Patch patch) {
+		return rings.computeIfAbsent(key, k -> new Ring(capacity)).append(patch);
+	}
+
+	/**
+	 * Discards a resource's patches after a change that can't be expressed in its log.
+	 * The version still advances, so that nodes at earlier versions fall back to a full synchronization.
+	 * @param key the resource key.
+	 * @return the resource's new version.
+	 */
+	public synchronized long reset(String key) {
+		return rings.computeIfAbsent(key, k -> new Ring(capacity)).reset();
+	}
+
+	/**
+	 * Discards the patches of all resources whose key starts with the given prefix. See {@link #reset(String)}.
+	 * @param keyPrefix the prefix of the resource keys.
+	 */
+	public synchronized void resetAll(String keyPrefix) {
+		rings.forEach((key, ring) -> {
+			if (key.startsWith(keyPrefix)) {
+				ring.reset();
+			}
+		});
+	}
+
+	/**
+	 * @param key the resource key.
+	 * @return the resource's current version, which is 0 until a patch is appended.
+	 */
+	public synchronized long getVersion(String key) {
+		Ring ring = rings.get(key);
+		return Objects.isNull(ring) ? 0 : ring.version;
+	}
+
+	/**
+	 * Produces a patch bringing a resource from the given version to its current version.
+	 * @param key the resource key.
+	 * @param version the version the node is at.
+	 * @return the logged patches since the version, in order, as a single patch.
+	 * @throws VersionEvictedException if patches since the version are no longer kept, or the version is unknown.
+	 */
+	public synchronized LoggedPatch since(String key, long version) throws VersionEvictedException {
+		Ring ring = rings.get(key);
+		long current = Objects.isNull(ring) ? 0 : ring.version;
+		if (version > current || version < current - (Objects.isNull(ring) ? 0 : ring.size)) {
+			throw new VersionEvictedException(key, version);
+		}
+		List<PatchOperation> operations = new ArrayList<>();
+		for (long v = version + 1; v <= current; v++) {
+			operations.addAll(ring.get(v).getOperations());
+		}
+		return new LoggedPatch(operations, current);
+	}
+
+	private static final class Ring {
+
+		private final Patch[] patches;
+
+		// the version of the newest patch, and the number of patches kept up to it
+		private long version;
+
+		private int size;
+
+		private Ring(int capacity) {
+			this.patches = new Patch[capacity];
+		}
+
+		private long append(Patch patch) {
+			version++;
+			patches[(int) (version % patches.length)] = patch;
+			size = Math.min(size + 1, patches.length);
+			return version;
+		}
+
+		private long reset() {
+			version++;
+			size = 0;
+			Arrays.fill(patches, null);
+			return version;
+		}
+
+		private Patch get(long patchVersion) {
+			return patches[(int) (patchVersion % patches.length)];
+		}
+
+	}
+
+}
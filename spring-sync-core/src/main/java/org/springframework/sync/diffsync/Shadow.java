@@ -3,10 +3,18 @@ package org.springframework.sync.diffsync;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 
+import java.util.Collections;
+import java.util.List;
+
 @AllArgsConstructor
 @Data
 public class Shadow<T> {
 	private T resource;
 	private int serverVersion;  // aka serverVersion in the context of a server app
 	private int clientVersion; // aka clientVersion in the context of a server app
+	private List<VersionedPatch> edits; // outgoing edits not yet acknowledged by the other node, oldest first
+
+	public Shadow(T resource, int serverVersion, int clientVersion) {
+		this(resource, serverVersion, clientVersion, Collections.emptyList());
+	}
 }
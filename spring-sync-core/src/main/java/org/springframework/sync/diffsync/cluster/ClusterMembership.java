@@ -0,0 +1,38 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.sync.diffsync.cluster;
+
+import java.util.Collection;
+
+/**
+ * Strategy interface for finding the servers of a cluster, such as from a service registry, and learning when they change.
+ *
+ * @author Craig Walls
+ */
+public interface ClusterMembership {
+
+	/**
+	 * @return the nodes currently in the cluster, including this one.
+	 */
+	Collection<ClusterNode> getMembers();
+
+	/**
+	 * Registers a listener to be told whenever nodes join or leave the cluster.
+	 * @param listener the listener.
+	 */
+	void addMembershipListener(MembershipListener listener);
+
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.sync.diffsync.cluster;
+
+import java.net.URI;
+import java.util.Objects;
+
+/**
+ * A server of a cluster sharing the work of synchronizing clients.
+ *
+ * @author Craig Walls
+ */
+public final class ClusterNode {
+
+	private final String id;
+
+	private final URI address;
+
+	/**
+	 * @param id the node's id, unique within the cluster.
+	 * @param address the address that requests are forwarded to the node at, such as http://node-1:8080.
+	 */
+	public ClusterNode(String id, URI address) {
+		this.id = Objects.requireNonNull(id);
+		this.address = Objects.requireNonNull(address);
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public URI getAddress() {
+		return address;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		return o instanceof ClusterNode node && id.equals(node.id) && address.equals(node.address);
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(id, address);
+	}
+
+	@Override
+	public String toString() {
+		return id + "@" + address;
+	}
+
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.sync.diffsync.cluster;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * <p>Maps keys, such as client ids, to the cluster node that owns them by consistent hashing.</p>
+ *
+ * <p>
+ * Each node is placed at a number of points on a ring of 64-bit hashes, and a key is owned by the node at the first point at or after
+ * the key's hash. When a node joins or leaves, only the keys between its points and their predecessors change owner, about one
+ * in the number of nodes, rather than nearly all of them as with a hash modulo the number of nodes. Placing each node at many points
+ * spreads keys evenly. The hash is computed from the characters of keys and node ids alone, so every node of a cluster builds
+ * the same ring from the same members.
+ * </p>
+ *
+ * <p>A ring is immutable: a new one is built when the members change.</p>
+ *
+ * @author Craig Walls
+ */
+public class ConsistentHashRing {
+
+	/**
+	 * The number of points each node is placed at by default, which keeps the keys owned by each node within
+	 * about a tenth of the average.
+	 */
+	public static final int DEFAULT_VIRTUAL_NODES = 160;
+
+	private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	// the points of the ring in ascending order, and the node at each
+	private final long[] points;
+
+	private final ClusterNode[] owners;
+
+	private final List<ClusterNode> nodes;
+
+	/**
+	 * Builds a ring placing each node at {@link #DEFAULT_VIRTUAL_NODES} points.
+	 * @param nodes the nodes of the cluster.
+	 */
+	public ConsistentHashRing(Collection<ClusterNode> nodes) {
+		this(nodes, DEFAULT_VIRTUAL_NODES);
+	}
+
+	/**
+	 * @param nodes the nodes of the cluster.
+	 * @param virtualNodes the number of points each node is placed at.
+	 */
+	public ConsistentHashRing(Collection<ClusterNode> nodes, int virtualNodes) {
+		// nodes are placed in id order, so that the rare points two nodes hash to go to the same node wherever the ring is built
+		this.nodes = nodes.stream().sorted(Comparator.comparing(ClusterNode::getId)).toList();
+		TreeMap<Long, ClusterNode> ring = new TreeMap<>();
+		for (ClusterNode node : this.nodes) {
+			for (int i = 0; i < virtualNodes; i++) {
+				ring.putIfAbsent(hash(node.getId() + "#" + i), node);
+			}
+		}
+		this.points = new long[ring.size()];
+		this.owners = new ClusterNode[ring.size()];
+		int i = 0;
+		for (Map.Entry<Long, ClusterNode> point : ring.entrySet()) {
+			points[i] = point.getKey();
+			owners[i++] = point.getValue();
+		}
+	}
+
+	/**
+	 * @return the nodes of the ring, in id order.
+	 */
+	public List<ClusterNode> getNodes() {
+		return nodes;
+	}
+
+	/**
+	 * @param key the key.
+	 * @return the node owning the key, or null if the ring has no nodes.
+	 */
+	public ClusterNode getOwner(String key) {
+		if (points.length == 0) {
+			return null;
+		}
+		int i = Arrays.binarySearch(points, hash(key));
+		if (i < 0) {
+			i = -i - 1;
+		}
+		return owners[i == points.length ? 0 : i];
+	}
+
+	// FNV-1a over the characters, then the MurmurHash3 finalizer, as FNV alone leaves similar keys close together on the ring
+	static long hash(String key) {
+		long hash = FNV_OFFSET_BASIS;
+		for (int i = 0; i < key.length(); i++) {
+			hash ^= key.charAt(i);
+			hash *= FNV_PRIME;
+		}
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.sync.diffsync.cluster;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * {@link ClusterMembership} whose nodes are added and removed by hand, for tests and for clusters of a fixed set of servers.
+ * Listeners are called on the thread joining or removing a node.
+ *
+ * @author Craig Walls
+ */
+public class InMemoryClusterMembership implements ClusterMembership {
+
+	private final Map<String, ClusterNode> members = new ConcurrentHashMap<>();
+
+	private final List<MembershipListener> listeners = new CopyOnWriteArrayList<>();
+
+	/**
+	 * @param members the nodes initially in the cluster.
+	 */
+	public InMemoryClusterMembership(ClusterNode... members) {
+		for (ClusterNode member : members) {
+			this.members.put(member.getId(), member);
+		}
+	}
+
+	@Override
+	public Collection<ClusterNode> getMembers() {
+		return List.copyOf(members.values());
+	}
+
+	@Override
+	public void addMembershipListener(MembershipListener listener) {
+		listeners.add(listener);
+	}
+
+	/**
+	 * Adds a node to the cluster, replacing any node with the same id.
+	 * @param node the node.
+	 */
+	public void join(ClusterNode node) {
+		members.put(node.getId(), node);
+		notifyListeners();
+	}
+
+	/**
+	 * Removes a node from the cluster.
+	 * @param nodeId the node's id.
+	 */
+	public void leave(String nodeId) {
+		if (Objects.nonNull(members.remove(nodeId))) {
+			notifyListeners();
+		}
+	}
+
+	private void notifyListeners() {
+		Collection<ClusterNode> current = getMembers();
+		listeners.forEach(listener -> listener.membershipChanged(current));
+	}
+
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.sync.diffsync.cluster;
+
+import org.springframework.sync.diffsync.Shadow;
+
+import java.util.Map;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Strategy interface for sending a client's shadows to the node that has become the client's owner.
+ *
+ * @author Craig Walls
+ */
+@FunctionalInterface
+public interface ShadowHandoff {
+
+	/**
+	 * Hands a client's shadows over to its new owner, which should give them to {@link ShadowRouter#receive(String, Map)}.
+	 * The {@link ShadowRouter} tries a failed handoff again a few times; shadows that never arrive are seeded again by
+	 * the client's next synchronization.
+	 * @param clientId the client's id.
+	 * @param shadows the client's shadows, by key.
+	 * @param owner the client's new owner.
+	 * @return a stage completing once the owner has accepted the shadows, or failing if it hasn't.
+	 */
+	CompletionStage<Void> handOff(String clientId, Map<String, Shadow<?>> shadows, ClusterNode owner);
+
+}
@@ -0,0 +1,272 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.sync.diffsync.cluster;
+
+import org.springframework.sync.diffsync.Shadow;
+import org.springframework.sync.diffsync.shadowstore.ShadowStore;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * <p>Routes each client to the cluster node owning its shadows, and moves the shadows when the owner changes.</p>
+ *
+ * <p>
+ * Clients are mapped to their owner with a {@link ConsistentHashRing} of the members of a {@link ClusterMembership}, so that every
+ * node agrees on the owner without coordinating, and requests reaching any node can be forwarded to the owner. The owner then
+ * finds the shadows in its own store, in memory or nearby, rather than each node seeding them again or reading them from a remote store.
+ * </p>
+ *
+ * <p>
+ * Nodes register the shadow stores of the clients they serve. When the members change, the shadows of registered clients now owned
+ * by another node are read from their store and given to the {@link ShadowHandoff}, which sends them to the new owner. Handoffs
+ * run on an executor, after the ring has been rebuilt, so that membership changes aren't held up by the stores or the network,
+ * and failed handoffs are tried again a few times, to the client's owner at the time. The new owner
+ * {@link #receive(String, Map) receives} them into the client's store, or keeps them until the client's store is registered, for
+ * up to a time to live. Shadows that aren't handed over, as when a node fails, are seeded again by the client's next synchronization.
+ * Stores shared by all nodes, such as Redis-based ones, list no keys, and have nothing handed over.
+ * </p>
+ *
+ * @author Craig Walls
+ */
+public class ShadowRouter implements MembershipListener {
+
+	private static final Duration DEFAULT_HANDOVER_TIME_TO_LIVE = Duration.ofMinutes(30);
+
+	private static final int DEFAULT_HANDOFF_ATTEMPTS = 3;
+
+	private static final Duration DEFAULT_HANDOFF_RETRY_DELAY = Duration.ofSeconds(1);
+
+	private final String localNodeId;
+
+	private final int virtualNodes;
+
+	private volatile ConsistentHashRing ring;
+
+	private final Map<String, ShadowStore> localStores = new ConcurrentHashMap<>();
+
+	// shadows handed over for clients whose store hasn't been registered yet
+	private final Map<String, Handover> handovers = new ConcurrentHashMap<>();
+
+	private ShadowHandoff shadowHandoff;
+
+	private Duration handoverTimeToLive = DEFAULT_HANDOVER_TIME_TO_LIVE;
+
+	private Executor handoffExecutor = ForkJoinPool.commonPool();
+
+	private int handoffAttempts = DEFAULT_HANDOFF_ATTEMPTS;
+
+	private Duration handoffRetryDelay = DEFAULT_HANDOFF_RETRY_DELAY;
+
+	/**
+	 * Constructs a router placing each node at {@link ConsistentHashRing#DEFAULT_VIRTUAL_NODES} points of the ring.
+	 * @param localNodeId the id of the node the router runs on.
+	 * @param membership the source of the cluster's members.
+	 */
+	public ShadowRouter(String localNodeId, ClusterMembership membership) {
+		this(localNodeId, membership, ConsistentHashRing.DEFAULT_VIRTUAL_NODES);
+	}
+
+	/**
+	 * @param localNodeId the id of the node the router runs on.
+	 * @param membership the source of the cluster's members.
+	 * @param virtualNodes the number of points of the ring each node is placed at, which must be the same on every node.
+	 */
+	public ShadowRouter(String localNodeId, ClusterMembership membership, int virtualNodes) {
+		this.localNodeId = localNodeId;
+		this.virtualNodes = virtualNodes;
+		this.ring = new ConsistentHashRing(membership.getMembers(), virtualNodes);
+		membership.addMembershipListener(this);
+	}
+
+	/**
+	 * Sets the strategy sending shadows to the new owner of their client when the members change.
+	 * @param shadowHandoff the handoff, or null to leave shadows behind, to be seeded again by the new owner.
+	 */
+	public void setShadowHandoff(ShadowHandoff shadowHandoff) {
+		this.shadowHandoff = shadowHandoff;
+	}
+
+	/**
+	 * Sets how long shadows handed over for a client are kept waiting for the client's store to be registered.
+	 * @param handoverTimeToLive the time to live.
+	 */
+	public void setHandoverTimeToLive(Duration handoverTimeToLive) {
+		this.handoverTimeToLive = handoverTimeToLive;
+	}
+
+	/**
+	 * Sets the executor that shadows are read and handed off on when the members change.
+	 * @param handoffExecutor the executor, the common fork-join pool by default.
+	 */
+	public void setHandoffExecutor(Executor handoffExecutor) {
+		this.handoffExecutor = handoffExecutor;
+	}
+
+	/**
+	 * Sets how many times the shadows of a client are handed off before they're left to be seeded again, and how long to wait
+	 * between the attempts.
+	 * @param handoffAttempts the number of attempts, 3 by default.
+	 * @param handoffRetryDelay the delay between attempts, a second by default.
+	 */
+	public void setHandoffAttempts(int handoffAttempts, Duration handoffRetryDelay) {
+		this.handoffAttempts = handoffAttempts;
+		this.handoffRetryDelay = handoffRetryDelay;
+	}
+
+	/**
+	 * @return the id of the node the router runs on.
+	 */
+	public String getLocalNodeId() {
+		return localNodeId;
+	}
+
+	/**
+	 * @param clientId the client's id.
+	 * @return the node owning the client's shadows, or null if the cluster has no members.
+	 */
+	public ClusterNode getOwner(String clientId) {
+		return ring.getOwner(clientId);
+	}
+
+	/**
+	 * @param clientId the client's id.
+	 * @return true if this node owns the client's shadows, or if the cluster has no members, as then there's no other node to go to.
+	 */
+	public boolean isLocal(String clientId) {
+		ClusterNode owner = getOwner(clientId);
+		return Objects.isNull(owner) || owner.getId().equals(localNodeId);
+	}
+
+	/**
+	 * Registers the store holding a client's shadows on this node, putting any shadows handed over for the client in it.
+	 * @param clientId the client's id.
+	 * @param shadowStore the client's shadow store.
+	 */
+	public void register(String clientId, ShadowStore shadowStore) {
+		localStores.put(clientId, shadowStore);
+		Handover handover = handovers.remove(clientId);
+		if (Objects.nonNull(handover) && !handover.isExpired(handoverTimeToLive)) {
+			shadowStore.putShadows(handover.shadows);
+		}
+	}
+
+	/**
+	 * Unregisters a client's shadow store, such as when the client's session ends.
+	 * @param clientId the client's id.
+	 * @param shadowStore the client's shadow store, which is only unregistered if it's still the one registered.
+	 */
+	public void unregister(String clientId, ShadowStore shadowStore) {
+		localStores.remove(clientId, shadowStore);
+	}
+
+	/**
+	 * Receives the shadows of a client that this node has become the owner of.
+	 * @param clientId the client's id.
+	 * @param shadows the client's shadows, by key.
+	 */
+	public void receive(String clientId, Map<String, Shadow<?>> shadows) {
+		handovers.values().removeIf(handover -> handover.isExpired(handoverTimeToLive));
+		ShadowStore shadowStore = localStores.get(clientId);
+		if (Objects.nonNull(shadowStore)) {
+			shadowStore.putShadows(shadows);
+		} else {
+			handovers.put(clientId, new Handover(shadows));
+		}
+	}
+
+	/**
+	 * Rebuilds the ring from the new members, and hands the shadows of clients that have moved over to their new owner on the
+	 * handoff executor. The stores of clients that have moved are unregistered, but their shadows are left for the stores to drop
+	 * when they're closed.
+	 */
+	@Override
+	public void membershipChanged(Collection<ClusterNode> members) {
+		moveClients(members).forEach((clientId, shadows) -> {
+			if (Objects.nonNull(shadowHandoff)) {
+				handoffExecutor.execute(() -> handOff(clientId, shadows.get(), 1));
+			}
+		});
+	}
+
+	// Rebuilds the ring, and takes the clients that have moved away, with the source of their shadows, so that changes of the
+	// members are taken one at a time.
+	private synchronized Map<String, Supplier<Map<String, Shadow<?>>>> moveClients(Collection<ClusterNode> members) {
+		ring = new ConsistentHashRing(members, virtualNodes);
+		Map<String, Supplier<Map<String, Shadow<?>>>> moved = new HashMap<>();
+		localStores.forEach((clientId, shadowStore) -> {
+			if (!isLocal(clientId) && localStores.remove(clientId, shadowStore)) {
+				moved.put(clientId, () -> shadowStore.getShadows(shadowStore.getKeys()));
+			}
+		});
+		handovers.forEach((clientId, handover) -> {
+			if (!isLocal(clientId) && handovers.remove(clientId, handover)) {
+				moved.put(clientId, () -> handover.shadows);
+			}
+		});
+		return moved;
+	}
+
+	private void handOff(String clientId, Map<String, Shadow<?>> shadows, int attempt) {
+		if (shadows.isEmpty()) {
+			return;
+		}
+		if (isLocal(clientId)) {
+			// the client has come back while its shadows were on their way
+			receive(clientId, shadows);
+			return;
+		}
+		CompletionStage<Void> handedOff;
+		try {
+			handedOff = shadowHandoff.handOff(clientId, shadows, getOwner(clientId));
+		} catch (RuntimeException e) {
+			handedOff = CompletableFuture.failedFuture(e);
+		}
+		handedOff.whenComplete((result, failure) -> {
+			if (Objects.nonNull(failure) && attempt < handoffAttempts) {
+				CompletableFuture.delayedExecutor(handoffRetryDelay.toMillis(), TimeUnit.MILLISECONDS, handoffExecutor)
+						.execute(() -> handOff(clientId, shadows, attempt + 1));
+			}
+		});
+	}
+
+	private static final class Handover {
+
+		private final Map<String, Shadow<?>> shadows;
+
+		private final long receivedAt = System.nanoTime();
+
+		private Handover(Map<String, Shadow<?>> shadows) {
+			this.shadows = shadows;
+		}
+
+		private boolean isExpired(Duration timeToLive) {
+			return System.nanoTime() - receivedAt > timeToLive.toNanos();
+		}
+
+	}
+
+}
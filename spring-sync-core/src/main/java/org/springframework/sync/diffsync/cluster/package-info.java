@@ -0,0 +1,4 @@
+/**
+ * Classes for spreading the shadows of remote nodes over several servers, each client's shadows being owned by one server.
+ */
+package org.springframework.sync.diffsync.cluster;
@@ -0,0 +1,10 @@
+package org.springframework.sync.diffsync.exception;
+
+public class VersionEvictedException extends Exception {
+    private static final long serialVersionUID = 1L;
+    private static final String REASON = "Patches since version %s of '%s' are no longer available";
+
+    public VersionEvictedException(String key, long version) {
+        super(String.format(REASON, version, key));
+    }
+}
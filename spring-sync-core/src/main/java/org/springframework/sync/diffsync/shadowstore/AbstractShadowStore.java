@@ -15,25 +15,45 @@
  */
 package org.springframework.sync.diffsync.shadowstore;
 
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
 public abstract class AbstractShadowStore implements ShadowStore {
 
-	private final String nodeId;
+	// the node-specific key prefix, computed once rather than on every access
+	private final String keyPrefix;
+
+	// the node-specific key of each shadow key, composed on its first use. A store sees the same few keys over and over,
+	// the shadows of the resources its client synchronizes and their backups.
+	private final Map<String, String> nodeSpecificKeys = new ConcurrentHashMap<>();
 
 	/**
 	 * Shadow store constructor
 	 * @param remoteNodeId the unique id of the node that this shadow store is being created for.
 	 */
 	public AbstractShadowStore(String remoteNodeId) {
-		this.nodeId = remoteNodeId;
+		this.keyPrefix = remoteNodeId + ":";
 	}
 	
 	/**
 	 * Produces a node-specific key by prefixing the key with the remote node ID.
+	 * The key is only composed the first time, and the same instance is returned afterwards.
 	 * @param key the resource key
 	 * @return a node-specific key
 	 */
 	protected String getNodeSpecificKey(String key) {
-		return nodeId + ":" + key;
+		String nodeSpecificKey = nodeSpecificKeys.get(key);
+		return Objects.nonNull(nodeSpecificKey) ? nodeSpecificKey : nodeSpecificKeys.computeIfAbsent(key, keyPrefix::concat);
+	}
+
+	/**
+	 * Recovers the resource key from a node-specific key.
+	 * @param nodeSpecificKey a key produced by {@link #getNodeSpecificKey(String)}
+	 * @return the resource key
+	 */
+	protected String getKey(String nodeSpecificKey) {
+		return nodeSpecificKey.substring(keyPrefix.length());
 	}
 
 	
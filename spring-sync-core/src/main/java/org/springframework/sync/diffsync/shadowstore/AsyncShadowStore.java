@@ -0,0 +1,100 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.sync.diffsync.shadowstore;
+
+import org.springframework.sync.diffsync.Shadow;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Supplier;
+
+/**
+ * Strategy interface for maintaining shadow copies across requests without blocking the calling thread,
+ * the non-blocking counterpart of {@link ShadowStore}.
+ *
+ * @author Craig Walls
+ */
+public interface AsyncShadowStore {
+
+	/**
+	 * Stores a shadow copy.
+	 * @param key the key to store the shadow under
+	 * @param shadow the shadow copy
+	 * @return a stage completing once the shadow is stored
+	 */
+	CompletionStage<Void> putShadow(String key, Shadow<?> shadow);
+
+	/**
+	 * Retrieves a shadow copy.
+	 * @param key the key that the shadow is stored under
+	 * @return a stage completing with the shadow copy, or with null if there is none
+	 */
+	CompletionStage<Shadow<?>> getShadow(String key);
+
+	/**
+	 * Retrieves several shadow copies, such as a shadow and its backup, together.
+	 * Stores that can should read them in a single round trip. By default, they're all requested at once, one by one.
+	 * @param keys the keys that the shadows are stored under
+	 * @return a stage completing with the shadow copies, by key, leaving out keys that no shadow is stored under
+	 */
+	default CompletionStage<Map<String, Shadow<?>>> getShadows(Collection<String> keys) {
+		List<String> requested = new ArrayList<>(keys);
+		List<CompletableFuture<Shadow<?>>> shadows = new ArrayList<>(requested.size());
+		requested.forEach(key -> shadows.add(getShadow(key).toCompletableFuture()));
+		return CompletableFuture.allOf(shadows.toArray(new CompletableFuture<?>[0])).thenApply(done -> {
+			Map<String, Shadow<?>> found = new LinkedHashMap<>();
+			for (int i = 0; i < requested.size(); i++) {
+				Shadow<?> shadow = shadows.get(i).join();
+				if (Objects.nonNull(shadow)) {
+					found.put(requested.get(i), shadow);
+				}
+			}
+			return found;
+		});
+	}
+
+	/**
+	 * Stores several shadow copies, such as a shadow and its backup, together.
+	 * Stores that can should write them in a single round trip, and atomically. By default, they're all stored at once, one by one.
+	 * @param shadows the shadow copies, by the keys to store them under
+	 * @return a stage completing once the shadows are stored
+	 */
+	default CompletionStage<Void> putShadows(Map<String, Shadow<?>> shadows) {
+		List<CompletableFuture<Void>> puts = new ArrayList<>(shadows.size());
+		shadows.forEach((key, shadow) -> puts.add(putShadow(key, shadow).toCompletableFuture()));
+		return CompletableFuture.allOf(puts.toArray(new CompletableFuture<?>[0]));
+	}
+
+	/**
+	 * Runs an update that reads, modifies and stores a shadow copy and its backup once the updates of the same shadow
+	 * started before it have completed, so that concurrent updates don't overwrite each other. Waiting updates don't hold a thread.
+	 * Stores that don't coordinate concurrent updates run it right away, the default.
+	 * @param key the key that the shadow is stored under
+	 * @param update the update
+	 * @param <R> the type of the update's result
+	 * @return a stage completing with the update's result
+	 */
+	default <R> CompletionStage<R> runExclusively(String key, Supplier<? extends CompletionStage<R>> update) {
+		return update.get();
+	}
+
+}
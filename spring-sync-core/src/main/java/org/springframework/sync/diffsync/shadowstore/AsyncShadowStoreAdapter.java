@@ -0,0 +1,109 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.sync.diffsync.shadowstore;
+
+import org.springframework.sync.diffsync.Shadow;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Supplier;
+
+/**
+ * <p>{@link AsyncShadowStore} that performs the operations of a {@link ShadowStore} on the calling thread.</p>
+ *
+ * <p>
+ * Each operation has completed by the time it returns. An exclusive update holds the store's lock for the shadow until the
+ * stage it returns completes, so it is also excluded from synchronous users of the store, such as server push. An update
+ * made of this adapter's operations alone completes on the calling thread; one that chains on other asynchronous work blocks
+ * the calling thread, holding the lock, until that work completes. If the store provides no lock, exclusive updates of each
+ * shadow are run one after another by an {@link UpdateSequencer} instead.
+ * This lets a synchronous store, such as {@link MapBasedShadowStore}, be used where an {@link AsyncShadowStore} is expected.
+ * </p>
+ *
+ * @author Craig Walls
+ */
+public class AsyncShadowStoreAdapter implements AsyncShadowStore {
+
+	private final ShadowStore shadowStore;
+
+	private final UpdateSequencer updates = new UpdateSequencer();
+
+	/**
+	 * Constructs the adapter.
+	 * @param shadowStore the store to adapt.
+	 */
+	public AsyncShadowStoreAdapter(ShadowStore shadowStore) {
+		this.shadowStore = shadowStore;
+	}
+
+	@Override
+	public CompletionStage<Void> putShadow(String key, Shadow<?> shadow) {
+		return run(() -> {
+			shadowStore.putShadow(key, shadow);
+			return null;
+		});
+	}
+
+	@Override
+	public CompletionStage<Shadow<?>> getShadow(String key) {
+		return run(() -> shadowStore.getShadow(key));
+	}
+
+	@Override
+	public CompletionStage<Map<String, Shadow<?>>> getShadows(Collection<String> keys) {
+		return run(() -> shadowStore.getShadows(keys));
+	}
+
+	@Override
+	public CompletionStage<Void> putShadows(Map<String, Shadow<?>> shadows) {
+		return run(() -> {
+			shadowStore.putShadows(shadows);
+			return null;
+		});
+	}
+
+	@Override
+	public <R> CompletionStage<R> runExclusively(String key, Supplier<? extends CompletionStage<R>> update) {
+		Lock lock = shadowStore.getLock(key);
+		if (Objects.isNull(lock)) {
+			return updates.run(key, update);
+		}
+		lock.lock();
+		try {
+			CompletableFuture<R> done = update.get().toCompletableFuture();
+			// the update only ends when its stage completes, so the lock is held until then
+			done.handle((result, failure) -> null).join();
+			return done;
+		} catch (RuntimeException e) {
+			return CompletableFuture.failedFuture(e);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private static <R> CompletionStage<R> run(Supplier<R> operation) {
+		try {
+			return CompletableFuture.completedFuture(operation.get());
+		} catch (RuntimeException e) {
+			return CompletableFuture.failedFuture(e);
+		}
+	}
+
+}
@@ -0,0 +1,409 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.sync.diffsync.shadowstore;
+
+import org.springframework.sync.diffsync.DiffSync;
+import org.springframework.sync.diffsync.Shadow;
+import org.springframework.sync.util.ObjectSizeEstimator;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.ToLongFunction;
+
+/**
+ * <p>The shadows of all remote nodes' {@link BoundedShadowStore}s, kept in memory up to a limit on their estimated size.</p>
+ *
+ * <p>
+ * The shadows are spread over segments by key, each holding an equal share of the limit under its own lock, so that sessions
+ * synchronizing on different segments don't contend. Once a segment's shadows exceed its share, its least recently used are evicted
+ * until they fit again. A shadow and its backup are kept in the same segment and evicted together, as neither is of use without
+ * the other. Shadows that haven't been used for longer than the time to idle expire, so the shadows of abandoned sessions go away
+ * even if their sessions never end. A shadow can also be stored with a time to live of its own, after which it expires however
+ * much it's used. Evicting a shadow is always safe: the next synchronization with its remote node seeds a new one.
+ * Expired shadows are dropped when they're looked up and whenever a shadow is stored in their segment; {@link #evictExpired()}
+ * drops all of them. The store that put a shadow is told when it's dropped, so that it stops tracking its key.
+ * </p>
+ *
+ * <p>
+ * Sizes are estimated by an {@link ObjectSizeEstimator} unless another estimator is set, before the segment is locked.
+ * As the estimator walks the whole shadow, a shadow's size is only estimated when it's first stored under a key, and then every
+ * few times it's stored again, set with {@link #setEstimationInterval(int)}; in between, the last estimate is carried over.
+ * The size, evictions and expirations are exposed for monitoring.
+ * </p>
+ *
+ * @author Craig Walls
+ */
+public class BoundedShadowCache {
+
+	private static final int DEFAULT_SEGMENTS = 16;
+
+	private static final int DEFAULT_ESTIMATION_INTERVAL = 8;
+
+	private static final long NO_DEADLINE = Long.MAX_VALUE;
+
+	private final long timeToIdle;
+
+	private final Clock clock;
+
+	private ToLongFunction<Object> sizeEstimator = new ObjectSizeEstimator()::estimate;
+
+	private int estimationInterval = DEFAULT_ESTIMATION_INTERVAL;
+
+	private final Segment[] segments;
+
+	/**
+	 * Constructs the cache.
+	 * @param maxBytes the limit on the estimated size of the shadows held.
+	 * @param timeToIdle how long a shadow is kept without being used, or {@link Duration#ZERO} to keep shadows until they're evicted.
+	 */
+	public BoundedShadowCache(long maxBytes, Duration timeToIdle) {
+		this(maxBytes, timeToIdle, DEFAULT_SEGMENTS, Clock.systemUTC());
+	}
+
+	/**
+	 * Constructs the cache.
+	 * @param maxBytes the limit on the estimated size of the shadows held.
+	 * @param timeToIdle how long a shadow is kept without being used, or {@link Duration#ZERO} to keep shadows until they're evicted.
+	 * @param segments the number of segments the shadows and the limit are split over, rounded up to a power of two.
+	 * @param clock the clock that shadows' use is timed with.
+	 */
+	public BoundedShadowCache(long maxBytes, Duration timeToIdle, int segments, Clock clock) {
+		if (maxBytes < 1) {
+			throw new IllegalArgumentException("Max bytes must be positive");
+		}
+		if (segments < 1) {
+			throw new IllegalArgumentException("Segments must be positive");
+		}
+		this.timeToIdle = timeToIdle.isZero() ? Long.MAX_VALUE : timeToIdle.toMillis();
+		this.clock = clock;
+		int size = Integer.highestOneBit(segments);
+		this.segments = new Segment[size < segments ? size << 1 : size];
+		long segmentMaxBytes = Math.max(1, maxBytes / this.segments.length);
+		for (int i = 0; i < this.segments.length; i++) {
+			this.segments[i] = new Segment(segmentMaxBytes);
+		}
+	}
+
+	/**
+	 * Sets the function estimating the size of a shadow, in bytes.
+	 * @param sizeEstimator the size estimator.
+	 */
+	public void setSizeEstimator(ToLongFunction<Object> sizeEstimator) {
+		this.sizeEstimator = sizeEstimator;
+	}
+
+	/**
+	 * Sets how many times a shadow is stored under the same key before its size is estimated again. Patches change shadows a little
+	 * at a time, so the estimate of the shadow they replace is carried over in between, unless the shadow's resource changes type,
+	 * such as a backup kept as a patch being replaced by a full copy.
+	 * @param estimationInterval the number of times a shadow is stored per estimate of its size, 1 estimating it every time.
+	 */
+	public void setEstimationInterval(int estimationInterval) {
+		if (estimationInterval < 1) {
+			throw new IllegalArgumentException("Estimation interval must be positive");
+		}
+		this.estimationInterval = estimationInterval;
+	}
+
+	/**
+	 * @return the number of shadows held.
+	 */
+	public int getSize() {
+		int size = 0;
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				size += segment.entries.size();
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * @return the estimated size of the shadows held, in bytes.
+	 */
+	public long getResidentBytes() {
+		long residentBytes = 0;
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				residentBytes += segment.residentBytes;
+			}
+		}
+		return residentBytes;
+	}
+
+	/**
+	 * @return the number of shadows evicted to keep within the size limit.
+	 */
+	public long getEvictionCount() {
+		long evictionCount = 0;
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				evictionCount += segment.evictionCount;
+			}
+		}
+		return evictionCount;
+	}
+
+	/**
+	 * @return the number of shadows dropped for having been idle for longer than the time to idle, or for having outlived their time to live.
+	 */
+	public long getExpirationCount() {
+		long expirationCount = 0;
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				expirationCount += segment.expirationCount;
+			}
+		}
+		return expirationCount;
+	}
+
+	/**
+	 * Drops all shadows that have been idle for longer than the time to idle, or have outlived their time to live.
+	 */
+	public void evictExpired() {
+		long now = clock.millis();
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				segment.evictExpired(now);
+				segment.evictOutlived(now);
+			}
+		}
+	}
+
+	Shadow<?> get(String key) {
+		long now = clock.millis();
+		Segment segment = segmentFor(key);
+		synchronized (segment) {
+			Entry entry = segment.entries.get(key);
+			if (Objects.isNull(entry)) {
+				return null;
+			}
+			if (isExpired(entry, now)) {
+				segment.remove(key);
+				segment.expirationCount++;
+				return null;
+			}
+			entry.lastUsed = now;
+			return entry.shadow;
+		}
+	}
+
+	/**
+	 * Stores a shadow.
+	 * @param key the node-specific key of the shadow.
+	 * @param shadow the shadow.
+	 * @param timeToLive how long the shadow is kept, however much it's used, or {@link Duration#ZERO} to keep it until it's idle or evicted.
+	 * @param ownerKeys the keys of the store putting the shadow, which the key is added to while it's held, or null.
+	 */
+	void put(String key, Shadow<?> shadow, Duration timeToLive, Set<String> ownerKeys) {
+		Segment segment = segmentFor(key);
+		Entry previous;
+		synchronized (segment) {
+			previous = segment.entries.get(key);
+		}
+		// estimated outside the lock, as it walks the whole shadow
+		boolean carriedOver = Objects.nonNull(previous) && previous.storesSinceEstimate + 1 < estimationInterval
+				&& sameResourceType(previous.shadow, shadow);
+		long size = carriedOver ? previous.size : sizeEstimator.applyAsLong(shadow);
+		long now = clock.millis();
+		long deadline = timeToLive.isZero() ? NO_DEADLINE : now + timeToLive.toMillis();
+		synchronized (segment) {
+			Entry entry = new Entry(shadow, size, now, deadline, ownerKeys);
+			entry.storesSinceEstimate = carriedOver ? previous.storesSinceEstimate + 1 : 0;
+			segment.store(key, entry);
+			segment.evictExpired(now);
+			segment.evictOutlived(now);
+			segment.evictLeastRecentlyUsed(key);
+		}
+	}
+
+	void remove(String key) {
+		Segment segment = segmentFor(key);
+		synchronized (segment) {
+			segment.remove(key);
+		}
+	}
+
+	// A backup's key is its shadow's key with a suffix, so both are placed by the shadow's key.
+	private Segment segmentFor(String key) {
+		int hash = shadowKeyOf(key).hashCode();
+		// spread the high bits, which the mask would otherwise ignore
+		return segments[(hash ^ (hash >>> 16)) & (segments.length - 1)];
+	}
+
+	private boolean isIdle(Entry entry, long now) {
+		return now - entry.lastUsed >= timeToIdle;
+	}
+
+	private boolean isExpired(Entry entry, long now) {
+		return isIdle(entry, now) || now >= entry.deadline;
+	}
+
+	private static boolean sameResourceType(Shadow<?> previous, Shadow<?> shadow) {
+		Object previousResource = previous.getResource();
+		Object resource = shadow.getResource();
+		return Objects.isNull(previousResource) ? Objects.isNull(resource) : Objects.nonNull(resource) && previousResource.getClass() == resource.getClass();
+	}
+
+	private static String shadowKeyOf(String key) {
+		return key.endsWith(DiffSync.BACKUP_SUFFIX) ? key.substring(0, key.length() - DiffSync.BACKUP_SUFFIX.length()) : key;
+	}
+
+	private static String companionOf(String key) {
+		return key.endsWith(DiffSync.BACKUP_SUFFIX) ? shadowKeyOf(key) : key + DiffSync.BACKUP_SUFFIX;
+	}
+
+	private final class Segment {
+
+		private final long maxBytes;
+
+		// in access order, least recently used first; guarded by the segment
+		private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+		private long residentBytes;
+
+		private long evictionCount;
+
+		private long expirationCount;
+
+		// the earliest time to live deadline of the shadows held, or a time past it
+		private long nextDeadline = NO_DEADLINE;
+
+		private Segment(long maxBytes) {
+			this.maxBytes = maxBytes;
+		}
+
+		private void store(String key, Entry entry) {
+			Entry previous = entries.put(key, entry);
+			residentBytes += entry.size;
+			if (Objects.nonNull(previous)) {
+				residentBytes -= previous.size;
+				if (previous.ownerKeys != entry.ownerKeys) {
+					previous.removed(key);
+				}
+			}
+			if (Objects.nonNull(entry.ownerKeys)) {
+				entry.ownerKeys.add(key);
+			}
+			nextDeadline = Math.min(nextDeadline, entry.deadline);
+		}
+
+		// The shadow just stored is the most recently used, and is kept along with its companion even if they exceed the limit on their own.
+		private void evictLeastRecentlyUsed(String storedKey) {
+			String storedCompanion = companionOf(storedKey);
+			Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+			while (residentBytes > maxBytes && iterator.hasNext()) {
+				Map.Entry<String, Entry> eldest = iterator.next();
+				String key = eldest.getKey();
+				if (key.equals(storedKey) || key.equals(storedCompanion)) {
+					continue;
+				}
+				residentBytes -= eldest.getValue().size;
+				iterator.remove();
+				eldest.getValue().removed(key);
+				evictionCount++;
+				String companion = companionOf(key);
+				if (entries.containsKey(companion)) {
+					// removing it would break the iteration, which starts over from the (possibly new) eldest
+					remove(companion);
+					evictionCount++;
+					iterator = entries.entrySet().iterator();
+				}
+			}
+		}
+
+		// Shadows are in the order they were last used, so the idle ones are all at the head.
+		private void evictExpired(long now) {
+			Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+			while (iterator.hasNext()) {
+				Map.Entry<String, Entry> entry = iterator.next();
+				if (!isIdle(entry.getValue(), now)) {
+					return;
+				}
+				residentBytes -= entry.getValue().size;
+				iterator.remove();
+				entry.getValue().removed(entry.getKey());
+				expirationCount++;
+			}
+		}
+
+		// Shadows that outlive their time to live can be anywhere, so they're looked for only once the earliest deadline has passed.
+		private void evictOutlived(long now) {
+			if (now < nextDeadline) {
+				return;
+			}
+			nextDeadline = NO_DEADLINE;
+			Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+			while (iterator.hasNext()) {
+				Map.Entry<String, Entry> entry = iterator.next();
+				if (now >= entry.getValue().deadline) {
+					residentBytes -= entry.getValue().size;
+					iterator.remove();
+					entry.getValue().removed(entry.getKey());
+					expirationCount++;
+				} else {
+					nextDeadline = Math.min(nextDeadline, entry.getValue().deadline);
+				}
+			}
+		}
+
+		private void remove(String key) {
+			Entry entry = entries.remove(key);
+			if (Objects.nonNull(entry)) {
+				residentBytes -= entry.size;
+				entry.removed(key);
+			}
+		}
+
+	}
+
+	private static final class Entry {
+
+		private final Shadow<?> shadow;
+
+		private final long size;
+
+		private final long deadline;
+
+		private final Set<String> ownerKeys;
+
+		private long lastUsed;
+
+		private int storesSinceEstimate;
+
+		private Entry(Shadow<?> shadow, long size, long lastUsed, long deadline, Set<String> ownerKeys) {
+			this.shadow = shadow;
+			this.size = size;
+			this.lastUsed = lastUsed;
+			this.deadline = deadline;
+			this.ownerKeys = ownerKeys;
+		}
+
+		// tells the store that put the shadow that it's no longer held
+		private void removed(String key) {
+			if (Objects.nonNull(ownerKeys)) {
+				ownerKeys.remove(key);
+			}
+		}
+
+	}
+
+}
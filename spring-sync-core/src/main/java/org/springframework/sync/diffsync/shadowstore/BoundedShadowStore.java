@@ -0,0 +1,103 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.sync.diffsync.shadowstore;
+
+import org.springframework.sync.diffsync.Shadow;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * <p>Implementation of {@link ShadowStore} that keeps shadows in memory in a {@link BoundedShadowCache}.</p>
+ *
+ * <p>
+ * All remote nodes' stores should be given the same {@link BoundedShadowCache}, which bounds the memory taken by the shadows of all of them
+ * and evicts those that haven't been used in a while. A shadow that has been evicted is simply not found, and is seeded again by the next
+ * synchronization. The store is closed when the remote node goes away, so that its shadows are dropped right away; as a session or
+ * WebSocket scoped bean, that happens when the session ends. A time to live can be set for the shadows of a store, which then expire
+ * however much they're used.
+ * </p>
+ *
+ * @author Craig Walls
+ */
+public class BoundedShadowStore extends AbstractShadowStore implements AutoCloseable {
+
+	private final BoundedShadowCache cache;
+
+	private final StripedLocks locks = new StripedLocks(16);
+
+	// the node-specific keys of this store's shadows in the cache, so that they can be removed when the store is closed;
+	// the cache removes the keys of the shadows it drops
+	private final Set<String> keys = ConcurrentHashMap.newKeySet();
+
+	private Duration timeToLive = Duration.ZERO;
+
+	/**
+	 * Shadow store constructor
+	 * @param remoteNodeId the unique id of the node that this shadow store is being created for.
+	 * @param cache the cache shared with the shadow stores of other remote nodes.
+	 */
+	public BoundedShadowStore(String remoteNodeId, BoundedShadowCache cache) {
+		super(remoteNodeId);
+		this.cache = cache;
+	}
+
+	/**
+	 * Sets how long this store's shadows are kept after they're stored, however much they're used.
+	 * @param timeToLive the time to live, or {@link Duration#ZERO} to keep shadows until they're idle or evicted.
+	 */
+	public void setTimeToLive(Duration timeToLive) {
+		this.timeToLive = timeToLive;
+	}
+
+	@Override
+	public void putShadow(String key, Shadow<?> shadow) {
+		cache.put(getNodeSpecificKey(key), shadow, timeToLive, keys);
+	}
+
+	@Override
+	public Shadow<?> getShadow(String key) {
+		return cache.get(getNodeSpecificKey(key));
+	}
+
+	/**
+	 * Returns the keys of this store's shadows held by the cache.
+	 */
+	@Override
+	public Set<String> getKeys() {
+		return keys.stream().map(this::getKey).collect(Collectors.toSet());
+	}
+
+	@Override
+	public Lock getLock(String key) {
+		return locks.get(key);
+	}
+
+	/**
+	 * Removes this store's shadows from the cache.
+	 */
+	@Override
+	public void close() {
+		// removing a shadow from the cache also removes its key
+		List.copyOf(keys).forEach(cache::remove);
+		keys.clear();
+	}
+
+}
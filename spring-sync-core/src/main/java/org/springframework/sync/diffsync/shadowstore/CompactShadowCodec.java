@@ -0,0 +1,821 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.sync.diffsync.shadowstore;
+
+import org.apache.commons.lang3.SerializationUtils;
+import org.springframework.sync.AddOperation;
+import org.springframework.sync.CopyOperation;
+import org.springframework.sync.FromOperation;
+import org.springframework.sync.MoveOperation;
+import org.springframework.sync.Patch;
+import org.springframework.sync.PatchOperation;
+import org.springframework.sync.RemoveOperation;
+import org.springframework.sync.ReplaceOperation;
+import org.springframework.sync.TestOperation;
+import org.springframework.sync.diffsync.Shadow;
+import org.springframework.sync.diffsync.VersionedPatch;
+import org.springframework.util.ClassUtils;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.RecordComponent;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * <p>{@link ShadowCodec} that writes shadows in a compact binary form, without the class descriptors of Java serialization.</p>
+ *
+ * <p>
+ * Versions, sizes and integral values are written as variable-length integers, so that most take a byte or two. Each class is described
+ * once per shadow, by its name and a table of its fields; its instances then write their field values in table order, primitive fields
+ * without a type tag. Decoding matches fields by name, so a shadow encoded before fields were added to or removed from a class can still
+ * be decoded. Objects are instantiated as {@link org.springframework.sync.util.ReflectiveCloner} does: through their no-arg constructor
+ * (which may be private), and records through their canonical constructor. Strings, boxed primitives, enums, byte arrays and the
+ * common lists, sets and maps are written natively; other JDK types, and classes without a no-arg constructor, fall back to
+ * Java serialization. Shared and cyclic references are preserved.
+ * </p>
+ *
+ * <p>
+ * Encoded shadows of at least the compression threshold are compressed with {@link Deflater} at its fastest level, and kept
+ * compressed only if that makes them smaller.
+ * </p>
+ *
+ * @author Craig Walls
+ */
+public class CompactShadowCodec implements ShadowCodec {
+
+	// the first byte of an encoded shadow
+	private static final byte UNCOMPRESSED = 0;
+
+	private static final byte COMPRESSED = 1;
+
+	// value tags; a field's kind is the tag of its primitive type (TRUE for booleans), or NULL for reference fields, whose values are tagged
+	private static final int NULL = 0;
+
+	private static final int FALSE = 1;
+
+	private static final int TRUE = 2;
+
+	private static final int BYTE = 3;
+
+	private static final int SHORT = 4;
+
+	private static final int CHAR = 5;
+
+	private static final int INT = 6;
+
+	private static final int LONG = 7;
+
+	private static final int FLOAT = 8;
+
+	private static final int DOUBLE = 9;
+
+	private static final int STRING = 10;
+
+	private static final int BYTES = 11;
+
+	private static final int LIST = 12;
+
+	private static final int SET = 13;
+
+	private static final int MAP = 14;
+
+	private static final int ENUM = 15;
+
+	private static final int OBJECT = 16;
+
+	private static final int RECORD = 17;
+
+	private static final int PATCH = 18;
+
+	private static final int SERIALIZED = 19;
+
+	private static final int REFERENCE = 20;
+
+	private static final List<String> OPERATION_TYPES = List.of(AddOperation.OP_TYPE, RemoveOperation.OP_TYPE, ReplaceOperation.OP_TYPE,
+			MoveOperation.OP_TYPE, CopyOperation.OP_TYPE, TestOperation.OP_TYPE);
+
+	private static final Map<Class<?>, Integer> WRAPPER_KINDS = Map.of(Byte.class, BYTE, Short.class, SHORT, Character.class, CHAR,
+			Float.class, FLOAT, Double.class, DOUBLE);
+
+	private static final Set<Class<?>> NATIVE_COLLECTION_TYPES = Set.of(ArrayList.class, HashSet.class, LinkedHashSet.class, HashMap.class, LinkedHashMap.class);
+
+	private final ConcurrentMap<Class<?>, ClassLayout> layoutCache = new ConcurrentHashMap<>();
+
+	private int compressionThreshold = 1024;
+
+	/**
+	 * Sets the size from which encoded shadows are compressed. Defaults to 1024 bytes.
+	 * @param compressionThreshold the size in bytes, or {@link Integer#MAX_VALUE} not to compress shadows.
+	 */
+	public void setCompressionThreshold(int compressionThreshold) {
+		this.compressionThreshold = compressionThreshold;
+	}
+
+	@Override
+	public byte[] encode(Shadow<?> shadow) {
+		Encoder encoder = new Encoder();
+		try {
+			encoder.writeInt(shadow.getServerVersion());
+			encoder.writeInt(shadow.getClientVersion());
+			encoder.writeValue(shadow.getResource());
+			List<VersionedPatch> edits = Objects.isNull(shadow.getEdits()) ? List.of() : shadow.getEdits();
+			encoder.writeSize(edits.size());
+			for (VersionedPatch edit : edits) {
+				encoder.writeLong(edit.getServerVersion());
+				encoder.writeLong(edit.getClientVersion());
+				encoder.writeOperations(edit.getOperations());
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException("Unable to encode shadow", e);
+		}
+		return frame(encoder.out.toByteArray());
+	}
+
+	@Override
+	public Shadow<?> decode(byte[] bytes) {
+		try {
+			Decoder decoder = new Decoder(unframe(bytes));
+			int serverVersion = decoder.readInt();
+			int clientVersion = decoder.readInt();
+			Object resource = decoder.readValue();
+			int editCount = decoder.readSize();
+			List<VersionedPatch> edits = new ArrayList<>(editCount);
+			for (int i = 0; i < editCount; i++) {
+				long editServerVersion = decoder.readLong();
+				long editClientVersion = decoder.readLong();
+				edits.add(new VersionedPatch(decoder.readOperations(), editServerVersion, editClientVersion));
+			}
+			return new Shadow<>(resource, serverVersion, clientVersion, edits);
+		} catch (IOException | DataFormatException | ReflectiveOperationException | RuntimeException e) {
+			throw new IllegalStateException("Unable to decode shadow", e);
+		}
+	}
+
+	private byte[] frame(byte[] body) {
+		if (body.length >= compressionThreshold) {
+			Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+			try {
+				deflater.setInput(body);
+				deflater.finish();
+				Encoder framed = new Encoder();
+				framed.out.write(COMPRESSED);
+				framed.writeSize(body.length);
+				byte[] buffer = new byte[Math.min(body.length, 64 * 1024)];
+				while (!deflater.finished() && framed.out.size() < body.length) {
+					framed.out.write(buffer, 0, deflater.deflate(buffer));
+				}
+				if (deflater.finished() && framed.out.size() < body.length) {
+					return framed.out.toByteArray();
+				}
+			} finally {
+				deflater.end();
+			}
+		}
+		byte[] framed = new byte[body.length + 1];
+		framed[0] = UNCOMPRESSED;
+		System.arraycopy(body, 0, framed, 1, body.length);
+		return framed;
+	}
+
+	private byte[] unframe(byte[] bytes) throws IOException, DataFormatException {
+		if (bytes[0] == UNCOMPRESSED) {
+			byte[] body = new byte[bytes.length - 1];
+			System.arraycopy(bytes, 1, body, 0, body.length);
+			return body;
+		}
+		if (bytes[0] != COMPRESSED) {
+			throw new IOException("Unknown shadow format " + bytes[0]);
+		}
+		Decoder header = new Decoder(bytes);
+		header.position = 1;
+		byte[] body = new byte[header.readSize()];
+		Inflater inflater = new Inflater();
+		try {
+			inflater.setInput(bytes, header.position, bytes.length - header.position);
+			int length = 0;
+			while (length < body.length && !inflater.finished()) {
+				int inflated = inflater.inflate(body, length, body.length - length);
+				if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+					throw new IOException("Truncated shadow");
+				}
+				length += inflated;
+			}
+		} finally {
+			inflater.end();
+		}
+		return body;
+	}
+
+	private ClassLayout layout(Class<?> type) {
+		return layoutCache.computeIfAbsent(type, this::inspect);
+	}
+
+	private ClassLayout inspect(Class<?> type) {
+		if (type.getName().startsWith("java.")) {
+			return ClassLayout.SERIALIZED;
+		}
+		try {
+			List<Field> fields = new ArrayList<>();
+			Constructor<?> constructor;
+			if (type.isRecord()) {
+				RecordComponent[] components = type.getRecordComponents();
+				Class<?>[] componentTypes = new Class<?>[components.length];
+				for (int i = 0; i < components.length; i++) {
+					componentTypes[i] = components[i].getType();
+					fields.add(type.getDeclaredField(components[i].getName()));
+				}
+				constructor = type.getDeclaredConstructor(componentTypes);
+			} else {
+				constructor = type.getDeclaredConstructor();
+				for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+					for (Field field : c.getDeclaredFields()) {
+						int modifiers = field.getModifiers();
+						if (!Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers)) {
+							fields.add(field);
+						}
+					}
+				}
+			}
+			constructor.setAccessible(true);
+			int[] kinds = new int[fields.size()];
+			for (int i = 0; i < kinds.length; i++) {
+				fields.get(i).setAccessible(true);
+				kinds[i] = kindOf(fields.get(i).getType());
+			}
+			return new ClassLayout(type.isRecord() ? RECORD : OBJECT, constructor, fields.toArray(new Field[0]), kinds);
+		} catch (NoSuchMethodException | NoSuchFieldException | RuntimeException e) {
+			// no usable constructor, or members that can't be made accessible
+			return ClassLayout.SERIALIZED;
+		}
+	}
+
+	private static int kindOf(Class<?> type) {
+		if (!type.isPrimitive()) {
+			return NULL;
+		}
+		if (type == boolean.class) {
+			return TRUE;
+		}
+		if (type == byte.class) {
+			return BYTE;
+		}
+		if (type == short.class) {
+			return SHORT;
+		}
+		if (type == char.class) {
+			return CHAR;
+		}
+		if (type == int.class) {
+			return INT;
+		}
+		if (type == long.class) {
+			return LONG;
+		}
+		return type == float.class ? FLOAT : DOUBLE;
+	}
+
+	// The common collections, plus the unmodifiable ones that can only be referenced through their interfaces.
+	// They're decoded as ArrayLists, LinkedHashSets and LinkedHashMaps; other collections keep their exact type by falling back to serialization.
+	private static boolean isNativeCollection(Class<?> type) {
+		if (NATIVE_COLLECTION_TYPES.contains(type)) {
+			return true;
+		}
+		String name = type.getName();
+		return (name.startsWith("java.util.ImmutableCollections$") || name.startsWith("java.util.Collections$Unmodifiable")
+				|| name.equals("java.util.Arrays$ArrayList")) && !name.contains("Sorted") && !name.contains("Navigable");
+	}
+
+	private final class Encoder {
+
+		private final Buffer out = new Buffer();
+
+		private final Map<Class<?>, Integer> classIds = new HashMap<>();
+
+		private final Map<Object, Integer> references = new IdentityHashMap<>();
+
+		private void writeValue(Object value) throws IOException {
+			if (Objects.isNull(value)) {
+				out.write(NULL);
+			} else if (value instanceof Boolean b) {
+				out.write(b ? TRUE : FALSE);
+			} else if (value instanceof Integer i) {
+				out.write(INT);
+				writeInt(i);
+			} else if (value instanceof Long l) {
+				out.write(LONG);
+				writeLong(l);
+			} else if (value instanceof String s) {
+				out.write(STRING);
+				writeString(s);
+			} else if (WRAPPER_KINDS.containsKey(value.getClass())) {
+				int kind = WRAPPER_KINDS.get(value.getClass());
+				out.write(kind);
+				writeField(kind, value);
+			} else if (value instanceof Enum<?> e) {
+				out.write(ENUM);
+				writeClass(e.getDeclaringClass(), null);
+				writeString(e.name());
+			} else if (value instanceof byte[] bytes) {
+				out.write(BYTES);
+				writeSize(bytes.length);
+				out.write(bytes);
+			} else if (value instanceof Patch patch) {
+				out.write(PATCH);
+				writeOperations(patch.getOperations());
+			} else if (references.containsKey(value)) {
+				out.write(REFERENCE);
+				writeSize(references.get(value));
+			} else if (isNativeCollection(value.getClass())) {
+				writeCollection(value);
+			} else {
+				writeObject(value);
+			}
+		}
+
+		private void writeCollection(Object collection) throws IOException {
+			references.put(collection, references.size());
+			if (collection instanceof Map<?, ?> map) {
+				out.write(MAP);
+				writeSize(map.size());
+				for (Map.Entry<?, ?> entry : map.entrySet()) {
+					writeValue(entry.getKey());
+					writeValue(entry.getValue());
+				}
+			} else {
+				Collection<?> items = (Collection<?>) collection;
+				out.write(collection instanceof Set ? SET : LIST);
+				writeSize(items.size());
+				for (Object item : items) {
+					writeValue(item);
+				}
+			}
+		}
+
+		private void writeObject(Object object) throws IOException {
+			ClassLayout layout = layout(object.getClass());
+			if (layout.kind == SERIALIZED) {
+				if (!(object instanceof Serializable serializable)) {
+					throw new IOException("Unable to encode " + object.getClass().getName() + ": it has no no-arg constructor and is not Serializable");
+				}
+				out.write(SERIALIZED);
+				byte[] bytes = SerializationUtils.serialize(serializable);
+				writeSize(bytes.length);
+				out.write(bytes);
+				references.put(object, references.size());
+				return;
+			}
+			// objects are referenced as soon as they're instantiated, so that cycles can be restored; records only once they're constructed
+			if (layout.kind == OBJECT) {
+				references.put(object, references.size());
+			}
+			out.write(layout.kind);
+			writeClass(object.getClass(), layout);
+			try {
+				for (int i = 0; i < layout.fields.length; i++) {
+					writeField(layout.kinds[i], layout.fields[i].get(object));
+				}
+			} catch (IllegalAccessException e) {
+				throw new IOException("Unable to encode " + object.getClass().getName(), e);
+			}
+			if (layout.kind == RECORD) {
+				references.put(object, references.size());
+			}
+		}
+
+		// A class is described the first time it's used, and referred to by its position among the described classes after that.
+		private void writeClass(Class<?> type, ClassLayout layout) throws IOException {
+			Integer id = classIds.get(type);
+			if (Objects.nonNull(id)) {
+				writeSize(id + 1);
+				return;
+			}
+			writeSize(0);
+			writeString(type.getName());
+			if (Objects.nonNull(layout)) {
+				writeSize(layout.fields.length);
+				for (int i = 0; i < layout.fields.length; i++) {
+					writeString(layout.fields[i].getName());
+					out.write(layout.kinds[i]);
+				}
+			}
+			classIds.put(type, classIds.size());
+		}
+
+		private void writeField(int kind, Object value) throws IOException {
+			switch (kind) {
+				case TRUE -> out.write((Boolean) value ? 1 : 0);
+				case BYTE -> out.write((Byte) value);
+				case SHORT -> writeInt((Short) value);
+				case CHAR -> writeSize((Character) value);
+				case INT -> writeInt((Integer) value);
+				case LONG -> writeLong((Long) value);
+				case FLOAT -> writeFixed(Float.floatToIntBits((Float) value), 4);
+				case DOUBLE -> writeFixed(Double.doubleToLongBits((Double) value), 8);
+				default -> writeValue(value);
+			}
+		}
+
+		private void writeOperations(List<PatchOperation> operations) throws IOException {
+			writeSize(operations.size());
+			for (PatchOperation operation : operations) {
+				out.write(OPERATION_TYPES.indexOf(operation.getOp()));
+				writeString(operation.getPath());
+				if (operation instanceof FromOperation fromOperation) {
+					writeString(fromOperation.getFrom());
+				} else if (!(operation instanceof RemoveOperation)) {
+					writeValue(operation.getValue());
+				}
+			}
+		}
+
+		private void writeString(String value) {
+			byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+			writeSize(bytes.length);
+			out.write(bytes, 0, bytes.length);
+		}
+
+		// zigzag encoded, so that small negative numbers are short too
+		private void writeInt(int value) {
+			writeSize((value << 1) ^ (value >> 31));
+		}
+
+		private void writeLong(long value) {
+			writeVarLong((value << 1) ^ (value >> 63));
+		}
+
+		private void writeSize(int value) {
+			writeVarLong(value & 0xFFFFFFFFL);
+		}
+
+		private void writeVarLong(long value) {
+			while ((value & ~0x7FL) != 0) {
+				out.write((int) ((value & 0x7F) | 0x80));
+				value >>>= 7;
+			}
+			out.write((int) value);
+		}
+
+		private void writeFixed(long value, int bytes) {
+			for (int i = 0; i < bytes; i++) {
+				out.write((int) (value >>> (8 * i)));
+			}
+		}
+
+	}
+
+	// An unsynchronized ByteArrayOutputStream.
+	private static final class Buffer {
+
+		private byte[] bytes = new byte[256];
+
+		private int size;
+
+		private void write(int b) {
+			ensureCapacity(1);
+			bytes[size++] = (byte) b;
+		}
+
+		private void write(byte[] source, int offset, int length) {
+			ensureCapacity(length);
+			System.arraycopy(source, offset, bytes, size, length);
+			size += length;
+		}
+
+		private void write(byte[] source) {
+			write(source, 0, source.length);
+		}
+
+		private int size() {
+			return size;
+		}
+
+		private byte[] toByteArray() {
+			return Arrays.copyOf(bytes, size);
+		}
+
+		private void ensureCapacity(int length) {
+			if (size + length > bytes.length) {
+				bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + length));
+			}
+		}
+
+	}
+
+	private final class Decoder {
+
+		private final byte[] bytes;
+
+		private int position;
+
+		private final List<ClassEntry> classes = new ArrayList<>();
+
+		private final List<Object> references = new ArrayList<>();
+
+		private Decoder(byte[] bytes) {
+			this.bytes = bytes;
+		}
+
+		private Object readValue() throws IOException, ReflectiveOperationException {
+			int tag = readByte();
+			switch (tag) {
+				case NULL:
+					return null;
+				case FALSE:
+					return false;
+				case TRUE:
+					return true;
+				case BYTE:
+				case SHORT:
+				case CHAR:
+				case INT:
+				case LONG:
+				case FLOAT:
+				case DOUBLE:
+					return readField(tag);
+				case STRING:
+					return readString();
+				case BYTES:
+					return readBytes(readSize());
+				case ENUM:
+					return readEnum(readClass(false).type);
+				case PATCH:
+					return new Patch(readOperations());
+				case REFERENCE:
+					return references.get(readSize());
+				case LIST:
+				case SET:
+					return readCollection(tag == LIST ? new ArrayList<>() : new LinkedHashSet<>());
+				case MAP:
+					return readMap();
+				case OBJECT:
+					return readObject(readClass(true));
+				case RECORD:
+					return readRecord(readClass(true));
+				case SERIALIZED:
+					Object object = SerializationUtils.deserialize(readBytes(readSize()));
+					references.add(object);
+					return object;
+				default:
+					throw new IOException("Unknown value tag " + tag);
+			}
+		}
+
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		private Object readEnum(Class<?> type) throws IOException {
+			return Enum.valueOf((Class) type, readString());
+		}
+
+		private Collection<Object> readCollection(Collection<Object> collection) throws IOException, ReflectiveOperationException {
+			references.add(collection);
+			int size = readSize();
+			for (int i = 0; i < size; i++) {
+				collection.add(readValue());
+			}
+			return collection;
+		}
+
+		private Map<Object, Object> readMap() throws IOException, ReflectiveOperationException {
+			Map<Object, Object> map = new LinkedHashMap<>();
+			references.add(map);
+			int size = readSize();
+			for (int i = 0; i < size; i++) {
+				map.put(readValue(), readValue());
+			}
+			return map;
+		}
+
+		private Object readObject(ClassEntry entry) throws IOException, ReflectiveOperationException {
+			Object object = entry.layout.constructor.newInstance();
+			references.add(object);
+			for (int i = 0; i < entry.kinds.length; i++) {
+				Object value = readField(entry.kinds[i]);
+				if (entry.targets[i] >= 0) {
+					entry.layout.fields[entry.targets[i]].set(object, value);
+				}
+			}
+			return object;
+		}
+
+		private Object readRecord(ClassEntry entry) throws IOException, ReflectiveOperationException {
+			Field[] components = entry.layout.fields;
+			Object[] arguments = new Object[components.length];
+			for (int i = 0; i < components.length; i++) {
+				// components missing from the encoded record are left at their default values
+				arguments[i] = components[i].getType().isPrimitive() ? Array.get(Array.newInstance(components[i].getType(), 1), 0) : null;
+			}
+			for (int i = 0; i < entry.kinds.length; i++) {
+				Object value = readField(entry.kinds[i]);
+				if (entry.targets[i] >= 0) {
+					arguments[entry.targets[i]] = value;
+				}
+			}
+			Object record = entry.layout.constructor.newInstance(arguments);
+			references.add(record);
+			return record;
+		}
+
+		// Matches the encoded field table with the class's current fields, by name and kind.
+		private ClassEntry readClass(boolean withFields) throws IOException {
+			int id = readSize();
+			if (id > 0) {
+				return classes.get(id - 1);
+			}
+			Class<?> type;
+			try {
+				type = ClassUtils.forName(readString(), ClassUtils.getDefaultClassLoader());
+			} catch (ClassNotFoundException e) {
+				throw new IOException(e);
+			}
+			ClassLayout layout = withFields ? layout(type) : ClassLayout.SERIALIZED;
+			int fieldCount = withFields ? readSize() : 0;
+			int[] kinds = new int[fieldCount];
+			int[] targets = new int[fieldCount];
+			for (int i = 0; i < fieldCount; i++) {
+				String name = readString();
+				kinds[i] = readByte();
+				targets[i] = -1;
+				for (int j = 0; j < layout.fields.length; j++) {
+					if (layout.fields[j].getName().equals(name) && layout.kinds[j] == kinds[i]) {
+						targets[i] = j;
+						break;
+					}
+				}
+			}
+			ClassEntry entry = new ClassEntry(type, layout, kinds, targets);
+			classes.add(entry);
+			return entry;
+		}
+
+		private Object readField(int kind) throws IOException, ReflectiveOperationException {
+			return switch (kind) {
+				case TRUE -> readByte() != 0;
+				case BYTE -> (byte) readByte();
+				case SHORT -> (short) readInt();
+				case CHAR -> (char) readSize();
+				case INT -> readInt();
+				case LONG -> readLong();
+				case FLOAT -> Float.intBitsToFloat((int) readFixed(4));
+				case DOUBLE -> Double.longBitsToDouble(readFixed(8));
+				default -> readValue();
+			};
+		}
+
+		private List<PatchOperation> readOperations() throws IOException, ReflectiveOperationException {
+			int count = readSize();
+			List<PatchOperation> operations = new ArrayList<>(count);
+			for (int i = 0; i < count; i++) {
+				int type = readByte();
+				String path = readString();
+				operations.add(switch (type) {
+					case 0 -> new AddOperation(path, readValue());
+					case 1 -> new RemoveOperation(path);
+					case 2 -> new ReplaceOperation(path, readValue());
+					case 3 -> new MoveOperation(path, readString());
+					case 4 -> new CopyOperation(path, readString());
+					case 5 -> new TestOperation(path, readValue());
+					default -> throw new IOException("Unknown operation type " + type);
+				});
+			}
+			return operations;
+		}
+
+		private String readString() throws IOException {
+			int length = readSize();
+			checkAvailable(length);
+			String value = new String(bytes, position, length, StandardCharsets.UTF_8);
+			position += length;
+			return value;
+		}
+
+		private byte[] readBytes(int length) throws IOException {
+			checkAvailable(length);
+			byte[] value = new byte[length];
+			System.arraycopy(bytes, position, value, 0, length);
+			position += length;
+			return value;
+		}
+
+		private int readByte() throws IOException {
+			checkAvailable(1);
+			return bytes[position++] & 0xFF;
+		}
+
+		private int readInt() throws IOException {
+			int value = readSize();
+			return (value >>> 1) ^ -(value & 1);
+		}
+
+		private long readLong() throws IOException {
+			long value = readVarLong();
+			return (value >>> 1) ^ -(value & 1);
+		}
+
+		private int readSize() throws IOException {
+			return (int) readVarLong();
+		}
+
+		private long readVarLong() throws IOException {
+			long value = 0;
+			for (int shift = 0; shift < 64; shift += 7) {
+				int b = readByte();
+				value |= (long) (b & 0x7F) << shift;
+				if ((b & 0x80) == 0) {
+					return value;
+				}
+			}
+			throw new IOException("Malformed variable-length integer");
+		}
+
+		private long readFixed(int length) throws IOException {
+			checkAvailable(length);
+			long value = 0;
+			for (int i = 0; i < length; i++) {
+				value |= (long) (bytes[position++] & 0xFF) << (8 * i);
+			}
+			return value;
+		}
+
+		private void checkAvailable(int length) throws IOException {
+			if (length < 0 || position + length > bytes.length) {
+				throw new IOException("Truncated shadow");
+			}
+		}
+
+	}
+
+	private static final class ClassLayout {
+
+		private static final ClassLayout SERIALIZED = new ClassLayout(CompactShadowCodec.SERIALIZED, null, new Field[0], new int[0]);
+
+		private final int kind;
+
+		private final Constructor<?> constructor;
+
+		private final Field[] fields;
+
+		private final int[] kinds;
+
+		private ClassLayout(int kind, Constructor<?> constructor, Field[] fields, int[] kinds) {
+			this.kind = kind;
+			this.constructor = constructor;
+			this.fields = fields;
+			this.kinds = kinds;
+		}
+
+	}
+
+	private static final class ClassEntry {
+
+		private final Class<?> type;
+
+		private final ClassLayout layout;
+
+		// the kind of each encoded field, and the index of the class's field it's decoded into, or -1 to skip it
+		private final int[] kinds;
+
+		private final int[] targets;
+
+		private ClassEntry(Class<?> type, ClassLayout layout, int[] kinds, int[] targets) {
+			this.type = type;
+			this.layout = layout;
+			this.kinds = kinds;
+			this.targets = targets;
+		}
+
+	}
+
+}
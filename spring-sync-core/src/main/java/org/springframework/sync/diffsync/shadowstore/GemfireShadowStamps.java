@@ -0,0 +1,82 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.sync.diffsync.shadowstore;
+
+import org.springframework.data.gemfire.GemfireOperations;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * {@link ShadowStamps} implementation that keeps stamps in Pivotal GemFire, in the region of an injected {@link GemfireOperations}.
+ *
+ * @author Craig Walls
+ */
+public class GemfireShadowStamps implements ShadowStamps {
+
+	private static final String STAMP_SUFFIX = ":stamp";
+
+	private final GemfireOperations gemfireTemplate;
+
+	/**
+	 * Constructs the GemFire-based {@link ShadowStamps}.
+	 * @param gemfireTemplate a {@link GemfireOperations} that will be used to store stamps.
+	 */
+	public GemfireShadowStamps(GemfireOperations gemfireTemplate) {
+		this.gemfireTemplate = gemfireTemplate;
+	}
+
+	@Override
+	public Long getStamp(String key) {
+		return gemfireTemplate.get(stampKey(key));
+	}
+
+	/**
+	 * Retrieves the stamps with a single getAll.
+	 */
+	@Override
+	public Map<String, Long> getStamps(Collection<String> keys) {
+		Map<String, String> stampKeys = new LinkedHashMap<>();
+		keys.forEach(key -> stampKeys.put(stampKey(key), key));
+		Map<String, Long> values = gemfireTemplate.getAll(stampKeys.keySet());
+		Map<String, Long> stamps = new HashMap<>();
+		stampKeys.forEach((stampKey, key) -> {
+			Long stamp = values.get(stampKey);
+			if (Objects.nonNull(stamp)) {
+				stamps.put(key, stamp);
+			}
+		});
+		return stamps;
+	}
+
+	@Override
+	public void setStamp(String key, long stamp) {
+		gemfireTemplate.put(stampKey(key), stamp);
+	}
+
+	@Override
+	public void removeStamp(String key) {
+		gemfireTemplate.remove(stampKey(key));
+	}
+
+	static String stampKey(String key) {
+		return key + STAMP_SUFFIX;
+	}
+
+}
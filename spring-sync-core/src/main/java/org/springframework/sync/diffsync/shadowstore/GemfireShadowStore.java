@@ -15,23 +15,59 @@
  */
 package org.springframework.sync.diffsync.shadowstore;
 
+import org.apache.geode.cache.CacheTransactionManager;
 import org.springframework.beans.factory.DisposableBean;
 import org.springframework.data.gemfire.GemfireOperations;
 import org.springframework.sync.diffsync.Shadow;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * {@link ShadowStore} implementation that stores shadow copies in Pivotal GemFire.
- * 
+ * <p>{@link ShadowStore} implementation that stores shadow copies in Pivotal GemFire.</p>
+ *
+ * <p>
+ * The keys written are tracked once each, and removed together with their stamps in a single removeAll when the store is
+ * destroyed. GemFire sets expiry per region rather than per entry: to have shadows removed after a remote node goes away
+ * without the store being destroyed, such as after a server crash, give the region an entry time to live with the DESTROY
+ * action. Each write resets an entry's time to live.
+ * </p>
+ *
+ * <p>
+ * Shadows are stored as they are, to be serialized by GemFire, unless a {@link ShadowCodec} is set, in which case they're stored
+ * as the codec's bytes. A {@link CompactShadowCodec} keeps them small, and doesn't require them to be serializable.
+ * </p>
+ *
+ * <p>
+ * The store keeps {@link GemfireShadowStamps} in the same region, so that a {@link NearCachingShadowStore} can write shadows
+ * and their stamps with a single putAll.
+ * </p>
+ *
+ * <p>
+ * A putAll isn't atomic: one that fails may have written some entries and not others. Given the cache's
+ * {@link CacheTransactionManager}, the store writes several entries in a transaction, which is atomic. Without one, the entries
+ * of a putAll that fails are all removed again, as a missing shadow is seeded again and a missing stamp makes near caches fetch
+ * the shadow, whereas a new stamp beside an old shadow would be trusted.
+ * </p>
+ *
  * @author Craig Walls
  */
-public class GemfireShadowStore extends AbstractShadowStore implements DisposableBean {
+public class GemfireShadowStore extends AbstractShadowStore implements StampedShadowStore, DisposableBean {
 
 	private final GemfireOperations gemfireTemplate;
 	
-	private final List<String> keys = new ArrayList<>();
+	private final Set<String> keys = ConcurrentHashMap.newKeySet();
+
+	private final GemfireShadowStamps shadowStamps;
+
+	private ShadowCodec shadowCodec;
+
+	private CacheTransactionManager transactionManager;
 
 	/**
 	 * Constructs a GemFire-based {@link ShadowStore}.
@@ -41,23 +77,138 @@ public class GemfireShadowStore extends AbstractShadowStore implements Disposabl
 	public GemfireShadowStore(String remoteNodeId, GemfireOperations gemfireTemplate) {
 		super(remoteNodeId);
 		this.gemfireTemplate = gemfireTemplate;
+		this.shadowStamps = new GemfireShadowStamps(gemfireTemplate);
+	}
+
+	/**
+	 * Sets the codec that shadows are stored with.
+	 * @param shadowCodec the codec, or null to store shadows as they are.
+	 */
+	public void setShadowCodec(ShadowCodec shadowCodec) {
+		this.shadowCodec = shadowCodec;
+	}
+
+	/**
+	 * Sets the transaction manager that writes of several entries are made atomic with. A transaction's entries must be held by
+	 * one member: the region must be replicated, or partitioned with a resolver that places a shadow's keys together.
+	 * @param transactionManager the cache's transaction manager, or null to write without transactions.
+	 */
+	public void setCacheTransactionManager(CacheTransactionManager transactionManager) {
+		this.transactionManager = transactionManager;
 	}
 	
 	@Override
 	public void putShadow(String key, Shadow<?> shadow) {
 		String nodeKey = getNodeSpecificKey(key);
-		gemfireTemplate.put(nodeKey, shadow);
+		gemfireTemplate.put(nodeKey, encoded(shadow));
 		keys.add(nodeKey);
 	}
 
+	/**
+	 * Stores the shadow copies with a single putAll, which is one round trip, in a transaction if a transaction manager is set.
+	 */
+	@Override
+	public void putShadows(Map<String, Shadow<?>> shadows) {
+		Map<String, Object> nodeShadows = new LinkedHashMap<>();
+		shadows.forEach((key, shadow) -> nodeShadows.put(getNodeSpecificKey(key), encoded(shadow)));
+		keys.addAll(nodeShadows.keySet());
+		putAll(nodeShadows);
+	}
+
+	/**
+	 * Stores the shadow copies and their stamps with a single putAll, in a transaction if a transaction manager is set.
+	 */
+	@Override
+	public void putShadows(Map<String, Shadow<?>> shadows, Map<String, Long> stamps) {
+		Map<String, Object> entries = new LinkedHashMap<>();
+		shadows.forEach((key, shadow) -> entries.put(getNodeSpecificKey(key), encoded(shadow)));
+		stamps.forEach((key, stamp) -> entries.put(GemfireShadowStamps.stampKey(getNodeSpecificKey(key)), stamp));
+		shadows.keySet().forEach(key -> keys.add(getNodeSpecificKey(key)));
+		putAll(entries);
+	}
+
+	@Override
+	public ShadowStamps getShadowStamps() {
+		return shadowStamps;
+	}
+
 	@Override
 	public Shadow<?> getShadow(String key) {
-		return gemfireTemplate.get(getNodeSpecificKey(key));
+		return decoded(gemfireTemplate.get(getNodeSpecificKey(key)));
+	}
+
+	/**
+	 * Retrieves the shadow copies with a single getAll, which is one round trip.
+	 */
+	@Override
+	public Map<String, Shadow<?>> getShadows(Collection<String> shadowKeys) {
+		Map<String, String> nodeKeys = new LinkedHashMap<>();
+		shadowKeys.forEach(key -> nodeKeys.put(getNodeSpecificKey(key), key));
+		Map<String, Object> values = gemfireTemplate.getAll(nodeKeys.keySet());
+		Map<String, Shadow<?>> shadows = new LinkedHashMap<>();
+		nodeKeys.forEach((nodeKey, key) -> {
+			Shadow<?> shadow = decoded(values.get(nodeKey));
+			if (Objects.nonNull(shadow)) {
+				shadows.put(key, shadow);
+			}
+		});
+		return shadows;
+	}
+
+	// A transaction that's already running, the caller's, makes the write atomic as well, and is committed or rolled back by the caller.
+	private void putAll(Map<String, Object> entries) {
+		if (Objects.isNull(transactionManager)) {
+			putAllOrNone(entries);
+		} else if (transactionManager.exists()) {
+			gemfireTemplate.putAll(entries);
+		} else {
+			transactionManager.begin();
+			try {
+				gemfireTemplate.putAll(entries);
+				transactionManager.commit();
+			} catch (RuntimeException e) {
+				// a commit that fails has already ended the transaction
+				if (transactionManager.exists()) {
+					transactionManager.rollback();
+				}
+				throw e;
+			}
+		}
 	}
 
+	private void putAllOrNone(Map<String, Object> entries) {
+		try {
+			gemfireTemplate.putAll(entries);
+		} catch (RuntimeException e) {
+			try {
+				gemfireTemplate.removeAll(entries.keySet());
+			} catch (RuntimeException removeFailure) {
+				e.addSuppressed(removeFailure);
+			}
+			throw e;
+		}
+	}
+
+	private Object encoded(Shadow<?> shadow) {
+		return Objects.isNull(shadowCodec) ? shadow : shadowCodec.encode(shadow);
+	}
+
+	private Shadow<?> decoded(Object value) {
+		return value instanceof byte[] bytes ? shadowCodec.decode(bytes) : (Shadow<?>) value;
+	}
+
+	/**
+	 * Removes all shadows written by this store, and their stamps, with a single removeAll.
+	 */
 	@Override
 	public void destroy() {
-		keys.forEach(gemfireTemplate::remove);
+		if (!keys.isEmpty()) {
+			Set<String> written = Set.copyOf(keys);
+			Set<String> removed = new HashSet<>(written);
+			written.forEach(key -> removed.add(GemfireShadowStamps.stampKey(key)));
+			gemfireTemplate.removeAll(removed);
+			keys.removeAll(written);
+		}
 	}
 	
 }
@@ -17,31 +17,60 @@ package org.springframework.sync.diffsync.shadowstore;
 
 import org.springframework.sync.diffsync.Shadow;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
 
 /**
  * Implementation of {@link ShadowStore} that keeps shadows in an in-memory map.
  * Not recommended for production applications, as it isn't scalable in terms of the number of clients.
  * Consider RedisShadowStore or GemfireShadowStore instead.
+ * The store is safe for concurrent use, and hands out striped locks so that concurrent updates of a shadow are serialized
+ * while updates of other shadows proceed in parallel.
  * @author Craig Walls
  */
 public class MapBasedShadowStore extends AbstractShadowStore {
 
-	private final Map<String, Shadow<?>> store = new HashMap<>();
+	private static final int DEFAULT_LOCK_STRIPES = 16;
+
+	// the map belongs to a single node, so shadows are kept under their own keys, without the node-specific prefix
+	private final Map<String, Shadow<?>> store = new ConcurrentHashMap<>();
+
+	private final StripedLocks locks;
 	
 	public MapBasedShadowStore(String remoteNodeId) {
+		this(remoteNodeId, DEFAULT_LOCK_STRIPES);
+	}
+
+	/**
+	 * Shadow store constructor
+	 * @param remoteNodeId the unique id of the node that this shadow store is being created for.
+	 * @param lockStripes the number of locks that shadow keys are spread over.
+	 */
+	public MapBasedShadowStore(String remoteNodeId, int lockStripes) {
 		super(remoteNodeId);
+		this.locks = new StripedLocks(lockStripes);
 	}
 	
 	@Override
 	public void putShadow(String key, Shadow<?> shadow) {
-		store.put(getNodeSpecificKey(key), shadow);
+		store.put(key, shadow);
 	}
 
 	@Override
 	public Shadow<?> getShadow(String key) {
-		return store.get(getNodeSpecificKey(key));
+		return store.get(key);
+	}
+
+	@Override
+	public Set<String> getKeys() {
+		return Set.copyOf(store.keySet());
+	}
+
+	@Override
+	public Lock getLock(String key) {
+		return locks.get(key);
 	}
 
 }
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.sync.diffsync.shadowstore;
+
+import org.springframework.sync.diffsync.Shadow;
+
+import java.util.Objects;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * <p>Implementation of {@link ShadowStore} that keeps shadows in a {@link MappedShadowLog}, so that they survive a restart of the process.</p>
+ *
+ * <p>
+ * All remote nodes' stores should be given the same log. Shadows are encoded with a {@link ShadowCodec} as they're stored and decoded
+ * each time they're retrieved. After a restart, a remote node that reconnects with the same id finds its shadows where it left them,
+ * instead of every client falling back to a full synchronization at once. Since that's the point, shadows aren't dropped when the store
+ * goes away; {@link #clear()} drops them once the remote node is known to be gone for good.
+ * </p>
+ *
+ * @author Craig Walls
+ */
+public class MappedFileShadowStore extends AbstractShadowStore {
+
+	private final MappedShadowLog log;
+
+	private ShadowCodec shadowCodec = new SerializingShadowCodec();
+
+	private final StripedLocks locks = new StripedLocks(16);
+
+	/**
+	 * Shadow store constructor
+	 * @param remoteNodeId the unique id of the node that this shadow store is being created for.
+	 * @param log the log shared with the shadow stores of other remote nodes.
+	 */
+	public MappedFileShadowStore(String remoteNodeId, MappedShadowLog log) {
+		super(remoteNodeId);
+		this.log = log;
+	}
+
+	/**
+	 * Sets the {@link ShadowCodec} used to serialize shadows. Defaults to {@link SerializingShadowCodec}.
+	 * Shadows must be decodable by the codec of the process that reads them after a restart.
+	 * @param shadowCodec the codec.
+	 */
+	public void setShadowCodec(ShadowCodec shadowCodec) {
+		this.shadowCodec = shadowCodec;
+	}
+
+	@Override
+	public void putShadow(String key, Shadow<?> shadow) {
+		log.put(getNodeSpecificKey(key), shadowCodec.encode(shadow));
+	}
+
+	@Override
+	public Shadow<?> getShadow(String key) {
+		byte[] bytes = log.get(getNodeSpecificKey(key));
+		return Objects.isNull(bytes) ? null : shadowCodec.decode(bytes);
+	}
+
+	@Override
+	public Lock getLock(String key) {
+		return locks.get(key);
+	}
+
+	/**
+	 * Removes all of the remote node's shadows.
+	 */
+	public void clear() {
+		log.removeAll(getNodeSpecificKey(""));
+	}
+
+}
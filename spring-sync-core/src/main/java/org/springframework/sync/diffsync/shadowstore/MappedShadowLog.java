@@ -0,0 +1,382 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.sync.diffsync.shadowstore;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * <p>An append-structured log of serialized shadows in memory-mapped files, so that shadows survive a restart of the process.</p>
+ *
+ * <p>
+ * Shadows are appended as records to fixed-size segment files in a directory, the newest record of a key superseding older ones and
+ * a tombstone record removing it. Only a compact index of where each key's newest record lies is kept on the heap; records are read
+ * straight from the mapped files, and so from the page cache. On opening, the segments are replayed in order to rebuild the index,
+ * stopping at the first record that is incomplete or fails its checksum, which is where appending resumes.
+ * </p>
+ *
+ * <p>
+ * Superseded records take up space until the segments holding them are compacted: their live records are appended again, after which
+ * the segments are deleted. Compaction runs when a segment fills up while at least half of the older segments' bytes are superseded,
+ * and can be run at any other time with {@link #compact()}. Writes reach the page cache, and so survive the process; they're forced to
+ * disk on {@link #close()}. All remote nodes' {@link MappedFileShadowStore}s should share the same log.
+ * </p>
+ *
+ * @author Craig Walls
+ */
+public class MappedShadowLog implements AutoCloseable {
+
+	private static final String SEGMENT_FILE_FORMAT = "shadows-%08d.log";
+
+	private static final String SEGMENT_FILE_GLOB = "shadows-*.log";
+
+	// record length and checksum, followed by the key length, key, value length and value
+	private static final int HEADER_SIZE = 8;
+
+	private static final int TOMBSTONE = -1;
+
+	private final Path directory;
+
+	private final int segmentSize;
+
+	private final Map<String, Location> index = new ConcurrentHashMap<>();
+
+	private final TreeMap<Integer, Segment> segments = new TreeMap<>();
+
+	// reads share the lock, while appends and compaction take it exclusively
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	private Segment active;
+
+	private boolean compacting;
+
+	/**
+	 * Opens the log, recovering the shadows in any segments already in the directory.
+	 * @param directory the directory holding the segment files, created if it doesn't exist.
+	 * @param segmentSize the size of segment files, in bytes.
+	 * @throws IOException if the directory or its segments can't be read.
+	 */
+	public MappedShadowLog(Path directory, int segmentSize) throws IOException {
+		this.directory = directory;
+		this.segmentSize = segmentSize;
+		Files.createDirectories(directory);
+		List<Path> paths = new ArrayList<>();
+		try (Stream<Path> files = Files.list(directory)) {
+			files.filter(path -> path.getFileSystem().getPathMatcher("glob:" + SEGMENT_FILE_GLOB).matches(path.getFileName()))
+					.sorted()
+					.forEach(paths::add);
+		}
+		for (Path path : paths) {
+			String name = path.getFileName().toString();
+			int id = Integer.parseInt(name.substring(name.indexOf('-') + 1, name.indexOf('.')));
+			Segment segment = new Segment(id, path, map(path, Files.size(path)));
+			segments.put(id, segment);
+			recover(segment);
+		}
+		active = segments.isEmpty() ? addSegment(segmentSize) : segments.lastEntry().getValue();
+	}
+
+	/**
+	 * Stores a value under a key, superseding any value previously stored under it.
+	 * @param key the key.
+	 * @param value the value.
+	 */
+	public void put(String key, byte[] value) {
+		lock.writeLock().lock();
+		try {
+			supersede(index.put(key, append(key, value)));
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Retrieves the value stored under a key.
+	 * @param key the key.
+	 * @return the value, or null if there is none.
+	 */
+	public byte[] get(String key) {
+		lock.readLock().lock();
+		try {
+			Location location = index.get(key);
+			if (Objects.isNull(location)) {
+				return null;
+			}
+			byte[] value = new byte[location.length];
+			segments.get(location.segment).buffer.get(location.offset, value);
+			return value;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Removes the values stored under all keys starting with a prefix.
+	 * @param keyPrefix the prefix.
+	 */
+	public void removeAll(String keyPrefix) {
+		lock.writeLock().lock();
+		try {
+			for (String key : new ArrayList<>(index.keySet())) {
+				if (key.startsWith(keyPrefix)) {
+					append(key, null);
+					supersede(index.remove(key));
+				}
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Appends the live records of all segments but the one being appended to again, and deletes those segments.
+	 */
+	public void compact() {
+		lock.writeLock().lock();
+		compacting = true;
+		try {
+			List<Segment> sealed = new ArrayList<>(segments.headMap(active.id).values());
+			for (Map.Entry<String, Location> entry : index.entrySet()) {
+				Location location = entry.getValue();
+				if (location.segment < active.id) {
+					byte[] value = new byte[location.length];
+					segments.get(location.segment).buffer.get(location.offset, value);
+					entry.setValue(append(entry.getKey(), value));
+				}
+			}
+			// oldest first, so that a crash midway can't bring back a record a deleted tombstone had removed
+			for (Segment segment : sealed) {
+				segments.remove(segment.id);
+				Files.deleteIfExists(segment.path);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} finally {
+			compacting = false;
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * @return the number of segment files.
+	 */
+	public int getSegmentCount() {
+		lock.readLock().lock();
+		try {
+			return segments.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @return the number of bytes taken up by records that haven't been superseded.
+	 */
+	public long getLiveBytes() {
+		lock.readLock().lock();
+		try {
+			return segments.values().stream().mapToLong(segment -> segment.liveBytes).sum();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @return the number of bytes taken up by superseded records and tombstones, which compaction reclaims.
+	 */
+	public long getDeadBytes() {
+		lock.readLock().lock();
+		try {
+			return segments.values().stream().mapToLong(segment -> segment.position - segment.liveBytes).sum();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Forces the segments to disk.
+	 */
+	@Override
+	public void close() {
+		lock.writeLock().lock();
+		try {
+			segments.values().forEach(segment -> segment.buffer.force());
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	private Location append(String key, byte[] value) {
+		byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+		int length = 4 + keyBytes.length + 4 + (Objects.isNull(value) ? 0 : value.length);
+		int recordSize = HEADER_SIZE + length;
+		if (active.buffer.capacity() - active.position < recordSize) {
+			boolean compact = !compacting && shouldCompact();
+			active = addSegment(Math.max(segmentSize, recordSize));
+			if (compact) {
+				compact();
+				if (active.buffer.capacity() - active.position < recordSize) {
+					active = addSegment(Math.max(segmentSize, recordSize));
+				}
+			}
+		}
+		ByteBuffer record = ByteBuffer.allocate(length);
+		record.putInt(keyBytes.length).put(keyBytes);
+		record.putInt(Objects.isNull(value) ? TOMBSTONE : value.length);
+		if (Objects.nonNull(value)) {
+			record.put(value);
+		}
+		CRC32 crc = new CRC32();
+		crc.update(record.array());
+		int offset = active.position;
+		MappedByteBuffer buffer = active.buffer;
+		buffer.put(offset + HEADER_SIZE, record.array());
+		buffer.putInt(offset + 4, (int) crc.getValue());
+		// the length goes last, so that a record is only found once it's complete
+		buffer.putInt(offset, length);
+		active.position += recordSize;
+		if (Objects.isNull(value)) {
+			return null;
+		}
+		active.liveBytes += recordSize;
+		return new Location(active.id, offset + HEADER_SIZE + 4 + keyBytes.length + 4, value.length, recordSize);
+	}
+
+	private void supersede(Location location) {
+		if (Objects.nonNull(location)) {
+			segments.get(location.segment).liveBytes -= location.recordSize;
+		}
+	}
+
+	private boolean shouldCompact() {
+		long live = 0;
+		long total = 0;
+		for (Segment segment : segments.values()) {
+			live += segment.liveBytes;
+			total += segment.position;
+		}
+		return total > 0 && live * 2 <= total;
+	}
+
+	private void recover(Segment segment) {
+		MappedByteBuffer buffer = segment.buffer;
+		int offset = 0;
+		while (offset + HEADER_SIZE <= buffer.capacity()) {
+			int length = buffer.getInt(offset);
+			if (length <= 0 || offset + HEADER_SIZE + length > buffer.capacity()) {
+				break;
+			}
+			byte[] record = new byte[length];
+			buffer.get(offset + HEADER_SIZE, record);
+			CRC32 crc = new CRC32();
+			crc.update(record);
+			if ((int) crc.getValue() != buffer.getInt(offset + 4)) {
+				break;
+			}
+			ByteBuffer fields = ByteBuffer.wrap(record);
+			byte[] keyBytes = new byte[fields.getInt()];
+			fields.get(keyBytes);
+			String key = new String(keyBytes, StandardCharsets.UTF_8);
+			int valueLength = fields.getInt();
+			int recordSize = HEADER_SIZE + length;
+			if (valueLength == TOMBSTONE) {
+				supersede(index.remove(key));
+			} else {
+				segment.liveBytes += recordSize;
+				supersede(index.put(key, new Location(segment.id, offset + HEADER_SIZE + fields.position(), valueLength, recordSize)));
+			}
+			offset += recordSize;
+		}
+		segment.position = offset;
+		// clear what's left of an incomplete record, so that appending can resume here
+		if (offset + 4 <= buffer.capacity()) {
+			buffer.putInt(offset, 0);
+		}
+	}
+
+	private Segment addSegment(int size) {
+		int id = segments.isEmpty() ? 0 : segments.lastKey() + 1;
+		Path path = directory.resolve(String.format(SEGMENT_FILE_FORMAT, id));
+		Segment segment = new Segment(id, path, map(path, size));
+		segments.put(id, segment);
+		return segment;
+	}
+
+	private static MappedByteBuffer map(Path path, long size) {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private static final class Segment {
+
+		private final int id;
+
+		private final Path path;
+
+		private final MappedByteBuffer buffer;
+
+		private int position;
+
+		private long liveBytes;
+
+		private Segment(int id, Path path, MappedByteBuffer buffer) {
+			this.id = id;
+			this.path = path;
+			this.buffer = buffer;
+		}
+
+	}
+
+	private static final class Location {
+
+		private final int segment;
+
+		private final int offset;
+
+		private final int length;
+
+		private final int recordSize;
+
+		private Location(int segment, int offset, int length, int recordSize) {
+			this.segment = segment;
+			this.offset = offset;
+			this.length = length;
+			this.recordSize = recordSize;
+		}
+
+	}
+
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.sync.diffsync.shadowstore;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.sync.diffsync.Shadow;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * <p>{@link ShadowStore} decorator that keeps decoded copies of a remote store's shadows in a local {@link ShadowNearCache}.</p>
+ *
+ * <p>
+ * Usually the server that stored a shadow is the one that next retrieves it, since it served the remote node's previous request.
+ * Fetching the shadow from the remote store again, and deserializing it, is then wasted. Each shadow stored through this store is
+ * given a new random stamp, which the remote {@link StampedShadowStore} writes beside it in the same write. Retrieving the shadow only fetches
+ * its stamp, and the shadow itself only if the stamp shows that another server has changed it since.
+ * </p>
+ *
+ * <p>
+ * All remote nodes' stores should share the same near cache.
+ * </p>
+ *
+ * @author Craig Walls
+ */
+public class NearCachingShadowStore extends AbstractShadowStore implements DisposableBean {
+
+	private static final String STAMPS_REQUIRED_MSG = "The remote store must keep stamps beside its shadows";
+
+	private final StampedShadowStore remoteStore;
+
+	private final ShadowNearCache nearCache;
+
+	private final ShadowStamps stamps;
+
+	private final StripedLocks locks = new StripedLocks(16);
+
+	private final Set<String> keys = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * Constructs the near-caching {@link ShadowStore}.
+	 * @param remoteNodeId the unique id of the node that this shadow store is being created for.
+	 * @param remoteStore the store that shadows and their stamps are kept in, such as a {@link RedisShadowStore} with
+	 * {@link RedisShadowStamps} or a {@link GemfireShadowStore}.
+	 * @param nearCache the near cache shared with the shadow stores of other remote nodes.
+	 */
+	public NearCachingShadowStore(String remoteNodeId, StampedShadowStore remoteStore, ShadowNearCache nearCache) {
+		super(remoteNodeId);
+		this.stamps = remoteStore.getShadowStamps();
+		if (Objects.isNull(stamps)) {
+			throw new IllegalArgumentException(STAMPS_REQUIRED_MSG);
+		}
+		this.remoteStore = remoteStore;
+		this.nearCache = nearCache;
+	}
+
+	@Override
+	public void putShadow(String key, Shadow<?> shadow) {
+		putShadows(Map.of(key, shadow));
+	}
+
+	@Override
+	public void putShadows(Map<String, Shadow<?>> shadows) {
+		Map<String, Long> newStamps = new LinkedHashMap<>();
+		shadows.keySet().forEach(key -> newStamps.put(key, ThreadLocalRandom.current().nextLong()));
+		remoteStore.putShadows(shadows, newStamps);
+		// the copies that are now current
+		shadows.forEach((key, shadow) -> {
+			String nodeKey = getNodeSpecificKey(key);
+			nearCache.put(nodeKey, shadow, newStamps.get(key));
+			keys.add(nodeKey);
+		});
+	}
+
+	@Override
+	public Shadow<?> getShadow(String key) {
+		String nodeKey = getNodeSpecificKey(key);
+		// the stamp is fetched before the shadow, so that a change in between shows as a stale stamp next time rather than going unnoticed
+		long stamp = Objects.requireNonNullElse(stamps.getStamp(nodeKey), 0L);
+		Shadow<?> shadow = nearCache.get(nodeKey, stamp);
+		if (Objects.nonNull(shadow)) {
+			return shadow;
+		}
+		shadow = remoteStore.getShadow(key);
+		if (Objects.nonNull(shadow)) {
+			nearCache.put(nodeKey, shadow, stamp);
+			keys.add(nodeKey);
+		}
+		return shadow;
+	}
+
+	/**
+	 * Retrieves the shadows' stamps together, and then only the shadows whose copies are missing or stale, together.
+	 */
+	@Override
+	public Map<String, Shadow<?>> getShadows(Collection<String> shadowKeys) {
+		Map<String, String> nodeKeys = new LinkedHashMap<>();
+		shadowKeys.forEach(key -> nodeKeys.put(key, getNodeSpecificKey(key)));
+		Map<String, Long> fetchedStamps = stamps.getStamps(nodeKeys.values());
+		Map<String, Shadow<?>> shadows = new LinkedHashMap<>();
+		List<String> missing = new ArrayList<>();
+		nodeKeys.forEach((key, nodeKey) -> {
+			Shadow<?> shadow = nearCache.get(nodeKey, fetchedStamps.getOrDefault(nodeKey, 0L));
+			if (Objects.nonNull(shadow)) {
+				shadows.put(key, shadow);
+			} else {
+				missing.add(key);
+			}
+		});
+		if (!missing.isEmpty()) {
+			remoteStore.getShadows(missing).forEach((key, shadow) -> {
+				String nodeKey = nodeKeys.get(key);
+				nearCache.put(nodeKey, shadow, fetchedStamps.getOrDefault(nodeKey, 0L));
+				keys.add(nodeKey);
+				shadows.put(key, shadow);
+			});
+		}
+		return shadows;
+	}
+
+	@Override
+	public Lock getLock(String key) {
+		Lock lock = remoteStore.getLock(key);
+		return Objects.nonNull(lock) ? lock : locks.get(key);
+	}
+
+	/**
+	 * Drops the shadows' copies and stamps, and destroys the remote store.
+	 */
+	@Override
+	public void destroy() throws Exception {
+		for (String nodeKey : keys) {
+			nearCache.remove(nodeKey);
+			stamps.removeStamp(nodeKey);
+		}
+		keys.clear();
+		if (remoteStore instanceof DisposableBean disposableRemoteStore) {
+			disposableRemoteStore.destroy();
+		} else if (remoteStore instanceof AutoCloseable closeableRemoteStore) {
+			closeableRemoteStore.close();
+		}
+	}
+
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.sync.diffsync.shadowstore;
+
+import org.springframework.sync.diffsync.Shadow;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * <p>Implementation of {@link ShadowStore} that keeps shadows serialized in direct memory, out of the garbage collected heap.</p>
+ *
+ * <p>
+ * All remote nodes' stores should be given the same {@link SlabAllocator}. A store holds only a small index entry per shadow on the heap,
+ * encoding shadows with a {@link ShadowCodec} as they're stored and decoding them each time they're retrieved. With many remote nodes,
+ * this keeps the bulk of the shadows from being promoted to, and collected from, the old generation. Replaced shadows' blocks are
+ * freed for reuse. The store is closed when the remote node goes away, so that the blocks of its shadows are freed; as a session or
+ * WebSocket scoped bean, that happens when the session ends.
+ * </p>
+ *
+ * @author Craig Walls
+ */
+public class OffHeapShadowStore extends AbstractShadowStore implements AutoCloseable {
+
+	private final SlabAllocator allocator;
+
+	private ShadowCodec shadowCodec = new CompactShadowCodec();
+
+	// the index belongs to a single node, so shadows are kept under their own keys
+	private final Map<String, Block> index = new ConcurrentHashMap<>();
+
+	private final StripedLocks locks = new StripedLocks(16);
+
+	/**
+	 * Shadow store constructor
+	 * @param remoteNodeId the unique id of the node that this shadow store is being created for.
+	 * @param allocator the allocator shared with the shadow stores of other remote nodes.
+	 */
+	public OffHeapShadowStore(String remoteNodeId, SlabAllocator allocator) {
+		super(remoteNodeId);
+		this.allocator = allocator;
+	}
+
+	/**
+	 * Sets the {@link ShadowCodec} used to serialize shadows. Defaults to {@link CompactShadowCodec}.
+	 * @param shadowCodec the codec.
+	 */
+	public void setShadowCodec(ShadowCodec shadowCodec) {
+		this.shadowCodec = shadowCodec;
+	}
+
+	@Override
+	public void putShadow(String key, Shadow<?> shadow) {
+		byte[] bytes = shadowCodec.encode(shadow);
+		// a block is only freed while holding its key's lock, so that it can't be reused while it's being read
+		Lock lock = locks.get(key);
+		lock.lock();
+		try {
+			Block replaced = index.put(key, new Block(allocator.allocate(bytes), bytes.length));
+			if (Objects.nonNull(replaced)) {
+				allocator.free(replaced.handle, replaced.length);
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public Shadow<?> getShadow(String key) {
+		byte[] bytes;
+		Lock lock = locks.get(key);
+		lock.lock();
+		try {
+			Block block = index.get(key);
+			if (Objects.isNull(block)) {
+				return null;
+			}
+			bytes = allocator.read(block.handle, block.length);
+		} finally {
+			lock.unlock();
+		}
+		return shadowCodec.decode(bytes);
+	}
+
+	@Override
+	public Lock getLock(String key) {
+		return locks.get(key);
+	}
+
+	/**
+	 * Removes all shadows, freeing their blocks.
+	 */
+	@Override
+	public void close() {
+		index.keySet().forEach(key -> {
+			Lock lock = locks.get(key);
+			lock.lock();
+			try {
+				Block block = index.remove(key);
+				if (Objects.nonNull(block)) {
+					allocator.free(block.handle, block.length);
+				}
+			} finally {
+				lock.unlock();
+			}
+		});
+	}
+
+	private static final class Block {
+
+		private final long handle;
+
+		private final int length;
+
+		private Block(long handle, int length) {
+			this.handle = handle;
+			this.length = length;
+		}
+
+	}
+
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.sync.diffsync.shadowstore;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.data.redis.core.ReactiveRedisOperations;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.sync.diffsync.Shadow;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * <p>{@link AsyncShadowStore} implementation that stores shadows in Redis, via an injected {@link ReactiveRedisTemplate}.</p>
+ *
+ * <p>
+ * The reactive counterpart of {@link RedisShadowStore}: no thread waits on Redis while shadows are read or written. Updates of
+ * the same shadow are run one after another by an {@link UpdateSequencer}, so that they don't overwrite each other. The keys
+ * written are tracked once each, and deleted with a single DEL when the store is destroyed. When a time to live is set, each write
+ * also refreshes the key's expiry. A {@link ShadowRedisSerializer} with a {@link CompactShadowCodec} keeps shadows small.
+ * </p>
+ *
+ * @author Craig Walls
+ */
+public class ReactiveRedisShadowStore implements AsyncShadowStore, DisposableBean {
+
+	private final String keyPrefix;
+
+	private final ReactiveRedisOperations<String, Shadow<?>> redisTemplate;
+
+	private final UpdateSequencer updates = new UpdateSequencer();
+
+	private final Set<String> keys = ConcurrentHashMap.newKeySet();
+
+	// the node-specific key of each shadow key, composed on its first use
+	private final Map<String, String> composedKeys = new ConcurrentHashMap<>();
+
+	private Duration timeToLive;
+
+	/**
+	 * Constructs a reactive Redis-based {@link AsyncShadowStore}.
+	 * @param remoteNodeId the unique id of the node that this shadow store is being created for.
+	 * @param redisTemplate a {@link ReactiveRedisOperations} that will be used to store shadow copies.
+	 */
+	public ReactiveRedisShadowStore(String remoteNodeId, ReactiveRedisOperations<String, Shadow<?>> redisTemplate) {
+		this.keyPrefix = remoteNodeId + ":";
+		this.redisTemplate = redisTemplate;
+	}
+
+	/**
+	 * Sets how long shadows are kept after they were last written.
+	 * @param timeToLive the time to live, or null to keep shadows until the store is destroyed.
+	 */
+	public void setTimeToLive(Duration timeToLive) {
+		this.timeToLive = timeToLive;
+	}
+
+	@Override
+	public CompletionStage<Void> putShadow(String key, Shadow<?> shadow) {
+		String nodeKey = getNodeKey(key);
+		keys.add(nodeKey);
+		return set(nodeKey, shadow).then().toFuture();
+	}
+
+	@Override
+	public CompletionStage<Shadow<?>> getShadow(String key) {
+		return redisTemplate.opsForValue().get(getNodeKey(key)).toFuture();
+	}
+
+	/**
+	 * Retrieves the shadow copies with a single MGET.
+	 */
+	@Override
+	public CompletionStage<Map<String, Shadow<?>>> getShadows(Collection<String> shadowKeys) {
+		List<String> requested = new ArrayList<>(shadowKeys);
+		List<String> nodeKeys = new ArrayList<>(requested.size());
+		requested.forEach(key -> nodeKeys.add(getNodeKey(key)));
+		return redisTemplate.opsForValue().multiGet(nodeKeys).map(values -> {
+			Map<String, Shadow<?>> shadows = new LinkedHashMap<>();
+			for (int i = 0; i < requested.size(); i++) {
+				Shadow<?> shadow = values.get(i);
+				if (Objects.nonNull(shadow)) {
+					shadows.put(requested.get(i), shadow);
+				}
+			}
+			return shadows;
+		}).toFuture();
+	}
+
+	/**
+	 * Stores the shadow copies with a single MSET, which is atomic. As reactive templates don't run transactions, when a time
+	 * to live is set the shadows are written with concurrent SETs with an expiry instead, which share the connection's round trip
+	 * but aren't atomic.
+	 */
+	@Override
+	public CompletionStage<Void> putShadows(Map<String, Shadow<?>> shadows) {
+		Map<String, Shadow<?>> nodeShadows = new LinkedHashMap<>();
+		shadows.forEach((key, shadow) -> nodeShadows.put(getNodeKey(key), shadow));
+		keys.addAll(nodeShadows.keySet());
+		Mono<?> written = Objects.isNull(timeToLive) ? redisTemplate.opsForValue().multiSet(nodeShadows)
+				: Flux.fromIterable(nodeShadows.entrySet()).flatMap(entry -> set(entry.getKey(), entry.getValue())).then();
+		return written.then().toFuture();
+	}
+
+	private String getNodeKey(String key) {
+		String nodeKey = composedKeys.get(key);
+		return Objects.nonNull(nodeKey) ? nodeKey : composedKeys.computeIfAbsent(key, keyPrefix::concat);
+	}
+
+	@Override
+	public <R> CompletionStage<R> runExclusively(String key, Supplier<? extends CompletionStage<R>> update) {
+		return updates.run(key, update);
+	}
+
+	/**
+	 * Deletes all shadows written by this store with a single DEL, waiting for it to complete.
+	 */
+	@Override
+	public void destroy() {
+		if (!keys.isEmpty()) {
+			redisTemplate.delete(keys.toArray(new String[0])).block();
+			keys.clear();
+		}
+	}
+
+	private Mono<Boolean> set(String nodeKey, Shadow<?> shadow) {
+		return Objects.isNull(timeToLive) ? redisTemplate.opsForValue().set(nodeKey, shadow)
+				: redisTemplate.opsForValue().set(nodeKey, shadow, timeToLive);
+	}
+
+}
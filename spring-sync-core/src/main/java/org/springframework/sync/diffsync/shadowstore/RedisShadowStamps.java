@@ -0,0 +1,134 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.sync.diffsync.shadowstore;
+
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * <p>{@link ShadowStamps} implementation that keeps stamps in Redis as plain strings, via an injected {@link StringRedisTemplate}.</p>
+ *
+ * <p>
+ * Fetching a stamp is a round trip, but a much cheaper one than fetching and deserializing the shadow. When a channel is set,
+ * each new stamp is also published on it, so that {@link #invalidationListener(ShadowNearCache)} can drop stale shadows from the
+ * near caches of other servers as soon as they change.
+ * </p>
+ *
+ * @author Craig Walls
+ */
+public class RedisShadowStamps implements ShadowStamps {
+
+	private static final String STAMP_SUFFIX = ":stamp";
+
+	private final RedisOperations<String, String> redisTemplate;
+
+	private String channel;
+
+	private Duration timeToLive;
+
+	/**
+	 * Constructs the Redis-based {@link ShadowStamps}.
+	 * @param redisTemplate a {@link RedisOperations} with string keys and values that will be used to store stamps.
+	 */
+	public RedisShadowStamps(RedisOperations<String, String> redisTemplate) {
+		this.redisTemplate = redisTemplate;
+	}
+
+	/**
+	 * Sets the channel on which new stamps are published.
+	 * @param channel the channel, or null not to publish stamps.
+	 */
+	public void setChannel(String channel) {
+		this.channel = channel;
+	}
+
+	/**
+	 * Sets how long stamps are kept after they were last set, which should match the time to live of the shadows.
+	 * @param timeToLive the time to live, or null to keep stamps until they're removed.
+	 */
+	public void setTimeToLive(Duration timeToLive) {
+		this.timeToLive = timeToLive;
+	}
+
+	@Override
+	public Long getStamp(String key) {
+		String stamp = redisTemplate.opsForValue().get(key + STAMP_SUFFIX);
+		return Objects.isNull(stamp) ? null : Long.valueOf(stamp);
+	}
+
+	/**
+	 * Retrieves the stamps with a single MGET.
+	 */
+	@Override
+	public Map<String, Long> getStamps(Collection<String> keys) {
+		List<String> stampKeys = new ArrayList<>(keys.size());
+		keys.forEach(key -> stampKeys.add(key + STAMP_SUFFIX));
+		List<String> values = redisTemplate.opsForValue().multiGet(stampKeys);
+		Map<String, Long> stamps = new HashMap<>();
+		int i = 0;
+		for (String key : keys) {
+			String stamp = Objects.isNull(values) ? null : values.get(i++);
+			if (Objects.nonNull(stamp)) {
+				stamps.put(key, Long.valueOf(stamp));
+			}
+		}
+		return stamps;
+	}
+
+	@Override
+	public void setStamp(String key, long stamp) {
+		if (Objects.isNull(timeToLive)) {
+			redisTemplate.opsForValue().set(key + STAMP_SUFFIX, Long.toString(stamp));
+		} else {
+			redisTemplate.opsForValue().set(key + STAMP_SUFFIX, Long.toString(stamp), timeToLive);
+		}
+		if (Objects.nonNull(channel)) {
+			redisTemplate.convertAndSend(channel, stamp + " " + key);
+		}
+	}
+
+	@Override
+	public void removeStamp(String key) {
+		redisTemplate.delete(key + STAMP_SUFFIX);
+	}
+
+	/**
+	 * Creates a listener for the stamps published on the channel, to be registered with a
+	 * {@link org.springframework.data.redis.listener.RedisMessageListenerContainer}.
+	 * @param nearCache the near cache to drop changed shadows from.
+	 * @return the listener.
+	 */
+	public static MessageListener invalidationListener(ShadowNearCache nearCache) {
+		return (message, pattern) -> {
+			String body = new String(message.getBody(), StandardCharsets.UTF_8);
+			int separator = body.indexOf(' ');
+			if (separator > 0) {
+				nearCache.invalidate(body.substring(separator + 1), Long.parseLong(body.substring(0, separator)));
+			}
+		};
+	}
+
+}
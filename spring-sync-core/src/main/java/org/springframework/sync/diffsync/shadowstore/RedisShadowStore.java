@@ -16,23 +16,51 @@
 package org.springframework.sync.diffsync.shadowstore;
 
 import org.springframework.beans.factory.DisposableBean;
+import org.springframework.dao.DataAccessException;
 import org.springframework.data.redis.core.RedisOperations;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
 import org.springframework.sync.diffsync.Shadow;
 
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * {@link ShadowStore} implementation that stores shadows in Redis, via an injected {@link RedisTemplate}.
- * 
+ * <p>{@link ShadowStore} implementation that stores shadows in Redis, via an injected {@link RedisTemplate}.</p>
+ *
+ * <p>
+ * The keys written are tracked once each, and deleted with a single DEL when the store is destroyed. When a time to live is set,
+ * each write also refreshes the key's expiry, so that the shadows of a remote node that goes away without the store being destroyed,
+ * such as after a server crash, are still removed by Redis.
+ * </p>
+ *
+ * <p>
+ * Shadows are written with the template's value serializer. A {@link ShadowRedisSerializer} with a {@link CompactShadowCodec}
+ * keeps them much smaller than the default Java serialization.
+ * </p>
+ *
+ * <p>
+ * When {@link RedisShadowStamps} are set, a {@link NearCachingShadowStore} writes shadows and their stamps in a single MULTI/EXEC.
+ * </p>
+ *
  * @author Craig Walls
  */
-public class RedisShadowStore extends AbstractShadowStore implements DisposableBean {
+public class RedisShadowStore extends AbstractShadowStore implements StampedShadowStore, DisposableBean {
 
 	private final RedisOperations<String, Shadow<?>> redisTemplate;
 	
-	private final List<String> keys = new ArrayList<>();
+	private final Set<String> keys = ConcurrentHashMap.newKeySet();
+
+	private Duration timeToLive;
+
+	private RedisShadowStamps shadowStamps;
 
 	/**
 	 * Constructs a Redis-based {@link ShadowStore}.
@@ -44,21 +72,127 @@ public class RedisShadowStore extends AbstractShadowStore implements DisposableB
 		this.redisTemplate = redisTemplate;
 	}
 
+	/**
+	 * Sets how long shadows are kept after they were last written.
+	 * @param timeToLive the time to live, or null to keep shadows until the store is destroyed.
+	 */
+	public void setTimeToLive(Duration timeToLive) {
+		this.timeToLive = timeToLive;
+	}
+
+	/**
+	 * Sets the stamps kept beside the shadows. The stamps' template must share this store's connection factory, so that
+	 * the stamps are written on the connection of the shadows' transaction.
+	 * @param shadowStamps the stamps, or null to keep none.
+	 */
+	public void setShadowStamps(RedisShadowStamps shadowStamps) {
+		this.shadowStamps = shadowStamps;
+	}
+
+	@Override
+	public ShadowStamps getShadowStamps() {
+		return shadowStamps;
+	}
+
 	@Override
 	public void putShadow(String key, Shadow<?> shadow) {
 		String nodeKey = getNodeSpecificKey(key);
-		redisTemplate.opsForValue().set(nodeKey, shadow);
+		if (Objects.isNull(timeToLive)) {
+			redisTemplate.opsForValue().set(nodeKey, shadow);
+		} else {
+			redisTemplate.opsForValue().set(nodeKey, shadow, timeToLive);
+		}
 		keys.add(nodeKey);
 	}
 
+	/**
+	 * Stores the shadow copies in one round trip and atomically: with a single MSET or, when a time to live is set,
+	 * with a pipelined MULTI/EXEC of SETs with an expiry, as MSET can't set one.
+	 */
+	@Override
+	public void putShadows(Map<String, Shadow<?>> shadows) {
+		Map<String, Shadow<?>> nodeShadows = new LinkedHashMap<>();
+		shadows.forEach((key, shadow) -> nodeShadows.put(getNodeSpecificKey(key), shadow));
+		if (Objects.isNull(timeToLive)) {
+			redisTemplate.opsForValue().multiSet(nodeShadows);
+		} else {
+			redisTemplate.executePipelined(new SessionCallback<Object>() {
+				@Override
+				@SuppressWarnings("unchecked")
+				public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+					RedisOperations<String, Shadow<?>> transaction = (RedisOperations<String, Shadow<?>>) operations;
+					transaction.multi();
+					nodeShadows.forEach((nodeKey, shadow) -> transaction.opsForValue().set(nodeKey, shadow, timeToLive));
+					transaction.exec();
+					return null;
+				}
+			});
+		}
+		keys.addAll(nodeShadows.keySet());
+	}
+
+	/**
+	 * Stores the shadow copies and their stamps in one round trip and atomically, with a pipelined MULTI/EXEC.
+	 */
+	@Override
+	public void putShadows(Map<String, Shadow<?>> shadows, Map<String, Long> stamps) {
+		Map<String, Shadow<?>> nodeShadows = new LinkedHashMap<>();
+		shadows.forEach((key, shadow) -> nodeShadows.put(getNodeSpecificKey(key), shadow));
+		redisTemplate.executePipelined(new SessionCallback<Object>() {
+			@Override
+			@SuppressWarnings("unchecked")
+			public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+				RedisOperations<String, Shadow<?>> transaction = (RedisOperations<String, Shadow<?>>) operations;
+				transaction.multi();
+				nodeShadows.forEach((nodeKey, shadow) -> {
+					if (Objects.isNull(timeToLive)) {
+						transaction.opsForValue().set(nodeKey, shadow);
+					} else {
+						transaction.opsForValue().set(nodeKey, shadow, timeToLive);
+					}
+				});
+				// the connection is bound to the session, so the stamps' template queues its commands in the same transaction
+				stamps.forEach((key, stamp) -> shadowStamps.setStamp(getNodeSpecificKey(key), stamp));
+				transaction.exec();
+				return null;
+			}
+		});
+		keys.addAll(nodeShadows.keySet());
+	}
+
 	@Override
 	public Shadow<?> getShadow(String key) {
 		return redisTemplate.opsForValue().get(getNodeSpecificKey(key));
 	}
 
+	/**
+	 * Retrieves the shadow copies with a single MGET.
+	 */
+	@Override
+	public Map<String, Shadow<?>> getShadows(Collection<String> shadowKeys) {
+		List<String> nodeKeys = new ArrayList<>(shadowKeys.size());
+		shadowKeys.forEach(key -> nodeKeys.add(getNodeSpecificKey(key)));
+		List<Shadow<?>> values = redisTemplate.opsForValue().multiGet(nodeKeys);
+		Map<String, Shadow<?>> shadows = new LinkedHashMap<>();
+		int i = 0;
+		for (String key : shadowKeys) {
+			Shadow<?> shadow = Objects.isNull(values) ? null : values.get(i++);
+			if (Objects.nonNull(shadow)) {
+				shadows.put(key, shadow);
+			}
+		}
+		return shadows;
+	}
+
+	/**
+	 * Deletes all shadows written by this store with a single DEL.
+	 */
 	@Override
 	public void destroy() {
-		redisTemplate.delete(keys);
+		if (!keys.isEmpty()) {
+			redisTemplate.delete(keys);
+			keys.clear();
+		}
 	}
 
 }
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.sync.diffsync.shadowstore;
+
+import org.springframework.sync.AddOperation;
+import org.springframework.sync.CopyOperation;
+import org.springframework.sync.FromOperation;
+import org.springframework.sync.MoveOperation;
+import org.springframework.sync.Patch;
+import org.springframework.sync.PatchOperation;
+import org.springframework.sync.RemoveOperation;
+import org.springframework.sync.ReplaceOperation;
+import org.springframework.sync.TestOperation;
+import org.springframework.sync.diffsync.Shadow;
+import org.springframework.sync.diffsync.VersionedPatch;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * <p>{@link ShadowCodec} that writes a shadow's versions and patches field by field, and its resource and patch values with Java serialization.</p>
+ *
+ * <p>
+ * Neither shadows nor patch operations are {@link java.io.Serializable}, but resources and the values in patches usually are, since
+ * entities are. The whole shadow is written to a single object stream, so that each class is described only once.
+ * </p>
+ *
+ * @author Craig Walls
+ */
+public class SerializingShadowCodec implements ShadowCodec {
+
+	private static final byte NULL = 0;
+
+	private static final byte OBJECT = 1;
+
+	private static final byte PATCH = 2;
+
+	@Override
+	public byte[] encode(Shadow<?> shadow) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+			out.writeInt(shadow.getServerVersion());
+			out.writeInt(shadow.getClientVersion());
+			Object resource = shadow.getResource();
+			if (Objects.isNull(resource)) {
+				out.writeByte(NULL);
+			} else if (resource instanceof Patch patch) {
+				out.writeByte(PATCH);
+				writeOperations(patch.getOperations(), out);
+			} else {
+				out.writeByte(OBJECT);
+				out.writeObject(resource);
+			}
+			List<VersionedPatch> edits = Objects.isNull(shadow.getEdits()) ? List.of() : shadow.getEdits();
+			out.writeInt(edits.size());
+			for (VersionedPatch edit : edits) {
+				out.writeLong(edit.getServerVersion());
+				out.writeLong(edit.getClientVersion());
+				writeOperations(edit.getOperations(), out);
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException("Unable to encode shadow", e);
+		}
+		return bytes.toByteArray();
+	}
+
+	@Override
+	public Shadow<?> decode(byte[] bytes) {
+		try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+			int serverVersion = in.readInt();
+			int clientVersion = in.readInt();
+			byte kind = in.readByte();
+			Object resource = kind == NULL ? null : kind == PATCH ? new Patch(readOperations(in)) : in.readObject();
+			int editCount = in.readInt();
+			List<VersionedPatch> edits = new ArrayList<>(editCount);
+			for (int i = 0; i < editCount; i++) {
+				long editServerVersion = in.readLong();
+				long editClientVersion = in.readLong();
+				edits.add(new VersionedPatch(readOperations(in), editServerVersion, editClientVersion));
+			}
+			return new Shadow<>(resource, serverVersion, clientVersion, edits);
+		} catch (IOException | ClassNotFoundException e) {
+			throw new IllegalStateException("Unable to decode shadow", e);
+		}
+	}
+
+	private void writeOperations(List<PatchOperation> operations, ObjectOutputStream out) throws IOException {
+		out.writeInt(operations.size());
+		for (PatchOperation operation : operations) {
+			out.writeUTF(operation.getOp());
+			out.writeUTF(operation.getPath());
+			if (operation instanceof FromOperation fromOperation) {
+				out.writeUTF(fromOperation.getFrom());
+			} else if (!(operation instanceof RemoveOperation)) {
+				out.writeObject(operation.getValue());
+			}
+		}
+	}
+
+	private List<PatchOperation> readOperations(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		int count = in.readInt();
+		List<PatchOperation> operations = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			String op = in.readUTF();
+			String path = in.readUTF();
+			operations.add(switch (op) {
+				case AddOperation.OP_TYPE -> new AddOperation(path, in.readObject());
+				case ReplaceOperation.OP_TYPE -> new ReplaceOperation(path, in.readObject());
+				case TestOperation.OP_TYPE -> new TestOperation(path, in.readObject());
+				case RemoveOperation.OP_TYPE -> new RemoveOperation(path);
+				case MoveOperation.OP_TYPE -> new MoveOperation(path, in.readUTF());
+				case CopyOperation.OP_TYPE -> new CopyOperation(path, in.readUTF());
+				default -> throw new IOException("Unknown operation '" + op + "'");
+			});
+		}
+		return operations;
+	}
+
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.sync.diffsync.shadowstore;
+
+import org.springframework.sync.diffsync.Shadow;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * <p>Decoded copies of remotely stored shadows, kept locally by the {@link NearCachingShadowStore}s of all remote nodes.</p>
+ *
+ * <p>
+ * Each copy is kept with the stamp the shadow had when it was stored or fetched. Up to a fixed number of copies are kept,
+ * the least recently used being dropped first. A copy whose stamp no longer matches its shadow's is fetched again; to drop copies
+ * as soon as another server changes their shadow, a pub/sub listener, such as {@link RedisShadowStamps#invalidationListener(ShadowNearCache)},
+ * reports new stamps through {@link #invalidate(String, long)}. Hits, misses and invalidations are exposed for monitoring.
+ * </p>
+ *
+ * @author Craig Walls
+ */
+public class ShadowNearCache {
+
+	private final Map<String, Entry> entries;
+
+	private long hitCount;
+
+	private long missCount;
+
+	private long invalidationCount;
+
+	/**
+	 * Constructs the near cache.
+	 * @param maxEntries the number of shadows kept.
+	 */
+	public ShadowNearCache(int maxEntries) {
+		this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+				return size() > maxEntries;
+			}
+		};
+	}
+
+	/**
+	 * Drops the copy of a shadow, unless it already has the given stamp.
+	 * @param key the node-specific key of the shadow.
+	 * @param stamp the shadow's new stamp.
+	 */
+	public synchronized void invalidate(String key, long stamp) {
+		Entry entry = entries.get(key);
+		if (Objects.nonNull(entry) && entry.stamp != stamp) {
+			entries.remove(key);
+			invalidationCount++;
+		}
+	}
+
+	/**
+	 * @return the number of shadows served from the near cache.
+	 */
+	public synchronized long getHitCount() {
+		return hitCount;
+	}
+
+	/**
+	 * @return the number of shadows that had to be fetched, because they weren't in the near cache or had changed.
+	 */
+	public synchronized long getMissCount() {
+		return missCount;
+	}
+
+	/**
+	 * @return the number of copies dropped because their shadow was changed by another server.
+	 */
+	public synchronized long getInvalidationCount() {
+		return invalidationCount;
+	}
+
+	/**
+	 * @return the number of shadows kept.
+	 */
+	public synchronized int getSize() {
+		return entries.size();
+	}
+
+	// Returns the copy if its stamp is the given one.
+	synchronized Shadow<?> get(String key, long stamp) {
+		Entry entry = entries.get(key);
+		if (Objects.isNull(entry) || entry.stamp != stamp) {
+			missCount++;
+			return null;
+		}
+		hitCount++;
+		return entry.shadow;
+	}
+
+	synchronized void put(String key, Shadow<?> shadow, long stamp) {
+		entries.put(key, new Entry(shadow, stamp));
+	}
+
+	synchronized void remove(String key) {
+		entries.remove(key);
+	}
+
+	private static final class Entry {
+
+		private final Shadow<?> shadow;
+
+		private final long stamp;
+
+		private Entry(Shadow<?> shadow, long stamp) {
+			this.shadow = shadow;
+			this.stamp = stamp;
+		}
+
+	}
+
+}
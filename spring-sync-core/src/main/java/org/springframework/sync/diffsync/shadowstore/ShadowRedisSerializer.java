@@ -0,0 +1,71 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.sync.diffsync.shadowstore;
+
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+import org.springframework.sync.diffsync.Shadow;
+
+import java.util.Objects;
+
+/**
+ * <p>{@link RedisSerializer} that writes shadows with a {@link ShadowCodec}, to be set as the value serializer of the
+ * {@link org.springframework.data.redis.core.RedisTemplate} given to a {@link RedisShadowStore}.</p>
+ *
+ * <p>
+ * With a {@link CompactShadowCodec}, shadows take a fraction of the space and encoding time of the template's default Java serialization,
+ * which also requires shadows and patches to be {@link java.io.Serializable}.
+ * </p>
+ *
+ * @author Craig Walls
+ */
+public class ShadowRedisSerializer implements RedisSerializer<Shadow<?>> {
+
+	private final ShadowCodec shadowCodec;
+
+	/**
+	 * Constructs the serializer.
+	 * @param shadowCodec the codec that shadows are written with.
+	 */
+	public ShadowRedisSerializer(ShadowCodec shadowCodec) {
+		this.shadowCodec = shadowCodec;
+	}
+
+	@Override
+	public byte[] serialize(Shadow<?> shadow) throws SerializationException {
+		if (Objects.isNull(shadow)) {
+			return new byte[0];
+		}
+		try {
+			return shadowCodec.encode(shadow);
+		} catch (IllegalStateException e) {
+			throw new SerializationException("Unable to serialize shadow", e);
+		}
+	}
+
+	@Override
+	public Shadow<?> deserialize(byte[] bytes) throws SerializationException {
+		if (Objects.isNull(bytes) || bytes.length == 0) {
+			return null;
+		}
+		try {
+			return shadowCodec.decode(bytes);
+		} catch (IllegalStateException e) {
+			throw new SerializationException("Unable to deserialize shadow", e);
+		}
+	}
+
+}
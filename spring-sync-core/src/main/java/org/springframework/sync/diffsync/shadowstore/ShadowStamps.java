@@ -0,0 +1,68 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.sync.diffsync.shadowstore;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Strategy interface for keeping a small stamp beside each shadow in a remote store, changed whenever the shadow is stored,
+ * so that a {@link NearCachingShadowStore} can tell whether its local copy is still current without fetching the shadow.
+ *
+ * @author Craig Walls
+ */
+public interface ShadowStamps {
+
+	/**
+	 * Retrieves a shadow's stamp.
+	 * @param key the node-specific key of the shadow
+	 * @return the stamp, or null if there is none
+	 */
+	Long getStamp(String key);
+
+	/**
+	 * Retrieves several shadows' stamps together. Implementations that can should fetch them in a single round trip.
+	 * By default, they're retrieved one by one.
+	 * @param keys the node-specific keys of the shadows
+	 * @return the stamps, by key, leaving out keys without a stamp
+	 */
+	default Map<String, Long> getStamps(Collection<String> keys) {
+		Map<String, Long> stamps = new HashMap<>();
+		for (String key : keys) {
+			Long stamp = getStamp(key);
+			if (Objects.nonNull(stamp)) {
+				stamps.put(key, stamp);
+			}
+		}
+		return stamps;
+	}
+
+	/**
+	 * Stores a shadow's stamp.
+	 * @param key the node-specific key of the shadow
+	 * @param stamp the stamp
+	 */
+	void setStamp(String key, long stamp);
+
+	/**
+	 * Removes a shadow's stamp.
+	 * @param key the node-specific key of the shadow
+	 */
+	void removeStamp(String key);
+
+}
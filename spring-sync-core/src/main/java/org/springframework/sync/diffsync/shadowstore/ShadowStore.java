@@ -17,6 +17,14 @@ package org.springframework.sync.diffsync.shadowstore;
 
 import org.springframework.sync.diffsync.Shadow;
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.locks.Lock;
+
 /**
  * Strategy interface for maintaining shadow copies across requests.
  * 
@@ -38,4 +46,51 @@ public interface ShadowStore {
 	 */
 	Shadow<?> getShadow(String key);
 
+	/**
+	 * Retrieves several shadow copies, such as a shadow and its backup, together.
+	 * Stores that can should read them in a single round trip. By default, they're retrieved one by one.
+	 * @param keys the keys that the shadows are stored under
+	 * @return the shadow copies, by key, leaving out keys that no shadow is stored under
+	 */
+	default Map<String, Shadow<?>> getShadows(Collection<String> keys) {
+		Map<String, Shadow<?>> shadows = new LinkedHashMap<>();
+		for (String key : keys) {
+			Shadow<?> shadow = getShadow(key);
+			if (Objects.nonNull(shadow)) {
+				shadows.put(key, shadow);
+			}
+		}
+		return shadows;
+	}
+
+	/**
+	 * Stores several shadow copies, such as a shadow and its backup, together.
+	 * Stores that can should write them in a single round trip, and atomically, so that they're never seen out of step with each other.
+	 * By default, they're stored one by one.
+	 * @param shadows the shadow copies, by the keys to store them under
+	 */
+	default void putShadows(Map<String, Shadow<?>> shadows) {
+		shadows.forEach(this::putShadow);
+	}
+
+	/**
+	 * Retrieves the keys of the shadow copies this store holds, so that they can be handed over to another server.
+	 * Stores shared by all servers, which needn't hand anything over, and stores that can't list their keys return none, the default.
+	 * @return the keys that shadows are stored under
+	 */
+	default Set<String> getKeys() {
+		return Collections.emptySet();
+	}
+
+	/**
+	 * Retrieves the lock to hold while reading, modifying and storing a shadow copy and its backup,
+	 * so that concurrent updates of the same shadow don't overwrite each other.
+	 * Stores that don't coordinate concurrent updates return null, the default.
+	 * @param key the key that the shadow is stored under
+	 * @return the lock, or null
+	 */
+	default Lock getLock(String key) {
+		return null;
+	}
+
 }
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.sync.diffsync.shadowstore;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>The distinct versions of each shadowed resource, shared by the {@link SharedVersionShadowStore}s of all remote nodes.</p>
+ *
+ * <p>
+ * A resource that is already held, as the same object, becomes a reference to that version, as does a resource equal to the version
+ * most recently added for the same key, which is where remote nodes converge as they catch up. Only those two cheap checks are made:
+ * a resource equal to an older version is kept as a new version. Versions are reference counted and dropped once no shadow refers to
+ * them, so memory grows with the number of distinct versions in use rather than with the number of remote nodes.
+ * Resources should implement equals(); otherwise only shadows holding the very same object share a version.
+ * </p>
+ *
+ * <p>
+ * Versions are shared and must not be changed; {@link org.springframework.sync.diffsync.DiffSync} only ever replaces shadows.
+ * </p>
+ *
+ * @author Craig Walls
+ */
+public class SharedShadowVersions {
+
+	private final Map<VersionKey, Version> versions = new ConcurrentHashMap<>();
+
+	private final Map<String, Version> latest = new ConcurrentHashMap<>();
+
+	/**
+	 * @param key the shadow store key, without any node-specific prefix.
+	 * @return the number of distinct versions held for the key.
+	 */
+	public int getVersionCount(String key) {
+		return (int) versions.keySet().stream().filter(versionKey -> versionKey.key.equals(key)).count();
+	}
+
+	/**
+	 * Obtains a reference to the version holding the given resource, or equal to it if it is the key's latest version,
+	 * adding the resource as the key's latest version if there is none.
+	 * @param key the shadow store key, without any node-specific prefix.
+	 * @param resource the resource.
+	 * @return the version, which must be released once the reference is dropped.
+	 */
+	Version acquire(String key, Object resource) {
+		VersionKey versionKey = new VersionKey(key, resource);
+		while (true) {
+			Version version = versions.get(versionKey);
+			if (Objects.isNull(version)) {
+				Version candidate = latest.get(key);
+				version = Objects.nonNull(candidate) && Objects.equals(candidate.resource, resource) ? candidate : null;
+			}
+			if (Objects.nonNull(version)) {
+				if (version.retain()) {
+					return version;
+				}
+				// the version is being dropped, so look again
+				continue;
+			}
+			Version created = new Version(versionKey);
+			if (Objects.isNull(versions.putIfAbsent(versionKey, created))) {
+				latest.put(key, created);
+				return created;
+			}
+		}
+	}
+
+	/**
+	 * Drops a reference to a version, removing the version once it is no longer referenced.
+	 * @param version the version.
+	 */
+	void release(Version version) {
+		if (version.references.decrementAndGet() == 0) {
+			versions.remove(version.versionKey, version);
+			latest.remove(version.versionKey.key, version);
+		}
+	}
+
+	/**
+	 * A shared version of a resource.
+	 */
+	static final class Version {
+
+		private final VersionKey versionKey;
+
+		private final Object resource;
+
+		private final AtomicInteger references = new AtomicInteger(1);
+
+		private Version(VersionKey versionKey) {
+			this.versionKey = versionKey;
+			this.resource = versionKey.resource;
+		}
+
+		Object getResource() {
+			return resource;
+		}
+
+		// a version whose references have all been dropped can't be taken up again
+		private boolean retain() {
+			int current;
+			do {
+				current = references.get();
+				if (current == 0) {
+					return false;
+				}
+			} while (!references.compareAndSet(current, current + 1));
+			return true;
+		}
+
+	}
+
+	// Finds versions by key and by the identity of their resource, neither hashing nor comparing the resource.
+	private static final class VersionKey {
+
+		private final String key;
+
+		private final Object resource;
+
+		private VersionKey(String key, Object resource) {
+			this.key = key;
+			this.resource = resource;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			return other instanceof VersionKey versionKey && versionKey.resource == resource && versionKey.key.equals(key);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * key.hashCode() + System.identityHashCode(resource);
+		}
+
+	}
+
+}
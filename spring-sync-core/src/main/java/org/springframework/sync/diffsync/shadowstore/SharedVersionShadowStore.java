@@ -0,0 +1,103 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.sync.diffsync.shadowstore;
+
+import org.springframework.sync.Patch;
+import org.springframework.sync.diffsync.Shadow;
+import org.springframework.sync.diffsync.shadowstore.SharedShadowVersions.Version;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.stream.Collectors;
+
+/**
+ * <p>Implementation of {@link ShadowStore} that keeps shadows in memory as references into {@link SharedShadowVersions}.</p>
+ *
+ * <p>
+ * All remote nodes' stores should be given the same {@link SharedShadowVersions}. A shadow then holds its versions and a reference
+ * to a shared version of its resource, so that thousands of remote nodes synchronizing the same resource share one copy of each version
+ * they're at instead of holding a copy each. Backups, being patches against their shadow, are kept by the store itself.
+ * The store is closed when the remote node goes away, so that the versions it referenced can be dropped; as a session or WebSocket scoped
+ * bean, that happens when the session ends.
+ * </p>
+ *
+ * @author Craig Walls
+ */
+public class SharedVersionShadowStore extends AbstractShadowStore implements AutoCloseable {
+
+	private final SharedShadowVersions versions;
+
+	private final Map<String, Shadow<?>> store = new ConcurrentHashMap<>();
+
+	private final StripedLocks locks = new StripedLocks(16);
+
+	/**
+	 * Shadow store constructor
+	 * @param remoteNodeId the unique id of the node that this shadow store is being created for.
+	 * @param versions the versions shared with the shadow stores of other remote nodes.
+	 */
+	public SharedVersionShadowStore(String remoteNodeId, SharedShadowVersions versions) {
+		super(remoteNodeId);
+		this.versions = versions;
+	}
+
+	@Override
+	public void putShadow(String key, Shadow<?> shadow) {
+		Object resource = shadow.getResource();
+		Shadow<?> stored = Objects.isNull(resource) || resource instanceof Patch ? shadow
+				: new Shadow<>(versions.acquire(key, resource), shadow.getServerVersion(), shadow.getClientVersion(), shadow.getEdits());
+		release(store.put(getNodeSpecificKey(key), stored));
+	}
+
+	@Override
+	public Shadow<?> getShadow(String key) {
+		Shadow<?> stored = store.get(getNodeSpecificKey(key));
+		if (Objects.nonNull(stored) && stored.getResource() instanceof Version version) {
+			return new Shadow<>(version.getResource(), stored.getServerVersion(), stored.getClientVersion(), stored.getEdits());
+		}
+		return stored;
+	}
+
+	@Override
+	public Set<String> getKeys() {
+		return store.keySet().stream().map(this::getKey).collect(Collectors.toSet());
+	}
+
+	@Override
+	public Lock getLock(String key) {
+		return locks.get(key);
+	}
+
+	/**
+	 * Removes all shadows, releasing the shared versions they refer to.
+	 */
+	@Override
+	public void close() {
+		for (String nodeSpecificKey : store.keySet()) {
+			release(store.remove(nodeSpecificKey));
+		}
+	}
+
+	private void release(Shadow<?> shadow) {
+		if (Objects.nonNull(shadow) && shadow.getResource() instanceof Version version) {
+			versions.release(version);
+		}
+	}
+
+}
@@ -0,0 +1,298 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.sync.diffsync.shadowstore;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * <p>Allocates blocks of direct (off-heap) memory out of large slabs, for keeping serialized data out of the garbage collected heap.</p>
+ *
+ * <p>
+ * Block sizes are rounded up to size classes, four per power of two, so that freed blocks can be reused for blocks of similar size.
+ * A freed block is merged with the free blocks next to it in its slab, and free blocks are drawn from, best fit first, before any new
+ * memory is carved out of a slab; the rest of a free block that is larger than needed stays free. A block freed at the end of the slab
+ * being carved from gives its memory back to the slab. A slab whose blocks have all been freed is released, unless it's the one being
+ * carved from. Blocks larger than a slab get a slab of their own, which is released when the block is freed.
+ * </p>
+ *
+ * <p>
+ * Blocks are referred to by handles, and must be freed with the length they were allocated with. Allocating and freeing are
+ * synchronized, while reading and writing distinct blocks can proceed in parallel. The reserved, allocated and resident bytes
+ * are exposed for monitoring, along with the resulting fragmentation.
+ * </p>
+ *
+ * @author Craig Walls
+ */
+public class SlabAllocator {
+
+	private static final int MIN_BLOCK_SIZE = 64;
+
+	private final int slabSize;
+
+	private final List<Slab> slabs = new ArrayList<>();
+
+	// the indices of released slabs, whose entries in slabs are free for new slabs
+	private final Deque<Integer> releasedSlabs = new ArrayDeque<>();
+
+	// the handles of free blocks by their size, for best fit
+	private final TreeMap<Integer, Set<Long>> freeBlocks = new TreeMap<>();
+
+	private Slab currentSlab;
+
+	private long reservedBytes;
+
+	private long allocatedBytes;
+
+	private long residentBytes;
+
+	private long freeBytes;
+
+	/**
+	 * Constructs the allocator.
+	 * @param slabSize the size of the slabs blocks are carved out of, in bytes.
+	 */
+	public SlabAllocator(int slabSize) {
+		if (slabSize < MIN_BLOCK_SIZE) {
+			throw new IllegalArgumentException("Slab size must be at least " + MIN_BLOCK_SIZE);
+		}
+		this.slabSize = slabSize;
+	}
+
+	/**
+	 * Allocates a block and writes data to it.
+	 * @param data the data.
+	 * @return the block's handle.
+	 */
+	public long allocate(byte[] data) {
+		long handle = allocate(data.length);
+		slab(handle).put(offset(handle), data);
+		return handle;
+	}
+
+	/**
+	 * Reads the data in a block.
+	 * @param handle the block's handle.
+	 * @param length the length of the data, as allocated.
+	 * @return the data.
+	 */
+	public byte[] read(long handle, int length) {
+		byte[] data = new byte[length];
+		slab(handle).get(offset(handle), data);
+		return data;
+	}
+
+	/**
+	 * Frees a block, making it available for reuse.
+	 * @param handle the block's handle.
+	 * @param length the length of the data, as allocated.
+	 */
+	public synchronized void free(long handle, int length) {
+		int size = sizeClass(length);
+		allocatedBytes -= size;
+		residentBytes -= length;
+		Slab slab = slabs.get(slabIndex(handle));
+		slab.allocatedBytes -= size;
+		if (size > slabSize) {
+			release(slab);
+			return;
+		}
+		int offset = offset(handle);
+		Map.Entry<Integer, Integer> before = slab.freeBlocks.floorEntry(offset);
+		if (Objects.nonNull(before) && before.getKey() + before.getValue() == offset) {
+			removeFreeBlock(slab, before.getKey(), before.getValue());
+			offset = before.getKey();
+			size += before.getValue();
+		}
+		Integer afterSize = slab.freeBlocks.get(offset + size);
+		if (Objects.nonNull(afterSize)) {
+			removeFreeBlock(slab, offset + size, afterSize);
+			size += afterSize;
+		}
+		if (slab == currentSlab && offset + size == slab.buffer.position()) {
+			slab.buffer.position(offset);
+		} else {
+			addFreeBlock(slab, offset, size);
+		}
+		if (slab.allocatedBytes == 0 && slab != currentSlab) {
+			release(slab);
+		}
+	}
+
+	/**
+	 * @return the number of bytes of direct memory reserved for slabs.
+	 */
+	public synchronized long getReservedBytes() {
+		return reservedBytes;
+	}
+
+	/**
+	 * @return the number of bytes taken up by allocated blocks, including the rounding up to their size class.
+	 */
+	public synchronized long getAllocatedBytes() {
+		return allocatedBytes;
+	}
+
+	/**
+	 * @return the number of bytes of data in allocated blocks.
+	 */
+	public synchronized long getResidentBytes() {
+		return residentBytes;
+	}
+
+	/**
+	 * @return the number of bytes in freed blocks awaiting reuse.
+	 */
+	public synchronized long getFreeBytes() {
+		return freeBytes;
+	}
+
+	/**
+	 * @return the share of reserved memory that doesn't hold data, between 0 and 1: freed blocks, the rounding up of blocks to their
+	 * size class, and the ends of slabs too short for the blocks that came after them.
+	 */
+	public synchronized double getFragmentation() {
+		return reservedBytes == 0 ? 0 : 1 - (double) residentBytes / reservedBytes;
+	}
+
+	private synchronized long allocate(int length) {
+		int size = sizeClass(length);
+		allocatedBytes += size;
+		residentBytes += length;
+		if (size > slabSize) {
+			Slab slab = addSlab(size);
+			slab.allocatedBytes = size;
+			return handle(slab.index, 0);
+		}
+		Map.Entry<Integer, Set<Long>> bestFit = freeBlocks.ceilingEntry(size);
+		if (Objects.nonNull(bestFit)) {
+			long handle = bestFit.getValue().iterator().next();
+			Slab slab = slabs.get(slabIndex(handle));
+			removeFreeBlock(slab, offset(handle), bestFit.getKey());
+			if (bestFit.getKey() > size) {
+				addFreeBlock(slab, offset(handle) + size, bestFit.getKey() - size);
+			}
+			slab.allocatedBytes += size;
+			return handle;
+		}
+		if (Objects.isNull(currentSlab) || currentSlab.buffer.remaining() < size) {
+			currentSlab = addSlab(slabSize);
+		}
+		int offset = currentSlab.buffer.position();
+		currentSlab.buffer.position(offset + size);
+		currentSlab.allocatedBytes += size;
+		return handle(currentSlab.index, offset);
+	}
+
+	private Slab addSlab(int size) {
+		ByteBuffer buffer = ByteBuffer.allocateDirect(size);
+		reservedBytes += size;
+		if (!releasedSlabs.isEmpty()) {
+			Slab slab = new Slab(releasedSlabs.pop(), buffer);
+			slabs.set(slab.index, slab);
+			return slab;
+		}
+		Slab slab = new Slab(slabs.size(), buffer);
+		slabs.add(slab);
+		return slab;
+	}
+
+	// The slab's free blocks can no longer be drawn from, and its memory is left to be reclaimed with the buffer.
+	private void release(Slab slab) {
+		for (Iterator<Map.Entry<Integer, Integer>> iterator = slab.freeBlocks.entrySet().iterator(); iterator.hasNext(); ) {
+			Map.Entry<Integer, Integer> block = iterator.next();
+			iterator.remove();
+			removeFromSizeIndex(handle(slab.index, block.getKey()), block.getValue());
+		}
+		slabs.set(slab.index, null);
+		releasedSlabs.push(slab.index);
+		reservedBytes -= slab.buffer.capacity();
+	}
+
+	private void addFreeBlock(Slab slab, int offset, int size) {
+		slab.freeBlocks.put(offset, size);
+		freeBlocks.computeIfAbsent(size, key -> new LinkedHashSet<>()).add(handle(slab.index, offset));
+		freeBytes += size;
+	}
+
+	private void removeFreeBlock(Slab slab, int offset, int size) {
+		slab.freeBlocks.remove(offset);
+		removeFromSizeIndex(handle(slab.index, offset), size);
+	}
+
+	private void removeFromSizeIndex(long handle, int size) {
+		Set<Long> handles = freeBlocks.get(size);
+		handles.remove(handle);
+		if (handles.isEmpty()) {
+			freeBlocks.remove(size);
+		}
+		freeBytes -= size;
+	}
+
+	private synchronized ByteBuffer slab(long handle) {
+		return slabs.get(slabIndex(handle)).buffer;
+	}
+
+	private static int slabIndex(long handle) {
+		return (int) (handle >>> 32);
+	}
+
+	private static int offset(long handle) {
+		return (int) handle;
+	}
+
+	private static long handle(int slabIndex, int offset) {
+		return ((long) slabIndex << 32) | (offset & 0xFFFFFFFFL);
+	}
+
+	// Rounds up to a multiple of a quarter of the enclosing power of two, so that rounding wastes at most a fifth of a block.
+	static int sizeClass(int length) {
+		if (length <= MIN_BLOCK_SIZE) {
+			return MIN_BLOCK_SIZE;
+		}
+		int step = Integer.highestOneBit(length - 1) >> 2;
+		return (length + step - 1) / step * step;
+	}
+
+	private static final class Slab {
+
+		private final int index;
+
+		// blocks are carved out of the slab from its position on
+		private final ByteBuffer buffer;
+
+		// the slab's free blocks, by offset, for merging with their neighbours
+		private final TreeMap<Integer, Integer> freeBlocks = new TreeMap<>();
+
+		private long allocatedBytes;
+
+		private Slab(int index, ByteBuffer buffer) {
+			this.index = index;
+			this.buffer = buffer;
+		}
+
+	}
+
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.sync.diffsync.shadowstore;
+
+import org.springframework.sync.diffsync.Shadow;
+
+import java.util.Map;
+
+/**
+ * <p>A {@link ShadowStore} keeping {@link ShadowStamps} beside its shadows, for a {@link NearCachingShadowStore} to tell whether
+ * its copies are current.</p>
+ *
+ * <p>
+ * Shadows are stored together with their new stamps in a single write, so that no server finds a new stamp beside an old
+ * shadow, which it would then keep a copy of as if it were current. Stores make the write atomic where they can, and otherwise
+ * make sure that a write that fails part way leaves no new stamp beside an old shadow.
+ * </p>
+ *
+ * @author Craig Walls
+ */
+public interface StampedShadowStore extends ShadowStore {
+
+	/**
+	 * @return the stamps kept beside the shadows, or null if none are kept.
+	 */
+	ShadowStamps getShadowStamps();
+
+	/**
+	 * Stores shadows together with their new stamps, in a single write, leaving no new stamp beside an old shadow if it fails.
+	 * @param shadows the shadows, by key.
+	 * @param stamps the shadows' stamps, by the same keys.
+	 */
+	void putShadows(Map<String, Shadow<?>> shadows, Map<String, Long> stamps);
+
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.sync.diffsync.shadowstore;
+
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <p>A fixed number of locks that keys are spread over, for guarding per-key updates without a lock per key.</p>
+ *
+ * <p>
+ * A key always maps to the same lock, so updates of one key are serialized, while updates of keys on different stripes proceed
+ * in parallel. Keys that share a stripe contend needlessly, which more stripes make less likely. The locks are reentrant.
+ * </p>
+ *
+ * @author Craig Walls
+ */
+public class StripedLocks {
+
+	private final Lock[] locks;
+
+	/**
+	 * Constructs the striped locks.
+	 * @param stripes the number of locks, rounded up to a power of two.
+	 */
+	public StripedLocks(int stripes) {
+		if (stripes < 1) {
+			throw new IllegalArgumentException("Stripes must be positive");
+		}
+		int size = Integer.highestOneBit(stripes);
+		this.locks = new Lock[size < stripes ? size << 1 : size];
+		for (int i = 0; i < locks.length; i++) {
+			locks[i] = new ReentrantLock();
+		}
+	}
+
+	/**
+	 * @param key the key.
+	 * @return the lock guarding the key.
+	 */
+	public Lock get(String key) {
+		int hash = key.hashCode();
+		// spread the high bits, which the mask would otherwise ignore
+		return locks[(hash ^ (hash >>> 16)) & (locks.length - 1)];
+	}
+
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.sync.diffsync.shadowstore;
+
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * <p>Runs asynchronous updates of each key one after another, in the order they were started, the non-blocking counterpart of {@link StripedLocks}.</p>
+ *
+ * <p>
+ * Each update starts when the one started before it for the same key completes, whether it succeeded or not. Waiting updates
+ * are callbacks on their predecessor rather than threads. Updates of different keys don't wait for each other. Only keys with
+ * an update in progress are held.
+ * </p>
+ *
+ * @author Craig Walls
+ */
+public class UpdateSequencer {
+
+	// the last update started for each key
+	private final ConcurrentMap<String, CompletableFuture<?>> tails = new ConcurrentHashMap<>();
+
+	/**
+	 * Runs an update once the updates of the same key started before it have completed.
+	 * @param key the key.
+	 * @param update the update.
+	 * @param <R> the type of the update's result.
+	 * @return a stage completing with the update's result.
+	 */
+	public <R> CompletionStage<R> run(String key, Supplier<? extends CompletionStage<R>> update) {
+		CompletableFuture<R> done = new CompletableFuture<>();
+		CompletableFuture<?> previous = tails.put(key, done);
+		if (Objects.isNull(previous)) {
+			start(key, update, done);
+		} else {
+			previous.whenComplete((result, failure) -> start(key, update, done));
+		}
+		return done;
+	}
+
+	private <R> void start(String key, Supplier<? extends CompletionStage<R>> update, CompletableFuture<R> done) {
+		try {
+			update.get().whenComplete((result, failure) -> {
+				if (Objects.isNull(failure)) {
+					done.complete(result);
+				} else {
+					done.completeExceptionally(failure);
+				}
+				tails.remove(key, done);
+			});
+		} catch (RuntimeException e) {
+			done.completeExceptionally(e);
+			tails.remove(key, done);
+		}
+	}
+
+}
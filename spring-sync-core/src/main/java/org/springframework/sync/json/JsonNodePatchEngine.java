@@ -0,0 +1,342 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.sync.json;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.NullNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import difflib.Delta;
+import difflib.DiffUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.sync.*;
+import org.springframework.sync.exception.PatchException;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * <p>{@link PatchEngine} that diffs and patches Jackson {@link JsonNode} trees directly.</p>
+ *
+ * <p>
+ * Intended for resources that are kept as JSON documents rather than as Java objects. Paths are resolved as JSON Pointers
+ * against {@link ObjectNode}s and {@link ArrayNode}s, so neither SpEL nor Java serialization is involved. Copies are made
+ * with {@link JsonNode#deepCopy()}. Besides "-", "~" is accepted as the append index for arrays, matching the paths produced
+ * elsewhere in Spring Sync.
+ * </p>
+ *
+ * @author Craig Walls
+ */
+public class JsonNodePatchEngine implements PatchEngine<JsonNode> {
+
+	private static final String PATH_NOT_FOUND_MSG = "Path '%s' does not exist.";
+	private static final String PATH_NOT_CONTAINER_MSG = "Parent of path '%s' is not an object or an array.";
+	private static final String INVALID_INDEX_MSG = "Invalid array index in path '%s'.";
+	private static final String ROOT_NOT_REMOVABLE_MSG = "The document root can't be removed.";
+	private static final String TEST_AGAINST_PATH_FAIL_MSG = "Test against path '%s' failed.";
+	private static final String UNSUPPORTED_OPERATION_MSG = "Unsupported operation: ";
+
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+
+	private static final JsonNodeFactory NODE_FACTORY = JsonNodeFactory.instance;
+
+	private static final Comparator<JsonNode> NUMERIC_AWARE_COMPARATOR = (a, b) -> {
+		if (a.isNumber() && b.isNumber()) {
+			return a.decimalValue().compareTo(b.decimalValue());
+		}
+		return a.equals(b) ? 0 : 1;
+	};
+
+	@Override
+	public Patch diff(JsonNode original, JsonNode modified) {
+		List<PatchOperation> operations = new ArrayList<>();
+		diffNode(operations, StringUtils.EMPTY, original, modified);
+		return new Patch(operations);
+	}
+
+	@Override
+	public Patch diff(List<JsonNode> original, List<JsonNode> modified) {
+		List<PatchOperation> operations = new ArrayList<>();
+		diffArray(operations, StringUtils.EMPTY, original, modified);
+		return new Patch(operations);
+	}
+
+	@Override
+	public JsonNode apply(Patch patch, JsonNode target) throws PatchException {
+		JsonNode work = copy(target);
+		for (PatchOperation operation : patch.getOperations()) {
+			work = perform(operation, work);
+		}
+		return work;
+	}
+
+	@Override
+	public List<JsonNode> apply(Patch patch, List<JsonNode> target) throws PatchException {
+		ArrayNode patched = (ArrayNode) apply(patch, NODE_FACTORY.arrayNode(target.size()).addAll(target));
+		List<JsonNode> result = new ArrayList<>(patched.size());
+		patched.elements().forEachRemaining(result::add);
+		return result;
+	}
+
+	@Override
+	public JsonNode copy(JsonNode target) {
+		return Objects.isNull(target) ? null : target.deepCopy();
+	}
+
+	@Override
+	public List<JsonNode> copy(List<JsonNode> target) {
+		List<JsonNode> copy = new ArrayList<>(target.size());
+		target.forEach(node -> copy.add(copy(node)));
+		return copy;
+	}
+
+	// diff helpers
+
+	private void diffNode(List<PatchOperation> operations, String path, JsonNode original, JsonNode modified) {
+		if (Objects.equals(original, modified)) {
+			return;
+		}
+		if (isMissing(modified)) {
+			operations.add(new RemoveOperation(path));
+			return;
+		}
+		if (isMissing(original)) {
+			operations.add(new AddOperation(path, modified));
+			return;
+		}
+		if (original.isObject() && modified.isObject()) {
+			diffObject(operations, path, (ObjectNode) original, (ObjectNode) modified);
+		} else if (original.isArray() && modified.isArray()) {
+			diffArray(operations, path, elements(original), elements(modified));
+		} else {
+			operations.add(new TestOperation(path, original));
+			operations.add(new ReplaceOperation(path, modified));
+		}
+	}
+
+	private void diffObject(List<PatchOperation> operations, String path, ObjectNode original, ObjectNode modified) {
+		for (Iterator<Map.Entry<String, JsonNode>> fields = original.fields(); fields.hasNext(); ) {
+			Map.Entry<String, JsonNode> field = fields.next();
+			String fieldPath = path + "/" + escape(field.getKey());
+			JsonNode modifiedValue = modified.get(field.getKey());
+			if (Objects.isNull(modifiedValue)) {
+				operations.add(new RemoveOperation(fieldPath));
+			} else {
+				diffNode(operations, fieldPath, field.getValue(), modifiedValue);
+			}
+		}
+		for (Iterator<Map.Entry<String, JsonNode>> fields = modified.fields(); fields.hasNext(); ) {
+			Map.Entry<String, JsonNode> field = fields.next();
+			if (!original.has(field.getKey())) {
+				operations.add(new AddOperation(path + "/" + escape(field.getKey()), field.getValue()));
+			}
+		}
+	}
+
+	private void diffArray(List<PatchOperation> operations, String path, List<JsonNode> original, List<JsonNode> modified) {
+		List<Delta<JsonNode>> deltas = DiffUtils.diff(original, modified).getDeltas();
+		for (Delta<JsonNode> delta : deltas) {
+			// earlier deltas have already been applied, so the revised position is the current position in the document
+			int position = delta.getRevised().getPosition();
+			List<JsonNode> originalLines = delta.getOriginal().getLines();
+			List<JsonNode> revisedLines = delta.getRevised().getLines();
+			int common = Math.min(originalLines.size(), revisedLines.size());
+			for (int offset = 0; offset < common; offset++) {
+				diffNode(operations, path + "/" + (position + offset), originalLines.get(offset), revisedLines.get(offset));
+			}
+			for (int offset = common; offset < revisedLines.size(); offset++) {
+				operations.add(new AddOperation(path + "/" + (position + offset), revisedLines.get(offset)));
+			}
+			for (int offset = common; offset < originalLines.size(); offset++) {
+				operations.add(new TestOperation(path + "/" + (position + common), originalLines.get(offset)));
+				operations.add(new RemoveOperation(path + "/" + (position + common)));
+			}
+		}
+	}
+
+	// patch helpers
+
+	private JsonNode perform(PatchOperation operation, JsonNode document) throws PatchException {
+		String path = operation.getPath();
+		switch (operation.getOp()) {
+			case AddOperation.OP_TYPE -> {
+				return add(document, path, valueOf(operation));
+			}
+			case ReplaceOperation.OP_TYPE -> {
+				get(document, path);
+				return set(document, path, valueOf(operation));
+			}
+			case RemoveOperation.OP_TYPE -> {
+				remove(document, path);
+				return document;
+			}
+			case MoveOperation.OP_TYPE -> {
+				String from = ((FromOperation) operation).getFrom();
+				JsonNode value = get(document, from);
+				remove(document, from);
+				return add(document, path, value);
+			}
+			case CopyOperation.OP_TYPE -> {
+				return add(document, path, get(document, ((FromOperation) operation).getFrom()).deepCopy());
+			}
+			case TestOperation.OP_TYPE -> {
+				JsonNode actual = get(document, path);
+				if (!valueOf(operation).equals(NUMERIC_AWARE_COMPARATOR, actual)) {
+					throw new PatchException(String.format(TEST_AGAINST_PATH_FAIL_MSG, path));
+				}
+				return document;
+			}
+			default -> throw new PatchException(UNSUPPORTED_OPERATION_MSG + operation.getOp());
+		}
+	}
+
+	private JsonNode add(JsonNode document, String path, JsonNode value) throws PatchException {
+		if (path.isEmpty()) {
+			return value;
+		}
+		JsonNode parent = get(document, parentPath(path));
+		String token = lastToken(path);
+		if (parent instanceof ArrayNode array) {
+			array.insert(arrayIndex(array, token, path, true), value);
+		} else if (parent instanceof ObjectNode object) {
+			object.set(token, value);
+		} else {
+			throw new PatchException(String.format(PATH_NOT_CONTAINER_MSG, path));
+		}
+		return document;
+	}
+
+	private JsonNode set(JsonNode document, String path, JsonNode value) throws PatchException {
+		if (path.isEmpty()) {
+			return value;
+		}
+		JsonNode parent = get(document, parentPath(path));
+		String token = lastToken(path);
+		if (parent instanceof ArrayNode array) {
+			array.set(arrayIndex(array, token, path, false), value);
+		} else if (parent instanceof ObjectNode object) {
+			object.set(token, value);
+		} else {
+			throw new PatchException(String.format(PATH_NOT_CONTAINER_MSG, path));
+		}
+		return document;
+	}
+
+	private void remove(JsonNode document, String path) throws PatchException {
+		if (path.isEmpty()) {
+			throw new PatchException(ROOT_NOT_REMOVABLE_MSG);
+		}
+		get(document, path);
+		JsonNode parent = get(document, parentPath(path));
+		String token = lastToken(path);
+		if (parent instanceof ArrayNode array) {
+			array.remove(arrayIndex(array, token, path, false));
+		} else {
+			((ObjectNode) parent).remove(token);
+		}
+	}
+
+	private JsonNode get(JsonNode document, String path) throws PatchException {
+		JsonNode node = document;
+		if (path.isEmpty()) {
+			return node;
+		}
+		for (String token : path.substring(1).split("/", -1)) {
+			token = unescape(token);
+			if (node instanceof ArrayNode array) {
+				node = array.get(arrayIndex(array, token, path, false));
+			} else if (node instanceof ObjectNode object) {
+				node = object.get(token);
+			} else {
+				node = null;
+			}
+			if (Objects.isNull(node)) {
+				throw new PatchException(String.format(PATH_NOT_FOUND_MSG, path));
+			}
+		}
+		return node;
+	}
+
+	private int arrayIndex(ArrayNode array, String token, String path, boolean insert) throws PatchException {
+		if ("-".equals(token) || "~".equals(token)) {
+			if (insert) {
+				return array.size();
+			}
+			if (array.size() > 0) {
+				return array.size() - 1;
+			}
+			throw new PatchException(String.format(PATH_NOT_FOUND_MSG, path));
+		}
+		try {
+			int index = Integer.parseInt(token);
+			if (index < 0 || index > array.size() || (!insert && index == array.size())) {
+				throw new PatchException(String.format(PATH_NOT_FOUND_MSG, path));
+			}
+			return index;
+		} catch (NumberFormatException e) {
+			throw new PatchException(String.format(INVALID_INDEX_MSG, path), e);
+		}
+	}
+
+	private JsonNode valueOf(PatchOperation operation) {
+		Object value = operation.getValue();
+		if (value instanceof JsonNode node) {
+			return node;
+		}
+		if (value instanceof JsonLateObjectEvaluator evaluator) {
+			return evaluator.getValueNode();
+		}
+		if (Objects.isNull(value)) {
+			return NullNode.getInstance();
+		}
+		return MAPPER.valueToTree(value);
+	}
+
+	// private helpers
+
+	private static boolean isMissing(JsonNode node) {
+		return Objects.isNull(node) || node.isMissingNode();
+	}
+
+	private static List<JsonNode> elements(JsonNode arrayNode) {
+		List<JsonNode> elements = new ArrayList<>(arrayNode.size());
+		arrayNode.elements().forEachRemaining(elements::add);
+		return elements;
+	}
+
+	private static String parentPath(String path) {
+		return path.substring(0, path.lastIndexOf('/'));
+	}
+
+	private static String lastToken(String path) {
+		return unescape(path.substring(path.lastIndexOf('/') + 1));
+	}
+
+	private static String escape(String token) {
+		return token.replace("~", "~0").replace("/", "~1");
+	}
+
+	private static String unescape(String token) {
+		return token.replace("~1", "/").replace("~0", "~");
+	}
+
+}
@@ -77,27 +77,35 @@ public class JsonPatchPatchConverter implements PatchConverter<JsonNode> {
 	 * @return a {@link JsonNode} containing JSON Patch.
 	 */
 	public JsonNode convert(Patch patch) {
-		List<PatchOperation> operations = patch.getOperations();
+		ArrayNode patchNode = JsonNodeFactory.instance.arrayNode();
+		for (PatchOperation operation : patch.getOperations()) {
+			patchNode.add(convertOperation(operation));
+		}
+		return patchNode;
+	}
+
+	/**
+	 * Renders a single {@link PatchOperation} as a JSON Patch operation object.
+	 * @param operation the operation
+	 * @return an {@link ObjectNode} containing the JSON Patch operation.
+	 */
+	public ObjectNode convertOperation(PatchOperation operation) {
 		JsonNodeFactory nodeFactory = JsonNodeFactory.instance;
-		ArrayNode patchNode = nodeFactory.arrayNode();
-		for (PatchOperation operation : operations) {
-			ObjectNode opNode = nodeFactory.objectNode();
-			opNode.set(PatchOperation.OP_ENTRY, nodeFactory.textNode(operation.getOp()));
-			opNode.set(PatchOperation.PATH_ENTRY, nodeFactory.textNode(operation.getPath()));
-			if (operation instanceof FromOperation fromOp) {
-				opNode.set(FromOperation.FROM_ENTRY, nodeFactory.textNode(fromOp.getFrom()));
-			}
-			Object value = operation.getValue();
-			if (Objects.nonNull(value)) {
-				if (value instanceof JsonLateObjectEvaluator jsonLateObjectEvaluator) {
-					opNode.set(PatchOperation.VALUE_ENTRY, jsonLateObjectEvaluator.getValueNode());
-				} else {
-					opNode.set(PatchOperation.VALUE_ENTRY, MAPPER.valueToTree(value));
-				}
+		ObjectNode opNode = nodeFactory.objectNode();
+		opNode.set(PatchOperation.OP_ENTRY, nodeFactory.textNode(operation.getOp()));
+		opNode.set(PatchOperation.PATH_ENTRY, nodeFactory.textNode(operation.getPath()));
+		if (operation instanceof FromOperation fromOp) {
+			opNode.set(FromOperation.FROM_ENTRY, nodeFactory.textNode(fromOp.getFrom()));
+		}
+		Object value = operation.getValue();
+		if (Objects.nonNull(value)) {
+			if (value instanceof JsonLateObjectEvaluator jsonLateObjectEvaluator) {
+				opNode.set(PatchOperation.VALUE_ENTRY, jsonLateObjectEvaluator.getValueNode());
+			} else {
+				opNode.set(PatchOperation.VALUE_ENTRY, MAPPER.valueToTree(value));
 			}
-			patchNode.add(opNode);
 		}
-		return patchNode;
+		return opNode;
 	}
 
 	private Object valueFromJsonNode(String path, JsonNode valueNode) {
@@ -119,12 +127,9 @@ public class JsonPatchPatchConverter implements PatchConverter<JsonNode> {
 		if (valueNode.isLong()) {
 			return valueNode.asLong();
 		}
-		if (valueNode.isObject()) {
+		if (valueNode.isObject() || valueNode.isArray()) {
 			return new JsonLateObjectEvaluator(valueNode);
 		}
-		if (valueNode.isArray()) {
-			// TODO: Convert valueNode to array
-		}
 
 		return null;
 	}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.sync.json;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.sync.Patch;
+import org.springframework.sync.PatchOperation;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+
+/**
+ * <p>Writes {@link PatchOperation}s to an {@link OutputStream} as a JSON Patch document, one operation at a time.</p>
+ *
+ * <p>
+ * Unlike rendering a whole {@link Patch} with {@link JsonPatchPatchConverter#convert(Patch)}, the document is never built in memory.
+ * Operations are pulled from the iterator only as fast as the stream accepts them, and the stream is flushed every few operations
+ * so the receiver can start applying the patch before it is complete.
+ * </p>
+ *
+ * @author Craig Walls
+ */
+public class JsonPatchStreamWriter {
+
+	public static final int DEFAULT_FLUSH_INTERVAL = 256;
+
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+
+	private final JsonPatchPatchConverter converter = new JsonPatchPatchConverter();
+
+	private final int flushInterval;
+
+	public JsonPatchStreamWriter() {
+		this(DEFAULT_FLUSH_INTERVAL);
+	}
+
+	/**
+	 * Constructs the writer.
+	 * @param flushInterval the number of operations to write between flushes of the stream.
+	 */
+	public JsonPatchStreamWriter(int flushInterval) {
+		if (flushInterval <= 0) {
+			throw new IllegalArgumentException("Flush interval must be positive");
+		}
+		this.flushInterval = flushInterval;
+	}
+
+	/**
+	 * Writes a patch. The stream is flushed but left open.
+	 * @param patch the patch to write.
+	 * @param out the stream to write to.
+	 * @throws IOException if the stream can't be written to.
+	 */
+	public void write(Patch patch, OutputStream out) throws IOException {
+		write(patch.getOperations().iterator(), out);
+	}
+
+	/**
+	 * Writes the operations produced by an iterator as a JSON Patch document. The stream is flushed but left open.
+	 * @param operations the operations to write.
+	 * @param out the stream to write to.
+	 * @throws IOException if the stream can't be written to.
+	 */
+	public void write(Iterator<PatchOperation> operations, OutputStream out) throws IOException {
+		try (JsonGenerator generator = MAPPER.getFactory().createGenerator(out)) {
+			generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+			generator.writeStartArray();
+			int written = 0;
+			while (operations.hasNext()) {
+				MAPPER.writeTree(generator, converter.convertOperation(operations.next()));
+				if (++written % flushInterval == 0) {
+					generator.flush();
+				}
+			}
+			generator.writeEndArray();
+		}
+	}
+
+}
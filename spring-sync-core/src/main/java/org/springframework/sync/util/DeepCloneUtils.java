@@ -15,27 +15,43 @@
  */
 package org.springframework.sync.util;
 
-import org.apache.commons.lang3.SerializationUtils;
-
-import java.io.Serializable;
 import java.util.List;
-import java.util.stream.Collectors;
 
 /**
  * Utility methods for deep cloning an object graph.
+ * Cloning is delegated to the default {@link Cloner}, which is a {@link ReflectiveCloner} unless configured otherwise.
  * @author Craig Walls
  */
 public class DeepCloneUtils {
 
+	private static volatile Cloner defaultCloner = new ReflectiveCloner();
+
+	/**
+	 * @return the {@link Cloner} used when no other cloner is configured.
+	 */
+	public static Cloner getDefaultCloner() {
+		return defaultCloner;
+	}
+
+	/**
+	 * Sets the {@link Cloner} used when no other cloner is configured.
+	 * @param cloner the cloner (for example, a {@link SerializationCloner} to restore cloning through Java serialization)
+	 */
+	public static void setDefaultCloner(Cloner cloner) {
+		if (cloner == null) {
+			throw new IllegalArgumentException("Cloner must not be null");
+		}
+		defaultCloner = cloner;
+	}
+
 	/**
 	 * Deep clones an object.
 	 * @param original a single, non-list object to be cloned
 	 * @param <T> the object's type
 	 * @return the cloned object
 	 */
-	@SuppressWarnings("unchecked")
 	public static <T> T deepClone(T original) {
-		return (T) SerializationUtils.clone((Serializable) original);
+		return defaultCloner.deepClone(original);
 	}
 	
 	/**
@@ -44,12 +60,8 @@ public class DeepCloneUtils {
 	 * @param <T> the list's generic type
 	 * @return the cloned list
 	 */
-	@SuppressWarnings("unchecked")
 	public static <T> List<T> deepClone(List<T> original) {
-		return original
-				.stream()
-				.map(t -> (T) SerializationUtils.clone((Serializable) t))
-				.collect(Collectors.toList());
+		return defaultCloner.deepClone(original);
 	}
 	
 }
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.sync.util;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * <p>Marks a type whose instances never change once constructed.</p>
+ *
+ * <p>
+ * Instances of immutable types are shared rather than copied when shadows are made, and patches change them by building new instances
+ * (through a record's canonical constructor or a "with" method such as <code>withDescription(String)</code>).
+ * Records and classes whose fields are all final and immutable are detected without the annotation;
+ * it is needed for types that can't be detected, such as those holding unmodifiable collections.
+ * Everything reachable from an annotated type must be immutable as well.
+ * </p>
+ *
+ * @author Craig Walls
+ * @see ImmutableTypes
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface Immutable {
+}
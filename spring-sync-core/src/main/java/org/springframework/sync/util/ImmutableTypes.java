@@ -0,0 +1,207 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.sync.util;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.RecordComponent;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>Utility methods for detecting immutable types and producing changed copies of their instances.</p>
+ *
+ * <p>
+ * A type is immutable if it is one of the JDK's immutable value types (strings, boxed primitives, enums, java.time types...),
+ * is annotated with {@link Immutable}, or is a record or class whose fields are all final and declared with immutable, final types.
+ * The components of records are checked like the fields of classes, so a record holding a mutable object or collection is not immutable:
+ * it can't be changed in place itself, but what it holds can. The outcome is cached per class.
+ * </p>
+ *
+ * <p>
+ * The JDK's unmodifiable collections ({@code List.of}, {@code Collections.unmodifiableList}, {@code Collections.emptyList}...)
+ * aren't immutable, as their elements may not be, but can't be changed in place either, and are copied to be changed.
+ * </p>
+ *
+ * @author Craig Walls
+ */
+public class ImmutableTypes {
+
+	private static final Set<Class<?>> IMMUTABLE_VALUE_TYPES = Set.of(String.class, Boolean.class, Character.class, Byte.class, Short.class,
+			Integer.class, Long.class, Float.class, Double.class, BigInteger.class, BigDecimal.class, UUID.class, Class.class);
+
+	private static final Set<Class<?>> UNMODIFIABLE_COLLECTION_TYPES = unmodifiableCollectionTypes();
+
+	private static final Map<Class<?>, Boolean> IMMUTABILITY_CACHE = new ConcurrentHashMap<>();
+
+	/**
+	 * Determines whether instances of a type can be shared instead of copied.
+	 * @param type the type to check
+	 * @return true if instances of the type never change once constructed
+	 */
+	public static boolean isImmutable(Class<?> type) {
+		Boolean immutable = IMMUTABILITY_CACHE.get(type);
+		if (immutable == null) {
+			immutable = inspect(type, new HashSet<>());
+			IMMUTABILITY_CACHE.put(type, immutable);
+		}
+		return immutable;
+	}
+
+	/**
+	 * Determines whether instances of a type can only be changed by constructing new instances,
+	 * either because the type is immutable or because it is a record.
+	 * @param type the type to check
+	 * @return true if changes to instances of the type must be made with {@link #with(Object, String, Object)}
+	 */
+	public static boolean isRebuiltOnChange(Class<?> type) {
+		return type.isRecord() || (isImmutable(type) && !isValueType(type));
+	}
+
+	/**
+	 * Determines whether a type is one of the JDK's unmodifiable collections, which must be copied to be changed.
+	 * @param type the type to check
+	 * @return true if instances of the type throw on any attempt to change them
+	 */
+	public static boolean isUnmodifiableCollection(Class<?> type) {
+		return UNMODIFIABLE_COLLECTION_TYPES.contains(type);
+	}
+
+	/**
+	 * Produces a copy of an object with one property changed. The given object remains unchanged.
+	 * Records are rebuilt through their canonical constructor; other types must offer a "with" method for the property,
+	 * taking the new value and returning the changed copy.
+	 * @param target the object to copy
+	 * @param property the name of the property to change
+	 * @param value the property's new value
+	 * @param <T> the object's type
+	 * @return a copy of the object with the property changed
+	 * @throws IllegalArgumentException if the property can't be changed
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> T with(T target, String property, Object value) {
+		Class<?> type = target.getClass();
+		try {
+			if (type.isRecord()) {
+				RecordComponent[] components = type.getRecordComponents();
+				Object[] values = new Object[components.length];
+				Class<?>[] componentTypes = new Class<?>[components.length];
+				boolean found = false;
+				for (int i = 0; i < components.length; i++) {
+					componentTypes[i] = components[i].getType();
+					if (components[i].getName().equals(property)) {
+						values[i] = value;
+						found = true;
+					} else {
+						Method accessor = components[i].getAccessor();
+						accessor.setAccessible(true);
+						values[i] = accessor.invoke(target);
+					}
+				}
+				if (!found) {
+					throw new IllegalArgumentException("No property '" + property + "' on " + type.getName());
+				}
+				Constructor<?> constructor = type.getDeclaredConstructor(componentTypes);
+				constructor.setAccessible(true);
+				return (T) constructor.newInstance(values);
+			}
+			String witherName = "with" + Character.toUpperCase(property.charAt(0)) + property.substring(1);
+			for (Method method : type.getMethods()) {
+				if (method.getName().equals(witherName) && method.getParameterCount() == 1 && type.isAssignableFrom(method.getReturnType())) {
+					return (T) method.invoke(target, value);
+				}
+			}
+			throw new IllegalArgumentException("No method " + witherName + " on " + type.getName());
+		} catch (NoSuchMethodException | InstantiationException | IllegalAccessException e) {
+			throw new IllegalArgumentException("Unable to change property '" + property + "' on " + type.getName(), e);
+		} catch (InvocationTargetException e) {
+			throw new IllegalArgumentException("Unable to change property '" + property + "' on " + type.getName(), e.getCause());
+		}
+	}
+
+	// private helpers
+
+	// the JDK's unmodifiable collection classes are private, so they're collected from instances of each
+	private static Set<Class<?>> unmodifiableCollectionTypes() {
+		List<Object> collections = List.of(List.of(), List.of(1), List.of(1, 2, 3), List.of(1, 2, 3).subList(0, 1),
+				Set.of(), Set.of(1), Set.of(1, 2, 3), Map.of(), Map.of(1, 1), Map.of(1, 1, 2, 2),
+				Collections.unmodifiableCollection(new ArrayList<>()), Collections.unmodifiableList(new ArrayList<>()),
+				Collections.unmodifiableList(new LinkedList<>()), Collections.unmodifiableSet(new HashSet<>()),
+				Collections.unmodifiableSortedSet(new TreeSet<>()), Collections.unmodifiableNavigableSet(new TreeSet<>()),
+				Collections.unmodifiableMap(new HashMap<>()), Collections.unmodifiableSortedMap(new TreeMap<>()),
+				Collections.unmodifiableNavigableMap(new TreeMap<>()), Collections.emptyList(), Collections.emptySet(), Collections.emptyMap(),
+				Collections.singletonList(1), Collections.singleton(1), Collections.singletonMap(1, 1));
+		Set<Class<?>> types = new HashSet<>();
+		for (Object collection : collections) {
+			types.add(collection.getClass());
+		}
+		return Collections.unmodifiableSet(types);
+	}
+
+	private static boolean isValueType(Class<?> type) {
+		return IMMUTABLE_VALUE_TYPES.contains(type) || type.isEnum() || Enum.class.isAssignableFrom(type) || type.getName().startsWith("java.time.");
+	}
+
+	private static boolean inspect(Class<?> type, Set<Class<?>> inspecting) {
+		Boolean cached = IMMUTABILITY_CACHE.get(type);
+		if (cached != null) {
+			return cached;
+		}
+		// a type that references itself is immutable if it is otherwise immutable
+		if (!inspecting.add(type)) {
+			return true;
+		}
+		if (type.isPrimitive() || isValueType(type) || type.isAnnotationPresent(Immutable.class)) {
+			return true;
+		}
+		if (type.isArray() || type.isInterface() || type.getName().startsWith("java.")) {
+			return false;
+		}
+		for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+			for (Field field : c.getDeclaredFields()) {
+				int modifiers = field.getModifiers();
+				if (Modifier.isStatic(modifiers)) {
+					continue;
+				}
+				if (!Modifier.isFinal(modifiers) || !isImmutableDeclaredType(field.getType(), inspecting)) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	// a field's declared type only guarantees immutability if no mutable subclass can be assigned to it
+	private static boolean isImmutableDeclaredType(Class<?> type, Set<Class<?>> inspecting) {
+		return type.isPrimitive() || ((Modifier.isFinal(type.getModifiers()) || type.isAnnotationPresent(Immutable.class)) && inspect(type, inspecting));
+	}
+
+}
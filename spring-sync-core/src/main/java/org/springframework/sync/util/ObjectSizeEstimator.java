@@ -0,0 +1,181 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.sync.util;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * <p>Estimates the heap footprint of object graphs, for bounding caches by size rather than by entry count.</p>
+ *
+ * <p>
+ * Objects are walked field by field, counting each object once however often it is referenced. Sizes follow the layout of a 64-bit JVM
+ * with compressed references: a 12 byte header, fields at their primitive or reference size, rounded up to 8 bytes.
+ * Strings, arrays, collections and maps are sized from their length rather than their internals, and other JDK types whose fields
+ * aren't accessible count as a bare object. Enums and classes are shared, and not counted. The estimate is meant to be cheap and
+ * consistent, not exact. The fields of each class are looked up once and cached.
+ * </p>
+ *
+ * @author Craig Walls
+ */
+public class ObjectSizeEstimator {
+
+	private static final int HEADER_SIZE = 12;
+
+	private static final int ARRAY_HEADER_SIZE = 16;
+
+	private static final int REFERENCE_SIZE = 4;
+
+	private static final int STRING_SIZE = 24;
+
+	// an ArrayList or HashSet node, with its share of the backing array
+	private static final int COLLECTION_SIZE = 40;
+
+	private static final int COLLECTION_ENTRY_SIZE = 8;
+
+	private static final int MAP_ENTRY_SIZE = 40;
+
+	private final ConcurrentMap<Class<?>, ClassLayout> layoutCache = new ConcurrentHashMap<>();
+
+	/**
+	 * @param root the root of the object graph.
+	 * @return the estimated number of bytes the graph occupies, or 0 for null.
+	 */
+	public long estimate(Object root) {
+		Set<Object> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+		Deque<Object> pending = new ArrayDeque<>();
+		long size = 0;
+		push(root, visited, pending);
+		while (!pending.isEmpty()) {
+			Object object = pending.pop();
+			Class<?> type = object.getClass();
+			if (object instanceof String string) {
+				size += align(STRING_SIZE) + align(ARRAY_HEADER_SIZE + string.length());
+			} else if (type.isArray()) {
+				size += sizeOfArray(object, type.getComponentType(), visited, pending);
+			} else if (object instanceof Collection<?> collection) {
+				size += COLLECTION_SIZE + (long) COLLECTION_ENTRY_SIZE * collection.size();
+				for (Object item : collection) {
+					push(item, visited, pending);
+				}
+			} else if (object instanceof Map<?, ?> map) {
+				size += COLLECTION_SIZE + (long) MAP_ENTRY_SIZE * map.size();
+				for (Map.Entry<?, ?> entry : map.entrySet()) {
+					push(entry.getKey(), visited, pending);
+					push(entry.getValue(), visited, pending);
+				}
+			} else {
+				ClassLayout layout = layoutCache.computeIfAbsent(type, this::inspect);
+				size += layout.size;
+				for (Field field : layout.references) {
+					push(read(field, object), visited, pending);
+				}
+			}
+		}
+		return size;
+	}
+
+	private void push(Object object, Set<Object> visited, Deque<Object> pending) {
+		if (object != null && !(object instanceof Enum) && !(object instanceof Class) && visited.add(object)) {
+			pending.push(object);
+		}
+	}
+
+	private long sizeOfArray(Object array, Class<?> componentType, Set<Object> visited, Deque<Object> pending) {
+		int length = Array.getLength(array);
+		if (componentType.isPrimitive()) {
+			return align(ARRAY_HEADER_SIZE + (long) length * primitiveSize(componentType));
+		}
+		for (Object item : (Object[]) array) {
+			push(item, visited, pending);
+		}
+		return align(ARRAY_HEADER_SIZE + (long) length * REFERENCE_SIZE);
+	}
+
+	private Object read(Field field, Object object) {
+		try {
+			return field.get(object);
+		} catch (IllegalAccessException e) {
+			return null;
+		}
+	}
+
+	private ClassLayout inspect(Class<?> type) {
+		long size = HEADER_SIZE;
+		List<Field> references = new ArrayList<>();
+		boolean accessible = !type.getName().startsWith("java.");
+		for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+			for (Field field : c.getDeclaredFields()) {
+				if (Modifier.isStatic(field.getModifiers())) {
+					continue;
+				}
+				if (field.getType().isPrimitive()) {
+					size += primitiveSize(field.getType());
+				} else {
+					size += REFERENCE_SIZE;
+					// fields of JDK types, and of types in modules that aren't open, can't be read
+					if (accessible && field.trySetAccessible()) {
+						references.add(field);
+					}
+				}
+			}
+		}
+		return new ClassLayout(align(size), references.toArray(new Field[0]));
+	}
+
+	private static int primitiveSize(Class<?> type) {
+		if (type == long.class || type == double.class) {
+			return 8;
+		}
+		if (type == int.class || type == float.class) {
+			return 4;
+		}
+		if (type == short.class || type == char.class) {
+			return 2;
+		}
+		return 1;
+	}
+
+	private static long align(long size) {
+		return (size + 7) & ~7L;
+	}
+
+	private static final class ClassLayout {
+
+		private final long size;
+
+		private final Field[] references;
+
+		private ClassLayout(long size, Field[] references) {
+			this.size = size;
+			this.references = references;
+		}
+
+	}
+
+}
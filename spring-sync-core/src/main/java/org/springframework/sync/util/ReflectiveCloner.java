@@ -0,0 +1,280 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.sync.util;
+
+import org.apache.commons.lang3.SerializationUtils;
+
+import java.io.Serializable;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.RecordComponent;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * <p>{@link Cloner} that copies object graphs field by field.</p>
+ *
+ * <p>
+ * Objects are instantiated through their no-arg constructor (which may be private) and records through their canonical constructor,
+ * so entities need not be {@link Serializable}. The fields and constructors of each class are looked up once and cached.
+ * Shared and cyclic references are preserved. Instances of immutable types (see {@link ImmutableTypes}) are shared
+ * rather than copied, and JDK lists, sets and maps are rebuilt as their mutable counterparts.
+ * Transient fields are left at their default values, as they would be by serialization.
+ * Objects that can't be copied reflectively (JDK internals, classes without a no-arg constructor) fall back to serialization.
+ * </p>
+ *
+ * @author Craig Walls
+ */
+public class ReflectiveCloner implements Cloner {
+
+	private static final Set<Class<?>> REBUILDABLE_COLLECTION_TYPES = Set.of(ArrayList.class, LinkedList.class, HashSet.class, LinkedHashSet.class,
+			TreeSet.class, HashMap.class, LinkedHashMap.class, TreeMap.class);
+
+	private final ConcurrentMap<Class<?>, ClassMetadata> metadataCache = new ConcurrentHashMap<>();
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public <T> T deepClone(T original) {
+		return (T) clone(original, new IdentityHashMap<>());
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public <T> List<T> deepClone(List<T> original) {
+		Map<Object, Object> clones = new IdentityHashMap<>();
+		List<T> copy = new ArrayList<>(original.size());
+		for (T item : original) {
+			copy.add((T) clone(item, clones));
+		}
+		return copy;
+	}
+
+	private Object clone(Object original, Map<Object, Object> clones) {
+		if (original == null || isImmutable(original)) {
+			return original;
+		}
+		Object copy = clones.get(original);
+		if (copy != null) {
+			return copy;
+		}
+
+		Class<?> type = original.getClass();
+		if (type.isArray()) {
+			return cloneArray(original, type.getComponentType(), clones);
+		}
+
+		ClassMetadata metadata = metadataCache.computeIfAbsent(type, this::inspect);
+		switch (metadata.kind) {
+			case LIST:
+				return cloneCollection((Collection<?>) original, original instanceof LinkedList ? new LinkedList<>() : new ArrayList<>(), clones);
+			case SET:
+				return cloneCollection((Collection<?>) original, newSet((Set<?>) original), clones);
+			case MAP:
+				return cloneMap((Map<?, ?>) original, newMap((Map<?, ?>) original), clones);
+			case RECORD:
+				return cloneRecord(original, metadata, clones);
+			case OBJECT:
+				return cloneFields(original, metadata, clones);
+			default:
+				return cloneBySerialization(original, clones);
+		}
+	}
+
+	private boolean isImmutable(Object value) {
+		return ImmutableTypes.isImmutable(value.getClass());
+	}
+
+	private Object cloneArray(Object original, Class<?> componentType, Map<Object, Object> clones) {
+		int length = Array.getLength(original);
+		Object copy = Array.newInstance(componentType, length);
+		clones.put(original, copy);
+		if (componentType.isPrimitive()) {
+			System.arraycopy(original, 0, copy, 0, length);
+		} else {
+			Object[] source = (Object[]) original;
+			Object[] target = (Object[]) copy;
+			for (int i = 0; i < length; i++) {
+				target[i] = clone(source[i], clones);
+			}
+		}
+		return copy;
+	}
+
+	private Collection<Object> cloneCollection(Collection<?> original, Collection<Object> copy, Map<Object, Object> clones) {
+		clones.put(original, copy);
+		for (Object item : original) {
+			copy.add(clone(item, clones));
+		}
+		return copy;
+	}
+
+	private Map<Object, Object> cloneMap(Map<?, ?> original, Map<Object, Object> copy, Map<Object, Object> clones) {
+		clones.put(original, copy);
+		for (Map.Entry<?, ?> entry : original.entrySet()) {
+			copy.put(clone(entry.getKey(), clones), clone(entry.getValue(), clones));
+		}
+		return copy;
+	}
+
+	@SuppressWarnings("unchecked")
+	private Set<Object> newSet(Set<?> original) {
+		if (original instanceof SortedSet) {
+			return new TreeSet<>((Comparator<Object>) ((SortedSet<?>) original).comparator());
+		}
+		return original instanceof LinkedHashSet ? new LinkedHashSet<>() : new HashSet<>();
+	}
+
+	@SuppressWarnings("unchecked")
+	private Map<Object, Object> newMap(Map<?, ?> original) {
+		if (original instanceof SortedMap) {
+			return new TreeMap<>((Comparator<Object>) ((SortedMap<?, ?>) original).comparator());
+		}
+		return original instanceof LinkedHashMap ? new LinkedHashMap<>() : new HashMap<>();
+	}
+
+	private Object cloneRecord(Object original, ClassMetadata metadata, Map<Object, Object> clones) {
+		try {
+			Object[] components = new Object[metadata.accessors.length];
+			for (int i = 0; i < components.length; i++) {
+				components[i] = clone(metadata.accessors[i].invoke(original), clones);
+			}
+			Object copy = metadata.constructor.newInstance(components);
+			clones.put(original, copy);
+			return copy;
+		} catch (InstantiationException | IllegalAccessException | InvocationTargetException e) {
+			throw new IllegalStateException("Unable to clone " + original.getClass().getName(), e);
+		}
+	}
+
+	private Object cloneFields(Object original, ClassMetadata metadata, Map<Object, Object> clones) {
+		try {
+			Object copy = metadata.constructor.newInstance();
+			clones.put(original, copy);
+			for (Field field : metadata.fields) {
+				Object value = field.get(original);
+				field.set(copy, field.getType().isPrimitive() ? value : clone(value, clones));
+			}
+			return copy;
+		} catch (InstantiationException | IllegalAccessException | InvocationTargetException e) {
+			throw new IllegalStateException("Unable to clone " + original.getClass().getName(), e);
+		}
+	}
+
+	private Object cloneBySerialization(Object original, Map<Object, Object> clones) {
+		if (!(original instanceof Serializable)) {
+			throw new IllegalStateException("Unable to clone " + original.getClass().getName() + ": it has no no-arg constructor and is not Serializable");
+		}
+		Object copy = SerializationUtils.clone((Serializable) original);
+		clones.put(original, copy);
+		return copy;
+	}
+
+	private ClassMetadata inspect(Class<?> type) {
+		if (isRebuildableCollection(type)) {
+			Kind kind = List.class.isAssignableFrom(type) ? Kind.LIST : Set.class.isAssignableFrom(type) ? Kind.SET : Kind.MAP;
+			return new ClassMetadata(kind, null, null, null);
+		}
+		if (type.getName().startsWith("java.")) {
+			return new ClassMetadata(Kind.SERIALIZATION, null, null, null);
+		}
+		try {
+			if (type.isRecord()) {
+				RecordComponent[] components = type.getRecordComponents();
+				Method[] accessors = new Method[components.length];
+				Class<?>[] componentTypes = new Class<?>[components.length];
+				for (int i = 0; i < components.length; i++) {
+					accessors[i] = components[i].getAccessor();
+					accessors[i].setAccessible(true);
+					componentTypes[i] = components[i].getType();
+				}
+				Constructor<?> constructor = type.getDeclaredConstructor(componentTypes);
+				constructor.setAccessible(true);
+				return new ClassMetadata(Kind.RECORD, constructor, null, accessors);
+			}
+			Constructor<?> constructor = type.getDeclaredConstructor();
+			constructor.setAccessible(true);
+			List<Field> fields = new ArrayList<>();
+			for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+				for (Field field : c.getDeclaredFields()) {
+					int modifiers = field.getModifiers();
+					if (!Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers)) {
+						field.setAccessible(true);
+						fields.add(field);
+					}
+				}
+			}
+			return new ClassMetadata(Kind.OBJECT, constructor, fields.toArray(new Field[0]), null);
+		} catch (NoSuchMethodException | RuntimeException e) {
+			// no usable constructor, or members that can't be made accessible
+			return new ClassMetadata(Kind.SERIALIZATION, null, null, null);
+		}
+	}
+
+	// The common collections, plus the unmodifiable ones that can only be referenced through their interfaces.
+	// Other JDK collections (concurrent, enum-keyed...) keep their exact type by falling back to serialization.
+	private boolean isRebuildableCollection(Class<?> type) {
+		if (REBUILDABLE_COLLECTION_TYPES.contains(type)) {
+			return true;
+		}
+		String name = type.getName();
+		return (List.class.isAssignableFrom(type) || Set.class.isAssignableFrom(type) || Map.class.isAssignableFrom(type))
+				&& (name.startsWith("java.util.ImmutableCollections$") || name.startsWith("java.util.Collections$") || name.equals("java.util.Arrays$ArrayList"));
+	}
+
+	private enum Kind {
+		LIST, SET, MAP, RECORD, OBJECT, SERIALIZATION
+	}
+
+	private static final class ClassMetadata {
+
+		private final Kind kind;
+
+		private final Constructor<?> constructor;
+
+		private final Field[] fields;
+
+		private final Method[] accessors;
+
+		private ClassMetadata(Kind kind, Constructor<?> constructor, Field[] fields, Method[] accessors) {
+			this.kind = kind;
+			this.constructor = constructor;
+			this.fields = fields;
+			this.accessors = accessors;
+		}
+
+	}
+
+}
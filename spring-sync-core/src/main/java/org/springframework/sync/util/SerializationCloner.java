@@ -0,0 +1,46 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.sync.util;
+
+import org.apache.commons.lang3.SerializationUtils;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * {@link Cloner} that clones through Java serialization.
+ * Every object in the graph must be {@link Serializable}.
+ * @author Craig Walls
+ */
+public class SerializationCloner implements Cloner {
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public <T> T deepClone(T original) {
+		return (T) SerializationUtils.clone((Serializable) original);
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public <T> List<T> deepClone(List<T> original) {
+		return original
+				.stream()
+				.map(t -> (T) SerializationUtils.clone((Serializable) t))
+				.collect(Collectors.toList());
+	}
+
+}
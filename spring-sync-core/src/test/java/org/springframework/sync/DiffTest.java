@@ -16,8 +16,13 @@
 package org.springframework.sync;
 
 import org.junit.Test;
+import org.springframework.sync.diffsync.DiffSync;
+import org.springframework.sync.diffsync.Shadow;
+import org.springframework.sync.diffsync.VersionedPatch;
+import org.springframework.sync.diffsync.shadowstore.MapBasedShadowStore;
 
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 
 import static org.junit.Assert.*;
@@ -652,7 +657,226 @@ public class DiffTest {
 		assertEquals(true, operations.get(3).getValue());
 	}
 
-	
+	@Test
+	public void collapseItemInListWhenMostPropertiesChange() throws Exception {
+		List<Todo> original = buildTodoList();
+		List<Todo> modified = buildTodoList();
+		modified.get(1).setId(20L);
+		modified.get(1).setDescription("BBB");
+		modified.get(1).setComplete(true);
+
+		DiffCostModel costModel = new DiffCostModel();
+		Patch diff = Diff.diff(original, modified, costModel);
+		assertEquals(1, diff.size());
+		PatchOperation op = diff.getOperations().get(0);
+		assertEquals("replace", op.getOp());
+		assertEquals("/1", op.getPath());
+		assertEquals(new Todo(20L, "BBB", true), op.getValue());
+		assertEquals(1, costModel.getSubtreesEvaluated());
+		assertEquals(1, costModel.getSubtreesCollapsed());
+		assertEquals(6, costModel.getOperationsCollapsed());
+
+		assertEquals(modified, diff.apply(original, Todo.class));
+	}
+
+	@Test
+	public void keepFineGrainedOperationsWhenCheaperThanReplace() throws Exception {
+		List<Todo> original = buildTodoList();
+		List<Todo> modified = buildTodoList();
+		modified.get(1).setDescription("BBB");
+
+		DiffCostModel costModel = new DiffCostModel();
+		Patch diff = Diff.diff(original, modified, costModel);
+		assertEquals(2, diff.size());
+		assertEquals("test", diff.getOperations().get(0).getOp());
+		assertEquals("replace", diff.getOperations().get(1).getOp());
+		assertEquals("/1/description", diff.getOperations().get(1).getPath());
+		assertEquals(1, costModel.getSubtreesEvaluated());
+		assertEquals(0, costModel.getSubtreesCollapsed());
+	}
+
+	@Test
+	public void neverCollapseRootObject() throws Exception {
+		Todo original = new Todo(1L, "A", false);
+		Todo modified = new Todo(2L, "B", true);
+
+		DiffCostModel costModel = new DiffCostModel(1.0);
+		Patch diff = Diff.diff(original, modified, costModel);
+		assertEquals(6, diff.size());
+		assertEquals(0, costModel.getSubtreesCollapsed());
+	}
+
+	@Test
+	public void changeAndDeleteInSameDelta() throws Exception {
+		List<Todo> original = buildTodoList();
+		original.add(new Todo(4L, "D", false));
+		List<Todo> modified = buildTodoList();
+		modified.remove(1);
+		modified.get(1).setComplete(true);
+		modified.add(new Todo(4L, "D", false));
+
+		Patch diff = Diff.diff(original, modified);
+		assertEquals(modified, diff.apply(original, Todo.class));
+		assertEquals(original, Diff.diff(modified, original).apply(modified, Todo.class));
+	}
+
+	@Test
+	public void unevenChangeDeltas() throws Exception {
+		List<Todo> original = buildTodoList();
+		List<Todo> modified = buildTodoList();
+		modified.get(1).setDescription("BBB");
+		modified.add(2, new Todo(5L, "E", false));
+		modified.add(3, new Todo(6L, "F", false));
+
+		// a longer revision: the common line is diffed, the surplus added after it
+		Patch diff = Diff.diff(original, modified);
+		assertEquals(List.of("test /1/description", "replace /1/description", "add /2", "add /3"), describe(diff));
+		assertEquals(modified, diff.apply(original, Todo.class));
+
+		// a shorter revision: the surplus is tested and removed after the common line, at its revised position
+		Patch reverse = Diff.diff(modified, original);
+		assertEquals(List.of("test /1/description", "replace /1/description", "test /2", "remove /2", "test /2", "remove /2"), describe(reverse));
+		assertEquals(original, reverse.apply(modified, Todo.class));
+	}
+
+	@Test
+	public void reverseUndoesListDiff() throws Exception {
+		List<Todo> original = buildTodoList();
+		List<Todo> modified = buildTodoList();
+		modified.get(0).setComplete(true);
+		modified.get(1).setDescription(null);
+		modified.remove(2);
+		modified.add(0, new Todo(4L, "D", false));
+
+		Patch diff = Diff.diff(original, modified);
+		Patch reverse = Diff.reverse(diff, original);
+		assertNotNull(reverse);
+		assertEquals(original, reverse.apply(diff.apply(original, Todo.class), Todo.class));
+	}
+
+	@Test
+	public void reverseReadsValuesWithoutTestsFromOriginal() throws Exception {
+		Todo original = new Todo(1L, "A", false);
+		Todo modified = new Todo(1L, null, false);
+
+		Patch diff = Diff.diff(original, modified);
+		assertEquals(List.of("remove /description"), describe(diff));
+		Patch reverse = Diff.reverse(diff, original);
+		assertEquals(original, reverse.apply(modified, Todo.class));
+	}
+
+	@Test
+	public void reverseGivesUpOnOperationsItCantUndo() throws Exception {
+		Patch patch = new Patch(List.of(new MoveOperation("/description", "/id")));
+		assertNull(Diff.reverse(patch, new Todo(1L, "A", false)));
+	}
+
+	private static List<String> describe(Patch patch) {
+		List<String> described = new ArrayList<>();
+		for (PatchOperation operation : patch.getOperations()) {
+			described.add(operation.getOp() + " " + operation.getPath());
+		}
+		return described;
+	}
+
+	@Test
+	public void diffIteratorProducesSameOperationsAsDiff() throws Exception {
+		List<Todo> original = buildTodoList();
+		List<Todo> modified = buildTodoList();
+		modified.get(0).setComplete(true);
+		modified.add(new Todo(4L, "D", false));
+		modified.add(new Todo(5L, "E", false));
+
+		List<PatchOperation> expected = Diff.diff(original, modified).getOperations();
+		List<PatchOperation> streamed = new ArrayList<>();
+		Diff.diffIterator(original, modified, null).forEachRemaining(streamed::add);
+
+		assertEquals(expected.size(), streamed.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertEquals(expected.get(i).getOp(), streamed.get(i).getOp());
+			assertEquals(expected.get(i).getPath(), streamed.get(i).getPath());
+		}
+		assertEquals(modified, new Patch(streamed).apply(original, Todo.class));
+	}
+
+	@Test
+	public void lazyOperationListOnlyProducesWhatIsConsumed() throws Exception {
+		List<PatchOperation> source = List.of(new TestOperation("/0/id", 1L), new RemoveOperation("/0"), new AddOperation("/0", new Todo(9L, "Z", false)));
+		int[] pulled = new int[1];
+		Iterator<PatchOperation> counting = new Iterator<>() {
+			private final Iterator<PatchOperation> delegate = source.iterator();
+			public boolean hasNext() { return delegate.hasNext(); }
+			public PatchOperation next() { pulled[0]++; return delegate.next(); }
+		};
+
+		LazyOperationList ops = new LazyOperationList(counting);
+		assertFalse(ops.isEmpty());
+		assertEquals(1, pulled[0]);
+		assertEquals("remove", ops.get(1).getOp());
+		assertEquals(2, pulled[0]);
+		assertEquals(3, ops.size());
+		assertEquals(3, pulled[0]);
+
+		// a second pass is served from memory
+		int count = 0;
+		for (PatchOperation ignored : ops) {
+			count++;
+		}
+		assertEquals(3, count);
+		assertEquals(3, pulled[0]);
+	}
+
+	@Test
+	public void streamDiffUpdatesShadow() throws Exception {
+		MapBasedShadowStore shadowStore = new MapBasedShadowStore("x");
+		DiffSync<Todo> sync = new DiffSync<>(shadowStore, Todo.class);
+		List<Todo> todos = buildTodoList();
+		sync.apply(new Patch(List.of(new ReplaceOperation("/1/complete", true))), todos);
+
+		List<Todo> modified = buildTodoList();
+		modified.get(1).setComplete(true);
+		modified.get(2).setDescription("CCC");
+		VersionedPatch diff = sync.streamDiff(modified);
+		// later changes to the target do not leak into the patch
+		modified.get(0).setDescription("AAA");
+
+		assertEquals(0, diff.getServerVersion());
+		assertEquals(1, diff.getClientVersion());
+		assertEquals(2, diff.size());
+		assertEquals("/2/description", diff.getOperations().get(1).getPath());
+
+		@SuppressWarnings("unchecked")
+		Shadow<List<Todo>> shadow = (Shadow<List<Todo>>) shadowStore.getShadow("shadow/TodoList");
+		assertEquals(1, shadow.getServerVersion());
+		assertEquals("CCC", shadow.getResource().get(2).getDescription());
+		assertEquals("A", shadow.getResource().get(0).getDescription());
+	}
+
+	@Test
+	public void streamDiffKeepsTheBackupWithoutProducingTheDiff() throws Exception {
+		MapBasedShadowStore shadowStore = new MapBasedShadowStore("x");
+		DiffSync<Todo> sync = new DiffSync<>(shadowStore, Todo.class);
+		List<Todo> todos = sync.apply(new Patch(List.of(new ReplaceOperation("/1/complete", true))), buildTodoList());
+
+		List<Todo> modified = new ArrayList<>(todos);
+		modified.set(2, new Todo(3L, "CCC", false));
+		sync.streamDiff(modified);
+
+		// the backup no longer depends on the shadow, so it was kept without the diff being produced
+		@SuppressWarnings("unchecked")
+		Shadow<List<Todo>> backup = (Shadow<List<Todo>>) shadowStore.getShadow("shadow/TodoList" + DiffSync.BACKUP_SUFFIX);
+		assertEquals(0, backup.getServerVersion());
+		assertEquals(1, backup.getClientVersion());
+		assertEquals(new Todo(2L, "B", true), backup.getResource().get(1));
+		assertEquals(new Todo(3L, "C", false), backup.getResource().get(2));
+
+		// the diff never reached the client, which patches against the backup's versions
+		List<Todo> patched = sync.apply(new VersionedPatch(List.of(new ReplaceOperation("/0/description", "Z")), 0, 1), modified);
+		assertEquals(new Todo(1L, "Z", false), patched.get(0));
+		assertEquals(new Todo(3L, "CCC", false), patched.get(2));
+	}
+
+
 	private List<Todo> buildTodoList() {
 		List<Todo> original = new ArrayList<>();
 		original.add(new Todo(1L, "A", false));
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.sync;
+
+import org.junit.Test;
+import org.springframework.sync.exception.PatchException;
+import org.springframework.sync.util.DeepCloneUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class FuzzyTextPatcherTest {
+
+	private final FuzzyTextPatcher patcher = new FuzzyTextPatcher(0.5);
+
+	@Test
+	public void unchangedBaseTakesRevision() {
+		assertEquals("Buy oat milk", patcher.patch("Buy milk", "Buy oat milk", "Buy milk"));
+	}
+
+	@Test
+	public void changeElsewhereInTextIsKept() {
+		String merged = patcher.patch("Buy milk and bread", "Buy milk and fresh bread", "Please buy milk and bread today");
+		assertEquals("Please buy milk and fresh bread today", merged);
+	}
+
+	@Test
+	public void changeNearDriftedTextIsMergedApproximately() {
+		String merged = patcher.patch("The quick brown fox jumps", "The quick red fox jumps", "The quikc brown fox jumps");
+		assertEquals("The quikc red fox jumps", merged);
+	}
+
+	@Test
+	public void rewrittenTextIsRejected() {
+		assertNull(patcher.patch("The quick brown fox jumps", "The quick red fox jumps", "Lorem ipsum dolor sit amet"));
+		assertNull(new FuzzyTextPatcher(1).patch("The quick brown fox jumps", "The quick red fox jumps", "The quikc brwn fox jumps"));
+	}
+
+	@Test
+	public void failedStringTestIsMergedWhenPatching() throws Exception {
+		List<Todo> todos = new ArrayList<>();
+		todos.add(new Todo(1L, "Buy milk and bread", false));
+		Patch patch = new Patch(List.of(
+				new TestOperation("/0/description", "Buy milk and bread"),
+				new ReplaceOperation("/0/description", "Buy milk and fresh bread"),
+				new ReplaceOperation("/0/complete", true)));
+
+		todos.get(0).setDescription("Buy milk and bread today");
+		List<Todo> patched = patch.apply(todos, Todo.class, DeepCloneUtils.getDefaultCloner(), patcher);
+		assertEquals(new Todo(1L, "Buy milk and fresh bread today", true), patched.get(0));
+
+		try {
+			patch.apply(todos, Todo.class);
+			fail();
+		} catch (PatchException e) {
+			// without a patcher, the failed test still rejects the patch
+		}
+	}
+
+	@Test(expected = PatchException.class)
+	public void failedTestOfOtherValuesRejectsPatch() throws Exception {
+		Todo todo = new Todo(1L, "A", true);
+		Patch patch = new Patch(List.of(new TestOperation("/complete", false), new ReplaceOperation("/complete", true)));
+		patch.apply(todo, Todo.class, DeepCloneUtils.getDefaultCloner(), patcher);
+	}
+
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.sync;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.sync.diffsync.DiffSync;
+import org.springframework.sync.diffsync.VersionedPatch;
+import org.springframework.sync.diffsync.shadowstore.MapBasedShadowStore;
+import org.springframework.sync.exception.PatchException;
+import org.springframework.sync.json.JsonNodePatchEngine;
+import org.springframework.sync.json.JsonPatchPatchConverter;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class JsonNodePatchEngineTest {
+
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+
+	private final JsonNodePatchEngine engine = new JsonNodePatchEngine();
+
+	@Test
+	public void noChanges() throws Exception {
+		Patch diff = engine.diff(json("{'id':1,'description':'A','complete':false}"), json("{'id':1,'description':'A','complete':false}"));
+		assertEquals(0, diff.size());
+	}
+
+	@Test
+	public void changeAddAndRemoveFields() throws Exception {
+		JsonNode original = json("{'id':1,'description':'A','complete':false}");
+		JsonNode modified = json("{'id':1,'description':'B','tags':['x']}");
+
+		Patch diff = engine.diff(original, modified);
+		List<PatchOperation> ops = diff.getOperations();
+		assertEquals(4, ops.size());
+		assertEquals("test", ops.get(0).getOp());
+		assertEquals("/description", ops.get(0).getPath());
+		assertEquals("replace", ops.get(1).getOp());
+		assertEquals("/description", ops.get(1).getPath());
+		assertEquals("remove", ops.get(2).getOp());
+		assertEquals("/complete", ops.get(2).getPath());
+		assertEquals("add", ops.get(3).getOp());
+		assertEquals("/tags", ops.get(3).getPath());
+
+		assertEquals(modified, engine.apply(diff, original));
+		// original remains unchanged
+		assertEquals(json("{'id':1,'description':'A','complete':false}"), original);
+	}
+
+	@Test
+	public void diffAndApplyArrayChanges() throws Exception {
+		JsonNode original = json("[{'id':1,'description':'A'},{'id':2,'description':'B'},{'id':3,'description':'C'}]");
+		JsonNode modified = json("[{'id':1,'description':'A'},{'id':2,'description':'BBB'},{'id':4,'description':'D'},{'id':5,'description':'E'}]");
+
+		Patch diff = engine.diff(original, modified);
+		assertEquals(modified, engine.apply(diff, original));
+
+		// the patch survives a round trip through JSON Patch
+		JsonPatchPatchConverter converter = new JsonPatchPatchConverter();
+		Patch roundTripped = converter.convert(MAPPER.readTree(MAPPER.writeValueAsString(converter.convert(diff))));
+		assertEquals(modified, engine.apply(roundTripped, original));
+	}
+
+	@Test
+	public void escapedFieldNames() throws Exception {
+		JsonNode original = json("{'a/b':1,'c~d':2}");
+		JsonNode modified = json("{'a/b':10,'c~d':20}");
+
+		Patch diff = engine.diff(original, modified);
+		assertEquals("/a~1b", diff.getOperations().get(0).getPath());
+		assertEquals("/c~0d", diff.getOperations().get(2).getPath());
+		assertEquals(modified, engine.apply(diff, original));
+	}
+
+	@Test
+	public void manySuccessfulOperations() throws Exception {
+		JsonNode todos = json("[{'id':1,'description':'A','complete':true},{'id':2,'description':'B','complete':false}," +
+				"{'id':3,'description':'C','complete':false},{'id':4,'description':'D','complete':false}," +
+				"{'id':5,'description':'E','complete':false},{'id':6,'description':'F','complete':false}]");
+
+		JsonNode patched = engine.apply(readJsonPatch("/org/springframework/sync/patch-many-successful-operations.json"), todos);
+
+		assertEquals(6, todos.size());
+		assertEquals(6, patched.size());
+		assertTrue(patched.get(1).get("complete").booleanValue());
+		assertEquals("C", patched.get(3).get("description").textValue());
+		assertEquals("A", patched.get(4).get("description").textValue());
+	}
+
+	@Test
+	public void failureInMiddle() throws Exception {
+		JsonNode todos = json("[{'id':1,'description':'A','complete':true},{'id':2,'description':'B','complete':false}," +
+				"{'id':3,'description':'C','complete':false},{'id':4,'description':'D','complete':false}," +
+				"{'id':5,'description':'E','complete':false},{'id':6,'description':'F','complete':false}]");
+		JsonNode unchanged = todos.deepCopy();
+
+		try {
+			engine.apply(readJsonPatch("/org/springframework/sync/patch-failing-operation-in-middle.json"), todos);
+			fail();
+		} catch (PatchException e) {
+			assertEquals("Test against path '/5/description' failed.", e.getMessage());
+		}
+		assertEquals(unchanged, todos);
+	}
+
+	@Test
+	public void numericTestIgnoresNumberRepresentation() throws Exception {
+		Patch patch = new Patch(List.of(new TestOperation("/id", 1L), new ReplaceOperation("/id", 2)));
+		assertEquals(json("{'id':2}"), engine.apply(patch, json("{'id':1}")));
+	}
+
+	@Test
+	public void diffSyncWithJsonNodeEngine() throws Exception {
+		DiffSync<JsonNode> sync = new DiffSync<>(new MapBasedShadowStore("x"), JsonNode.class);
+		sync.setPatchEngine(engine);
+
+		JsonNode document = json("{'id':1,'description':'A','complete':false}");
+		Patch patch = new Patch(List.of(new ReplaceOperation("/complete", true)));
+		JsonNode patched = sync.apply(patch, document);
+		assertEquals(json("{'id':1,'description':'A','complete':true}"), patched);
+		assertEquals(json("{'id':1,'description':'A','complete':false}"), document);
+
+		VersionedPatch diff = sync.diff(patched);
+		assertEquals(0, diff.size());
+
+		((ObjectNode) patched).put("description", "B");
+		diff = sync.diff(patched);
+		assertEquals(2, diff.size());
+		assertEquals("/description", diff.getOperations().get(1).getPath());
+	}
+
+	private JsonNode json(String json) throws IOException {
+		return MAPPER.readTree(json.replace('\'', '"'));
+	}
+
+	private Patch readJsonPatch(String jsonPatchFile) throws IOException, PatchException {
+		ClassPathResource resource = new ClassPathResource(jsonPatchFile);
+		return new JsonPatchPatchConverter().convert(MAPPER.readTree(resource.getInputStream()));
+	}
+
+}
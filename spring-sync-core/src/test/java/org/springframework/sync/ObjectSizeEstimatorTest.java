@@ -0,0 +1,56 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.sync;
+
+import org.junit.Test;
+import org.springframework.sync.util.ObjectSizeEstimator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ObjectSizeEstimatorTest {
+
+	private final ObjectSizeEstimator estimator = new ObjectSizeEstimator();
+
+	@Test
+	public void nullIsFree() {
+		assertEquals(0, estimator.estimate(null));
+	}
+
+	@Test
+	public void growsWithContent() {
+		long one = estimator.estimate(new ArrayList<>(List.of(new Todo(1L, "A", false))));
+		long two = estimator.estimate(new ArrayList<>(List.of(new Todo(1L, "A", false), new Todo(2L, "B", false))));
+		long longer = estimator.estimate(new ArrayList<>(List.of(new Todo(1L, "A much longer description than before", false))));
+		assertTrue(one > 0);
+		assertTrue(two > one);
+		assertTrue(longer > one);
+		assertEquals(0, estimator.estimate(new Todo(1L, "A", false)) % 8);
+	}
+
+	@Test
+	public void sharedReferencesCountedOnce() {
+		Todo todo = new Todo(1L, "A", false);
+		long single = estimator.estimate(new ArrayList<>(List.of(todo)));
+		long twice = estimator.estimate(new ArrayList<>(List.of(todo, todo)));
+		long copies = estimator.estimate(new ArrayList<>(List.of(todo, new Todo(1L, "A", false))));
+		assertTrue(twice < copies);
+		assertTrue(twice > single);
+	}
+
+}
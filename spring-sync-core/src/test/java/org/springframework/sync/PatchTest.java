@@ -15,12 +15,16 @@
  */
 package org.springframework.sync;
 
+import lombok.Value;
+import lombok.With;
 import org.junit.Test;
+import org.springframework.sync.util.ImmutableTypes;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
-import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.*;
 
 public class PatchTest {
 
@@ -50,4 +54,96 @@ public class PatchTest {
 		assertEquals(new Todo(4L, "D", false), operations.get(0).getValue());
 	}
 
+	@Test
+	public void patchListOfRecordsSharesUnchangedItems() throws Exception {
+		List<TodoRecord> todos = List.of(new TodoRecord(1L, "A", false), new TodoRecord(2L, "B", false), new TodoRecord(3L, "C", false));
+		Patch patch = new Patch(List.of(new TestOperation("/1/description", "B"), new ReplaceOperation("/1/description", "BBB")));
+
+		List<TodoRecord> patched = patch.apply(todos, TodoRecord.class);
+		assertEquals(new TodoRecord(2L, "BBB", false), patched.get(1));
+		assertEquals(new TodoRecord(2L, "B", false), todos.get(1));
+		assertSame(todos.get(0), patched.get(0));
+		assertSame(todos.get(2), patched.get(2));
+	}
+
+	@Test
+	public void diffAndPatchRecords() throws Exception {
+		List<TodoRecord> original = List.of(new TodoRecord(1L, "A", false), new TodoRecord(2L, "B", false));
+		List<TodoRecord> modified = List.of(new TodoRecord(1L, "A", true), new TodoRecord(2L, "B", false), new TodoRecord(3L, "C", false));
+
+		Patch diff = Diff.diff(original, modified);
+		assertEquals(modified, diff.apply(original, TodoRecord.class));
+	}
+
+	@Test
+	public void rebuildPathThroughNestedRecords() throws Exception {
+		Project project = new Project("Sync", new Owner("Craig", new Address("Plano")), new ArrayList<>(List.of(new TodoRecord(1L, "A", false))));
+		Patch patch = new Patch(List.of(
+				new ReplaceOperation("/owner/address/city", "Dallas"),
+				new AddOperation("/todos/~", new TodoRecord(2L, "B", false)),
+				new RemoveOperation("/todos/0")));
+
+		Project patched = patch.apply(project, Project.class);
+		assertEquals("Dallas", patched.owner().address().city());
+		assertEquals(List.of(new TodoRecord(2L, "B", false)), patched.todos());
+		assertEquals("Plano", project.owner().address().city());
+		assertEquals(1, project.todos().size());
+	}
+
+	@Test
+	public void patchImmutableClassWithWithers() throws Exception {
+		Label label = new Label("urgent", 1);
+		Label patched = new Patch(List.of(new ReplaceOperation("/priority", 2))).apply(label, Label.class);
+		assertEquals(new Label("urgent", 2), patched);
+		assertEquals(1, label.getPriority());
+	}
+
+	@Test
+	public void recordHoldingMutableListIsOnlyRebuiltWhenItsOwnComponentsChange() throws Exception {
+		Project project = new Project("Sync", new Owner("Craig", new Address("Plano")), new ArrayList<>(List.of(new TodoRecord(1L, "A", false))));
+		assertFalse(ImmutableTypes.isImmutable(Project.class));
+		assertTrue(ImmutableTypes.isImmutable(Owner.class));
+
+		Object patched = PathCopier.update(project, "/todos/0/description", PathCopier.Change.SET, "AAA");
+		assertSame(project, patched);
+		assertEquals("AAA", project.todos().get(0).description());
+
+		patched = PathCopier.update(project, "/name", PathCopier.Change.SET, "Async");
+		assertEquals("Async", ((Project) patched).name());
+		assertSame(project.todos(), ((Project) patched).todos());
+	}
+
+	@Test
+	public void unmodifiableCollectionsAreCopiedToBeChanged() throws Exception {
+		assertTrue(ImmutableTypes.isUnmodifiableCollection(List.of(1, 2).getClass()));
+		assertTrue(ImmutableTypes.isUnmodifiableCollection(Collections.unmodifiableList(new ArrayList<>()).getClass()));
+		assertTrue(ImmutableTypes.isUnmodifiableCollection(Collections.emptyList().getClass()));
+		assertFalse(ImmutableTypes.isUnmodifiableCollection(ArrayList.class));
+
+		Project project = new Project("Sync", new Owner("Craig", new Address("Plano")), List.of(new TodoRecord(1L, "A", false)));
+		assertTrue(PathCopier.requiresCopy(project, "/todos/~"));
+		Project patched = (Project) PathCopier.update(project, "/todos/~", PathCopier.Change.ADD, new TodoRecord(2L, "B", false));
+		assertEquals(List.of(new TodoRecord(1L, "A", false), new TodoRecord(2L, "B", false)), patched.todos());
+		assertEquals(1, project.todos().size());
+	}
+
+	public record TodoRecord(Long id, String description, boolean complete) {
+	}
+
+	public record Address(String city) {
+	}
+
+	public record Owner(String name, Address address) {
+	}
+
+	public record Project(String name, Owner owner, List<TodoRecord> todos) {
+	}
+
+	@Value
+	@With
+	public static class Label {
+		String name;
+		int priority;
+	}
+
 }
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.sync;
+
+import org.junit.Test;
+import org.springframework.sync.util.ImmutableTypes;
+import org.springframework.sync.util.ReflectiveCloner;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.Assert.*;
+
+public class ReflectiveClonerTest {
+
+	private final ReflectiveCloner cloner = new ReflectiveCloner();
+
+	@Test
+	public void cloneObject() {
+		Todo original = new Todo(1L, "A", false);
+		Todo clone = cloner.deepClone(original);
+		assertNotSame(original, clone);
+		assertEquals(original, clone);
+	}
+
+	@Test
+	public void cloneListOfObjects() {
+		TodoList original = new TodoList();
+		original.setName("Groceries");
+		original.setTodos(new ArrayList<>(List.of(new Todo(1L, "A", false), new Todo(2L, "B", true))));
+
+		TodoList clone = cloner.deepClone(original);
+		assertEquals("Groceries", clone.getName());
+		assertEquals(original.getTodos(), clone.getTodos());
+		assertNotSame(original.getTodos(), clone.getTodos());
+		assertNotSame(original.getTodos().get(0), clone.getTodos().get(0));
+
+		clone.getTodos().get(0).setComplete(true);
+		assertFalse(original.getTodos().get(0).isComplete());
+	}
+
+	@Test
+	public void notSerializableAndCyclicGraph() {
+		Node first = new Node("first");
+		Node second = new Node("second");
+		first.next = second;
+		second.next = first;
+		first.cache = "cached";
+
+		Node clone = cloner.deepClone(first);
+		assertNotSame(first, clone);
+		assertEquals("second", clone.next.name);
+		assertSame(clone, clone.next.next);
+		assertNull(clone.cache);
+	}
+
+	@Test
+	public void sharedReferencesAcrossListItems() {
+		Node shared = new Node("shared");
+		List<Node> clone = cloner.deepClone(List.of(new Node("a", shared), new Node("b", shared)));
+		assertNotSame(shared, clone.get(0).next);
+		assertSame(clone.get(0).next, clone.get(1).next);
+	}
+
+	@Test
+	public void recordsAndImmutableValues() {
+		Tagged original = new Tagged(LocalDate.of(2014, 5, 1), new ArrayList<>(List.of("x", "y")), new int[] { 1, 2 });
+		Tagged clone = cloner.deepClone(original);
+		assertSame(original.date(), clone.date());
+		assertNotSame(original.tags(), clone.tags());
+		assertEquals(original.tags(), clone.tags());
+		assertNotSame(original.counts(), clone.counts());
+		assertArrayEquals(original.counts(), clone.counts());
+	}
+
+	@Test
+	public void immutableInstancesAreShared() {
+		PatchTest.Owner owner = new PatchTest.Owner("Craig", new PatchTest.Address("Plano"));
+		assertSame(owner, cloner.deepClone(owner));
+
+		// records holding mutable values are copied
+		Tagged tagged = new Tagged(LocalDate.of(2014, 5, 1), new ArrayList<>(), new int[0]);
+		assertNotSame(tagged, cloner.deepClone(tagged));
+		assertFalse(ImmutableTypes.isImmutable(Todo.class));
+	}
+
+	@Test
+	public void collectionsKeepTheirBehavior() {
+		TreeSet<String> sorted = new TreeSet<>(Comparator.reverseOrder());
+		sorted.addAll(List.of("a", "b", "c"));
+		TreeSet<String> sortedClone = cloner.deepClone(sorted);
+		assertEquals("c", sortedClone.first());
+
+		Map<String, Todo> concurrent = new ConcurrentHashMap<>(Map.of("a", new Todo(1L, "A", false)));
+		Map<String, Todo> concurrentClone = cloner.deepClone(concurrent);
+		assertTrue(concurrentClone instanceof ConcurrentHashMap);
+		assertEquals(concurrent, concurrentClone);
+		assertNotSame(concurrent.get("a"), concurrentClone.get("a"));
+
+		// unmodifiable collections are rebuilt so the clone can be patched
+		List<String> clonedList = cloner.deepClone(List.of("a"));
+		clonedList.add("b");
+		assertEquals(2, clonedList.size());
+	}
+
+	private static class Node {
+
+		private String name;
+
+		private Node next;
+
+		private transient String cache;
+
+		private Node() {
+		}
+
+		private Node(String name) {
+			this.name = name;
+		}
+
+		private Node(String name, Node next) {
+			this.name = name;
+			this.next = next;
+		}
+
+	}
+
+	private record Tagged(LocalDate date, List<String> tags, int[] counts) {
+	}
+
+}
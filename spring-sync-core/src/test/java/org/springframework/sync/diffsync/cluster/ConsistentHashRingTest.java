@@ -0,0 +1,80 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.sync.diffsync.cluster;
+
+import org.junit.Test;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class ConsistentHashRingTest {
+
+	@Test
+	public void keysSpreadEvenlyAndOwnersDontDependOnMemberOrder() {
+		ConsistentHashRing ring = new ConsistentHashRing(List.of(node("a"), node("b"), node("c"), node("d")));
+		ConsistentHashRing reordered = new ConsistentHashRing(List.of(node("d"), node("b"), node("a"), node("c")));
+		Map<String, Integer> counts = new HashMap<>();
+		for (int i = 0; i < 40000; i++) {
+			String owner = ring.getOwner("client-" + i).getId();
+			assertEquals(owner, reordered.getOwner("client-" + i).getId());
+			counts.merge(owner, 1, Integer::sum);
+		}
+		assertEquals(4, counts.size());
+		counts.values().forEach(count -> assertTrue(count.toString(), count > 8000 && count < 12000));
+	}
+
+	@Test
+	public void onlyTheKeysOfAJoiningOrLeavingNodeMove() {
+		List<ClusterNode> nodes = new ArrayList<>(List.of(node("a"), node("b"), node("c")));
+		ConsistentHashRing before = new ConsistentHashRing(nodes);
+		nodes.add(node("d"));
+		ConsistentHashRing after = new ConsistentHashRing(nodes);
+		int moved = 0;
+		for (int i = 0; i < 30000; i++) {
+			String key = "client-" + i;
+			ClusterNode owner = after.getOwner(key);
+			if (!owner.equals(before.getOwner(key))) {
+				assertEquals("d", owner.getId());
+				moved++;
+			}
+		}
+		// about a quarter of the keys move to the new node
+		assertTrue(String.valueOf(moved), moved > 6000 && moved < 9000);
+
+		ConsistentHashRing withoutB = new ConsistentHashRing(List.of(node("a"), node("c"), node("d")));
+		for (int i = 0; i < 30000; i++) {
+			String key = "client-" + i;
+			if (!after.getOwner(key).getId().equals("b")) {
+				assertEquals(after.getOwner(key), withoutB.getOwner(key));
+			}
+		}
+	}
+
+	@Test
+	public void emptyRingHasNoOwner() {
+		assertNull(new ConsistentHashRing(List.of()).getOwner("client"));
+	}
+
+	private static ClusterNode node(String id) {
+		return new ClusterNode(id, URI.create("http://" + id + ":8080"));
+	}
+
+}
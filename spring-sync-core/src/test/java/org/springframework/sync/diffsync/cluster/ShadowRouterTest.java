@@ -0,0 +1,170 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.sync.diffsync.cluster;
+
+import org.junit.Test;
+import org.springframework.sync.diffsync.Shadow;
+import org.springframework.sync.diffsync.shadowstore.MapBasedShadowStore;
+import org.springframework.sync.diffsync.shadowstore.ShadowStore;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class ShadowRouterTest {
+
+	@Test
+	public void shadowsFollowTheirClientToItsNewOwner() {
+		ClusterNode a = node("a");
+		ClusterNode b = node("b");
+		InMemoryClusterMembership membership = new InMemoryClusterMembership(a);
+		Map<String, ShadowRouter> routers = new HashMap<>();
+		routers.put("a", new ShadowRouter("a", membership));
+		routers.put("b", new ShadowRouter("b", membership));
+		routers.values().forEach(router -> {
+			router.setHandoffExecutor(Runnable::run);
+			router.setShadowHandoff((clientId, shadows, owner) -> {
+				routers.get(owner.getId()).receive(clientId, shadows);
+				return CompletableFuture.completedFuture(null);
+			});
+		});
+
+		// with a single member, a owns every client; pick clients that b takes over once it joins
+		ConsistentHashRing withB = new ConsistentHashRing(List.of(a, b));
+		String moving = clientOwnedBy(withB, "b");
+		String staying = clientOwnedBy(withB, "a");
+		assertTrue(routers.get("a").isLocal(moving));
+		assertFalse(routers.get("b").isLocal(moving));
+
+		ShadowStore movingOnA = new MapBasedShadowStore(moving);
+		movingOnA.putShadow("shadow/todos", new Shadow<>("moving", 3, 2));
+		routers.get("a").register(moving, movingOnA);
+		ShadowStore stayingOnA = new MapBasedShadowStore(staying);
+		stayingOnA.putShadow("shadow/todos", new Shadow<>("staying", 1, 1));
+		routers.get("a").register(staying, stayingOnA);
+
+		membership.join(b);
+		assertEquals(b, routers.get("a").getOwner(moving));
+		assertTrue(routers.get("b").isLocal(moving));
+		assertTrue(routers.get("a").isLocal(staying));
+
+		// the shadows wait on b until the client's store is registered there
+		ShadowStore movingOnB = new MapBasedShadowStore(moving);
+		routers.get("b").register(moving, movingOnB);
+		Shadow<?> handedOver = movingOnB.getShadow("shadow/todos");
+		assertEquals("moving", handedOver.getResource());
+		assertEquals(3, handedOver.getServerVersion());
+		assertEquals(2, handedOver.getClientVersion());
+
+		// when b leaves, the client moves back to a, into its store there once it's registered again
+		movingOnB.putShadow("shadow/todos", new Shadow<>("moved back", 4, 2));
+		membership.leave("b");
+		ShadowStore movedBackOnA = new MapBasedShadowStore(moving);
+		routers.get("a").register(moving, movedBackOnA);
+		assertEquals("moved back", movedBackOnA.getShadow("shadow/todos").getResource());
+		assertEquals("staying", stayingOnA.getShadow("shadow/todos").getResource());
+	}
+
+	@Test
+	public void shadowsAreHandedOffOutsideTheMembershipChange() {
+		ClusterNode a = node("a");
+		ClusterNode b = node("b");
+		InMemoryClusterMembership membership = new InMemoryClusterMembership(a);
+		ShadowRouter router = new ShadowRouter("a", membership);
+		List<Runnable> handoffs = new ArrayList<>();
+		router.setHandoffExecutor(handoffs::add);
+		List<String> handedOff = new ArrayList<>();
+		router.setShadowHandoff((clientId, shadows, owner) -> {
+			handedOff.add(clientId);
+			return CompletableFuture.completedFuture(null);
+		});
+		String moving = clientOwnedBy(new ConsistentHashRing(List.of(a, b)), "b");
+		ShadowStore store = new MapBasedShadowStore(moving);
+		store.putShadow("shadow/todos", new Shadow<>("moving", 1, 1));
+		router.register(moving, store);
+
+		membership.join(b);
+		assertEquals(1, handoffs.size());
+		assertTrue(handedOff.isEmpty());
+
+		handoffs.get(0).run();
+		assertEquals(List.of(moving), handedOff);
+	}
+
+	@Test
+	public void failedHandoffsAreTriedAgain() throws Exception {
+		ClusterNode a = node("a");
+		ClusterNode b = node("b");
+		InMemoryClusterMembership membership = new InMemoryClusterMembership(a);
+		ShadowRouter router = new ShadowRouter("a", membership);
+		router.setHandoffExecutor(Runnable::run);
+		router.setHandoffAttempts(3, Duration.ofMillis(10));
+		AtomicInteger attempts = new AtomicInteger();
+		CompletableFuture<Map<String, Shadow<?>>> handedOver = new CompletableFuture<>();
+		router.setShadowHandoff((clientId, shadows, owner) -> {
+			if (attempts.incrementAndGet() < 3) {
+				return CompletableFuture.failedFuture(new IllegalStateException("unreachable"));
+			}
+			handedOver.complete(shadows);
+			return CompletableFuture.completedFuture(null);
+		});
+		String moving = clientOwnedBy(new ConsistentHashRing(List.of(a, b)), "b");
+		ShadowStore store = new MapBasedShadowStore(moving);
+		store.putShadow("shadow/todos", new Shadow<>("moving", 1, 1));
+		router.register(moving, store);
+
+		membership.join(b);
+		assertEquals("moving", handedOver.get(5, TimeUnit.SECONDS).get("shadow/todos").getResource());
+		assertEquals(3, attempts.get());
+	}
+
+	@Test
+	public void shadowsHandedOverToARegisteredStoreArePutInIt() {
+		ShadowRouter router = new ShadowRouter("a", new InMemoryClusterMembership(node("a")));
+		ShadowStore store = new MapBasedShadowStore("client");
+		router.register("client", store);
+		router.receive("client", Map.of("shadow/todos", new Shadow<>("handed over", 1, 0)));
+		assertEquals("handed over", store.getShadow("shadow/todos").getResource());
+	}
+
+	@Test
+	public void everyClientIsLocalWithoutMembers() {
+		ShadowRouter router = new ShadowRouter("a", new InMemoryClusterMembership());
+		assertNull(router.getOwner("client"));
+		assertTrue(router.isLocal("client"));
+	}
+
+	private static String clientOwnedBy(ConsistentHashRing ring, String nodeId) {
+		for (int i = 0; ; i++) {
+			if (ring.getOwner("client-" + i).getId().equals(nodeId)) {
+				return "client-" + i;
+			}
+		}
+	}
+
+	private static ClusterNode node(String id) {
+		return new ClusterNode(id, URI.create("http://" + id + ":8080"));
+	}
+
+}
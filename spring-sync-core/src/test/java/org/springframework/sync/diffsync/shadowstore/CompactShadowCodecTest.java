@@ -0,0 +1,160 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.sync.diffsync.shadowstore;
+
+import org.junit.Test;
+import org.springframework.sync.AddOperation;
+import org.springframework.sync.CopyOperation;
+import org.springframework.sync.MoveOperation;
+import org.springframework.sync.Patch;
+import org.springframework.sync.RemoveOperation;
+import org.springframework.sync.ReplaceOperation;
+import org.springframework.sync.TestOperation;
+import org.springframework.sync.Todo;
+import org.springframework.sync.diffsync.Shadow;
+import org.springframework.sync.diffsync.VersionedPatch;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class CompactShadowCodecTest {
+
+	@Test
+	public void shadowsBackupsAndEditsRoundTrip() {
+		CompactShadowCodec codec = new CompactShadowCodec();
+		List<Todo> todos = List.of(new Todo(1L, "A", false), new Todo(2L, "B", true));
+		List<VersionedPatch> edits = List.of(
+				new VersionedPatch(List.of(new AddOperation("/2", new Todo(3L, "C", false)), new RemoveOperation("/0")), 3, 7),
+				new VersionedPatch(List.of(new ReplaceOperation("/0/description", "AA"), new TestOperation("/0/complete", true),
+						new MoveOperation("/1", "/0"), new CopyOperation("/2", "/1")), 4, 7));
+
+		Shadow<?> decoded = codec.decode(codec.encode(new Shadow<>(todos, 4, 7, edits)));
+		assertEquals(todos, decoded.getResource());
+		assertEquals(4, decoded.getServerVersion());
+		assertEquals(7, decoded.getClientVersion());
+		assertEquals(2, decoded.getEdits().size());
+		assertEquals(3, decoded.getEdits().get(0).getServerVersion());
+		assertEquals(new Todo(3L, "C", false), decoded.getEdits().get(0).getOperations().get(0).getValue());
+		assertEquals(List.of("add", "remove"), ops(decoded.getEdits().get(0)));
+		assertEquals(List.of("replace", "test", "move", "copy"), ops(decoded.getEdits().get(1)));
+		assertEquals("/0", ((MoveOperation) decoded.getEdits().get(1).getOperations().get(2)).getFrom());
+
+		Patch reverse = new Patch(List.of(new ReplaceOperation("/1/complete", false)));
+		Shadow<?> backup = codec.decode(codec.encode(new Shadow<>(reverse, 4, 6)));
+		assertEquals("/1/complete", ((Patch) backup.getResource()).getOperations().get(0).getPath());
+		assertEquals(false, ((Patch) backup.getResource()).getOperations().get(0).getValue());
+		assertNull(codec.decode(codec.encode(new Shadow<>(null, 0, 0))).getResource());
+	}
+
+	@Test
+	public void valuesRecordsEnumsAndSharedReferencesRoundTrip() {
+		CompactShadowCodec codec = new CompactShadowCodec();
+		Node root = new Node();
+		root.name = "root";
+		Node child = new Node();
+		child.name = "child";
+		child.parent = root;
+		root.children.add(child);
+		root.children.add(child);
+		root.point = new Point(-3, 4);
+		root.color = Color.GREEN;
+		root.weight = 2.5;
+		root.tags = Map.of("size", BigDecimal.valueOf(12.75), "flags", Set.of('x'), "data", new byte[] { 1, 2 });
+
+		Node decoded = (Node) codec.decode(codec.encode(new Shadow<>(root, 1, 2))).getResource();
+		assertEquals("root", decoded.name);
+		assertSame(decoded.children.get(0), decoded.children.get(1));
+		assertSame(decoded, decoded.children.get(0).parent);
+		assertEquals(new Point(-3, 4), decoded.point);
+		assertEquals(Color.GREEN, decoded.color);
+		assertEquals(2.5, decoded.weight, 0);
+		assertEquals(BigDecimal.valueOf(12.75), decoded.tags.get("size"));
+		assertEquals(Set.of('x'), decoded.tags.get("flags"));
+		assertArrayEquals(new byte[] { 1, 2 }, (byte[]) decoded.tags.get("data"));
+	}
+
+	@Test
+	public void largeShadowsAreCompressed() {
+		Shadow<List<Todo>> shadow = new Shadow<>(todos(1000), 1, 1);
+		CompactShadowCodec codec = new CompactShadowCodec();
+		CompactShadowCodec uncompressed = new CompactShadowCodec();
+		uncompressed.setCompressionThreshold(Integer.MAX_VALUE);
+
+		byte[] compressedBytes = codec.encode(shadow);
+		byte[] uncompressedBytes = uncompressed.encode(shadow);
+		assertTrue(compressedBytes.length < uncompressedBytes.length / 2);
+		assertEquals(shadow.getResource(), codec.decode(compressedBytes).getResource());
+		assertEquals(shadow.getResource(), codec.decode(uncompressedBytes).getResource());
+	}
+
+	@Test
+	public void smallerThanJavaSerialization() {
+		Shadow<List<Todo>> shadow = new Shadow<>(todos(1000), 1, 1);
+		CompactShadowCodec uncompressed = new CompactShadowCodec();
+		uncompressed.setCompressionThreshold(Integer.MAX_VALUE);
+
+		int serializedSize = new SerializingShadowCodec().encode(shadow).length;
+		int compactSize = uncompressed.encode(shadow).length;
+		int compressedSize = new CompactShadowCodec().encode(shadow).length;
+		assertTrue(compactSize + " bytes against " + serializedSize, compactSize * 3 < serializedSize * 2);
+		assertTrue(compressedSize + " bytes against " + serializedSize, compressedSize * 4 < serializedSize);
+	}
+
+	private static List<String> ops(VersionedPatch patch) {
+		List<String> ops = new ArrayList<>();
+		patch.getOperations().forEach(operation -> ops.add(operation.getOp()));
+		return ops;
+	}
+
+	private static List<Todo> todos(int count) {
+		List<Todo> todos = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			todos.add(new Todo((long) i, "Todo number " + i, i % 3 == 0));
+		}
+		return todos;
+	}
+
+	private enum Color {
+		RED, GREEN
+	}
+
+	private record Point(int x, int y) {
+	}
+
+	private static class Node {
+
+		private String name;
+
+		private Node parent;
+
+		private List<Node> children = new ArrayList<>();
+
+		private Point point;
+
+		private Color color;
+
+		private double weight;
+
+		private Map<String, Object> tags;
+
+	}
+
+}
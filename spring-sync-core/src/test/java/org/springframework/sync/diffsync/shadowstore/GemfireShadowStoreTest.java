@@ -0,0 +1,149 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.sync.diffsync.shadowstore;
+
+import org.apache.geode.cache.CacheTransactionManager;
+import org.apache.geode.cache.CommitConflictException;
+import org.easymock.Capture;
+import org.junit.Test;
+import org.springframework.data.gemfire.GemfireOperations;
+import org.springframework.sync.Todo;
+import org.springframework.sync.diffsync.Shadow;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+
+import static org.easymock.EasyMock.*;
+import static org.junit.Assert.*;
+
+public class GemfireShadowStoreTest {
+
+	@Test
+	public void shadowsStoredWithCodec() throws Exception {
+		GemfireOperations gemfireTemplate = createMock(GemfireOperations.class);
+		Capture<Object> stored = newCapture();
+		expect(gemfireTemplate.put(eq("node:shadow/Todo"), capture(stored))).andReturn(null);
+		expect(gemfireTemplate.get("node:shadow/Todo")).andAnswer(stored::getValue);
+		replay(gemfireTemplate);
+
+		GemfireShadowStore shadowStore = new GemfireShadowStore("node", gemfireTemplate);
+		shadowStore.setShadowCodec(new CompactShadowCodec());
+		shadowStore.putShadow("shadow/Todo", new Shadow<>(new Todo(1L, "A", false), 1, 2));
+		Shadow<?> shadow = shadowStore.getShadow("shadow/Todo");
+
+		assertTrue(stored.getValue() instanceof byte[]);
+		assertEquals(new Todo(1L, "A", false), shadow.getResource());
+		assertEquals(2, shadow.getClientVersion());
+		verify(gemfireTemplate);
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void shadowsStoredWithTheirStampsInOnePutAll() throws Exception {
+		GemfireOperations gemfireTemplate = createMock(GemfireOperations.class);
+		Capture<Map<String, Object>> stored = newCapture();
+		gemfireTemplate.putAll(capture(stored));
+		expectLastCall();
+		expect(gemfireTemplate.get("node:shadow/Todo:stamp")).andReturn(7L);
+		replay(gemfireTemplate);
+
+		GemfireShadowStore shadowStore = new GemfireShadowStore("node", gemfireTemplate);
+		Shadow<Todo> shadow = new Shadow<>(new Todo(1L, "A", false), 1, 2);
+		shadowStore.putShadows(Map.of("shadow/Todo", shadow), Map.of("shadow/Todo", 7L));
+
+		assertEquals(Map.of("node:shadow/Todo", shadow, "node:shadow/Todo:stamp", 7L), stored.getValue());
+		assertEquals(Long.valueOf(7), shadowStore.getShadowStamps().getStamp("node:shadow/Todo"));
+		verify(gemfireTemplate);
+	}
+
+	@Test
+	public void shadowsAndStampsWrittenInATransaction() throws Exception {
+		GemfireOperations gemfireTemplate = createMock(GemfireOperations.class);
+		CacheTransactionManager transactionManager = createStrictMock(CacheTransactionManager.class);
+		expect(transactionManager.exists()).andReturn(false);
+		transactionManager.begin();
+		transactionManager.commit();
+		gemfireTemplate.putAll(anyObject());
+		expectLastCall();
+		replay(gemfireTemplate, transactionManager);
+
+		GemfireShadowStore shadowStore = new GemfireShadowStore("node", gemfireTemplate);
+		shadowStore.setCacheTransactionManager(transactionManager);
+		shadowStore.putShadows(Map.of("shadow/Todo", new Shadow<>(new Todo(1L, "A", false), 1, 2)), Map.of("shadow/Todo", 7L));
+
+		verify(gemfireTemplate, transactionManager);
+	}
+
+	@Test
+	public void failedCommitEndsTheTransaction() throws Exception {
+		GemfireOperations gemfireTemplate = createMock(GemfireOperations.class);
+		CacheTransactionManager transactionManager = createStrictMock(CacheTransactionManager.class);
+		expect(transactionManager.exists()).andReturn(false);
+		transactionManager.begin();
+		transactionManager.commit();
+		expectLastCall().andThrow(new CommitConflictException("conflict"));
+		expect(transactionManager.exists()).andReturn(false);
+		gemfireTemplate.putAll(anyObject());
+		expectLastCall();
+		replay(gemfireTemplate, transactionManager);
+
+		GemfireShadowStore shadowStore = new GemfireShadowStore("node", gemfireTemplate);
+		shadowStore.setCacheTransactionManager(transactionManager);
+		assertThrows(CommitConflictException.class, () -> shadowStore.putShadows(
+				Map.of("shadow/Todo", new Shadow<>(new Todo(1L, "A", false), 1, 2)), Map.of("shadow/Todo", 7L)));
+
+		verify(gemfireTemplate, transactionManager);
+	}
+
+	@Test
+	public void partiallyWrittenShadowsAndStampsRemovedWithoutATransaction() throws Exception {
+		GemfireOperations gemfireTemplate = createMock(GemfireOperations.class);
+		gemfireTemplate.putAll(anyObject());
+		expectLastCall().andThrow(new IllegalStateException("member departed"));
+		Capture<Collection<?>> removed = newCapture();
+		gemfireTemplate.removeAll(capture(removed));
+		expectLastCall();
+		replay(gemfireTemplate);
+
+		GemfireShadowStore shadowStore = new GemfireShadowStore("node", gemfireTemplate);
+		assertThrows(IllegalStateException.class, () -> shadowStore.putShadows(
+				Map.of("shadow/Todo", new Shadow<>(new Todo(1L, "A", false), 1, 2)), Map.of("shadow/Todo", 7L)));
+
+		assertEquals(Set.of("node:shadow/Todo", "node:shadow/Todo:stamp"), Set.copyOf(removed.getValue()));
+		verify(gemfireTemplate);
+	}
+
+	@Test
+	public void destroyRemovesShadowsAndStampsInOneRemoveAll() throws Exception {
+		GemfireOperations gemfireTemplate = createMock(GemfireOperations.class);
+		gemfireTemplate.putAll(anyObject());
+		expectLastCall();
+		Capture<Collection<?>> removed = newCapture();
+		gemfireTemplate.removeAll(capture(removed));
+		expectLastCall().once();
+		replay(gemfireTemplate);
+
+		GemfireShadowStore shadowStore = new GemfireShadowStore("node", gemfireTemplate);
+		shadowStore.putShadows(Map.of("shadow/Todo", new Shadow<>(new Todo(1L, "A", false), 1, 2)), Map.of("shadow/Todo", 7L));
+		shadowStore.destroy();
+		shadowStore.destroy();
+
+		assertEquals(Set.of("node:shadow/Todo", "node:shadow/Todo:stamp"), Set.copyOf(removed.getValue()));
+		verify(gemfireTemplate);
+	}
+
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.sync.diffsync.shadowstore;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import static org.junit.Assert.*;
+
+public class MappedShadowLogTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void newestValueWins() throws Exception {
+		MappedShadowLog log = new MappedShadowLog(folder.getRoot().toPath(), 4096);
+		assertNull(log.get("a"));
+		log.put("a", bytes("first"));
+		log.put("b", bytes("other"));
+		log.put("a", bytes("second"));
+		assertEquals("second", string(log.get("a")));
+		assertEquals("other", string(log.get("b")));
+		assertTrue(log.getDeadBytes() > 0);
+		log.close();
+	}
+
+	@Test
+	public void recoveredAfterReopening() throws Exception {
+		Path directory = folder.getRoot().toPath();
+		MappedShadowLog log = new MappedShadowLog(directory, 4096);
+		log.put("node1:a", bytes("first"));
+		log.put("node1:a", bytes("second"));
+		log.put("node1:b", bytes("removed"));
+		log.put("node2:a", bytes("kept"));
+		log.removeAll("node1:b");
+		long live = log.getLiveBytes();
+		log.close();
+
+		MappedShadowLog reopened = new MappedShadowLog(directory, 4096);
+		assertEquals("second", string(reopened.get("node1:a")));
+		assertNull(reopened.get("node1:b"));
+		assertEquals("kept", string(reopened.get("node2:a")));
+		assertEquals(live, reopened.getLiveBytes());
+
+		// appending resumes after the recovered records
+		reopened.put("node2:a", bytes("changed"));
+		reopened.close();
+		assertEquals("changed", string(new MappedShadowLog(directory, 4096).get("node2:a")));
+	}
+
+	@Test
+	public void incompleteRecordIsIgnored() throws Exception {
+		Path directory = folder.getRoot().toPath();
+		MappedShadowLog log = new MappedShadowLog(directory, 4096);
+		log.put("a", bytes("complete"));
+		log.put("b", bytes("torn"));
+		log.close();
+
+		// corrupt the last byte of the second record's value, as if the process died while writing it
+		try (RandomAccessFile file = new RandomAccessFile(directory.resolve("shadows-00000000.log").toFile(), "rw")) {
+			int end = 2 * (8 + 4 + 1 + 4) + "complete".length() + "torn".length();
+			file.seek(end - 1);
+			file.write('x');
+		}
+
+		MappedShadowLog reopened = new MappedShadowLog(directory, 4096);
+		assertEquals("complete", string(reopened.get("a")));
+		assertNull(reopened.get("b"));
+		reopened.put("b", bytes("rewritten"));
+		reopened.close();
+		assertEquals("rewritten", string(new MappedShadowLog(directory, 4096).get("b")));
+	}
+
+	@Test
+	public void compactionDropsSupersededSegments() throws Exception {
+		Path directory = folder.getRoot().toPath();
+		MappedShadowLog log = new MappedShadowLog(directory, 256);
+		for (int i = 0; i < 100; i++) {
+			log.put("a", bytes("value " + i));
+			log.put("b", bytes("value " + i));
+		}
+		// superseded segments were compacted away as new ones were needed
+		assertTrue(log.getSegmentCount() <= 3);
+		assertEquals("value 99", string(log.get("a")));
+
+		log.compact();
+		assertEquals(1, log.getSegmentCount());
+		assertEquals("value 99", string(log.get("b")));
+		log.close();
+
+		MappedShadowLog reopened = new MappedShadowLog(directory, 256);
+		assertEquals("value 99", string(reopened.get("a")));
+		assertEquals("value 99", string(reopened.get("b")));
+	}
+
+	private static byte[] bytes(String value) {
+		return value.getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static String string(byte[] bytes) {
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.sync.diffsync.shadowstore;
+
+import org.junit.Test;
+import org.springframework.data.redis.core.ReactiveRedisOperations;
+import org.springframework.data.redis.core.ReactiveValueOperations;
+import org.springframework.sync.Patch;
+import org.springframework.sync.diffsync.Shadow;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.easymock.EasyMock.*;
+import static org.junit.Assert.*;
+
+public class ReactiveRedisShadowStoreTest {
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void shadowsReadWithOneCommandAndWrittenWithExpiry() throws Exception {
+		ReactiveRedisOperations<String, Shadow<?>> redisTemplate = createMock(ReactiveRedisOperations.class);
+		ReactiveValueOperations<String, Shadow<?>> valueOperations = createMock(ReactiveValueOperations.class);
+		Duration timeToLive = Duration.ofMinutes(30);
+		Shadow<String> shadow = new Shadow<>("resource", 1, 2);
+		Shadow<Patch> backup = new Shadow<>(new Patch(List.of()), 1, 1);
+
+		expect(redisTemplate.opsForValue()).andReturn(valueOperations).anyTimes();
+		expect(valueOperations.multiGet(List.of("node:shadow/Todo", "node:shadow/Todo_backup"))).andReturn(Mono.just(Arrays.asList(shadow, null)));
+		expect(valueOperations.set("node:shadow/Todo", shadow, timeToLive)).andReturn(Mono.just(true));
+		expect(valueOperations.set("node:shadow/Todo_backup", backup, timeToLive)).andReturn(Mono.just(true));
+		replay(redisTemplate, valueOperations);
+
+		ReactiveRedisShadowStore shadowStore = new ReactiveRedisShadowStore("node", redisTemplate);
+		shadowStore.setTimeToLive(timeToLive);
+		Map<String, Shadow<?>> read = shadowStore.getShadows(List.of("shadow/Todo", "shadow/Todo_backup")).toCompletableFuture().get();
+		assertEquals(Map.of("shadow/Todo", shadow), read);
+
+		Map<String, Shadow<?>> shadows = new LinkedHashMap<>();
+		shadows.put("shadow/Todo", shadow);
+		shadows.put("shadow/Todo_backup", backup);
+		shadowStore.putShadows(shadows).toCompletableFuture().get();
+
+		verify(valueOperations);
+	}
+
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.sync.diffsync.shadowstore;
+
+import org.junit.Test;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.sync.Patch;
+import org.springframework.sync.diffsync.Shadow;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.easymock.EasyMock.*;
+import static org.junit.Assert.*;
+
+public class RedisShadowStoreTest {
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void shadowAndBackupWrittenWithOneCommand() throws Exception {
+		RedisOperations<String, Shadow<?>> redisTemplate = createMock(RedisOperations.class);
+		ValueOperations<String, Shadow<?>> valueOperations = createMock(ValueOperations.class);
+		Shadow<String> shadow = new Shadow<>("resource", 1, 2);
+		Shadow<Patch> backup = new Shadow<>(new Patch(List.of()), 1, 1);
+
+		Map<String, Shadow<?>> expected = new LinkedHashMap<>();
+		expected.put("node:shadow/Todo", shadow);
+		expected.put("node:shadow/Todo_backup", backup);
+		expect(redisTemplate.opsForValue()).andReturn(valueOperations);
+		valueOperations.multiSet(expected);
+		expect(redisTemplate.delete(Set.of("node:shadow/Todo", "node:shadow/Todo_backup"))).andReturn(2L);
+		replay(redisTemplate, valueOperations);
+
+		RedisShadowStore shadowStore = new RedisShadowStore("node", redisTemplate);
+		Map<String, Shadow<?>> shadows = new LinkedHashMap<>();
+		shadows.put("shadow/Todo", shadow);
+		shadows.put("shadow/Todo_backup", backup);
+		shadowStore.putShadows(shadows);
+		shadowStore.destroy();
+
+		verify(redisTemplate, valueOperations);
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void expiryRefreshedOnEachWriteAndKeysDeletedOnce() throws Exception {
+		RedisOperations<String, Shadow<?>> redisTemplate = createMock(RedisOperations.class);
+		ValueOperations<String, Shadow<?>> valueOperations = createMock(ValueOperations.class);
+		Duration timeToLive = Duration.ofMinutes(30);
+		Shadow<String> shadow = new Shadow<>("resource", 1, 2);
+
+		expect(redisTemplate.opsForValue()).andReturn(valueOperations).times(3);
+		valueOperations.set("node:shadow/Todo", shadow, timeToLive);
+		expectLastCall().times(3);
+		expect(redisTemplate.delete(Set.of("node:shadow/Todo"))).andReturn(1L);
+		replay(redisTemplate, valueOperations);
+
+		RedisShadowStore shadowStore = new RedisShadowStore("node", redisTemplate);
+		shadowStore.setTimeToLive(timeToLive);
+		for (int i = 0; i < 3; i++) {
+			shadowStore.putShadow("shadow/Todo", shadow);
+		}
+		shadowStore.destroy();
+		shadowStore.destroy();
+
+		verify(redisTemplate, valueOperations);
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void shadowsReadWithOneCommand() throws Exception {
+		RedisOperations<String, Shadow<?>> redisTemplate = createMock(RedisOperations.class);
+		ValueOperations<String, Shadow<?>> valueOperations = createMock(ValueOperations.class);
+		Shadow<String> shadow = new Shadow<>("resource", 1, 2);
+
+		expect(redisTemplate.opsForValue()).andReturn(valueOperations);
+		expect(valueOperations.multiGet(List.of("node:shadow/Todo", "node:shadow/Todo_backup"))).andReturn(Arrays.asList(shadow, null));
+		replay(redisTemplate, valueOperations);
+
+		RedisShadowStore shadowStore = new RedisShadowStore("node", redisTemplate);
+		Map<String, Shadow<?>> shadows = shadowStore.getShadows(List.of("shadow/Todo", "shadow/Todo_backup"));
+
+		assertEquals(Map.of("shadow/Todo", shadow), shadows);
+		verify(redisTemplate, valueOperations);
+	}
+
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.sync.diffsync.shadowstore;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class SlabAllocatorTest {
+
+	@Test
+	public void sizeClasses() {
+		assertEquals(64, SlabAllocator.sizeClass(1));
+		assertEquals(64, SlabAllocator.sizeClass(64));
+		assertEquals(80, SlabAllocator.sizeClass(65));
+		assertEquals(128, SlabAllocator.sizeClass(128));
+		assertEquals(160, SlabAllocator.sizeClass(129));
+		assertEquals(1280, SlabAllocator.sizeClass(1100));
+	}
+
+	@Test
+	public void readsBackWhatWasWritten() {
+		SlabAllocator allocator = new SlabAllocator(1024);
+		long first = allocator.allocate(bytes(100, (byte) 1));
+		long second = allocator.allocate(bytes(10, (byte) 2));
+		assertArrayEquals(bytes(100, (byte) 1), allocator.read(first, 100));
+		assertArrayEquals(bytes(10, (byte) 2), allocator.read(second, 10));
+		assertEquals(1024, allocator.getReservedBytes());
+		assertEquals(112 + 64, allocator.getAllocatedBytes());
+		assertEquals(110, allocator.getResidentBytes());
+	}
+
+	@Test
+	public void freedBlocksAreReused() {
+		SlabAllocator allocator = new SlabAllocator(1024);
+		long first = allocator.allocate(bytes(100, (byte) 1));
+		allocator.allocate(bytes(10, (byte) 2));
+		allocator.free(first, 100);
+		assertEquals(112, allocator.getFreeBytes());
+		assertEquals(10, allocator.getResidentBytes());
+
+		long reused = allocator.allocate(bytes(110, (byte) 3));
+		assertEquals(first, reused);
+		assertEquals(0, allocator.getFreeBytes());
+		assertArrayEquals(bytes(110, (byte) 3), allocator.read(reused, 110));
+
+		// a larger block is carved out of the slab instead
+		long other = allocator.allocate(bytes(200, (byte) 4));
+		assertNotEquals(first, other);
+	}
+
+	@Test
+	public void freedNeighboursAreMergedAndSplitForSmallerBlocks() {
+		SlabAllocator allocator = new SlabAllocator(1024);
+		long first = allocator.allocate(bytes(64, (byte) 1));
+		long second = allocator.allocate(bytes(64, (byte) 2));
+		long third = allocator.allocate(bytes(64, (byte) 3));
+		allocator.allocate(bytes(64, (byte) 4));
+		allocator.free(first, 64);
+		allocator.free(third, 64);
+		allocator.free(second, 64);
+		assertEquals(192, allocator.getFreeBytes());
+
+		// the merged block holds a block larger than any of the freed ones, and what's left of it stays free
+		long merged = allocator.allocate(bytes(160, (byte) 5));
+		assertEquals(first, merged);
+		assertEquals(32, allocator.getFreeBytes());
+		assertArrayEquals(bytes(160, (byte) 5), allocator.read(merged, 160));
+	}
+
+	@Test
+	public void blocksFreedAtTheEndGoBackToTheSlab() {
+		SlabAllocator allocator = new SlabAllocator(1024);
+		long first = allocator.allocate(bytes(64, (byte) 1));
+		long second = allocator.allocate(bytes(64, (byte) 2));
+		allocator.free(second, 64);
+		allocator.free(first, 64);
+		assertEquals(0, allocator.getFreeBytes());
+		assertEquals(first, allocator.allocate(bytes(1000, (byte) 3)));
+		assertEquals(1024, allocator.getReservedBytes());
+	}
+
+	@Test
+	public void emptySlabsAreReleased() {
+		SlabAllocator allocator = new SlabAllocator(256);
+		long first = allocator.allocate(bytes(200, (byte) 1));
+		long second = allocator.allocate(bytes(200, (byte) 2));
+		assertEquals(512, allocator.getReservedBytes());
+
+		allocator.free(first, 200);
+		assertEquals(256, allocator.getReservedBytes());
+		assertEquals(0, allocator.getFreeBytes());
+
+		// the slab being carved from is kept, and its released neighbour's memory is reserved again when needed
+		allocator.free(second, 200);
+		assertEquals(256, allocator.getReservedBytes());
+		allocator.allocate(bytes(200, (byte) 3));
+		long fourth = allocator.allocate(bytes(200, (byte) 4));
+		assertEquals(512, allocator.getReservedBytes());
+		assertArrayEquals(bytes(200, (byte) 4), allocator.read(fourth, 200));
+	}
+
+	@Test
+	public void newSlabWhenFullAndOwnSlabForLargeBlocks() {
+		SlabAllocator allocator = new SlabAllocator(256);
+		allocator.allocate(bytes(200, (byte) 1));
+		allocator.allocate(bytes(200, (byte) 2));
+		assertEquals(512, allocator.getReservedBytes());
+		assertTrue(allocator.getFragmentation() > 0.2);
+
+		long large = allocator.allocate(bytes(1000, (byte) 5));
+		assertArrayEquals(bytes(1000, (byte) 5), allocator.read(large, 1000));
+		assertEquals(512 + 1024, allocator.getReservedBytes());
+		allocator.free(large, 1000);
+		assertEquals(512, allocator.getReservedBytes());
+		assertEquals(0, allocator.getFreeBytes());
+	}
+
+	private static byte[] bytes(int length, byte value) {
+		byte[] bytes = new byte[length];
+		Arrays.fill(bytes, value);
+		return bytes;
+	}
+
+}
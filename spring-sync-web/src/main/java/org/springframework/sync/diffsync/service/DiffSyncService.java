@@ -1,12 +1,26 @@
 package org.springframework.sync.diffsync.service;
 
 import org.springframework.sync.Patch;
+import org.springframework.sync.diffsync.LoggedPatch;
 import org.springframework.sync.diffsync.exception.PersistenceCallbackNotFoundException;
 import org.springframework.sync.diffsync.exception.ResourceNotFoundException;
+import org.springframework.sync.diffsync.exception.VersionEvictedException;
+import org.springframework.sync.diffsync.shadowstore.AsyncShadowStore;
 import org.springframework.sync.diffsync.shadowstore.ShadowStore;
 import org.springframework.sync.exception.PatchException;
 
+import java.util.concurrent.CompletionStage;
+
 public interface DiffSyncService {
     Patch patch(ShadowStore shadowStore, String resource, Patch patch) throws PersistenceCallbackNotFoundException, PatchException;
     Patch patch(ShadowStore shadowStore, String resource, String id, Patch patch) throws PersistenceCallbackNotFoundException, PatchException, ResourceNotFoundException;
+    CompletionStage<Patch> patch(AsyncShadowStore shadowStore, String resource, Patch patch) throws PersistenceCallbackNotFoundException, PatchException;
+    CompletionStage<Patch> patch(AsyncShadowStore shadowStore, String resource, String id, Patch patch) throws PersistenceCallbackNotFoundException, PatchException, ResourceNotFoundException;
+    Patch diff(ShadowStore shadowStore, String resource) throws PersistenceCallbackNotFoundException, PatchException;
+    Patch diff(ShadowStore shadowStore, String resource, String id) throws PersistenceCallbackNotFoundException, PatchException, ResourceNotFoundException;
+    Object findCurrent(String resource) throws PersistenceCallbackNotFoundException;
+    Object findCurrent(String resource, String id) throws PersistenceCallbackNotFoundException, ResourceNotFoundException;
+    Patch diffAgainst(ShadowStore shadowStore, String resource, Object current) throws PersistenceCallbackNotFoundException, PatchException;
+    LoggedPatch patchesSince(String resource, long version) throws VersionEvictedException;
+    LoggedPatch patchesSince(String resource, String id, long version) throws VersionEvictedException;
 }
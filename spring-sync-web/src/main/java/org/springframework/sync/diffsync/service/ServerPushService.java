@@ -0,0 +1,18 @@
+package org.springframework.sync.diffsync.service;
+
+/**
+ * Pushes server-side changes to WebSocket sessions without waiting for the sessions to send a patch.
+ * Changes are collected as they're reported and pushed on the next sync cycle, once per affected session and resource.
+ * {@code resourceChanged} reports changes made other than through the {@link DiffSyncService}, such as by the application,
+ * and {@code resourcePatched} those made by patches applied with it.
+ */
+public interface ServerPushService {
+    void resourceChanged(String resource);
+    void resourceChanged(String resource, String id);
+    void resourcePatched(String resource);
+    void resourcePatched(String resource, String id);
+    void register(String sessionId, String resource);
+    void register(String sessionId, String resource, String id);
+    void unregister(String sessionId);
+    void push();
+}
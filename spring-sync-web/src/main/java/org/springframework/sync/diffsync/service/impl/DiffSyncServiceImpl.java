@@ -1,57 +1,530 @@
 package org.springframework.sync.diffsync.service.impl;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
+import org.springframework.sync.Diff;
+import org.springframework.sync.DiffCostModel;
+import org.springframework.sync.FuzzyTextPatcher;
+import org.springframework.sync.AddOperation;
+import org.springframework.sync.FromOperation;
+import org.springframework.sync.MoveOperation;
 import org.springframework.sync.Patch;
+import org.springframework.sync.PatchEngine;
+import org.springframework.sync.PatchOperation;
+import org.springframework.sync.RemoveOperation;
+import org.springframework.sync.diffsync.AsyncDiffSync;
+import org.springframework.sync.diffsync.CollectionCache;
 import org.springframework.sync.diffsync.DiffSync;
 import org.springframework.sync.diffsync.Equivalency;
+import org.springframework.sync.diffsync.IdExtractor;
+import org.springframework.sync.diffsync.LoggedPatch;
+import org.springframework.sync.diffsync.OperationLog;
 import org.springframework.sync.diffsync.PersistenceCallback;
 import org.springframework.sync.diffsync.PersistenceCallbackRegistry;
+import org.springframework.sync.diffsync.VersionedPatch;
 import org.springframework.sync.diffsync.exception.PersistenceCallbackNotFoundException;
 import org.springframework.sync.diffsync.exception.ResourceNotFoundException;
+import org.springframework.sync.diffsync.exception.VersionEvictedException;
 import org.springframework.sync.diffsync.service.DiffSyncService;
+import org.springframework.sync.diffsync.shadowstore.AsyncShadowStore;
 import org.springframework.sync.diffsync.shadowstore.ShadowStore;
 import org.springframework.sync.exception.PatchException;
+import org.springframework.sync.json.JsonNodePatchEngine;
+import org.springframework.sync.util.Cloner;
+import org.springframework.sync.util.ReflectiveCloner;
 
 import javax.transaction.Transactional;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
 
 @Service
 @RequiredArgsConstructor
 @Transactional(rollbackOn = Exception.class)
 public class DiffSyncServiceImpl implements DiffSyncService {
 
+    private static final JsonNodePatchEngine JSON_NODE_PATCH_ENGINE = new JsonNodePatchEngine();
+
     private final PersistenceCallbackRegistry callbackRegistry;
     private final Equivalency equivalency;
 
+    private FuzzyTextPatcher fuzzyTextPatcher;
+
+    private DiffCostModel diffCostModel;
+
+    private Cloner cloner = new ReflectiveCloner();
+
+    private OperationLog operationLog;
+
+    private CollectionCache collectionCache;
+
+    /**
+     * Sets the {@link FuzzyTextPatcher} that lets patches through whose string tests fail only because the text has drifted a little.
+     *
+     * @param fuzzyTextPatcher the patcher, or null to reject such patches.
+     */
+    public void setFuzzyTextPatcher(FuzzyTextPatcher fuzzyTextPatcher) {
+        this.fuzzyTextPatcher = fuzzyTextPatcher;
+    }
+
+    /**
+     * Sets the {@link DiffCostModel} that decides when the operations changing an entity are collapsed into a single replace of it
+     * in the patches returned by this service. The model is shared by all the diffs, so its statistics cover them all.
+     *
+     * @param diffCostModel the cost model, or null to always return fine-grained operations.
+     */
+    public void setDiffCostModel(DiffCostModel diffCostModel) {
+        this.diffCostModel = diffCostModel;
+    }
+
+    /**
+     * Sets the {@link Cloner} that copies resources into their shadows, and makes the copies patches are applied to.
+     * Defaults to a {@link ReflectiveCloner}.
+     *
+     * @param cloner the cloner.
+     */
+    public void setCloner(Cloner cloner) {
+        this.cloner = cloner;
+    }
+
+    /**
+     * Sets the {@link OperationLog} that keeps the patches applied to each resource, so that clients can catch up on them with
+     * {@link #patchesSince(String, long)}. When set, the patches returned by this service are {@link LoggedPatch}es carrying the
+     * version of the resource they bring the client to.
+     *
+     * @param operationLog the operation log, or null to keep no patches.
+     */
+    public void setOperationLog(OperationLog operationLog) {
+        this.operationLog = operationLog;
+    }
+
+    /**
+     * Sets the {@link CollectionCache} that keeps a view of each resource's collection, making patches of collections incremental:
+     * rather than loading the whole collection with {@link PersistenceCallback#findAll()} for each patch, the view is patched, and
+     * only the entities the patch touches are loaded again, with {@link PersistenceCallback#findOne(String)}, so that they're current.
+     * Entities are only loaded again when the {@link Equivalency} is also an {@link IdExtractor}. The whole collection is loaded again
+     * after the view is invalidated, and after patches that add entities, as their ids are only known once they've been persisted,
+     * that replace the whole collection, or that touch entities that are gone.
+     *
+     * @param collectionCache the collection cache, or null to load the whole collection for each patch.
+     */
+    public void setCollectionCache(CollectionCache collectionCache) {
+        this.collectionCache = collectionCache;
+    }
+
     @Override
     @SuppressWarnings({"unchecked", "rawtypes"})
     public Patch patch(ShadowStore shadowStore, String resource, Patch patch) throws PersistenceCallbackNotFoundException, PatchException {
         PersistenceCallback<?> persistenceCallback = callbackRegistry.findPersistenceCallback(resource);
-        return applyAndDiffAgainstList(shadowStore, patch, (List) persistenceCallback.findAll(), persistenceCallback);
+        Patch modifiedPatch = Objects.isNull(collectionCache)
+                ? applyAndDiffAgainstList(shadowStore, resource, patch, (List) persistenceCallback.findAll(), persistenceCallback)
+                : applyAndDiffAgainstView(shadowStore, resource, patch, persistenceCallback);
+        return Objects.isNull(operationLog) ? modifiedPatch : logged(modifiedPatch, operationLog.getVersion(resource));
     }
 
     @Override
     public Patch patch(ShadowStore shadowStore, String resource, String id, Patch patch) throws PersistenceCallbackNotFoundException, PatchException, ResourceNotFoundException {
         PersistenceCallback<?> persistenceCallback = callbackRegistry.findPersistenceCallback(resource);
         Object findOne = persistenceCallback.findOne(id);
-        return applyAndDiff(shadowStore, patch, findOne, persistenceCallback);
+        Patch modifiedPatch = applyAndDiff(shadowStore, resource, id, patch, findOne, persistenceCallback);
+        return Objects.isNull(operationLog) ? modifiedPatch : logged(modifiedPatch, operationLog.getVersion(resource + "/" + id));
+    }
+
+    /**
+     * Patches a resource's collection like {@link #patch(ShadowStore, String, Patch)}, reading and writing its shadows without
+     * blocking. The collection is loaded, and the patched one persisted, in the calling thread's transaction only while the
+     * store's stages complete on the calling thread, as those of an {@link org.springframework.sync.diffsync.shadowstore.AsyncShadowStoreAdapter} do.
+     * A patch that has failed by the time this returns is thrown rather than returned, so that the transaction is rolled back.
+     */
+    @Override
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public CompletionStage<Patch> patch(AsyncShadowStore shadowStore, String resource, Patch patch) throws PersistenceCallbackNotFoundException, PatchException {
+        PersistenceCallback<?> persistenceCallback = callbackRegistry.findPersistenceCallback(resource);
+        CompletionStage<VersionedPatch> modifiedPatch = Objects.isNull(collectionCache)
+                ? applyAndDiffAgainstList(shadowStore, resource, patch, (List) persistenceCallback.findAll(), persistenceCallback)
+                : applyAndDiffAgainstView(shadowStore, resource, patch, persistenceCallback);
+        return failingEarly(modifiedPatch.thenApply(modified ->
+                Objects.isNull(operationLog) ? modified : logged(modified, operationLog.getVersion(resource))));
+    }
+
+    /**
+     * Patches an entity like {@link #patch(ShadowStore, String, String, Patch)}, reading and writing its shadows without blocking.
+     * See {@link #patch(AsyncShadowStore, String, Patch)}.
+     */
+    @Override
+    public CompletionStage<Patch> patch(AsyncShadowStore shadowStore, String resource, String id, Patch patch) throws PersistenceCallbackNotFoundException, PatchException, ResourceNotFoundException {
+        PersistenceCallback<?> persistenceCallback = callbackRegistry.findPersistenceCallback(resource);
+        Object findOne = persistenceCallback.findOne(id);
+        CompletionStage<VersionedPatch> modifiedPatch = applyAndDiff(shadowStore, resource, id, patch, findOne, persistenceCallback);
+        return failingEarly(modifiedPatch.thenApply(modified ->
+                Objects.isNull(operationLog) ? modified : logged(modified, operationLog.getVersion(resource + "/" + id))));
+    }
+
+    @Override
+    public LoggedPatch patchesSince(String resource, long version) throws VersionEvictedException {
+        return patchesSinceVersion(resource, version);
+    }
+
+    @Override
+    public LoggedPatch patchesSince(String resource, String id, long version) throws VersionEvictedException {
+        return patchesSinceVersion(resource + "/" + id, version);
+    }
+
+    private LoggedPatch patchesSinceVersion(String key, long version) throws VersionEvictedException {
+        if (Objects.isNull(operationLog)) {
+            throw new VersionEvictedException(key, version);
+        }
+        return operationLog.since(key, version);
+    }
+
+    @Override
+    public Patch diff(ShadowStore shadowStore, String resource) throws PersistenceCallbackNotFoundException, PatchException {
+        return diffAgainst(shadowStore, resource, findCurrent(resource));
+    }
+
+    @Override
+    public Patch diff(ShadowStore shadowStore, String resource, String id) throws PersistenceCallbackNotFoundException, PatchException, ResourceNotFoundException {
+        return diffAgainst(shadowStore, resource, findCurrent(resource, id));
+    }
+
+    /**
+     * Loads the current state of a resource's collection, so that several shadows can be diffed against it with
+     * {@link #diffAgainst(ShadowStore, String, Object)} without loading it again for each.
+     */
+    @Override
+    public Object findCurrent(String resource) throws PersistenceCallbackNotFoundException {
+        PersistenceCallback<?> persistenceCallback = callbackRegistry.findPersistenceCallback(resource);
+        return Objects.isNull(collectionCache)
+                ? persistenceCallback.findAll()
+                : collectionCache.get(resource, persistenceCallback::findAll).getItems();
+    }
+
+    /**
+     * Loads the current state of an entity, so that several shadows can be diffed against it with
+     * {@link #diffAgainst(ShadowStore, String, Object)} without loading it again for each.
+     */
+    @Override
+    public Object findCurrent(String resource, String id) throws PersistenceCallbackNotFoundException, ResourceNotFoundException {
+        return callbackRegistry.findPersistenceCallback(resource).findOne(id);
+    }
+
+    /**
+     * Diffs a shadow against the current state of a resource's collection or entity, as loaded by {@code findCurrent}.
+     * The current state is left unchanged, so it can be shared by several diffs.
+     */
+    @Override
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public Patch diffAgainst(ShadowStore shadowStore, String resource, Object current) throws PersistenceCallbackNotFoundException, PatchException {
+        PersistenceCallback<?> persistenceCallback = callbackRegistry.findPersistenceCallback(resource);
+        return current instanceof List list
+                ? diffAgainstList(shadowStore, list, persistenceCallback)
+                : diff(shadowStore, current, persistenceCallback);
     }
 
     @SuppressWarnings("unchecked")
-    private <T> Patch applyAndDiff(ShadowStore shadowStore, Patch patch, Object target, PersistenceCallback<T> persistenceCallback) throws PatchException {
-        DiffSync<T> sync = new DiffSync<>(shadowStore, persistenceCallback.getEntityType());
+    private <T> Patch applyAndDiff(ShadowStore shadowStore, String resource, String id, Patch patch, Object target, PersistenceCallback<T> persistenceCallback) throws PatchException {
+        DiffSync<T> sync = createDiffSync(shadowStore, persistenceCallback.getEntityType());
         T patched = sync.apply((T) target, patch);
-        persistenceCallback.persistChange(patched);
+        entityPatched(resource, id, (T) target, patched, patch, persistenceCallback);
         return sync.diff(patched);
     }
 
-    private <T> Patch applyAndDiffAgainstList(ShadowStore shadowStore, Patch patch, List<T> target, PersistenceCallback<T> persistenceCallback) throws PatchException {
-        DiffSync<T> sync = new DiffSync<>(shadowStore, persistenceCallback.getEntityType());
-
+    private <T> Patch applyAndDiffAgainstList(ShadowStore shadowStore, String resource, Patch patch, List<T> target, PersistenceCallback<T> persistenceCallback) throws PatchException {
+        DiffSync<T> sync = createDiffSync(shadowStore, persistenceCallback.getEntityType());
         List<T> patched = sync.apply(target, patch);
+        listPatched(resource, target, patched, patch, persistenceCallback);
+        return sync.streamDiff(patched);
+    }
+
+    private <T> Patch applyAndDiffAgainstView(ShadowStore shadowStore, String resource, Patch patch, PersistenceCallback<T> persistenceCallback) throws PatchException {
+        ViewTarget<T> target = viewTarget(resource, patch, persistenceCallback);
+        DiffSync<T> sync = createDiffSync(shadowStore, persistenceCallback.getEntityType());
+        List<T> patched = sync.apply(target.items(), patch);
+        viewPatched(resource, target, patched, patch, persistenceCallback);
+        return sync.streamDiff(patched);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> CompletionStage<VersionedPatch> applyAndDiff(AsyncShadowStore shadowStore, String resource, String id, Patch patch, Object target, PersistenceCallback<T> persistenceCallback) {
+        AsyncDiffSync<T> sync = createAsyncDiffSync(shadowStore, persistenceCallback.getEntityType());
+        return sync.apply(patch, (T) target).thenCompose(patched -> {
+            try {
+                entityPatched(resource, id, (T) target, patched, patch, persistenceCallback);
+            } catch (PatchException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+            return sync.diff(patched);
+        });
+    }
+
+    private <T> CompletionStage<VersionedPatch> applyAndDiffAgainstList(AsyncShadowStore shadowStore, String resource, Patch patch, List<T> target, PersistenceCallback<T> persistenceCallback) {
+        AsyncDiffSync<T> sync = createAsyncDiffSync(shadowStore, persistenceCallback.getEntityType());
+        return sync.apply(patch, target).thenCompose(patched -> {
+            try {
+                listPatched(resource, target, patched, patch, persistenceCallback);
+            } catch (PatchException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+            return sync.diff(patched);
+        });
+    }
+
+    private <T> CompletionStage<VersionedPatch> applyAndDiffAgainstView(AsyncShadowStore shadowStore, String resource, Patch patch, PersistenceCallback<T> persistenceCallback) {
+        ViewTarget<T> target = viewTarget(resource, patch, persistenceCallback);
+        AsyncDiffSync<T> sync = createAsyncDiffSync(shadowStore, persistenceCallback.getEntityType());
+        return sync.apply(patch, target.items()).thenCompose(patched -> {
+            try {
+                viewPatched(resource, target, patched, patch, persistenceCallback);
+            } catch (PatchException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+            return sync.diff(patched);
+        });
+    }
+
+    // A failed patch completes its stage rather than throwing, which wouldn't roll the transaction back.
+    private static <R> CompletionStage<R> failingEarly(CompletionStage<R> stage) throws PatchException {
+        CompletableFuture<R> future = stage.toCompletableFuture();
+        if (future.isCompletedExceptionally()) {
+            try {
+                future.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof PatchException patchException) {
+                    throw patchException;
+                }
+                if (e.getCause() instanceof RuntimeException runtimeException) {
+                    throw runtimeException;
+                }
+                throw e;
+            }
+        }
+        return future;
+    }
+
+    private <T> void entityPatched(String resource, String id, T target, T patched, Patch patch, PersistenceCallback<T> persistenceCallback) throws PatchException {
+        logEntityChange(resource, id, target, patched, patch, persistenceCallback.getEntityType());
+        persistenceCallback.persistChange(patched);
+        if (Objects.nonNull(collectionCache)) {
+            collectionCache.replace(resource, patched, equivalency);
+        }
+    }
+
+    private <T> void listPatched(String resource, List<T> target, List<T> patched, Patch patch, PersistenceCallback<T> persistenceCallback) throws PatchException {
+        logListChanges(resource, target, patched, patch, persistenceCallback.getEntityType());
+        persistListChanges(target, patched, persistenceCallback);
+    }
+
+    private <T> void viewPatched(String resource, ViewTarget<T> target, List<T> patched, Patch patch, PersistenceCallback<T> persistenceCallback) throws PatchException {
+        logListChanges(resource, target.items(), patched, patch, persistenceCallback.getEntityType());
+        if (persistListChanges(target.items(), patched, persistenceCallback)) {
+            collectionCache.invalidate(resource);
+        } else {
+            collectionCache.update(resource, target.view(), patched);
+        }
+    }
+
+    // The collection a patch is applied to, with the entities it touches loaded again, and the view it was copied from.
+    private record ViewTarget<T>(CollectionCache.View<T> view, List<T> items) {
+    }
+
+    private <T> ViewTarget<T> viewTarget(String resource, Patch patch, PersistenceCallback<T> persistenceCallback) {
+        CollectionCache.View<T> view = collectionCache.get(resource, persistenceCallback::findAll);
+        List<T> target = reloadTouched(view.getItems(), patch, persistenceCallback);
+        if (Objects.isNull(target)) {
+            collectionCache.invalidate(resource);
+            view = collectionCache.get(resource, persistenceCallback::findAll);
+            target = view.getItems();
+        }
+        return new ViewTarget<>(view, target);
+    }
+
+    // The log keeps the changes that were actually made, which may differ from the client's patch: a duplicate patch changes nothing,
+    // and a fuzzily matched replace changes text the patch didn't expect. They're diffed before persisting, which may update the
+    // target's managed entities in place. The entity's change also changes the collection, whose index-based log can't express
+    // it without loading the collection, so the collection's log is reset.
+    private <T> void logEntityChange(String resource, String id, T target, T patched, Patch patch, Class<T> entityType) throws PatchException {
+        if (Objects.isNull(operationLog) || patched == target) {
+            return;
+        }
+        Patch applied = diffResource(target, patched, entityType);
+        if (applied.size() > 0) {
+            operationLog.append(resource + "/" + id, logEntry(applied, patch));
+            operationLog.reset(resource);
+        }
+    }
+
+    // Each changed entity's own log gets the entity's change, and removed entities' logs are reset.
+    private <T> void logListChanges(String resource, List<T> target, List<T> patched, Patch patch, Class<T> entityType) throws PatchException {
+        if (Objects.isNull(operationLog) || patched == target) {
+            return;
+        }
+        Patch applied = diffResource(target, patched, entityType);
+        if (applied.size() == 0) {
+            return;
+        }
+        operationLog.append(resource, logEntry(applied, patch));
+        if (!(equivalency instanceof IdExtractor idExtractor)) {
+            // without ids, the entities' logs can't be told apart
+            operationLog.resetAll(resource + "/");
+            return;
+        }
+        Map<Object, T> previous = new HashMap<>();
+        for (T item : target) {
+            Object itemId = idExtractor.getId(item);
+            if (Objects.nonNull(itemId)) {
+                previous.put(itemId, item);
+            }
+        }
+        for (T item : patched) {
+            Object itemId = idExtractor.getId(item);
+            T before = Objects.isNull(itemId) ? null : previous.remove(itemId);
+            if (Objects.nonNull(before)) {
+                Patch entityChange = diffResource(before, item, entityType);
+                if (entityChange.size() > 0) {
+                    operationLog.append(resource + "/" + itemId, entityChange);
+                }
+            }
+        }
+        previous.keySet().forEach(removedId -> operationLog.reset(resource + "/" + removedId));
+    }
+
+    private static Patch logEntry(Patch applied, Patch patch) {
+        return patch instanceof VersionedPatch versionedPatch
+                ? new VersionedPatch(applied.getOperations(), versionedPatch.getServerVersion(), versionedPatch.getClientVersion())
+                : applied;
+    }
+
+    private static LoggedPatch logged(Patch patch, long version) {
+        return patch instanceof VersionedPatch versionedPatch
+                ? new LoggedPatch(patch.getOperations(), versionedPatch.getServerVersion(), versionedPatch.getClientVersion(), version)
+                : new LoggedPatch(patch.getOperations(), version);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> Patch diffResource(T original, T modified, Class<T> entityType) throws PatchException {
+        return JsonNode.class.isAssignableFrom(entityType)
+                ? JSON_NODE_PATCH_ENGINE.diff((JsonNode) original, (JsonNode) modified)
+                : Diff.diff(original, modified);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> Patch diffResource(List<T> original, List<T> modified, Class<T> entityType) throws PatchException {
+        return JsonNode.class.isAssignableFrom(entityType)
+                ? JSON_NODE_PATCH_ENGINE.diff((List<JsonNode>) original, (List<JsonNode>) modified)
+                : Diff.diff(original, modified);
+    }
+
+    // Copies the collection with the entities the patch touches loaded again.
+    // Returns null if one of them is gone, or if a path addresses the whole collection.
+    private <T> List<T> reloadTouched(List<T> items, Patch patch, PersistenceCallback<T> persistenceCallback) {
+        Set<Integer> touched = touchedIndexes(items.size(), patch);
+        if (Objects.isNull(touched)) {
+            return null;
+        }
+        List<T> target = new ArrayList<>(items);
+        if (equivalency instanceof IdExtractor idExtractor) {
+            for (int index : touched) {
+                Object id = idExtractor.getId(target.get(index));
+                if (Objects.nonNull(id)) {
+                    try {
+                        T entity = persistenceCallback.findOne(id.toString());
+                        if (Objects.isNull(entity)) {
+                            return null;
+                        }
+                        target.set(index, entity);
+                    } catch (ResourceNotFoundException e) {
+                        return null;
+                    }
+                }
+            }
+        }
+        return target;
+    }
+
+    // Returns the indexes in the collection of the entities the patch touches. Each operation's paths index the collection as the
+    // operations before it left it, so the operations are replayed on the entities' positions, such as "/1" after removing "/0"
+    // being the entity at 2. Returns null if a path addresses the whole collection.
+    private static Set<Integer> touchedIndexes(int size, Patch patch) {
+        // the index in the collection of the entity at each position, or -1 for entities the patch has added
+        List<Integer> positions = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            positions.add(i);
+        }
+        Set<Integer> touched = new TreeSet<>();
+        for (PatchOperation operation : patch.getOperations()) {
+            String path = operation.getPath();
+            String from = operation instanceof FromOperation fromOperation ? fromOperation.getFrom() : null;
+            if (addressesCollection(path) || (Objects.nonNull(from) && addressesCollection(from))) {
+                return null;
+            }
+            if (Objects.nonNull(from)) {
+                touch(from, positions, touched);
+            }
+            if (operation instanceof MoveOperation && addressesEntity(from)) {
+                // a move removes the entity before the path is looked up
+                int moved = take(from, positions);
+                if (addressesEntity(path)) {
+                    insert(path, moved, positions);
+                } else {
+                    touch(path, positions, touched);
+                }
+            } else if ((operation instanceof AddOperation || Objects.nonNull(from)) && addressesEntity(path)) {
+                insert(path, -1, positions);
+            } else if (operation instanceof RemoveOperation && addressesEntity(path)) {
+                touch(path, positions, touched);
+                take(path, positions);
+            } else {
+                touch(path, positions, touched);
+            }
+        }
+        return touched;
+    }
+
+    private static boolean addressesCollection(String path) {
+        return path.length() <= 1;
+    }
+
+    private static boolean addressesEntity(String path) {
+        return path.indexOf('/', 1) < 0;
+    }
+
+    // Adds the index in the collection of the entity a path starts at, if it's there, such as that of "/2" for "/2/description".
+    private static void touch(String path, List<Integer> positions, Set<Integer> touched) {
+        int position = position(path);
+        if (position >= 0 && position < positions.size() && positions.get(position) >= 0) {
+            touched.add(positions.get(position));
+        }
+    }
 
+    private static int take(String path, List<Integer> positions) {
+        int position = position(path);
+        return position >= 0 && position < positions.size() ? positions.remove(position) : -1;
+    }
+
+    private static void insert(String path, int index, List<Integer> positions) {
+        int position = "/-".equals(path) ? positions.size() : position(path);
+        if (position >= 0 && position <= positions.size()) {
+            positions.add(position, index);
+        }
+    }
+
+    // The position a path starts at, such as 2 for "/2/description", or -1 if it doesn't start at one, such as "/-".
+    private static int position(String path) {
+        int end = path.indexOf('/', 1);
+        String segment = path.substring(1, end < 0 ? path.length() : end);
+        return !segment.isEmpty() && segment.length() < 10 && segment.chars().allMatch(Character::isDigit) ? Integer.parseInt(segment) : -1;
+    }
+
+    // Saves the changed entities of a patched collection and deletes the removed ones. Returns whether entities were added.
+    private <T> boolean persistListChanges(List<T> target, List<T> patched, PersistenceCallback<T> persistenceCallback) {
         List<T> itemsToSave = new ArrayList<>(patched);
         itemsToSave.removeAll(target);
 
@@ -70,6 +543,36 @@ public class DiffSyncServiceImpl implements DiffSyncService {
         });
         persistenceCallback.persistChanges(itemsToSave, itemsToDelete);
 
-        return sync.diff(patched);
+        return itemsToSave.stream().anyMatch(item -> target.stream().noneMatch(candidate -> equivalency.isEquivalent(candidate, item)));
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> Patch diff(ShadowStore shadowStore, Object target, PersistenceCallback<T> persistenceCallback) throws PatchException {
+        return createDiffSync(shadowStore, persistenceCallback.getEntityType()).diff((T) target);
+    }
+
+    private <T> Patch diffAgainstList(ShadowStore shadowStore, List<T> target, PersistenceCallback<T> persistenceCallback) throws PatchException {
+        return createDiffSync(shadowStore, persistenceCallback.getEntityType()).streamDiff(target);
+    }
+
+    private <T> AsyncDiffSync<T> createAsyncDiffSync(AsyncShadowStore shadowStore, Class<T> entityType) {
+        return new AsyncDiffSync<>(shadowStore, stagedStore -> createDiffSync(stagedStore, entityType));
+    }
+
+    // Resources persisted as JSON documents are diffed and patched as trees instead of Java objects.
+    // An equivalency that can identify entities also gives each entity its own shadow.
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private <T> DiffSync<T> createDiffSync(ShadowStore shadowStore, Class<T> entityType) {
+        DiffSync<T> sync = new DiffSync<>(shadowStore, entityType);
+        if (JsonNode.class.isAssignableFrom(entityType)) {
+            sync.setPatchEngine((PatchEngine) JSON_NODE_PATCH_ENGINE);
+        }
+        if (equivalency instanceof IdExtractor idExtractor) {
+            sync.setIdExtractor(idExtractor);
+        }
+        sync.setFuzzyTextPatcher(fuzzyTextPatcher);
+        sync.setDiffCostModel(diffCostModel);
+        sync.setCloner(cloner);
+        return sync;
     }
 }
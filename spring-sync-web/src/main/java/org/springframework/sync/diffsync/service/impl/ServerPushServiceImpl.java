@@ -0,0 +1,180 @@
+package org.springframework.sync.diffsync.service.impl;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.springframework.http.MediaType;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageSendingOperations;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.sync.Patch;
+import org.springframework.sync.diffsync.CollectionCache;
+import org.springframework.sync.diffsync.exception.PersistenceCallbackNotFoundException;
+import org.springframework.sync.diffsync.exception.ResourceNotFoundException;
+import org.springframework.sync.diffsync.service.DiffSyncService;
+import org.springframework.sync.diffsync.service.ServerPushService;
+import org.springframework.sync.diffsync.shadowstore.ShadowStore;
+import org.springframework.sync.exception.PatchException;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * {@link ServerPushService} that diffs the current state of changed resources against each registered session's shadow on a fixed delay,
+ * set by <code>spring.diff-sync.push-interval</code> in milliseconds.
+ * Changes reported within one cycle are coalesced, so each affected session receives at most one patch per resource per cycle.
+ * Each changed resource is loaded once per cycle, and every affected session's shadow is diffed against that state.
+ * Patches are sent to the session's user destination, <code>/queue/{resource}</code> or <code>/queue/{resource}.{id}</code>.
+ * Changes made other than through the {@link DiffSyncService} also drop the view of the resource's collection from the
+ * {@link CollectionCache}, if one is set, as they aren't in it.
+ */
+@RequiredArgsConstructor
+@Log4j2
+public class ServerPushServiceImpl implements ServerPushService {
+
+    private static final MediaType JSON_PATCH = new MediaType("application", "json-patch+json");
+    private static final String QUEUE_DESTINATION = "/queue";
+    private static final String UNABLE_TO_PUSH_MSG = "Unable to push changes of '%s' to sessionId '%s' because of: %s";
+
+    private final DiffSyncService diffSyncService;
+    private final SimpMessageSendingOperations brokerTemplate;
+    // the shadow store of each session, by session id
+    private final Function<String, ShadowStore> shadowStores;
+
+    // resources ("todos") and entities ("todos/2") changed since the last cycle
+    private final Set<String> changes = ConcurrentHashMap.newKeySet();
+    private final Map<String, Set<String>> registrations = new ConcurrentHashMap<>();
+
+    private CollectionCache collectionCache;
+
+    /**
+     * Sets the {@link CollectionCache} of the {@link DiffSyncService}, whose views are dropped as their resources are changed.
+     *
+     * @param collectionCache the collection cache, or null if the service keeps none.
+     */
+    public void setCollectionCache(CollectionCache collectionCache) {
+        this.collectionCache = collectionCache;
+    }
+
+    @Override
+    public void resourceChanged(String resource) {
+        invalidate(resource);
+        changes.add(resource);
+    }
+
+    @Override
+    public void resourceChanged(String resource, String id) {
+        invalidate(resource);
+        changes.add(resource + "/" + id);
+    }
+
+    // the views already hold the changes of patches applied with the service
+    @Override
+    public void resourcePatched(String resource) {
+        changes.add(resource);
+    }
+
+    @Override
+    public void resourcePatched(String resource, String id) {
+        changes.add(resource + "/" + id);
+    }
+
+    @Override
+    public void register(String sessionId, String resource) {
+        registrations.computeIfAbsent(sessionId, key -> ConcurrentHashMap.newKeySet()).add(resource);
+    }
+
+    @Override
+    public void register(String sessionId, String resource, String id) {
+        registrations.computeIfAbsent(sessionId, key -> ConcurrentHashMap.newKeySet()).add(resource + "/" + id);
+    }
+
+    @Override
+    public void unregister(String sessionId) {
+        registrations.remove(sessionId);
+    }
+
+    @Override
+    @Scheduled(fixedDelayString = "${spring.diff-sync.push-interval:1000}")
+    public void push() {
+        if (changes.isEmpty()) {
+            return;
+        }
+        Set<String> changed = new HashSet<>();
+        for (Iterator<String> iterator = changes.iterator(); iterator.hasNext(); ) {
+            changed.add(iterator.next());
+            iterator.remove();
+        }
+        // the sessions to push each changed path to, so that the path's current state is loaded once for all of them
+        Map<String, Map<String, ShadowStore>> sessionsByPath = new HashMap<>();
+        registrations.forEach((sessionId, paths) -> {
+            ShadowStore shadowStore = shadowStores.apply(sessionId);
+            if (Objects.isNull(shadowStore)) {
+                return;
+            }
+            paths.stream()
+                    .filter(path -> isAffected(path, changed))
+                    .forEach(path -> sessionsByPath.computeIfAbsent(path, key -> new LinkedHashMap<>()).put(sessionId, shadowStore));
+        });
+        sessionsByPath.forEach(this::push);
+    }
+
+    // A list is affected by changes to any of its entities; an entity is affected by changes to its list as a whole.
+    private boolean isAffected(String path, Set<String> changed) {
+        if (changed.contains(path)) {
+            return true;
+        }
+        int separator = path.indexOf('/');
+        if (separator >= 0) {
+            return changed.contains(path.substring(0, separator));
+        }
+        return changed.stream().anyMatch(change -> change.startsWith(path + "/"));
+    }
+
+    private void push(String path, Map<String, ShadowStore> sessions) {
+        int separator = path.indexOf('/');
+        String resource = separator < 0 ? path : path.substring(0, separator);
+        String destination = separator < 0
+                ? String.format("%s/%s", QUEUE_DESTINATION, path)
+                : String.format("%s/%s.%s", QUEUE_DESTINATION, resource, path.substring(separator + 1));
+        Object current;
+        try {
+            current = separator < 0 ? diffSyncService.findCurrent(path) : diffSyncService.findCurrent(resource, path.substring(separator + 1));
+        } catch (PersistenceCallbackNotFoundException | ResourceNotFoundException e) {
+            log.error(String.format(UNABLE_TO_PUSH_MSG, path, sessions.keySet(), ExceptionUtils.getStackTrace(e)));
+            return;
+        }
+        sessions.forEach((sessionId, shadowStore) -> {
+            try {
+                Patch patch = diffSyncService.diffAgainst(shadowStore, resource, current);
+                if (patch.size() > 0) {
+                    brokerTemplate.convertAndSendToUser(sessionId, destination, patch, buildHeaders(sessionId));
+                }
+            } catch (PatchException | PersistenceCallbackNotFoundException e) {
+                log.error(String.format(UNABLE_TO_PUSH_MSG, path, sessionId, ExceptionUtils.getStackTrace(e)));
+            }
+        });
+    }
+
+    private void invalidate(String resource) {
+        if (Objects.nonNull(collectionCache)) {
+            collectionCache.invalidate(resource);
+        }
+    }
+
+    private Map<String, Object> buildHeaders(String sessionId) {
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        headers.setSessionId(sessionId);
+        headers.setContentType(JSON_PATCH);
+        headers.setLeaveMutable(true);
+        return headers.getMessageHeaders();
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.sync.diffsync.web;
+
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ChannelInterceptor;
+
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * <p>Interceptor keeping the client id a WebSocket client connects with in its session's attributes.</p>
+ *
+ * <p>
+ * Clients send the {@value ShadowOwnerForwardingInterceptor#CLIENT_ID_HEADER} header with their CONNECT frame. The id, bound to the
+ * session's principal by {@link ShadowOwnerForwardingInterceptor#clientId(String, java.security.Principal)}, is kept under
+ * {@link #CLIENT_ID_ATTRIBUTE} for as long as the session lasts, so that the session's shadow store can be created for the client
+ * rather than for the session. Sessions without a principal keep no id.
+ * </p>
+ *
+ * @author Craig Walls
+ */
+public class ClientIdChannelInterceptor implements ChannelInterceptor {
+
+    public static final String CLIENT_ID_ATTRIBUTE = ClientIdChannelInterceptor.class.getName() + ".CLIENT_ID";
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(message);
+        if (SimpMessageType.CONNECT.equals(accessor.getMessageType())) {
+            String clientId = ShadowOwnerForwardingInterceptor.clientId(
+                    accessor.getFirstNativeHeader(ShadowOwnerForwardingInterceptor.CLIENT_ID_HEADER), accessor.getUser());
+            Map<String, Object> sessionAttributes = accessor.getSessionAttributes();
+            if (Objects.nonNull(clientId) && Objects.nonNull(sessionAttributes)) {
+                sessionAttributes.put(CLIENT_ID_ATTRIBUTE, clientId);
+            }
+        }
+        return message;
+    }
+}
@@ -25,14 +25,20 @@ import org.springframework.messaging.handler.annotation.DestinationVariable;
 import org.springframework.messaging.handler.annotation.MessageExceptionHandler;
 import org.springframework.messaging.handler.annotation.MessageMapping;
 import org.springframework.messaging.simp.SimpAttributesContextHolder;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
 import org.springframework.messaging.simp.SimpMessageSendingOperations;
+import org.springframework.messaging.simp.SimpMessageType;
 import org.springframework.messaging.simp.annotation.SendToUser;
 import org.springframework.messaging.simp.stomp.StompCommand;
 import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
 import org.springframework.sync.Patch;
+import org.springframework.sync.diffsync.LoggedPatch;
 import org.springframework.sync.diffsync.exception.PersistenceCallbackNotFoundException;
 import org.springframework.sync.diffsync.exception.ResourceNotFoundException;
+import org.springframework.sync.diffsync.exception.VersionEvictedException;
 import org.springframework.sync.diffsync.service.DiffSyncService;
+import org.springframework.sync.diffsync.service.ServerPushService;
+import org.springframework.sync.diffsync.shadowstore.AsyncShadowStore;
 import org.springframework.sync.diffsync.shadowstore.ShadowStore;
 import org.springframework.sync.exception.PatchException;
 import org.springframework.web.bind.annotation.*;
@@ -43,7 +49,9 @@ import javax.servlet.http.HttpSession;
 import java.net.URI;
 import java.util.Collections;
 import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
  * Controller to handle PATCH requests and apply them to resources using {@link DiffSyncService}.
@@ -62,11 +70,37 @@ public class DiffSyncController {
     private static final String PATCH_RECEIVED_MSG = "New patch for sessionId '%s' and path '%s' received";
     private static final String UNABLE_TO_APPLY_PATCH_MSG = "Unable to apply patch for sessionId '%s' because of: %s";
     private static final String PATCH_APPLIED_MSG = "Patch for sessionId '%s' and path '%s' applied";
+    private static final String RESOURCE_VERSION_HEADER = "Resource-Version";
+    private static final String QUEUE_DESTINATION = "/queue";
+    private static final String ERRORS_DESTINATION = QUEUE_DESTINATION + "/errors";
 
     private final ShadowStore restShadowStore;
     private final ShadowStore webSocketShadowStore;
     private final DiffSyncService diffSyncService;
     private final SimpMessageSendingOperations brokerTemplate;
+    private ServerPushService serverPushService;
+    private AsyncShadowStore webSocketAsyncShadowStore;
+
+    /**
+     * Sets the {@link ServerPushService} that is told about every patched resource, so that the change can be pushed to other
+     * WebSocket sessions, and about every WebSocket session that patches a resource, so that it can be pushed to.
+     *
+     * @param serverPushService the server push service, or null to only reach other sessions through the topic broadcasts.
+     */
+    public void setServerPushService(ServerPushService serverPushService) {
+        this.serverPushService = serverPushService;
+    }
+
+    /**
+     * Sets the {@link AsyncShadowStore} that patches received over WebSocket are applied with, so that they read and write
+     * the session's shadows without blocking. Patches that fail after the handler has returned are sent to the session's
+     * {@code /queue/errors} too.
+     *
+     * @param webSocketAsyncShadowStore the store, or null to apply them synchronously with the WebSocket shadow store.
+     */
+    public void setWebSocketAsyncShadowStore(AsyncShadowStore webSocketAsyncShadowStore) {
+        this.webSocketAsyncShadowStore = webSocketAsyncShadowStore;
+    }
 
     @PatchMapping(value = "/{resource}", consumes = JSON_PATCH_VALUE, produces = JSON_PATCH_VALUE)
     public ResponseEntity<Patch> patchRest(HttpSession session, @PathVariable("resource") String resource, @RequestBody Patch patch) {
@@ -75,11 +109,9 @@ public class DiffSyncController {
             String resourceDestination = String.format("%s/%s", TOPIC_DESTINATION, resource);
             Patch modifiedPatch = diffSyncService.patch(restShadowStore, resource, patch);
             log.info(String.format(PATCH_APPLIED_MSG, session.getId(), "/" + resource));
+            notifyChanged(resource);
             websocketBroadcastPatchAsync(resourceDestination, patch, modifiedPatch);
-            return ResponseEntity.status(HttpStatus.OK)
-                    .contentType(JSON_PATCH)
-                    .location(getCurrentURI())
-                    .body(modifiedPatch);
+            return patchResponse(modifiedPatch);
         } catch (PatchException e) {
             log.error(String.format(UNABLE_TO_APPLY_PATCH_MSG, session.getId(), ExceptionUtils.getStackTrace(e)));
             throw new ResponseStatusException(HttpStatus.CONFLICT, String.format(UNABLE_TO_APPLY_PATCH_MSG, session.getId(), e.getMessage()), e);
@@ -98,12 +130,10 @@ public class DiffSyncController {
             log.info(String.format(PATCH_RECEIVED_MSG, session.getId(), objectPath));
             Patch modifiedPatch = diffSyncService.patch(restShadowStore, resource, id, patch);
             log.info(String.format(PATCH_APPLIED_MSG, session.getId(), objectPath));
+            notifyChanged(resource, id);
             websocketBroadcastPatchAsync(objectDestination, patch, modifiedPatch);
             websocketBroadcastPatchAsync(resourceDestination, patch, modifiedPatch);
-            return ResponseEntity.status(HttpStatus.OK)
-                    .contentType(JSON_PATCH)
-                    .location(getCurrentURI())
-                    .body(modifiedPatch);
+            return patchResponse(modifiedPatch);
         } catch (PatchException e) {
             log.error(String.format(UNABLE_TO_APPLY_PATCH_MSG, session.getId(), ExceptionUtils.getStackTrace(e)));
             throw new ResponseStatusException(HttpStatus.CONFLICT, String.format(UNABLE_TO_APPLY_PATCH_MSG, session.getId(), e.getMessage()), e);
@@ -113,30 +143,73 @@ public class DiffSyncController {
         }
     }
 
+    @GetMapping(value = "/{resource}/patches", produces = JSON_PATCH_VALUE)
+    public ResponseEntity<Patch> patchesSince(@PathVariable("resource") String resource, @RequestParam("since") long version) {
+        try {
+            return patchResponse(diffSyncService.patchesSince(resource, version));
+        } catch (VersionEvictedException e) {
+            throw new ResponseStatusException(HttpStatus.GONE, e.getMessage(), e);
+        }
+    }
+
+    @GetMapping(value = "/{resource}/{id}/patches", produces = JSON_PATCH_VALUE)
+    public ResponseEntity<Patch> patchesSince(@PathVariable("resource") String resource, @PathVariable("id") String id, @RequestParam("since") long version) {
+        try {
+            return patchResponse(diffSyncService.patchesSince(resource, id, version));
+        } catch (VersionEvictedException e) {
+            throw new ResponseStatusException(HttpStatus.GONE, e.getMessage(), e);
+        }
+    }
+
     @MessageMapping("/{resource}")
     public void patchWebsocket(@DestinationVariable("resource") String resource, Patch patch) throws PersistenceCallbackNotFoundException, PatchException {
         String sessionId = SimpAttributesContextHolder.currentAttributes().getSessionId();
-        String resourceDestination = String.format("%s/%s", TOPIC_DESTINATION, resource);
         log.info(String.format(PATCH_RECEIVED_MSG, sessionId, "/" + resource));
-        Patch modifiedPatch = diffSyncService.patch(webSocketShadowStore, resource, patch);
-        log.info(String.format(PATCH_APPLIED_MSG, sessionId, "/" + resource));
-        websocketBroadcastPatchAsync(resourceDestination, patch, modifiedPatch);
+        if (Objects.isNull(webSocketAsyncShadowStore)) {
+            websocketPatched(sessionId, resource, patch, diffSyncService.patch(webSocketShadowStore, resource, patch));
+            return;
+        }
+        diffSyncService.patch(webSocketAsyncShadowStore, resource, patch).whenComplete((modifiedPatch, failure) -> {
+            if (Objects.isNull(failure)) {
+                websocketPatched(sessionId, resource, patch, modifiedPatch);
+            } else {
+                sendError(sessionId, failure);
+            }
+        });
     }
 
     @MessageMapping("/{resource}/{id}")
     public void patchWebsocket(@DestinationVariable("resource") String resource, @DestinationVariable("id") String id, Patch patch) throws PersistenceCallbackNotFoundException, PatchException, ResourceNotFoundException {
         String sessionId = SimpAttributesContextHolder.currentAttributes().getSessionId();
-        String objectPath = String.format("/%s/%s", resource, id);
-        String resourceDestination = String.format("%s/%s", TOPIC_DESTINATION, resource);
-        String objectDestination = String.format("%s/%s.%s", TOPIC_DESTINATION, resource, id);
-        log.info(String.format(PATCH_RECEIVED_MSG, sessionId, objectPath));
-        Patch modifiedPatch = diffSyncService.patch(webSocketShadowStore, resource, id, patch);
-        log.info(String.format(PATCH_APPLIED_MSG, sessionId, objectPath));
-        websocketBroadcastPatchAsync(objectDestination, patch, modifiedPatch);
-        websocketBroadcastPatchAsync(resourceDestination, patch, modifiedPatch);
+        log.info(String.format(PATCH_RECEIVED_MSG, sessionId, String.format("/%s/%s", resource, id)));
+        if (Objects.isNull(webSocketAsyncShadowStore)) {
+            websocketPatched(sessionId, resource, id, patch, diffSyncService.patch(webSocketShadowStore, resource, id, patch));
+            return;
+        }
+        diffSyncService.patch(webSocketAsyncShadowStore, resource, id, patch).whenComplete((modifiedPatch, failure) -> {
+            if (Objects.isNull(failure)) {
+                websocketPatched(sessionId, resource, id, patch, modifiedPatch);
+            } else {
+                sendError(sessionId, failure);
+            }
+        });
+    }
+
+    @MessageMapping("/{resource}/patches/{since}")
+    public void patchesSinceWebsocket(@DestinationVariable("resource") String resource, @DestinationVariable("since") long version) throws VersionEvictedException {
+        String sessionId = SimpAttributesContextHolder.currentAttributes().getSessionId();
+        LoggedPatch patch = diffSyncService.patchesSince(resource, version);
+        brokerTemplate.convertAndSendToUser(sessionId, String.format("%s/%s", QUEUE_DESTINATION, resource), patch, buildUserHeaders(sessionId, patch));
     }
 
-    @MessageExceptionHandler({PatchException.class, PersistenceCallbackNotFoundException.class, ResourceNotFoundException.class})
+    @MessageMapping("/{resource}/{id}/patches/{since}")
+    public void patchesSinceWebsocket(@DestinationVariable("resource") String resource, @DestinationVariable("id") String id, @DestinationVariable("since") long version) throws VersionEvictedException {
+        String sessionId = SimpAttributesContextHolder.currentAttributes().getSessionId();
+        LoggedPatch patch = diffSyncService.patchesSince(resource, id, version);
+        brokerTemplate.convertAndSendToUser(sessionId, String.format("%s/%s.%s", QUEUE_DESTINATION, resource, id), patch, buildUserHeaders(sessionId, patch));
+    }
+
+    @MessageExceptionHandler({PatchException.class, PersistenceCallbackNotFoundException.class, ResourceNotFoundException.class, VersionEvictedException.class})
     @SendToUser("/queue/errors")
     public String handleException(Throwable e) {
         String sessionId = SimpAttributesContextHolder.currentAttributes().getSessionId();
@@ -144,6 +217,56 @@ public class DiffSyncController {
         return String.format(UNABLE_TO_APPLY_PATCH_MSG, sessionId, e.getMessage());
     }
 
+    private void websocketPatched(String sessionId, String resource, Patch patch, Patch modifiedPatch) {
+        log.info(String.format(PATCH_APPLIED_MSG, sessionId, "/" + resource));
+        if (Objects.nonNull(serverPushService)) {
+            serverPushService.register(sessionId, resource);
+        }
+        notifyChanged(resource);
+        websocketBroadcastPatchAsync(String.format("%s/%s", TOPIC_DESTINATION, resource), patch, modifiedPatch);
+    }
+
+    private void websocketPatched(String sessionId, String resource, String id, Patch patch, Patch modifiedPatch) {
+        log.info(String.format(PATCH_APPLIED_MSG, sessionId, String.format("/%s/%s", resource, id)));
+        if (Objects.nonNull(serverPushService)) {
+            serverPushService.register(sessionId, resource, id);
+        }
+        notifyChanged(resource, id);
+        websocketBroadcastPatchAsync(String.format("%s/%s.%s", TOPIC_DESTINATION, resource, id), patch, modifiedPatch);
+        websocketBroadcastPatchAsync(String.format("%s/%s", TOPIC_DESTINATION, resource), patch, modifiedPatch);
+    }
+
+    // Asynchronous patches fail after their handler has returned, so their failures are sent where handleException would send them.
+    private void sendError(String sessionId, Throwable failure) {
+        Throwable e = failure instanceof CompletionException && Objects.nonNull(failure.getCause()) ? failure.getCause() : failure;
+        log.error(String.format(UNABLE_TO_APPLY_PATCH_MSG, sessionId, ExceptionUtils.getStackTrace(e)));
+        brokerTemplate.convertAndSendToUser(sessionId, ERRORS_DESTINATION, String.format(UNABLE_TO_APPLY_PATCH_MSG, sessionId, e.getMessage()),
+                buildUserHeaders(sessionId).getMessageHeaders());
+    }
+
+    private void notifyChanged(String resource) {
+        if (Objects.nonNull(serverPushService)) {
+            serverPushService.resourcePatched(resource);
+        }
+    }
+
+    private void notifyChanged(String resource, String id) {
+        if (Objects.nonNull(serverPushService)) {
+            serverPushService.resourcePatched(resource, id);
+        }
+    }
+
+    // Patches from the operation log tell the client which version of the resource they bring it to, so it can catch up from there later.
+    private ResponseEntity<Patch> patchResponse(Patch patch) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.status(HttpStatus.OK)
+                .contentType(JSON_PATCH)
+                .location(getCurrentURI());
+        if (patch instanceof LoggedPatch loggedPatch) {
+            response.header(RESOURCE_VERSION_HEADER, String.valueOf(loggedPatch.getVersion()));
+        }
+        return response.body(patch);
+    }
+
     private URI getCurrentURI() {
         return ServletUriComponentsBuilder.fromCurrentRequestUri()
                 .build()
@@ -156,10 +279,25 @@ public class DiffSyncController {
 
     private void websocketBroadcastPatch(String destination, Patch patch, Patch modifiedPatch) {
         Map<String, Object> stompHeaders = buildStompHeaders(destination);
+        // each patch goes out whole, in a single frame, as clients apply a frame's patch against their shadow's versions
         brokerTemplate.convertAndSend(destination, patch, stompHeaders);
         brokerTemplate.convertAndSend(destination, modifiedPatch, stompHeaders);
     }
 
+    private Map<String, Object> buildUserHeaders(String sessionId, LoggedPatch patch) {
+        SimpMessageHeaderAccessor headers = buildUserHeaders(sessionId);
+        headers.setContentType(JSON_PATCH);
+        headers.setNativeHeader(RESOURCE_VERSION_HEADER, String.valueOf(patch.getVersion()));
+        return headers.getMessageHeaders();
+    }
+
+    private SimpMessageHeaderAccessor buildUserHeaders(String sessionId) {
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        headers.setSessionId(sessionId);
+        headers.setLeaveMutable(true);
+        return headers;
+    }
+
     private Map<String, Object> buildStompHeaders(String destination) {
         StompHeaderAccessor headers = StompHeaderAccessor.create(StompCommand.SEND);
         headers.setDestination(destination);
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.sync.diffsync.web;
+
+import lombok.extern.log4j.Log4j2;
+import org.springframework.sync.diffsync.Shadow;
+import org.springframework.sync.diffsync.cluster.ClusterNode;
+import org.springframework.sync.diffsync.cluster.ShadowHandoff;
+import org.springframework.sync.diffsync.shadowstore.ShadowCodec;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * <p>{@link ShadowHandoff} sending a client's shadows to its new owner's {@link ShadowHandoffController} over HTTP.</p>
+ *
+ * <p>
+ * The shadows are encoded with a {@link ShadowCodec} and sent in a single PUT, without waiting for the response. Failures, including
+ * responses rejecting the shadows, are logged and fail the returned stage, for the {@link org.springframework.sync.diffsync.cluster.ShadowRouter}
+ * to try again.
+ * When a secret is set, it's sent in the {@value ShadowHandoffController#CLUSTER_SECRET_HEADER} header for the owner to check.
+ * </p>
+ *
+ * @author Craig Walls
+ */
+@Log4j2
+public class HttpShadowHandoff implements ShadowHandoff {
+
+    private static final String UNABLE_TO_HAND_OFF_MSG = "Unable to hand the shadows of client '%s' off to %s because of: %s";
+    private static final String HANDOFF_REJECTED_MSG = "Handoff of the shadows of client '%s' rejected by %s with status %d";
+    private static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds(30);
+
+    private final ShadowCodec shadowCodec;
+    private final String diffSyncPath;
+    private final HttpClient httpClient;
+    private String secret;
+    private Duration timeout = DEFAULT_TIMEOUT;
+
+    /**
+     * @param shadowCodec the codec encoding shadows, which must be the one the owner's controller decodes them with.
+     * @param diffSyncPath the path the owner's DiffSync endpoints are at, the <code>spring.diff-sync.path</code> property.
+     */
+    public HttpShadowHandoff(ShadowCodec shadowCodec, String diffSyncPath) {
+        this(shadowCodec, diffSyncPath, HttpClient.newHttpClient());
+    }
+
+    /**
+     * @param shadowCodec the codec encoding shadows, which must be the one the owner's controller decodes them with.
+     * @param diffSyncPath the path the owner's DiffSync endpoints are at, the <code>spring.diff-sync.path</code> property.
+     * @param httpClient the client sending the shadows.
+     */
+    public HttpShadowHandoff(ShadowCodec shadowCodec, String diffSyncPath, HttpClient httpClient) {
+        this.shadowCodec = shadowCodec;
+        this.diffSyncPath = diffSyncPath;
+        this.httpClient = httpClient;
+    }
+
+    /**
+     * Sets the secret shared by the nodes of the cluster.
+     * @param secret the secret, or null to send none.
+     */
+    public void setSecret(String secret) {
+        this.secret = secret;
+    }
+
+    /**
+     * Sets how long to wait for the owner to accept the shadows.
+     * @param timeout the timeout.
+     */
+    public void setTimeout(Duration timeout) {
+        this.timeout = timeout;
+    }
+
+    @Override
+    public CompletionStage<Void> handOff(String clientId, Map<String, Shadow<?>> shadows, ClusterNode owner) {
+        URI uri = UriComponentsBuilder.fromUri(owner.getAddress())
+                .path(diffSyncPath)
+                .path(ShadowHandoffController.SHADOWS_PATH)
+                .buildAndExpand(clientId)
+                .encode()
+                .toUri();
+        HttpRequest.Builder request = HttpRequest.newBuilder(uri)
+                .timeout(timeout)
+                .header("Content-Type", "application/octet-stream")
+                .PUT(HttpRequest.BodyPublishers.ofByteArray(encode(shadows, shadowCodec)));
+        if (Objects.nonNull(secret)) {
+            request.header(ShadowHandoffController.CLUSTER_SECRET_HEADER, secret);
+        }
+        return httpClient.sendAsync(request.build(), HttpResponse.BodyHandlers.discarding()).handle((response, failure) -> {
+            if (Objects.nonNull(failure)) {
+                log.error(String.format(UNABLE_TO_HAND_OFF_MSG, clientId, owner, failure.getMessage()));
+                throw new CompletionException(failure);
+            }
+            if (response.statusCode() >= 300) {
+                String rejected = String.format(HANDOFF_REJECTED_MSG, clientId, owner, response.statusCode());
+                log.error(rejected);
+                throw new IllegalStateException(rejected);
+            }
+            return null;
+        });
+    }
+
+    // each shadow as its key, and its length and bytes as encoded by the codec, after the number of shadows
+    static byte[] encode(Map<String, Shadow<?>> shadows, ShadowCodec shadowCodec) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(shadows.size());
+            for (Map.Entry<String, Shadow<?>> shadow : shadows.entrySet()) {
+                byte[] encoded = shadowCodec.encode(shadow.getValue());
+                out.writeUTF(shadow.getKey());
+                out.writeInt(encoded.length);
+                out.write(encoded);
+            }
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static Map<String, Shadow<?>> decode(InputStream body, ShadowCodec shadowCodec) throws IOException {
+        DataInputStream in = new DataInputStream(body);
+        int count = in.readInt();
+        Map<String, Shadow<?>> shadows = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            String key = in.readUTF();
+            byte[] encoded = new byte[in.readInt()];
+            in.readFully(encoded);
+            shadows.put(key, shadowCodec.decode(encoded));
+        }
+        return shadows;
+    }
+}
@@ -26,6 +26,7 @@ import org.springframework.http.converter.HttpMessageNotWritableException;
 import org.springframework.sync.Patch;
 import org.springframework.sync.exception.PatchException;
 import org.springframework.sync.json.JsonPatchPatchConverter;
+import org.springframework.sync.json.JsonPatchStreamWriter;
 
 import java.io.IOException;
 import java.util.List;
@@ -40,11 +41,16 @@ public class JsonPatchHttpMessageConverter extends AbstractHttpMessageConverter<
 
 	private static final ObjectMapper MAPPER = new ObjectMapper();
 
+	private static final String DIFF_ERROR_MSG = "Could not diff the resource";
+
 	private final JsonPatchPatchConverter jsonPatchMaker;
 
+	private final JsonPatchStreamWriter jsonPatchWriter;
+
 	public JsonPatchHttpMessageConverter() {
 		setSupportedMediaTypes(List.of(JSON_PATCH));
 		jsonPatchMaker = new JsonPatchPatchConverter();
+		jsonPatchWriter = new JsonPatchStreamWriter();
 	}
 	
 	@Override
@@ -64,7 +70,13 @@ public class JsonPatchHttpMessageConverter extends AbstractHttpMessageConverter<
 	@Override
 	protected void writeInternal(Patch patch, HttpOutputMessage outputMessage) throws IOException, HttpMessageNotWritableException {
 		outputMessage.getHeaders().setContentType(JSON_PATCH);
-		MAPPER.writer().writeValue(outputMessage.getBody(), jsonPatchMaker.convert(patch));
+		// operations are streamed, so lazily computed patches start reaching the client before they are complete, and a failure
+		// to compute the rest can only cut the response short
+		try {
+			jsonPatchWriter.write(patch, outputMessage.getBody());
+		} catch (IllegalStateException e) {
+			throw new HttpMessageNotWritableException(DIFF_ERROR_MSG, e);
+		}
 	}
 
 }
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.sync.diffsync.web;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.http.HttpStatus;
+import org.springframework.sync.diffsync.Shadow;
+import org.springframework.sync.diffsync.cluster.ShadowRouter;
+import org.springframework.sync.diffsync.shadowstore.ShadowCodec;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * <p>Controller receiving the shadows of clients handed over to this node by an {@link HttpShadowHandoff}, for the {@link ShadowRouter}.</p>
+ *
+ * <p>
+ * The shadows are decoded with a {@link ShadowCodec}, which may deserialize arbitrary classes: the endpoint is meant for the nodes
+ * of the cluster only. Set a secret shared by the nodes, which requests must carry in the {@value #CLUSTER_SECRET_HEADER} header,
+ * or keep the endpoint out of clients' reach.
+ * </p>
+ *
+ * @author Craig Walls
+ */
+@RestController
+@RequestMapping("${spring.diff-sync.path:}")
+@RequiredArgsConstructor
+@Log4j2
+public class ShadowHandoffController {
+
+    public static final String SHADOWS_PATH = "/cluster/shadows/{clientId}";
+    public static final String CLUSTER_SECRET_HEADER = "Diff-Sync-Cluster-Secret";
+    private static final String SHADOWS_RECEIVED_MSG = "Received %d shadows of client '%s'";
+    private static final String INVALID_SECRET_MSG = "Invalid cluster secret";
+
+    private final ShadowRouter shadowRouter;
+    private final ShadowCodec shadowCodec;
+    private final String secret;
+
+    @PutMapping(value = SHADOWS_PATH, consumes = "application/octet-stream")
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public void receiveShadows(@PathVariable("clientId") String clientId,
+                               @RequestHeader(value = CLUSTER_SECRET_HEADER, required = false) String requestSecret,
+                               InputStream body) throws IOException {
+        if (Objects.nonNull(secret) && !matches(secret, requestSecret)) {
+            throw new ResponseStatusException(HttpStatus.FORBIDDEN, INVALID_SECRET_MSG);
+        }
+        Map<String, Shadow<?>> shadows = HttpShadowHandoff.decode(body, shadowCodec);
+        log.info(String.format(SHADOWS_RECEIVED_MSG, shadows.size(), clientId));
+        shadowRouter.receive(clientId, shadows);
+    }
+
+    // compared in constant time, so that the secret can't be guessed from how long requests take to be rejected
+    static boolean matches(String secret, String requestSecret) {
+        return Objects.nonNull(secret) && Objects.nonNull(requestSecret)
+                && MessageDigest.isEqual(secret.getBytes(StandardCharsets.UTF_8), requestSecret.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.sync.diffsync.web;
+
+import lombok.extern.log4j.Log4j2;
+import org.springframework.http.HttpStatus;
+import org.springframework.sync.diffsync.cluster.ClusterNode;
+import org.springframework.sync.diffsync.cluster.ShadowRouter;
+import org.springframework.util.StreamUtils;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.security.Principal;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * <p>Interceptor forwarding the REST requests of clients whose shadows are owned by another cluster node to that node.</p>
+ *
+ * <p>
+ * Clients identify themselves with the {@value #CLIENT_ID_HEADER} header. The id is bound to the principal the request is
+ * authenticated as, see {@link #clientId(HttpServletRequest)}, and the {@link ShadowRouter} maps the bound id to the owning node.
+ * Requests of clients owned by this node, and requests without the header or a principal, are handled here. Others are sent on to
+ * the owner's address with their method, path, headers and body, and the owner's response is copied back, so that clients can reach
+ * any node without sticky sessions.
+ * </p>
+ *
+ * <p>
+ * Forwarded requests carry the {@value #FORWARDED_BY_HEADER} header, and the secret shared by the nodes of the cluster in the
+ * {@value ShadowHandoffController#CLUSTER_SECRET_HEADER} header. Requests from a peer, those carrying the secret, are never
+ * forwarded again, so that nodes briefly disagreeing on the members don't bounce a request between them. Without a secret,
+ * the {@value #FORWARDED_BY_HEADER} header can't be told apart from one sent by a client, so it's ignored.
+ * </p>
+ *
+ * @author Craig Walls
+ */
+@Log4j2
+public class ShadowOwnerForwardingInterceptor implements HandlerInterceptor {
+
+    public static final String CLIENT_ID_HEADER = "Diff-Sync-Client-Id";
+    public static final String FORWARDED_BY_HEADER = "Diff-Sync-Forwarded-By";
+    private static final String FORWARDING_MSG = "Forwarding request of client '%s' to its owner %s";
+    private static final String UNABLE_TO_FORWARD_MSG = "Unable to forward request of client '%s' to its owner %s because of: %s";
+    private static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds(30);
+    // hop-by-hop headers, and those set by the HTTP client or the servlet container for the forwarded request and its response
+    private static final Set<String> UNFORWARDED_HEADERS = Set.of("connection", "keep-alive", "transfer-encoding", "te", "trailer",
+            "upgrade", "proxy-authorization", "proxy-authenticate", "host", "content-length", "expect");
+
+    private final ShadowRouter shadowRouter;
+    private final HttpClient httpClient;
+    private String secret;
+    private Duration timeout = DEFAULT_TIMEOUT;
+
+    /**
+     * @param shadowRouter the router mapping clients to their owner.
+     */
+    public ShadowOwnerForwardingInterceptor(ShadowRouter shadowRouter) {
+        this(shadowRouter, HttpClient.newHttpClient());
+    }
+
+    /**
+     * @param shadowRouter the router mapping clients to their owner.
+     * @param httpClient the client forwarding requests.
+     */
+    public ShadowOwnerForwardingInterceptor(ShadowRouter shadowRouter, HttpClient httpClient) {
+        this.shadowRouter = shadowRouter;
+        this.httpClient = httpClient;
+    }
+
+    /**
+     * Sets the secret shared by the nodes of the cluster, sent with forwarded requests and required of requests from a peer.
+     * @param secret the secret, or null to trust no request to have been forwarded.
+     */
+    public void setSecret(String secret) {
+        this.secret = secret;
+    }
+
+    /**
+     * Sets how long to wait for the owner's response before failing the request with 503 Service Unavailable.
+     * @param timeout the timeout.
+     */
+    public void setTimeout(Duration timeout) {
+        this.timeout = timeout;
+    }
+
+    /**
+     * Returns the id a request's client is known by, that its shadows are kept and routed under.
+     * @param request the request.
+     * @return the id, or null if the request carries no client id or isn't authenticated.
+     * @see #clientId(String, Principal)
+     */
+    public static String clientId(HttpServletRequest request) {
+        return clientId(request.getHeader(CLIENT_ID_HEADER), request.getUserPrincipal());
+    }
+
+    /**
+     * Binds the id a client sends to the principal it's authenticated as, so that a client can't reach the shadows of another
+     * principal's client by sending its id. Unauthenticated clients have no id that outlives their session.
+     * @param clientId the id the client sends, or null.
+     * @param principal the principal the client is authenticated as, or null.
+     * @return the bound id, or null if either is missing.
+     */
+    public static String clientId(String clientId, Principal principal) {
+        if (Objects.isNull(clientId) || Objects.isNull(principal)) {
+            return null;
+        }
+        // the encoded name has no ':', so no other principal's ids can be made to match
+        return URLEncoder.encode(principal.getName(), StandardCharsets.UTF_8) + ":" + clientId;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws IOException {
+        String clientId = clientId(request);
+        if (Objects.isNull(clientId) || isFromPeer(request) || shadowRouter.isLocal(clientId)) {
+            return true;
+        }
+        forward(clientId, shadowRouter.getOwner(clientId), request, response);
+        return false;
+    }
+
+    private boolean isFromPeer(HttpServletRequest request) {
+        return Objects.nonNull(request.getHeader(FORWARDED_BY_HEADER))
+                && ShadowHandoffController.matches(secret, request.getHeader(ShadowHandoffController.CLUSTER_SECRET_HEADER));
+    }
+
+    private void forward(String clientId, ClusterNode owner, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        log.debug(String.format(FORWARDING_MSG, clientId, owner));
+        URI uri = UriComponentsBuilder.fromUri(owner.getAddress())
+                .path(request.getRequestURI())
+                .query(request.getQueryString())
+                .build(true)
+                .toUri();
+        HttpRequest.Builder forwarded = HttpRequest.newBuilder(uri)
+                .timeout(timeout)
+                .method(request.getMethod(), HttpRequest.BodyPublishers.ofByteArray(StreamUtils.copyToByteArray(request.getInputStream())));
+        for (String name : Collections.list(request.getHeaderNames())) {
+            if (isForwarded(name) && !isSetForPeers(name)) {
+                Collections.list(request.getHeaders(name)).forEach(value -> forwarded.header(name, value));
+            }
+        }
+        forwarded.header(FORWARDED_BY_HEADER, shadowRouter.getLocalNodeId());
+        if (Objects.nonNull(secret)) {
+            forwarded.header(ShadowHandoffController.CLUSTER_SECRET_HEADER, secret);
+        }
+
+        HttpResponse<byte[]> ownerResponse;
+        try {
+            ownerResponse = httpClient.send(forwarded.build(), HttpResponse.BodyHandlers.ofByteArray());
+        } catch (IOException e) {
+            log.error(String.format(UNABLE_TO_FORWARD_MSG, clientId, owner, e.getMessage()));
+            response.sendError(HttpStatus.SERVICE_UNAVAILABLE.value());
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            response.sendError(HttpStatus.SERVICE_UNAVAILABLE.value());
+            return;
+        }
+
+        response.setStatus(ownerResponse.statusCode());
+        ownerResponse.headers().map().forEach((name, values) -> {
+            // HTTP/2 pseudo-headers, such as :status, aren't headers of the response
+            if (isForwarded(name) && !name.startsWith(":")) {
+                values.forEach(value -> response.addHeader(name, value));
+            }
+        });
+        response.setContentLength(ownerResponse.body().length);
+        response.getOutputStream().write(ownerResponse.body());
+    }
+
+    // the headers vouching for a request from a peer are only ever set here, never copied from the client's request
+    private static boolean isSetForPeers(String name) {
+        return FORWARDED_BY_HEADER.equalsIgnoreCase(name) || ShadowHandoffController.CLUSTER_SECRET_HEADER.equalsIgnoreCase(name);
+    }
+
+    private static boolean isForwarded(String name) {
+        return !UNFORWARDED_HEADERS.contains(name.toLowerCase(Locale.ROOT));
+    }
+}
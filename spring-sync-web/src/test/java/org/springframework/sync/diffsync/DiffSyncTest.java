@@ -16,15 +16,40 @@
 package org.springframework.sync.diffsync;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
 import org.junit.After;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.sync.*;
+import org.springframework.sync.diffsync.shadowstore.AsyncShadowStore;
+import org.springframework.sync.diffsync.shadowstore.AsyncShadowStoreAdapter;
+import org.springframework.sync.diffsync.shadowstore.BoundedShadowCache;
+import org.springframework.sync.diffsync.shadowstore.BoundedShadowStore;
 import org.springframework.sync.diffsync.shadowstore.MapBasedShadowStore;
+import org.springframework.sync.diffsync.shadowstore.MappedFileShadowStore;
+import org.springframework.sync.diffsync.shadowstore.MappedShadowLog;
+import org.springframework.sync.diffsync.shadowstore.NearCachingShadowStore;
+import org.springframework.sync.diffsync.shadowstore.OffHeapShadowStore;
+import org.springframework.sync.diffsync.shadowstore.RedisShadowStore;
+import org.springframework.sync.diffsync.shadowstore.ShadowNearCache;
+import org.springframework.sync.diffsync.shadowstore.ShadowStamps;
+import org.springframework.sync.diffsync.shadowstore.ShadowStore;
+import org.springframework.sync.diffsync.shadowstore.SharedShadowVersions;
+import org.springframework.sync.diffsync.shadowstore.SharedVersionShadowStore;
+import org.springframework.sync.diffsync.shadowstore.SlabAllocator;
+import org.springframework.sync.diffsync.shadowstore.StampedShadowStore;
+import org.springframework.sync.diffsync.shadowstore.UpdateSequencer;
 import org.springframework.sync.exception.PatchException;
 import org.springframework.sync.json.JsonPatchPatchConverter;
+import org.springframework.sync.util.Cloner;
+import org.springframework.sync.util.ReflectiveCloner;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 
@@ -32,8 +57,25 @@ import javax.transaction.Transactional;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
 
 import static org.junit.Assert.*;
 
@@ -46,6 +88,9 @@ public class DiffSyncTest {
 	private TodoRepository repository;
 	
 	private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
 	
 	@After
 	public void cleanup() {
@@ -298,6 +343,96 @@ public class DiffSyncTest {
 		assertFalse(todo.isComplete());
 	}
 
+	@Test
+	public void patchEntity_separateShadowPerId() throws Exception {
+		MapBasedShadowStore shadowStore = new MapBasedShadowStore("x");
+		DiffSync<Todo> sync = new DiffSync<>(shadowStore, Todo.class);
+		sync.setIdExtractor(new IdPropertyEquivalency());
+
+		Todo todo1 = sync.apply(new Todo(1L, "A", false), new VersionedPatch(List.of(new ReplaceOperation("/complete", true)), 0, 0));
+		Todo todo2 = sync.apply(new Todo(2L, "B", false), new VersionedPatch(List.of(new ReplaceOperation("/complete", true)), 0, 0));
+
+		// patching todo 2 leaves the shadow of todo 1 alone
+		todo1.setDescription("AAA");
+		VersionedPatch diff = sync.diff(todo1);
+		assertEquals(1, diff.getClientVersion());
+		assertEquals(2, diff.size());
+		assertEquals("/description", diff.getOperations().get(1).getPath());
+
+		assertEquals(0, sync.diff(todo2).size());
+		assertNotNull(shadowStore.getShadow("shadow/Todo/1"));
+		assertNotNull(shadowStore.getShadow("shadow/Todo/2"));
+	}
+
+	@Test
+	public void patchEntity_shadowMatchingTargetIsPatchedOnce() throws Exception {
+		int[] copies = new int[1];
+		ReflectiveCloner reflectiveCloner = new ReflectiveCloner();
+		DiffSync<Todo> sync = new DiffSync<>(new MapBasedShadowStore("x"), Todo.class);
+		sync.setCloner(new Cloner() {
+			public <T> T deepClone(T original) {
+				copies[0]++;
+				return reflectiveCloner.deepClone(original);
+			}
+			public <T> List<T> deepClone(List<T> original) {
+				copies[0]++;
+				return reflectiveCloner.deepClone(original);
+			}
+		});
+
+		Todo patched = sync.apply(new Todo(1L, "A", false), new VersionedPatch(List.of(new ReplaceOperation("/complete", true)), 0, 0));
+		copies[0] = 0;
+		patched = sync.apply(patched, new VersionedPatch(List.of(new ReplaceOperation("/description", "AAA")), 0, 1));
+		assertEquals(new Todo(1L, "AAA", true), patched);
+		// one defensive copy while patching, one for the shadow
+		assertEquals(2, copies[0]);
+		assertEquals(0, sync.diff(patched).size());
+
+		// a target changed outside of the sync loop still patches the shadow separately
+		patched.setComplete(false);
+		Todo patchedAgain = sync.apply(patched, new VersionedPatch(List.of(new ReplaceOperation("/description", "B")), 1, 2));
+		assertEquals(new Todo(1L, "B", false), patchedAgain);
+		VersionedPatch diff = sync.diff(patchedAgain);
+		assertEquals(2, diff.size());
+		assertEquals("/complete", diff.getOperations().get(1).getPath());
+	}
+
+	@Test
+	public void patchEntity_mutableEntityIsCopiedOnceForTheResultAndOnceForTheShadow() throws Exception {
+		int[] copies = new int[1];
+		ReflectiveCloner reflectiveCloner = new ReflectiveCloner();
+		DiffSync<Note> sync = new DiffSync<>(new MapBasedShadowStore("x"), Note.class);
+		sync.setCloner(new Cloner() {
+			public <T> T deepClone(T original) {
+				copies[0]++;
+				return reflectiveCloner.deepClone(original);
+			}
+			public <T> List<T> deepClone(List<T> original) {
+				copies[0]++;
+				return reflectiveCloner.deepClone(original);
+			}
+		});
+
+		Note patched = sync.apply(new Note(1L, "A"), new VersionedPatch(List.of(new ReplaceOperation("/text", "B")), 0, 0));
+		copies[0] = 0;
+		// a copy loaded again isn't compared with the shadow, which is patched on its own
+		patched = sync.apply(new Note(1L, "B"), new VersionedPatch(List.of(new ReplaceOperation("/text", "C")), 0, 1));
+		assertEquals("C", patched.getText());
+		assertEquals(2, copies[0]);
+		assertEquals(0, sync.diff(patched).size());
+	}
+
+	@Test
+	public void patchEntity_immutableResultIsSharedWithTheShadow() throws Exception {
+		MapBasedShadowStore shadowStore = new MapBasedShadowStore("x");
+		DiffSync<Label> sync = new DiffSync<>(shadowStore, Label.class);
+
+		Label patched = sync.apply(new Label("urgent", 1), new VersionedPatch(List.of(new ReplaceOperation("/priority", 2)), 0, 0));
+		assertEquals(new Label("urgent", 2), patched);
+		patched = sync.apply(patched, new VersionedPatch(List.of(new ReplaceOperation("/priority", 3)), 0, 1));
+		assertSame(patched, shadowStore.getShadow("shadow/Label").getResource());
+	}
+
 	@Test
 	public void patchEntity_booleanProperty() throws Exception {
 		DiffSync<Todo> sync = new DiffSync<>(new MapBasedShadowStore("x"), Todo.class);
@@ -599,6 +734,593 @@ public class DiffSyncTest {
 	}
 
 	
+	@Test
+	public void patchList_lostReturn_backupKeptAsReversePatch() throws Exception {
+		MapBasedShadowStore shadowStore = new MapBasedShadowStore("x");
+		DiffSync<Todo> sync = new DiffSync<>(shadowStore, Todo.class);
+
+		List<Todo> patched = sync.apply(getTodoList(), new VersionedPatch(List.of(new ReplaceOperation("/0/complete", true)), 0, 0));
+		assertEquals(0, ((Patch) shadowStore.getShadow("shadow/TodoList_backup").getResource()).size());
+
+		// the server changes the list and the diff it sends back is lost
+		patched.get(2).setDescription("CCC");
+		patched.remove(1);
+		VersionedPatch lostDiff = sync.diff(patched);
+		assertEquals(0, lostDiff.getServerVersion());
+		Patch reverse = (Patch) shadowStore.getShadow("shadow/TodoList_backup").getResource();
+		assertTrue(reverse.size() > 0);
+
+		// the client resends against server version 0, so the server falls back to the backup
+		List<Todo> repatched = sync.apply(patched,
+				new VersionedPatch(List.of(new ReplaceOperation("/0/complete", true)), 0, 0),
+				new VersionedPatch(List.of(new ReplaceOperation("/1/description", "BBB")), 0, 1));
+		assertEquals("BBB", repatched.get(1).getDescription());
+
+		VersionedPatch diff = sync.diff(repatched);
+		assertEquals(2, diff.getClientVersion());
+		assertEquals(0, diff.getServerVersion());
+		List<Todo> client = getTodoList();
+		client.get(0).setComplete(true);
+		client.get(1).setDescription("BBB");
+		assertEquals(repatched, diff.apply(client, Todo.class));
+	}
+
+	@Test
+	public void patchList_lostReturnTwice_backupResetWithTheRestoredShadow() throws Exception {
+		MapBasedShadowStore shadowStore = new MapBasedShadowStore("x");
+		List<Integer> batchSizes = new ArrayList<>();
+		ShadowStore batchCountingStore = new ShadowStore() {
+			@Override
+			public void putShadow(String key, Shadow<?> shadow) {
+				batchSizes.add(1);
+				shadowStore.putShadow(key, shadow);
+			}
+
+			@Override
+			public void putShadows(Map<String, Shadow<?>> shadows) {
+				batchSizes.add(shadows.size());
+				shadows.forEach(shadowStore::putShadow);
+			}
+
+			@Override
+			public Shadow<?> getShadow(String key) {
+				return shadowStore.getShadow(key);
+			}
+		};
+		DiffSync<Todo> sync = new DiffSync<>(batchCountingStore, Todo.class);
+
+		List<Todo> patched = sync.apply(getTodoList(), new VersionedPatch(List.of(new ReplaceOperation("/0/complete", true)), 0, 0));
+		patched.get(1).setDescription("BBB");
+		sync.diff(patched);
+
+		// the diff is lost, and the client's next patch is rejected after the server falls back to the backup
+		batchSizes.clear();
+		assertSame(patched, sync.apply(patched, new VersionedPatch(List.of(new ReplaceOperation("/2/complete", true)), 0, 7)));
+		assertEquals(List.of(2), batchSizes);
+		assertEquals(0, ((Patch) shadowStore.getShadow("shadow/TodoList_backup").getResource()).size());
+
+		// the next diff is lost too, so the server falls back to the backup once more
+		patched.get(2).setDescription("CCC");
+		sync.diff(patched);
+		List<Todo> repatched = sync.apply(patched, new VersionedPatch(List.of(new ReplaceOperation("/0/description", "AAA")), 0, 1));
+		assertEquals("AAA", repatched.get(0).getDescription());
+
+		VersionedPatch diff = sync.diff(repatched);
+		assertEquals(0, diff.getServerVersion());
+		assertEquals(2, diff.getClientVersion());
+		List<Todo> client = getTodoList();
+		client.get(0).setComplete(true);
+		client.get(0).setDescription("AAA");
+		assertEquals(repatched, diff.apply(client, Todo.class));
+	}
+
+	@Test
+	public void sharedVersions_sessionsAtSameVersionShareOneCopy() throws Exception {
+		SharedShadowVersions versions = new SharedShadowVersions();
+		SharedVersionShadowStore first = new SharedVersionShadowStore("first", versions);
+		SharedVersionShadowStore second = new SharedVersionShadowStore("second", versions);
+		DiffSync<Todo> firstSync = new DiffSync<>(first, Todo.class);
+		DiffSync<Todo> secondSync = new DiffSync<>(second, Todo.class);
+
+		firstSync.diff(getTodoList());
+		secondSync.diff(getTodoList());
+		assertEquals(1, versions.getVersionCount("shadow/TodoList"));
+		assertSame(first.getShadow("shadow/TodoList").getResource(), second.getShadow("shadow/TodoList").getResource());
+
+		// a session that moves on gets a version of its own, which the other session shares once it catches up
+		List<Todo> patched = firstSync.apply(getTodoList(), new VersionedPatch(List.of(new ReplaceOperation("/0/complete", true)), 1, 0));
+		assertEquals(2, versions.getVersionCount("shadow/TodoList"));
+		VersionedPatch diff = secondSync.diff(patched);
+		assertTrue(diff.size() > 0);
+		assertEquals(1, versions.getVersionCount("shadow/TodoList"));
+		assertEquals(2, second.getShadow("shadow/TodoList").getServerVersion());
+
+		first.close();
+		second.close();
+		assertEquals(0, versions.getVersionCount("shadow/TodoList"));
+	}
+
+	@Test
+	public void diffEdits_queuedUntilAcknowledged() throws Exception {
+		DiffSync<Todo> sync = new DiffSync<>(new MapBasedShadowStore("x"), Todo.class);
+		List<Todo> todos = sync.apply(getTodoList(), new VersionedPatch(List.of(new ReplaceOperation("/0/complete", true)), 0, 0));
+		assertTrue(sync.diffEdits(todos).isEmpty());
+
+		// two edits go out without an acknowledgement; the second message carries both
+		todos.get(1).setDescription("BBB");
+		List<VersionedPatch> edits = sync.diffEdits(todos);
+		assertEquals(1, edits.size());
+		todos.get(2).setComplete(true);
+		edits = sync.diffEdits(todos);
+		assertEquals(2, edits.size());
+		assertEquals(0, edits.get(0).getServerVersion());
+		assertEquals(1, edits.get(1).getServerVersion());
+		assertEquals(1, edits.get(1).getClientVersion());
+		todos.get(1).setDescription("changed after diff");
+		List<PatchOperation> firstEdit = edits.get(0).getOperations();
+		assertEquals("BBB", firstEdit.get(firstEdit.size() - 1).getValue());
+
+		// the client acknowledges the first edit only
+		sync.apply(todos, new VersionedPatch(List.of(), 1, 1));
+		edits = sync.diffEdits(todos);
+		assertEquals(2, edits.size());
+		assertEquals(1, edits.get(0).getServerVersion());
+		assertEquals(2, edits.get(1).getServerVersion());
+
+		// the client's next edit acknowledges everything it has received
+		todos = sync.apply(todos, new VersionedPatch(List.of(new ReplaceOperation("/0/description", "AAA")), 3, 1));
+		assertEquals("AAA", todos.get(0).getDescription());
+		assertTrue(sync.diffEdits(todos).isEmpty());
+	}
+
+	@Test
+	public void concurrentPatches_noShadowUpdateIsLost() throws Exception {
+		DiffSync<Todo> sync = new DiffSync<>(new MapBasedShadowStore("x"), Todo.class);
+		List<Todo> todos = getTodoList();
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		List<Future<List<Todo>>> results = new ArrayList<>();
+		for (int i = 0; i < 200; i++) {
+			Patch patch = new Patch(List.of(new ReplaceOperation("/0/description", "A" + i)));
+			results.add(executor.submit(() -> sync.apply(patch, todos)));
+		}
+		for (Future<List<Todo>> result : results) {
+			result.get();
+		}
+		executor.shutdown();
+
+		// every patch advanced the client version of the shadow it read, so none were applied to a stale shadow
+		VersionedPatch diff = sync.diff(todos);
+		assertEquals(200, diff.getClientVersion());
+	}
+
+	@Test
+	public void asyncDiffSync_matchesDiffSync() throws Exception {
+		MapBasedShadowStore shadowStore = new MapBasedShadowStore("x");
+		AsyncDiffSync<Todo> sync = new AsyncDiffSync<>(new AsyncShadowStoreAdapter(shadowStore), Todo.class);
+
+		List<Todo> patched = sync.apply(new VersionedPatch(List.of(new ReplaceOperation("/0/complete", true)), 0, 0), getTodoList())
+				.toCompletableFuture().get();
+		assertTrue(patched.get(0).isComplete());
+		assertEquals(1, shadowStore.getShadow("shadow/TodoList").getClientVersion());
+
+		patched.get(1).setDescription("BBB");
+		VersionedPatch diff = sync.diff(patched).toCompletableFuture().get();
+		assertTrue(diff.size() > 0);
+		assertEquals(0, diff.getServerVersion());
+		assertEquals(1, diff.getClientVersion());
+		assertTrue(((Patch) shadowStore.getShadow("shadow/TodoList_backup").getResource()).size() > 0);
+
+		// the diff is lost, so the client resends against server version 0 and the server falls back to the backup
+		List<Todo> repatched = sync.apply(new VersionedPatch(List.of(new ReplaceOperation("/2/complete", true)), 0, 1), patched)
+				.toCompletableFuture().get();
+		assertTrue(repatched.get(2).isComplete());
+		assertEquals(0, shadowStore.getShadow("shadow/TodoList").getServerVersion());
+		assertEquals(2, shadowStore.getShadow("shadow/TodoList").getClientVersion());
+	}
+
+	@Test
+	public void asyncShadowStoreAdapter_holdsTheLockUntilTheUpdateCompletes() throws Exception {
+		MapBasedShadowStore store = new MapBasedShadowStore("x");
+		AsyncShadowStoreAdapter adapter = new AsyncShadowStoreAdapter(store);
+		CompletableFuture<String> pending = new CompletableFuture<>();
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Future<CompletionStage<String>> update = executor.submit(() -> adapter.runExclusively("shadow/todos", () -> pending));
+			Thread.sleep(100);
+			assertFalse(store.getLock("shadow/todos").tryLock());
+
+			pending.complete("done");
+			assertEquals("done", update.get().toCompletableFuture().get());
+			assertTrue(store.getLock("shadow/todos").tryLock());
+			store.getLock("shadow/todos").unlock();
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void asyncDiffSync_failsWithPatchException() throws Exception {
+		AsyncDiffSync<Todo> sync = new AsyncDiffSync<>(new AsyncShadowStoreAdapter(new MapBasedShadowStore("x")), Todo.class);
+		Patch patch = new Patch(List.of(new TestOperation("/0/description", "Z")));
+		try {
+			sync.apply(patch, getTodoList()).toCompletableFuture().get();
+			fail();
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof PatchException);
+		}
+	}
+
+	@Test
+	public void asyncDiffSync_concurrentPatches_noShadowUpdateIsLost() throws Exception {
+		MapBasedShadowStore store = new MapBasedShadowStore("x");
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		UpdateSequencer updates = new UpdateSequencer();
+		// completes every read and write on another thread, like a non-blocking client would
+		AsyncShadowStore asyncStore = new AsyncShadowStore() {
+			@Override
+			public CompletionStage<Void> putShadow(String key, Shadow<?> shadow) {
+				return CompletableFuture.runAsync(() -> store.putShadow(key, shadow), executor);
+			}
+
+			@Override
+			public CompletionStage<Shadow<?>> getShadow(String key) {
+				return CompletableFuture.supplyAsync(() -> store.getShadow(key), executor);
+			}
+
+			@Override
+			public <R> CompletionStage<R> runExclusively(String key, Supplier<? extends CompletionStage<R>> update) {
+				return updates.run(key, update);
+			}
+		};
+		AsyncDiffSync<Todo> sync = new AsyncDiffSync<>(asyncStore, Todo.class);
+		List<Todo> todos = getTodoList();
+		List<CompletableFuture<List<Todo>>> results = new ArrayList<>();
+		for (int i = 0; i < 200; i++) {
+			Patch patch = new Patch(List.of(new ReplaceOperation("/0/description", "A" + i)));
+			results.add(sync.apply(patch, todos).toCompletableFuture());
+		}
+		CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0])).get();
+
+		// every patch advanced the client version of the shadow it read, so none were applied to a stale shadow
+		VersionedPatch diff = sync.diff(todos).toCompletableFuture().get();
+		assertEquals(200, diff.getClientVersion());
+		executor.shutdown();
+	}
+
+	@Test
+	public void boundedShadowStore_evictsLeastRecentlyUsedAndIdleShadows() throws Exception {
+		MutableClock clock = new MutableClock();
+		BoundedShadowCache cache = new BoundedShadowCache(250, Duration.ofMinutes(1), 1, clock);
+		cache.setSizeEstimator(shadow -> 100);
+		BoundedShadowStore first = new BoundedShadowStore("first", cache);
+		BoundedShadowStore second = new BoundedShadowStore("second", cache);
+		DiffSync<Todo> firstSync = new DiffSync<>(first, Todo.class);
+		DiffSync<Todo> secondSync = new DiffSync<>(second, Todo.class);
+
+		firstSync.diff(getTodoList());
+		secondSync.diff(getTodoList());
+		assertEquals(2, cache.getSize());
+		assertEquals(200, cache.getResidentBytes());
+
+		// the first session's shadow was used last, so the second's makes way for the new one
+		clock.advance(Duration.ofSeconds(10));
+		assertNotNull(first.getShadow("shadow/TodoList"));
+		second.putShadow("shadow/Todo", new Shadow<>(new Todo(1L, "A", false), 0, 0));
+		assertEquals(1, cache.getEvictionCount());
+		assertEquals(200, cache.getResidentBytes());
+		assertNull(second.getShadow("shadow/TodoList"));
+
+		// an evicted shadow is seeded again, in turn evicting the first session's
+		VersionedPatch diff = secondSync.diff(getTodoList());
+		assertEquals(0, diff.getServerVersion());
+		assertEquals(2, cache.getEvictionCount());
+		assertNull(first.getShadow("shadow/TodoList"));
+
+		clock.advance(Duration.ofMinutes(1));
+		assertNull(second.getShadow("shadow/TodoList"));
+		cache.evictExpired();
+		assertEquals(0, cache.getSize());
+		assertEquals(0, cache.getResidentBytes());
+		assertEquals(2, cache.getExpirationCount());
+
+		firstSync.diff(getTodoList());
+		first.close();
+		assertEquals(0, cache.getSize());
+	}
+
+	@Test
+	public void boundedShadowStore_evictsShadowsWithTheirBackups() throws Exception {
+		BoundedShadowCache cache = new BoundedShadowCache(250, Duration.ofMinutes(1), 1, new MutableClock());
+		cache.setSizeEstimator(shadow -> 100);
+		BoundedShadowStore shadowStore = new BoundedShadowStore("x", cache);
+		DiffSync<Todo> sync = new DiffSync<>(shadowStore, Todo.class);
+		sync.apply(getTodoList(), new VersionedPatch(List.of(new ReplaceOperation("/0/complete", true)), 0, 0));
+		assertEquals(2, cache.getSize());
+
+		shadowStore.putShadow("shadow/Todo", new Shadow<>(new Todo(1L, "A", false), 0, 0));
+		assertEquals(2, cache.getEvictionCount());
+		assertEquals(100, cache.getResidentBytes());
+		assertNull(shadowStore.getShadow("shadow/TodoList"));
+		assertNull(shadowStore.getShadow("shadow/TodoList_backup"));
+	}
+
+	@Test
+	public void boundedShadowStore_forgetsTheKeysOfDroppedShadows() throws Exception {
+		MutableClock clock = new MutableClock();
+		BoundedShadowCache cache = new BoundedShadowCache(250, Duration.ofMinutes(1), 1, clock);
+		cache.setSizeEstimator(shadow -> 100);
+		BoundedShadowStore first = new BoundedShadowStore("first", cache);
+		BoundedShadowStore second = new BoundedShadowStore("second", cache);
+
+		first.putShadow("shadow/A", new Shadow<>(new Todo(1L, "A", false), 0, 0));
+		first.putShadow("shadow/B", new Shadow<>(new Todo(2L, "B", false), 0, 0));
+		second.putShadow("shadow/C", new Shadow<>(new Todo(3L, "C", false), 0, 0));
+		assertEquals(Set.of("shadow/B"), first.getKeys());
+
+		clock.advance(Duration.ofMinutes(1));
+		cache.evictExpired();
+		assertEquals(Set.of(), first.getKeys());
+		assertEquals(Set.of(), second.getKeys());
+	}
+
+	@Test
+	public void boundedShadowStore_expiresShadowsAfterTheirTimeToLive() throws Exception {
+		MutableClock clock = new MutableClock();
+		BoundedShadowCache cache = new BoundedShadowCache(1000, Duration.ofMinutes(10), 1, clock);
+		cache.setSizeEstimator(shadow -> 100);
+		BoundedShadowStore shortLived = new BoundedShadowStore("short", cache);
+		shortLived.setTimeToLive(Duration.ofMinutes(1));
+		BoundedShadowStore longLived = new BoundedShadowStore("long", cache);
+		shortLived.putShadow("shadow/A", new Shadow<>(new Todo(1L, "A", false), 0, 0));
+		longLived.putShadow("shadow/A", new Shadow<>(new Todo(1L, "A", false), 0, 0));
+
+		// used all along, the short-lived store's shadow still expires
+		for (int i = 0; i < 5; i++) {
+			clock.advance(Duration.ofSeconds(15));
+			shortLived.getShadow("shadow/A");
+		}
+		assertNull(shortLived.getShadow("shadow/A"));
+		assertNotNull(longLived.getShadow("shadow/A"));
+		assertEquals(1, cache.getExpirationCount());
+		assertEquals(Set.of(), shortLived.getKeys());
+
+		// a shadow that isn't looked up again is dropped as soon as another is stored in its segment
+		shortLived.putShadow("shadow/B", new Shadow<>(new Todo(2L, "B", false), 0, 0));
+		clock.advance(Duration.ofMinutes(1));
+		longLived.putShadow("shadow/C", new Shadow<>(new Todo(3L, "C", false), 0, 0));
+		assertEquals(2, cache.getExpirationCount());
+		assertEquals(2, cache.getSize());
+	}
+
+	@Test
+	public void boundedShadowStore_estimatesSizesEveryFewStores() throws Exception {
+		int[] estimates = new int[1];
+		BoundedShadowCache cache = new BoundedShadowCache(1000, Duration.ofMinutes(1), 1, new MutableClock());
+		cache.setSizeEstimator(shadow -> ++estimates[0] * 10);
+		cache.setEstimationInterval(3);
+		BoundedShadowStore shadowStore = new BoundedShadowStore("x", cache);
+
+		for (int i = 0; i < 6; i++) {
+			shadowStore.putShadow("shadow/A", new Shadow<>(new Todo(1L, "A" + i, false), 0, i));
+		}
+		assertEquals(2, estimates[0]);
+		assertEquals(20, cache.getResidentBytes());
+
+		// a resource of another type is estimated right away
+		shadowStore.putShadow("shadow/A", new Shadow<>(new Patch(List.of()), 0, 6));
+		assertEquals(3, estimates[0]);
+		assertEquals(30, cache.getResidentBytes());
+	}
+
+	@Test
+	public void boundedShadowStore_splitsTheLimitOverSegments() throws Exception {
+		BoundedShadowCache cache = new BoundedShadowCache(400, Duration.ofMinutes(1), 4, new MutableClock());
+		cache.setSizeEstimator(shadow -> 100);
+		BoundedShadowStore shadowStore = new BoundedShadowStore("x", cache);
+		for (int i = 0; i < 100; i++) {
+			shadowStore.putShadow("shadow/" + i, new Shadow<>(new Todo((long) i, "A", false), 0, 0));
+		}
+		// each segment keeps its own most recently stored shadow
+		assertEquals(4, cache.getSize());
+		assertEquals(400, cache.getResidentBytes());
+		assertEquals(96, cache.getEvictionCount());
+	}
+
+	@Test
+	public void offHeapShadowStore_shadowsBackupsAndEditsSurviveSerialization() throws Exception {
+		SlabAllocator allocator = new SlabAllocator(4096);
+		OffHeapShadowStore shadowStore = new OffHeapShadowStore("x", allocator);
+		DiffSync<Todo> sync = new DiffSync<>(shadowStore, Todo.class);
+
+		List<Todo> patched = sync.apply(getTodoList(), new VersionedPatch(List.of(new ReplaceOperation("/0/complete", true)), 0, 0));
+		assertNotSame(shadowStore.getShadow("shadow/TodoList").getResource(), shadowStore.getShadow("shadow/TodoList").getResource());
+		patched.get(2).setDescription("CCC");
+		patched.remove(1);
+		List<VersionedPatch> edits = sync.diffEdits(patched);
+		assertEquals(1, edits.size());
+		assertTrue(((Patch) shadowStore.getShadow("shadow/TodoList_backup").getResource()).size() > 0);
+		assertEquals(edits.get(0).getOperations().size(), shadowStore.getShadow("shadow/TodoList").getEdits().get(0).getOperations().size());
+
+		// the client never got the edit, so the server falls back to the backup
+		List<Todo> repatched = sync.apply(patched, new VersionedPatch(List.of(new ReplaceOperation("/1/description", "BBB")), 0, 1));
+		assertEquals("BBB", repatched.get(1).getDescription());
+		assertTrue(shadowStore.getShadow("shadow/TodoList").getEdits().isEmpty());
+		assertTrue(allocator.getFreeBytes() > 0);
+
+		shadowStore.close();
+		assertNull(shadowStore.getShadow("shadow/TodoList"));
+		assertEquals(0, allocator.getResidentBytes());
+	}
+
+	@Test
+	public void mappedFileShadowStore_shadowsSurviveRestart() throws Exception {
+		Path directory = temporaryFolder.newFolder().toPath();
+		MappedShadowLog log = new MappedShadowLog(directory, 64 * 1024);
+		DiffSync<Todo> sync = new DiffSync<>(new MappedFileShadowStore("client", log), Todo.class);
+		List<Todo> patched = sync.apply(getTodoList(), new VersionedPatch(List.of(new ReplaceOperation("/0/complete", true)), 0, 0));
+		patched.get(1).setDescription("BBB");
+		VersionedPatch diff = sync.diff(patched);
+		assertEquals(0, diff.getServerVersion());
+		log.close();
+
+		// after the restart, the client's next patch is applied against its shadow instead of being rejected
+		MappedShadowLog reopened = new MappedShadowLog(directory, 64 * 1024);
+		MappedFileShadowStore shadowStore = new MappedFileShadowStore("client", reopened);
+		sync = new DiffSync<>(shadowStore, Todo.class);
+		List<Todo> repatched = sync.apply(patched, new VersionedPatch(List.of(new ReplaceOperation("/2/complete", true)), 1, 1));
+		assertTrue(repatched.get(2).isComplete());
+		assertEquals(2, shadowStore.getShadow("shadow/TodoList").getClientVersion());
+
+		shadowStore.clear();
+		assertNull(shadowStore.getShadow("shadow/TodoList"));
+		reopened.close();
+	}
+
+	@Test
+	public void nearCachingShadowStore_refetchesOnlyShadowsChangedElsewhere() throws Exception {
+		// a stand-in for Redis, shared by two servers each with a near cache of their own
+		MapBasedShadowStore redis = new MapBasedShadowStore("client");
+		Map<String, Long> redisStamps = new HashMap<>();
+		int[] remoteGets = new int[1];
+		int[] remoteWrites = new int[1];
+		ShadowStamps stamps = new ShadowStamps() {
+			@Override
+			public Long getStamp(String key) {
+				return redisStamps.get(key);
+			}
+
+			@Override
+			public void setStamp(String key, long stamp) {
+				redisStamps.put(key, stamp);
+			}
+
+			@Override
+			public void removeStamp(String key) {
+				redisStamps.remove(key);
+			}
+		};
+		StampedShadowStore remote = new StampedShadowStore() {
+			@Override
+			public void putShadow(String key, Shadow<?> shadow) {
+				fail("shadows are stored with their stamps");
+			}
+
+			@Override
+			public void putShadows(Map<String, Shadow<?>> shadows, Map<String, Long> newStamps) {
+				remoteWrites[0]++;
+				redis.putShadows(shadows);
+				newStamps.forEach((key, stamp) -> redisStamps.put("client:" + key, stamp));
+			}
+
+			@Override
+			public Shadow<?> getShadow(String key) {
+				remoteGets[0]++;
+				return redis.getShadow(key);
+			}
+
+			@Override
+			public ShadowStamps getShadowStamps() {
+				return stamps;
+			}
+		};
+		ShadowNearCache firstCache = new ShadowNearCache(10);
+		NearCachingShadowStore firstStore = new NearCachingShadowStore("client", remote, firstCache);
+		DiffSync<Todo> first = new DiffSync<>(firstStore, Todo.class);
+		DiffSync<Todo> second = new DiffSync<>(new NearCachingShadowStore("client", remote, new ShadowNearCache(10)), Todo.class);
+
+		List<Todo> todos = first.apply(getTodoList(), new VersionedPatch(List.of(new ReplaceOperation("/0/complete", true)), 0, 0));
+		todos = first.apply(todos, new VersionedPatch(List.of(new ReplaceOperation("/1/complete", true)), 0, 1));
+		assertEquals(1, remoteGets[0]);
+
+		// the other server changes the shadow, so the first fetches it again, once
+		todos = second.apply(todos, new VersionedPatch(List.of(new ReplaceOperation("/2/complete", true)), 0, 2));
+		todos = first.apply(todos, new VersionedPatch(List.of(new ReplaceOperation("/0/description", "AAA")), 0, 3));
+		assertEquals(3, remoteGets[0]);
+		assertEquals(4, redis.getShadow("shadow/TodoList").getClientVersion());
+		first.diff(todos);
+		assertEquals(3, remoteGets[0]);
+		assertTrue(firstCache.getHitCount() > 0);
+
+		// each patch wrote the shadow and its backup with their stamps in a single write, and the diff wrote the shadow
+		assertEquals(5, remoteWrites[0]);
+
+		// a stamp published by the other server drops the copy right away
+		firstCache.invalidate("client:shadow/TodoList", 42);
+		firstStore.getShadow("shadow/TodoList");
+		assertEquals(4, remoteGets[0]);
+		assertEquals(1, firstCache.getInvalidationCount());
+
+		StampedShadowStore unstamped = new RedisShadowStore("client", null);
+		assertThrows(IllegalArgumentException.class, () -> new NearCachingShadowStore("client", unstamped, firstCache));
+	}
+
+	@Test
+	public void shadowAndBackupWrittenTogether() throws Exception {
+		MapBasedShadowStore store = new MapBasedShadowStore("x");
+		List<Integer> writes = new ArrayList<>();
+		ShadowStore batchCountingStore = new ShadowStore() {
+			@Override
+			public void putShadow(String key, Shadow<?> shadow) {
+				writes.add(1);
+				store.putShadow(key, shadow);
+			}
+
+			@Override
+			public void putShadows(Map<String, Shadow<?>> shadows) {
+				writes.add(shadows.size());
+				shadows.forEach(store::putShadow);
+			}
+
+			@Override
+			public Shadow<?> getShadow(String key) {
+				return store.getShadow(key);
+			}
+		};
+		DiffSync<Todo> sync = new DiffSync<>(batchCountingStore, Todo.class);
+
+		List<Todo> todos = sync.apply(getTodoList(), new VersionedPatch(List.of(new ReplaceOperation("/0/complete", true)), 0, 0));
+		assertEquals(List.of(2), writes);
+		todos.get(1).setDescription("BBB");
+		sync.diff(todos);
+		assertEquals(List.of(2, 2), writes);
+		assertTrue(((Patch) store.getShadow("shadow/TodoList_backup").getResource()).size() > 0);
+	}
+
+	@Test
+	public void shadowAndBackupReadTogetherWhenRestoring() throws Exception {
+		MapBasedShadowStore store = new MapBasedShadowStore("x");
+		List<Integer> reads = new ArrayList<>();
+		ShadowStore batchCountingStore = new ShadowStore() {
+			@Override
+			public void putShadow(String key, Shadow<?> shadow) {
+				store.putShadow(key, shadow);
+			}
+
+			@Override
+			public Shadow<?> getShadow(String key) {
+				reads.add(1);
+				return store.getShadow(key);
+			}
+
+			@Override
+			public Map<String, Shadow<?>> getShadows(Collection<String> keys) {
+				reads.add(keys.size());
+				return store.getShadows(keys);
+			}
+		};
+		DiffSync<Todo> sync = new DiffSync<>(batchCountingStore, Todo.class);
+
+		List<Todo> patched = sync.apply(getTodoList(), new VersionedPatch(List.of(new ReplaceOperation("/0/complete", true)), 0, 0));
+		patched.get(1).setDescription("BBB");
+		sync.diff(patched);
+
+		// the diff is lost, so the client resends against server version 0 and the server falls back to the backup
+		reads.clear();
+		sync.apply(new VersionedPatch(List.of(new ReplaceOperation("/2/complete", true)), 0, 1), patched);
+		assertEquals(List.of(1, 2), reads);
+	}
+
+	
 	//
 	// private helpers
 	//
@@ -613,6 +1335,44 @@ public class DiffSyncTest {
 		return todos;
 	}
 
+	// an entity without equals
+	@Getter
+	@Setter
+	@NoArgsConstructor
+	@AllArgsConstructor
+	private static class Note {
+		private Long id;
+		private String text;
+	}
+
+	public record Label(String name, int priority) {
+	}
+
+	private static class MutableClock extends Clock {
+
+		private Instant now = Instant.EPOCH;
+
+		private void advance(Duration duration) {
+			now = now.plus(duration);
+		}
+
+		@Override
+		public ZoneId getZone() {
+			return ZoneOffset.UTC;
+		}
+
+		@Override
+		public Clock withZone(ZoneId zone) {
+			return this;
+		}
+
+		@Override
+		public Instant instant() {
+			return now;
+		}
+
+	}
+
 	private List<Todo> getBigTodoList() {
 		List<Todo> todos = new ArrayList<>();
 		
@@ -0,0 +1,251 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.sync.diffsync.web.cluster;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.sync.diffsync.Shadow;
+import org.springframework.sync.diffsync.cluster.ClusterNode;
+import org.springframework.sync.diffsync.cluster.ConsistentHashRing;
+import org.springframework.sync.diffsync.cluster.InMemoryClusterMembership;
+import org.springframework.sync.diffsync.cluster.ShadowRouter;
+import org.springframework.sync.diffsync.shadowstore.CompactShadowCodec;
+import org.springframework.sync.diffsync.shadowstore.MapBasedShadowStore;
+import org.springframework.sync.diffsync.shadowstore.ShadowStore;
+import org.springframework.sync.diffsync.web.HttpShadowHandoff;
+import org.springframework.sync.diffsync.web.ShadowHandoffController;
+import org.springframework.sync.diffsync.web.ShadowOwnerForwardingInterceptor;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.web.bind.annotation.PatchMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.Principal;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static org.springframework.test.web.servlet.setup.MockMvcBuilders.standaloneSetup;
+
+public class ShadowOwnerForwardingTest {
+
+	private static final String JSON_PATCH = "application/json-patch+json";
+
+	private static final String PATCH = "[{\"op\":\"replace\",\"path\":\"/description\",\"value\":\"BBB\"}]";
+
+	private static final Principal ALICE = () -> "alice";
+
+	private static final String SECRET = "s3cret";
+
+	private HttpServer owner;
+
+	private CompletableFuture<Received> received;
+
+	private ClusterNode a;
+
+	private ClusterNode b;
+
+	@Before
+	public void startOwner() throws IOException {
+		received = new CompletableFuture<>();
+		owner = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		owner.createContext("/", exchange -> {
+			received.complete(new Received(exchange.getRequestMethod(), exchange.getRequestURI().toString(),
+					exchange.getRequestHeaders().getFirst(ShadowOwnerForwardingInterceptor.FORWARDED_BY_HEADER),
+					exchange.getRequestHeaders().getFirst(ShadowHandoffController.CLUSTER_SECRET_HEADER),
+					exchange.getRequestBody().readAllBytes()));
+			byte[] body = "[]".getBytes(StandardCharsets.UTF_8);
+			exchange.getResponseHeaders().add("Content-Type", JSON_PATCH);
+			exchange.getResponseHeaders().add("Resource-Version", "7");
+			exchange.sendResponseHeaders(200, body.length);
+			exchange.getResponseBody().write(body);
+			exchange.close();
+		});
+		owner.start();
+		a = new ClusterNode("a", URI.create("http://localhost:1"));
+		b = new ClusterNode("b", URI.create("http://localhost:" + owner.getAddress().getPort()));
+	}
+
+	@After
+	public void stopOwner() {
+		owner.stop(0);
+	}
+
+	@Test
+	public void requestsOfClientsOwnedByAnotherNodeAreForwardedToIt() throws Exception {
+		MockMvc mvc = forwardingMvc();
+		String remote = clientOwnedBy("b");
+
+		// the client can't pass its request off as one from a peer
+		mvc.perform(patch("/rest/todos/2?since=3")
+				.principal(ALICE)
+				.header(ShadowOwnerForwardingInterceptor.CLIENT_ID_HEADER, remote)
+				.header(ShadowOwnerForwardingInterceptor.FORWARDED_BY_HEADER, "c")
+				.contentType(JSON_PATCH)
+				.content(PATCH))
+			.andExpect(status().isOk())
+			.andExpect(header().string("Resource-Version", "7"))
+			.andExpect(content().string("[]"));
+
+		Received forwarded = received.get(5, TimeUnit.SECONDS);
+		assertEquals("PATCH", forwarded.method);
+		assertEquals("/rest/todos/2?since=3", forwarded.uri);
+		assertEquals("a", forwarded.forwardedBy);
+		assertEquals(SECRET, forwarded.secret);
+		assertEquals(PATCH, new String(forwarded.body, StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void requestsOfLocalClientsAndForwardedRequestsAreHandledHere() throws Exception {
+		MockMvc mvc = forwardingMvc();
+
+		mvc.perform(patch("/rest/todos/2")
+				.principal(ALICE)
+				.header(ShadowOwnerForwardingInterceptor.CLIENT_ID_HEADER, clientOwnedBy("a"))
+				.contentType(JSON_PATCH)
+				.content(PATCH))
+			.andExpect(status().isOk())
+			.andExpect(content().string("local 2"));
+		mvc.perform(patch("/rest/todos/2")
+				.principal(ALICE)
+				.header(ShadowOwnerForwardingInterceptor.CLIENT_ID_HEADER, clientOwnedBy("b"))
+				.header(ShadowOwnerForwardingInterceptor.FORWARDED_BY_HEADER, "c")
+				.header(ShadowHandoffController.CLUSTER_SECRET_HEADER, SECRET)
+				.contentType(JSON_PATCH)
+				.content(PATCH))
+			.andExpect(status().isOk())
+			.andExpect(content().string("local 2"));
+		// unauthenticated clients have no id to be routed by
+		mvc.perform(patch("/rest/todos/2")
+				.header(ShadowOwnerForwardingInterceptor.CLIENT_ID_HEADER, clientOwnedBy("b"))
+				.contentType(JSON_PATCH)
+				.content(PATCH))
+			.andExpect(status().isOk())
+			.andExpect(content().string("local 2"));
+		mvc.perform(patch("/rest/todos/2")
+				.contentType(JSON_PATCH)
+				.content(PATCH))
+			.andExpect(status().isOk())
+			.andExpect(content().string("local 2"));
+		assertFalse(received.isDone());
+	}
+
+	@Test
+	public void clientIdsAreBoundToTheirPrincipal() {
+		assertEquals("alice:client-1", ShadowOwnerForwardingInterceptor.clientId("client-1", ALICE));
+		assertNotEquals(ShadowOwnerForwardingInterceptor.clientId("b:client-1", () -> "a"),
+				ShadowOwnerForwardingInterceptor.clientId("client-1", () -> "a:b"));
+		assertNull(ShadowOwnerForwardingInterceptor.clientId("client-1", null));
+	}
+
+	@Test
+	public void shadowsHandedOffOverHttpReachTheNewOwnersStore() throws Exception {
+		CompactShadowCodec codec = new CompactShadowCodec();
+		HttpShadowHandoff handoff = new HttpShadowHandoff(codec, "/sync");
+		handoff.setSecret("s3cret");
+		Shadow<?> shadow = new Shadow<>(List.of("A", "B"), 3, 2);
+		handoff.handOff("client-1", Map.of("shadow/todos", shadow), b).toCompletableFuture().get(5, TimeUnit.SECONDS);
+
+		Received sent = received.get(5, TimeUnit.SECONDS);
+		assertEquals("PUT", sent.method);
+		assertEquals("/sync/cluster/shadows/client-1", sent.uri);
+		assertEquals("s3cret", sent.secret);
+
+		ShadowRouter newOwner = new ShadowRouter("b", new InMemoryClusterMembership(b));
+		MockMvc mvc = standaloneSetup(new ShadowHandoffController(newOwner, codec, "s3cret")).build();
+		mvc.perform(put("/cluster/shadows/client-1")
+				.header(ShadowHandoffController.CLUSTER_SECRET_HEADER, "wrong")
+				.contentType("application/octet-stream")
+				.content(sent.body))
+			.andExpect(status().isForbidden());
+		mvc.perform(put("/cluster/shadows/client-1")
+				.header(ShadowHandoffController.CLUSTER_SECRET_HEADER, "s3cret")
+				.contentType("application/octet-stream")
+				.content(sent.body))
+			.andExpect(status().isNoContent());
+
+		ShadowStore store = new MapBasedShadowStore("client-1");
+		newOwner.register("client-1", store);
+		Shadow<?> handedOver = store.getShadow("shadow/todos");
+		assertEquals(List.of("A", "B"), handedOver.getResource());
+		assertEquals(3, handedOver.getServerVersion());
+		assertEquals(2, handedOver.getClientVersion());
+	}
+
+	private MockMvc forwardingMvc() {
+		ShadowOwnerForwardingInterceptor interceptor = new ShadowOwnerForwardingInterceptor(new ShadowRouter("a", new InMemoryClusterMembership(a, b)));
+		interceptor.setSecret(SECRET);
+		return standaloneSetup(new LocalController())
+				.addInterceptors(interceptor)
+				.build();
+	}
+
+	// a client of alice's whose shadows the node owns
+	private String clientOwnedBy(String nodeId) {
+		ConsistentHashRing ring = new ConsistentHashRing(List.of(a, b));
+		for (int i = 0; ; i++) {
+			if (ring.getOwner(ShadowOwnerForwardingInterceptor.clientId("client-" + i, ALICE)).getId().equals(nodeId)) {
+				return "client-" + i;
+			}
+		}
+	}
+
+	@RestController
+	private static class LocalController {
+
+		@PatchMapping("/rest/todos/{id}")
+		public String patch(@PathVariable("id") String id) {
+			return "local " + id;
+		}
+
+	}
+
+	private static class Received {
+
+		private final String method;
+
+		private final String uri;
+
+		private final String forwardedBy;
+
+		private final String secret;
+
+		private final byte[] body;
+
+		private Received(String method, String uri, String forwardedBy, String secret, byte[] body) {
+			this.method = method;
+			this.uri = uri;
+			this.forwardedBy = forwardedBy;
+			this.secret = secret;
+			this.body = body;
+		}
+
+	}
+
+}
@@ -15,6 +15,7 @@
  */
 package org.springframework.sync.diffsync.web.rest;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -24,12 +25,18 @@ import org.springframework.http.converter.json.MappingJackson2HttpMessageConvert
 import org.springframework.messaging.MessageChannel;
 import org.springframework.messaging.simp.SimpMessageSendingOperations;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.sync.DiffCostModel;
+import org.springframework.sync.Patch;
 import org.springframework.sync.Todo;
 import org.springframework.sync.TodoRepository;
+import org.springframework.sync.diffsync.CollectionCache;
 import org.springframework.sync.diffsync.EmbeddedDataSourceConfig;
 import org.springframework.sync.diffsync.Equivalency;
 import org.springframework.sync.diffsync.IdPropertyEquivalency;
+import org.springframework.sync.diffsync.OperationLog;
+import org.springframework.sync.diffsync.PersistenceCallback;
 import org.springframework.sync.diffsync.PersistenceCallbackRegistry;
+import org.springframework.sync.diffsync.exception.ResourceNotFoundException;
 import org.springframework.sync.diffsync.service.DiffSyncService;
 import org.springframework.sync.diffsync.service.impl.DiffSyncServiceImpl;
 import org.springframework.sync.diffsync.shadowstore.MapBasedShadowStore;
@@ -38,6 +45,9 @@ import org.springframework.sync.diffsync.web.DiffSyncController;
 import org.springframework.sync.diffsync.web.JpaPersistenceCallback;
 import org.springframework.sync.diffsync.web.JsonPatchHttpMessageConverter;
 import org.springframework.sync.diffsync.web.websocket.TestMessageChannel;
+import org.springframework.sync.json.JsonPatchPatchConverter;
+import org.springframework.sync.util.Cloner;
+import org.springframework.sync.util.ReflectiveCloner;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.jdbc.Sql;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
@@ -47,11 +57,15 @@ import javax.transaction.Transactional;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.util.ArrayList;
 import java.util.List;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 import static org.springframework.test.web.servlet.setup.MockMvcBuilders.standaloneSetup;
 
@@ -253,7 +267,7 @@ public class DiffSyncControllerRESTTest {
 
 		mvc.perform(
 				patch(RESOURCE_PATH)
-				.content(resource("patch-remove-item"))
+				.content("[{\"op\":\"remove\",\"path\":\"/1\"}]")
 				.accept(JSON_PATCH)
 				.contentType(JSON_PATCH))
 			.andExpect(status().isOk())
@@ -394,6 +408,222 @@ public class DiffSyncControllerRESTTest {
 		assertEquals(2, all.size());
 		assertEquals(new Todo(1L, "A", false), all.get(0));
 		assertEquals(new Todo(3L, "C", true), all.get(1));
+
+		// the patch brings the client's list, with its own change, in line with the server's, leaving no stale item behind
+		List<Todo> client = new ArrayList<>(List.of(new Todo(1L, "A", false), new Todo(2L, "B", true), new Todo(3L, "C", false)));
+		Patch response = new JsonPatchPatchConverter().convert(new ObjectMapper().readTree(resource("patch-remove-completed-item")));
+		assertEquals(all, response.apply(client, Todo.class));
+	}
+
+	@Test
+	public void serverSideChangesToAllOfAnItemAreSentAsAReplaceOfTheItem() throws Exception {
+		DiffCostModel diffCostModel = new DiffCostModel(1.0);
+		MockMvc mvc = mockMvc(todoRepository(), null, diffCostModel);
+
+		performNoOpRequestToSetupShadow(mvc);
+
+		repository.save(new Todo(2L, "BBBBBBBB", true));
+
+		mvc.perform(
+						patch(RESOURCE_PATH)
+								.content("[]")
+								.accept(JSON_PATCH)
+								.contentType(JSON_PATCH))
+				.andExpect(status().isOk())
+				.andExpect(content().string("[{\"op\":\"replace\",\"path\":\"/1\",\"value\":{\"id\":2,\"description\":\"BBBBBBBB\",\"complete\":true}}]"))
+				.andExpect(content().contentType(JSON_PATCH));
+		assertEquals(1, diffCostModel.getSubtreesCollapsed());
+	}
+
+	@Test
+	public void resourcesAreCopiedWithTheServiceCloner() throws Exception {
+		CountingCloner cloner = new CountingCloner();
+		PersistenceCallbackRegistry callbackRegistry = new PersistenceCallbackRegistry();
+		callbackRegistry.addPersistenceCallback(new JpaPersistenceCallback<>(todoRepository(), Todo.class));
+		DiffSyncServiceImpl diffSyncService = new DiffSyncServiceImpl(callbackRegistry, new IdPropertyEquivalency());
+		diffSyncService.setCloner(cloner);
+		MockMvc mvc = standaloneSetup(new DiffSyncController(new MapBasedShadowStore("x"), null, diffSyncService,
+						new SimpMessagingTemplate(new TestMessageChannel())))
+				.setMessageConverters(new JsonPatchHttpMessageConverter(), new MappingJackson2HttpMessageConverter())
+				.build();
+
+		mvc.perform(
+						patch(RESOURCE_PATH)
+								.content(resource("patch-change-single-status"))
+								.accept(JSON_PATCH)
+								.contentType(JSON_PATCH))
+				.andExpect(status().isOk())
+				.andExpect(content().string("[]"));
+
+		assertTrue(cloner.clones > 0);
+		assertEquals(new Todo(2L, "B", true), repository.findById(2L).orElseThrow());
+	}
+
+	@Test
+	public void patchesSinceVersionFromOperationLog() throws Exception {
+		MockMvc mvc = mockMvc(todoRepository(), new OperationLog(2));
+
+		mvc.perform(
+						patch(RESOURCE_PATH)
+								.content(resource("patch-change-single-status"))
+								.accept(JSON_PATCH)
+								.contentType(JSON_PATCH))
+				.andExpect(status().isOk())
+				.andExpect(header().string("Resource-Version", "1"));
+
+		mvc.perform(get(RESOURCE_PATH + "/patches").param("since", "0").accept(JSON_PATCH))
+				.andExpect(status().isOk())
+				.andExpect(header().string("Resource-Version", "1"))
+				.andExpect(content().string("[{\"op\":\"test\",\"path\":\"/1/complete\",\"value\":false},"
+						+ "{\"op\":\"replace\",\"path\":\"/1/complete\",\"value\":true}]"));
+		mvc.perform(get(RESOURCE_PATH + "/patches").param("since", "1").accept(JSON_PATCH))
+				.andExpect(status().isOk())
+				.andExpect(content().string("[]"));
+
+		for (String description : List.of("AA", "AAA")) {
+			mvc.perform(
+							patch(RESOURCE_PATH)
+									.content("[{\"op\":\"replace\",\"path\":\"/0/description\",\"value\":\"" + description + "\"}]")
+									.accept(JSON_PATCH)
+									.contentType(JSON_PATCH))
+					.andExpect(status().isOk());
+		}
+
+		// only the two most recent patches are kept
+		mvc.perform(get(RESOURCE_PATH + "/patches").param("since", "0").accept(JSON_PATCH))
+				.andExpect(status().isGone());
+		mvc.perform(get(RESOURCE_PATH + "/patches").param("since", "1").accept(JSON_PATCH))
+				.andExpect(status().isOk())
+				.andExpect(header().string("Resource-Version", "3"))
+				.andExpect(content().string("[{\"op\":\"test\",\"path\":\"/0/description\",\"value\":\"A\"},"
+						+ "{\"op\":\"replace\",\"path\":\"/0/description\",\"value\":\"AA\"},"
+						+ "{\"op\":\"test\",\"path\":\"/0/description\",\"value\":\"AA\"},"
+						+ "{\"op\":\"replace\",\"path\":\"/0/description\",\"value\":\"AAA\"}]"));
+	}
+
+	@Test
+	public void collectionPatchesAreLoggedForTheEntitiesTheyChange() throws Exception {
+		MockMvc mvc = mockMvc(todoRepository(), new OperationLog(2));
+
+		mvc.perform(
+						patch(RESOURCE_PATH + "/2")
+								.content("[{\"op\":\"replace\",\"path\":\"/description\",\"value\":\"BB\"}]")
+								.accept(JSON_PATCH)
+								.contentType(JSON_PATCH))
+				.andExpect(status().isOk())
+				.andExpect(header().string("Resource-Version", "1"));
+		mvc.perform(
+						patch(RESOURCE_PATH)
+								.content("[{\"op\":\"replace\",\"path\":\"/0/description\",\"value\":\"AA\"}]")
+								.accept(JSON_PATCH)
+								.contentType(JSON_PATCH))
+				.andExpect(status().isOk())
+				// the entity patch reset the collection's log
+				.andExpect(header().string("Resource-Version", "2"));
+
+		mvc.perform(get(RESOURCE_PATH + "/1/patches").param("since", "0").accept(JSON_PATCH))
+				.andExpect(status().isOk())
+				.andExpect(header().string("Resource-Version", "1"))
+				.andExpect(content().string("[{\"op\":\"test\",\"path\":\"/description\",\"value\":\"A\"},"
+						+ "{\"op\":\"replace\",\"path\":\"/description\",\"value\":\"AA\"}]"));
+		// the collection patch didn't change the other entity, so its log is kept
+		mvc.perform(get(RESOURCE_PATH + "/2/patches").param("since", "0").accept(JSON_PATCH))
+				.andExpect(status().isOk())
+				.andExpect(header().string("Resource-Version", "1"))
+				.andExpect(content().string("[{\"op\":\"test\",\"path\":\"/description\",\"value\":\"B\"},"
+						+ "{\"op\":\"replace\",\"path\":\"/description\",\"value\":\"BB\"}]"));
+	}
+
+	//
+	// incremental collection patching
+	//
+
+	@Test
+	public void incrementalPatchesLoadOnlyTheEntitiesTheyTouch() throws Exception {
+		CountingPersistenceCallback callback = new CountingPersistenceCallback(new JpaPersistenceCallback<>(todoRepository(), Todo.class));
+		MockMvc mvc = mockMvc(callback, new CollectionCache());
+
+		mvc.perform(
+				patch(RESOURCE_PATH)
+				.content(resource("patch-change-single-status"))
+				.accept(JSON_PATCH)
+				.contentType(JSON_PATCH))
+			.andExpect(status().isOk())
+			.andExpect(content().string("[]"));
+		assertEquals(1, callback.findAllCount);
+		assertEquals(List.of("2"), callback.foundIds);
+
+		mvc.perform(
+				patch(RESOURCE_PATH)
+				.content("[{\"op\":\"replace\",\"path\":\"/0/description\",\"value\":\"AAA\"}]")
+				.accept(JSON_PATCH)
+				.contentType(JSON_PATCH))
+			.andExpect(status().isOk())
+			.andExpect(content().string("[]"));
+		assertEquals(1, callback.findAllCount);
+		assertEquals(List.of("2", "1"), callback.foundIds);
+
+		mvc.perform(
+				patch(RESOURCE_PATH + "/3")
+				.content("[{\"op\":\"replace\",\"path\":\"/description\",\"value\":\"CCC\"}]")
+				.accept(JSON_PATCH)
+				.contentType(JSON_PATCH))
+			.andExpect(status().isOk());
+		mvc.perform(
+				patch(RESOURCE_PATH)
+				.content("[{\"op\":\"remove\",\"path\":\"/1\"}]")
+				.accept(JSON_PATCH)
+				.contentType(JSON_PATCH))
+			.andExpect(status().isOk());
+		assertEquals(1, callback.findAllCount);
+
+		List<Todo> all = (List<Todo>) repository.findAll();
+		assertEquals(2, all.size());
+		assertEquals(new Todo(1L, "AAA", false), all.get(0));
+		assertEquals(new Todo(3L, "CCC", false), all.get(1));
+	}
+
+	@Test
+	public void incrementalPatchesLoadTheEntitiesAtTheIndexesEarlierOperationsLeftThemAt() throws Exception {
+		CountingPersistenceCallback callback = new CountingPersistenceCallback(new JpaPersistenceCallback<>(todoRepository(), Todo.class));
+		MockMvc mvc = mockMvc(callback, new CollectionCache());
+		performNoOpRequestToSetupShadow(mvc);
+
+		// once the first item is removed, the third is at index 1
+		mvc.perform(
+				patch(RESOURCE_PATH)
+				.content("[{\"op\":\"remove\",\"path\":\"/0\"},{\"op\":\"replace\",\"path\":\"/1/complete\",\"value\":true}]")
+				.accept(JSON_PATCH)
+				.contentType(JSON_PATCH))
+			.andExpect(status().isOk());
+		assertEquals(1, callback.findAllCount);
+		assertEquals(List.of("1", "3"), callback.foundIds);
+
+		List<Todo> all = (List<Todo>) repository.findAll();
+		assertEquals(2, all.size());
+		assertEquals(new Todo(2L, "B", false), all.get(0));
+		assertEquals(new Todo(3L, "C", true), all.get(1));
+	}
+
+	@Test
+	public void incrementalPatchAddingAnItemReloadsTheCollectionNextTime() throws Exception {
+		CountingPersistenceCallback callback = new CountingPersistenceCallback(new JpaPersistenceCallback<>(todoRepository(), Todo.class));
+		MockMvc mvc = mockMvc(callback, new CollectionCache());
+
+		mvc.perform(
+				patch(RESOURCE_PATH)
+				.content(resource("patch-add-new-item"))
+				.accept(JSON_PATCH)
+				.contentType(JSON_PATCH))
+			.andExpect(status().isOk());
+		assertEquals(1, callback.findAllCount);
+		assertEquals(List.of(), callback.foundIds);
+
+		performNoOpRequestToSetupShadow(mvc);
+		assertEquals(2, callback.findAllCount);
+		performNoOpRequestToSetupShadow(mvc);
+		assertEquals(2, callback.findAllCount);
+		assertEquals(4, ((List<Todo>) repository.findAll()).size());
 	}
 
 	//
@@ -425,21 +655,104 @@ public class DiffSyncControllerRESTTest {
 		return repository;
 	}
 
-	private DiffSyncController diffSyncController(TodoRepository todoRepository) {
+	private DiffSyncController diffSyncController(TodoRepository todoRepository, OperationLog operationLog, DiffCostModel diffCostModel) {
 		PersistenceCallbackRegistry callbackRegistry = new PersistenceCallbackRegistry();
 		callbackRegistry.addPersistenceCallback(new JpaPersistenceCallback<>(todoRepository, Todo.class));
 		ShadowStore restShadowStore = new MapBasedShadowStore("x");
 		Equivalency equivalency = new IdPropertyEquivalency();
-		DiffSyncService diffSyncService = new DiffSyncServiceImpl(callbackRegistry, equivalency);
+		DiffSyncServiceImpl diffSyncService = new DiffSyncServiceImpl(callbackRegistry, equivalency);
+		diffSyncService.setOperationLog(operationLog);
+		diffSyncService.setDiffCostModel(diffCostModel);
 		MessageChannel brokerChannel = new TestMessageChannel();
 		SimpMessageSendingOperations brokerTemplate = new SimpMessagingTemplate(brokerChannel);
 		return new DiffSyncController(restShadowStore, null, diffSyncService, brokerTemplate);
 	}
 
+	private MockMvc mockMvc(PersistenceCallback<Todo> persistenceCallback, CollectionCache collectionCache) {
+		PersistenceCallbackRegistry callbackRegistry = new PersistenceCallbackRegistry();
+		callbackRegistry.addPersistenceCallback(persistenceCallback);
+		DiffSyncServiceImpl diffSyncService = new DiffSyncServiceImpl(callbackRegistry, new IdPropertyEquivalency());
+		diffSyncService.setCollectionCache(collectionCache);
+		DiffSyncController controller = new DiffSyncController(new MapBasedShadowStore("x"), null, diffSyncService,
+				new SimpMessagingTemplate(new TestMessageChannel()));
+		return standaloneSetup(controller)
+				.setMessageConverters(new JsonPatchHttpMessageConverter(), new MappingJackson2HttpMessageConverter())
+				.build();
+	}
+
 	private MockMvc mockMvc(TodoRepository todoRepository) {
-		DiffSyncController controller = diffSyncController(todoRepository);
+		return mockMvc(todoRepository, null);
+	}
+
+	private MockMvc mockMvc(TodoRepository todoRepository, OperationLog operationLog) {
+		return mockMvc(todoRepository, operationLog, null);
+	}
+
+	private MockMvc mockMvc(TodoRepository todoRepository, OperationLog operationLog, DiffCostModel diffCostModel) {
+		DiffSyncController controller = diffSyncController(todoRepository, operationLog, diffCostModel);
 		return standaloneSetup(controller)
 				.setMessageConverters(new JsonPatchHttpMessageConverter(), new MappingJackson2HttpMessageConverter())
 				.build();
 	}
+
+	private static class CountingCloner implements Cloner {
+
+		private final Cloner delegate = new ReflectiveCloner();
+
+		private int clones;
+
+		@Override
+		public <T> T deepClone(T original) {
+			clones++;
+			return delegate.deepClone(original);
+		}
+
+		@Override
+		public <T> List<T> deepClone(List<T> original) {
+			clones++;
+			return delegate.deepClone(original);
+		}
+
+	}
+
+	private static class CountingPersistenceCallback implements PersistenceCallback<Todo> {
+
+		private final PersistenceCallback<Todo> delegate;
+
+		private int findAllCount;
+
+		private final List<String> foundIds = new ArrayList<>();
+
+		private CountingPersistenceCallback(PersistenceCallback<Todo> delegate) {
+			this.delegate = delegate;
+		}
+
+		@Override
+		public List<Todo> findAll() {
+			findAllCount++;
+			return delegate.findAll();
+		}
+
+		@Override
+		public Todo findOne(String id) throws ResourceNotFoundException {
+			foundIds.add(id);
+			return delegate.findOne(id);
+		}
+
+		@Override
+		public void persistChange(Todo itemToSave) {
+			delegate.persistChange(itemToSave);
+		}
+
+		@Override
+		public void persistChanges(List<Todo> itemsToSave, List<Todo> itemsToDelete) {
+			delegate.persistChanges(itemsToSave, itemsToDelete);
+		}
+
+		@Override
+		public Class<Todo> getEntityType() {
+			return Todo.class;
+		}
+
+	}
 }
@@ -31,19 +31,26 @@ import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
 import org.springframework.messaging.support.MessageBuilder;
 import org.springframework.sync.Patch;
 import org.springframework.sync.PatchOperation;
+import org.springframework.sync.TestOperation;
 import org.springframework.sync.Todo;
 import org.springframework.sync.TodoRepository;
+import org.springframework.sync.diffsync.CollectionCache;
 import org.springframework.sync.diffsync.EmbeddedDataSourceConfig;
 import org.springframework.sync.diffsync.Equivalency;
 import org.springframework.sync.diffsync.IdPropertyEquivalency;
 import org.springframework.sync.diffsync.PersistenceCallbackRegistry;
 import org.springframework.sync.diffsync.service.DiffSyncService;
+import org.springframework.sync.diffsync.service.ServerPushService;
 import org.springframework.sync.diffsync.service.impl.DiffSyncServiceImpl;
+import org.springframework.sync.diffsync.service.impl.ServerPushServiceImpl;
+import org.springframework.sync.diffsync.shadowstore.AsyncShadowStoreAdapter;
 import org.springframework.sync.diffsync.shadowstore.MapBasedShadowStore;
 import org.springframework.sync.diffsync.shadowstore.ShadowStore;
+import org.springframework.sync.diffsync.web.ClientIdChannelInterceptor;
 import org.springframework.sync.diffsync.web.DiffSyncController;
 import org.springframework.sync.diffsync.web.JpaPersistenceCallback;
 import org.springframework.sync.diffsync.web.JsonPatchHttpMessageConverter;
+import org.springframework.sync.diffsync.web.ShadowOwnerForwardingInterceptor;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.jdbc.Sql;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
@@ -53,10 +60,15 @@ import javax.transaction.Transactional;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.security.Principal;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
@@ -116,6 +128,56 @@ public class DiffSyncControllerWebSocketTest {
         assertEquals(new Todo(3L, "C", false), all.get(2));
     }
 
+    @Test
+    public void patchSendsEntityStatusChangeAsyncWebSocket() throws Exception {
+        TodoRepository todoRepository = todoRepository();
+        TestMessageChannel brokerChannel = new TestMessageChannel();
+        SimpMessageSendingOperations brokerTemplate = new SimpMessagingTemplate(brokerChannel);
+        DiffSyncController diffSyncController = diffSyncController(todoRepository, brokerTemplate);
+        diffSyncController.setWebSocketAsyncShadowStore(new AsyncShadowStoreAdapter(new MapBasedShadowStore(WEBSOCKET_SESSION_ID)));
+        MockWebSocket mockWebSocket = mockWebSocket(diffSyncController, brokerTemplate);
+
+        StompHeaderAccessor sendHeaders = buildStompHeaderAccessor(APP_WEBSOCKET_RESOURCE_PATH + "/2");
+        Message<Patch> sendMessage = MessageBuilder
+                .withPayload(patchResource("patch-change-entity-status"))
+                .setHeaders(sendHeaders)
+                .build();
+        mockWebSocket.handleMessage(sendMessage);
+
+        Thread.sleep(WAIT_TIME);
+
+        assertEquals(4, brokerChannel.getMessages().size());
+        assertStompReply(brokerChannel.getMessages(), TOPIC_WEBSOCKET_RESOURCE_PATH + ".2", 2);
+        assertStompReply(brokerChannel.getMessages(), TOPIC_WEBSOCKET_RESOURCE_PATH, 2);
+
+        List<Todo> all = (List<Todo>) repository.findAll();
+        assertEquals(new Todo(2L, "B", true), all.get(1));
+    }
+
+    @Test
+    public void failedAsyncPatchIsSentToTheSessionsErrorQueue() throws Exception {
+        TodoRepository todoRepository = todoRepository();
+        TestMessageChannel brokerChannel = new TestMessageChannel();
+        SimpMessageSendingOperations brokerTemplate = new SimpMessagingTemplate(brokerChannel);
+        DiffSyncController diffSyncController = diffSyncController(todoRepository, brokerTemplate);
+        diffSyncController.setWebSocketAsyncShadowStore(new AsyncShadowStoreAdapter(new MapBasedShadowStore(WEBSOCKET_SESSION_ID)));
+        MockWebSocket mockWebSocket = mockWebSocket(diffSyncController, brokerTemplate);
+
+        StompHeaderAccessor sendHeaders = buildStompHeaderAccessor(APP_WEBSOCKET_RESOURCE_PATH + "/2");
+        Message<Patch> sendMessage = MessageBuilder
+                .withPayload(new Patch(List.of(new TestOperation("/description", "Z"))))
+                .setHeaders(sendHeaders)
+                .build();
+        mockWebSocket.handleMessage(sendMessage);
+
+        Thread.sleep(WAIT_TIME);
+
+        assertEquals(1, brokerChannel.getMessages().size());
+        Message<?> error = brokerChannel.getMessages().get(0);
+        assertEquals("/user/" + WEBSOCKET_SESSION_ID + "/queue/errors", StompHeaderAccessor.wrap(error).getDestination());
+        assertEquals(new Todo(2L, "B", false), repository.findById(2L).orElseThrow());
+    }
+
     @Test
     public void patchSendsEntityDescriptionChangeWebSocket() throws Exception {
         TodoRepository todoRepository = todoRepository();
@@ -146,6 +208,96 @@ public class DiffSyncControllerWebSocketTest {
         assertEquals(new Todo(3L, "C", false), all.get(2));
     }
 
+    @Test
+    public void serverSideChangeDropsTheCollectionView() {
+        CollectionCache collectionCache = new CollectionCache();
+        ServerPushServiceImpl serverPushService = new ServerPushServiceImpl(null, new SimpMessagingTemplate(new TestMessageChannel()), sessionId -> null);
+        serverPushService.setCollectionCache(collectionCache);
+        CollectionCache.View<String> view = collectionCache.get("todos", () -> List.of("A"));
+
+        // patches applied by the service are already in the view
+        serverPushService.resourcePatched("todos", "2");
+        assertSame(view, collectionCache.get("todos", List::of));
+
+        serverPushService.resourceChanged("todos", "2");
+        assertNotSame(view, collectionCache.get("todos", List::of));
+    }
+
+    @Test
+    public void serverSideChangeIsPushedToSession() throws Exception {
+        TestMessageChannel brokerChannel = new TestMessageChannel();
+        SimpMessageSendingOperations brokerTemplate = new SimpMessagingTemplate(brokerChannel);
+        PersistenceCallbackRegistry callbackRegistry = new PersistenceCallbackRegistry();
+        callbackRegistry.addPersistenceCallback(new JpaPersistenceCallback<>(todoRepository(), Todo.class));
+        ShadowStore webSocketShadowStore = new MapBasedShadowStore(WEBSOCKET_SESSION_ID);
+        DiffSyncService diffSyncService = new DiffSyncServiceImpl(callbackRegistry, new IdPropertyEquivalency());
+        ServerPushService serverPushService = new ServerPushServiceImpl(diffSyncService, brokerTemplate,
+                sessionId -> WEBSOCKET_SESSION_ID.equals(sessionId) ? webSocketShadowStore : null);
+        DiffSyncController diffSyncController = new DiffSyncController(new MapBasedShadowStore("x"), webSocketShadowStore, diffSyncService, brokerTemplate);
+        diffSyncController.setServerPushService(serverPushService);
+        MockWebSocket mockWebSocket = mockWebSocket(diffSyncController, brokerTemplate);
+
+        Message<Patch> sendMessage = MessageBuilder
+                .withPayload(patchResource("patch-change-entity-status"))
+                .setHeaders(buildStompHeaderAccessor(APP_WEBSOCKET_RESOURCE_PATH + "/2"))
+                .build();
+        mockWebSocket.handleMessage(sendMessage);
+        Thread.sleep(WAIT_TIME);
+
+        // the session's own patch leaves nothing to push
+        serverPushService.push();
+        assertEquals(4, brokerChannel.getMessages().size());
+
+        // changes made outside the sync loop are coalesced and pushed once
+        Todo todo = repository.findById(2L).orElseThrow();
+        todo.setDescription("BBB");
+        repository.save(todo);
+        serverPushService.resourceChanged("todos", "2");
+        serverPushService.resourceChanged("todos");
+        serverPushService.push();
+        assertEquals(5, brokerChannel.getMessages().size());
+        assertStompReply(brokerChannel.getMessages(), "/user/" + WEBSOCKET_SESSION_ID + "/queue/todos.2", 2);
+
+        serverPushService.push();
+        assertEquals(5, brokerChannel.getMessages().size());
+    }
+
+    @Test
+    public void changedResourceIsLoadedOncePerPushForAllSessions() throws Exception {
+        TestMessageChannel brokerChannel = new TestMessageChannel();
+        SimpMessageSendingOperations brokerTemplate = new SimpMessagingTemplate(brokerChannel);
+        int[] loads = new int[1];
+        PersistenceCallbackRegistry callbackRegistry = new PersistenceCallbackRegistry();
+        callbackRegistry.addPersistenceCallback(new JpaPersistenceCallback<>(todoRepository(), Todo.class) {
+            @Override
+            public List<Todo> findAll() {
+                loads[0]++;
+                return super.findAll();
+            }
+        });
+        ShadowStore firstShadowStore = new MapBasedShadowStore("first");
+        ShadowStore secondShadowStore = new MapBasedShadowStore("second");
+        DiffSyncService diffSyncService = new DiffSyncServiceImpl(callbackRegistry, new IdPropertyEquivalency());
+        ServerPushService serverPushService = new ServerPushServiceImpl(diffSyncService, brokerTemplate,
+                sessionId -> "first".equals(sessionId) ? firstShadowStore : "second".equals(sessionId) ? secondShadowStore : null);
+        serverPushService.register("first", "todos");
+        serverPushService.register("second", "todos");
+
+        // the first push takes the sessions' shadows
+        serverPushService.resourceChanged("todos");
+        serverPushService.push();
+        assertEquals(1, loads[0]);
+        assertEquals(0, brokerChannel.getMessages().size());
+
+        Todo todo = repository.findById(2L).orElseThrow();
+        todo.setDescription("BBB");
+        repository.save(todo);
+        serverPushService.resourceChanged("todos");
+        serverPushService.push();
+        assertEquals(2, loads[0]);
+        assertEquals(2, brokerChannel.getMessages().size());
+    }
+
     //
     // entity patching REST
     //
@@ -250,6 +402,26 @@ public class DiffSyncControllerWebSocketTest {
         return repository;
     }
 
+    @Test
+    public void clientIdIsKeptForTheSessionOfItsPrincipal() {
+        Message<byte[]> connect = connectMessage(() -> "alice");
+        new ClientIdChannelInterceptor().preSend(connect, new TestMessageChannel());
+        assertEquals("alice:client", StompHeaderAccessor.wrap(connect).getSessionAttributes().get(ClientIdChannelInterceptor.CLIENT_ID_ATTRIBUTE));
+
+        Message<byte[]> anonymousConnect = connectMessage(null);
+        new ClientIdChannelInterceptor().preSend(anonymousConnect, new TestMessageChannel());
+        assertNull(StompHeaderAccessor.wrap(anonymousConnect).getSessionAttributes().get(ClientIdChannelInterceptor.CLIENT_ID_ATTRIBUTE));
+    }
+
+    private Message<byte[]> connectMessage(Principal user) {
+        StompHeaderAccessor headers = StompHeaderAccessor.create(StompCommand.CONNECT);
+        headers.setSessionId(WEBSOCKET_SESSION_ID);
+        headers.setSessionAttributes(new HashMap<>());
+        headers.setUser(user);
+        headers.setNativeHeader(ShadowOwnerForwardingInterceptor.CLIENT_ID_HEADER, "client");
+        return MessageBuilder.createMessage(new byte[0], headers.getMessageHeaders());
+    }
+
     private DiffSyncController diffSyncController(TodoRepository todoRepository, SimpMessageSendingOperations brokerTemplate) {
         PersistenceCallbackRegistry callbackRegistry = new PersistenceCallbackRegistry();
         callbackRegistry.addPersistenceCallback(new JpaPersistenceCallback<>(todoRepository, Todo.class));